@@ -0,0 +1,169 @@
+package bit.bees.bittorrent.bencode;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * Generated documents the codec benchmarks run against. Every corpus is built from a fixed seed, so
+ * runs are comparable, and is encoded here independently of the encoders being measured.
+ */
+public enum BencodeCorpus {
+
+    /** Compact announce response with 50 peers. */
+    TRACKER_REPLY {
+        @Override
+        Map<String, Object> build(Random random) {
+            return dictionary(
+                    "complete", 120L,
+                    "incomplete", 7L,
+                    "interval", 1800L,
+                    "min interval", 900L,
+                    "peers", randomBytes(random, 6 * 50));
+        }
+    },
+
+    /** Single-file torrent of 1 GiB in 256 KiB pieces. */
+    SINGLE_FILE_TORRENT {
+        @Override
+        Map<String, Object> build(Random random) {
+            return torrent(random, dictionary(
+                    "length", 1L << 30,
+                    "name", text("ubuntu-24.04-desktop-amd64.iso"),
+                    "piece length", 256L * 1024,
+                    "pieces", randomBytes(random, 20 * 4096)));
+        }
+    },
+
+    /** Multi-file torrent listing 50 000 files. */
+    MULTI_FILE_TORRENT {
+        @Override
+        Map<String, Object> build(Random random) {
+            List<Object> files = new ArrayList<>();
+            for (int i = 0; i < 50_000; i++) {
+                files.add(dictionary(
+                        "length", (long) random.nextInt(1 << 24),
+                        "path", List.of(text("dir-" + (i % 100)), text("file-" + i + ".dat"))));
+            }
+            return torrent(random, dictionary(
+                    "files", files,
+                    "name", text("dataset"),
+                    "piece length", 1L << 20,
+                    "pieces", randomBytes(random, 20 * 10_000)));
+        }
+    },
+
+    /** Dictionaries nested 512 levels deep, each holding a few scalars next to the nested one. */
+    NESTED_DICTIONARIES {
+        @Override
+        Map<String, Object> build(Random random) {
+            Map<String, Object> value = dictionary("leaf", 1L);
+            for (int i = 0; i < 512; i++) {
+                value = dictionary("child", value, "id", (long) i, "name", text("level-" + i));
+            }
+            return value;
+        }
+    },
+
+    /** Torrent whose {@code pieces} string is 10 MB of hashes. */
+    PIECES_BLOB {
+        @Override
+        Map<String, Object> build(Random random) {
+            return torrent(random, dictionary(
+                    "length", 500_000L << 18,
+                    "name", text("archive.tar"),
+                    "piece length", 1L << 18,
+                    "pieces", randomBytes(random, 20 * 500_000)));
+        }
+    };
+
+    private Map<String, Object> value;
+    private byte[] encoded;
+
+    abstract Map<String, Object> build(Random random);
+
+    /**
+     * The document as decoded from binary input: {@link ByteString}s, {@code Long}s, lists and maps.
+     */
+    public synchronized Map<String, Object> value() {
+        if (value == null) {
+            value = build(new Random(ordinal()));
+        }
+        return value;
+    }
+
+    public synchronized byte[] encoded() {
+        if (encoded == null) {
+            encoded = encode(value());
+        }
+        return encoded;
+    }
+
+    /**
+     * Encodes a value built of the types {@link #value()} uses.
+     */
+    public static byte[] encode(Object value) {
+        var out = new ByteArrayOutputStream();
+        write(value, out);
+        return out.toByteArray();
+    }
+
+    private static Map<String, Object> torrent(Random random, Map<String, Object> info) {
+        return dictionary(
+                "announce", text("http://tracker.example.com:6969/announce"),
+                "announce-list", List.of(
+                        List.of(text("http://tracker.example.com:6969/announce")),
+                        List.of(text("udp://backup.example.com:1337/announce"))),
+                "created by", text("bit-torrent"),
+                "creation date", 1_700_000_000L + random.nextInt(1000),
+                "info", info);
+    }
+
+    private static Map<String, Object> dictionary(Object... keysAndValues) {
+        Map<String, Object> dictionary = new TreeMap<>();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            dictionary.put((String) keysAndValues[i], keysAndValues[i + 1]);
+        }
+        return dictionary;
+    }
+
+    private static ByteString text(String text) {
+        return ByteString.copyOf(text);
+    }
+
+    private static ByteString randomBytes(Random random, int length) {
+        byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        return ByteString.of(bytes);
+    }
+
+    private static void write(Object value, ByteArrayOutputStream out) {
+        switch (value) {
+            case ByteString bytes -> {
+                out.writeBytes(Integer.toString(bytes.length()).getBytes(StandardCharsets.US_ASCII));
+                out.write(':');
+                out.writeBytes(bytes.toByteArray());
+            }
+            case Long number -> out.writeBytes(("i" + number + "e").getBytes(StandardCharsets.US_ASCII));
+            case Collection<?> list -> {
+                out.write('l');
+                list.forEach(item -> write(item, out));
+                out.write('e');
+            }
+            case Map<?, ?> dictionary -> {
+                out.write('d');
+                new TreeMap<>(dictionary).forEach((key, item) -> {
+                    write(ByteString.copyOf((String) key), out);
+                    write(item, out);
+                });
+                out.write('e');
+            }
+            default -> throw new IllegalArgumentException("Unsupported corpus value " + value);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package bit.bees.bittorrent.bencode;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Secondary result reporting how many megabytes a benchmark processed. JMH lists it as
+ * {@code <benchmark>:megabytes} with the unit ops/s, which reads as MB/s; benchmarks add the size of
+ * what they decoded or encoded with {@link #add(long)} on every invocation.
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class ByteThroughput {
+
+    public double megabytes;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+        megabytes = 0;
+    }
+
+    public void add(long bytes) {
+        megabytes += bytes / 1_000_000.0;
+    }
+}
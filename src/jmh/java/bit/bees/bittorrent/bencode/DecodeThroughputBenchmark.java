@@ -0,0 +1,76 @@
+package bit.bees.bittorrent.bencode;
+
+import bit.bees.bittorrent.bencode.parsers.BencodeCursor;
+import bit.bees.bittorrent.bencode.parsers.DictionaryParser;
+import bit.bees.bittorrent.bencode.parsers.KeyCache;
+import bit.bees.bittorrent.bencode.parsers.NumberParser;
+import bit.bees.bittorrent.bencode.parsers.ParseResult;
+import bit.bees.bittorrent.bencode.parsers.StringParser;
+import bit.bees.bittorrent.bencode.parsers.ValueParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decodes every {@link BencodeCorpus} document as a whole: through the {@link Decoder}, through
+ * {@link DictionaryParser} on bytes and on the legacy {@code String} API, and as a {@link LazyDictionary}
+ * reading a single key. Run with {@code -prof gc} to see the allocation rate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DecodeThroughputBenchmark {
+
+    @Param
+    private BencodeCorpus corpus;
+
+    private final ValueParser valueParser = new ValueParser(new StringParser(), new NumberParser(), new KeyCache(KeyCache.DEFAULT_SIZE), ValueParser.DEFAULT_MAX_DEPTH);
+    private final Decoder decoder = new Decoder(valueParser, DecoderMetrics.NOOP);
+    private final DictionaryParser dictionaryParser = new DictionaryParser(valueParser);
+    private byte[] bytes;
+    private String text;
+
+    @Setup
+    public void setUp() {
+        bytes = corpus.encoded();
+        text = new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+
+    @Benchmark
+    public ParseResult<Object> decoder(ByteThroughput throughput) {
+        throughput.add(bytes.length);
+        return decoder.decode(bytes);
+    }
+
+    @Benchmark
+    public Map<String, Object> dictionaryParser(ByteThroughput throughput) {
+        throughput.add(bytes.length);
+        return dictionaryParser.read(BencodeCursor.of(bytes));
+    }
+
+    @Benchmark
+    public ParseResult<Map<String, Object>> dictionaryParserText(ByteThroughput throughput) {
+        throughput.add(bytes.length);
+        return dictionaryParser.parse(text);
+    }
+
+    @Benchmark
+    public Object lazyDictionary() {
+        return LazyDictionary.of(bytes).get("info");
+    }
+}
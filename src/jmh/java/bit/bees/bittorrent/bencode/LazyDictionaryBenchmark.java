@@ -0,0 +1,73 @@
+package bit.bees.bittorrent.bencode;
+
+import bit.bees.bittorrent.bencode.parsers.BencodeCursor;
+import bit.bees.bittorrent.bencode.parsers.DictionaryParser;
+import bit.bees.bittorrent.bencode.parsers.KeyCache;
+import bit.bees.bittorrent.bencode.parsers.NumberParser;
+import bit.bees.bittorrent.bencode.parsers.StringParser;
+import bit.bees.bittorrent.bencode.parsers.ValueParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads {@code announce}, {@code info.name} and {@code info.piece length} from a multi-file torrent,
+ * once by decoding the whole document and once through a {@link LazyDictionary}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LazyDictionaryBenchmark {
+
+    @Param({"1000", "50000"})
+    private int fileCount;
+
+    private final DictionaryParser parser = new DictionaryParser(
+            new ValueParser(new StringParser(), new NumberParser(), new KeyCache(KeyCache.DEFAULT_SIZE), ValueParser.DEFAULT_MAX_DEPTH));
+    private byte[] torrent;
+
+    @Setup
+    public void setUp() {
+        var encoded = new StringBuilder("d8:announce14:http://tracker4:infod5:filesl");
+        for (int i = 0; i < fileCount; i++) {
+            String name = "file" + i;
+            encoded.append("d6:lengthi").append(i).append("e4:pathl3:dir").append(name.length()).append(':').append(name).append("ee");
+        }
+        encoded.append("e4:name4:test12:piece lengthi262144eee");
+        torrent = encoded.toString().getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    @Benchmark
+    public void eager(Blackhole blackhole) {
+        Map<String, Object> root = parser.read(BencodeCursor.of(torrent));
+        var info = (Map<?, ?>) root.get("info");
+        blackhole.consume(root.get("announce"));
+        blackhole.consume(info.get("name"));
+        blackhole.consume(info.get("piece length"));
+    }
+
+    @Benchmark
+    public void lazy(Blackhole blackhole) {
+        var root = LazyDictionary.of(torrent);
+        var info = root.getDictionary("info");
+        blackhole.consume(root.getBytes("announce"));
+        blackhole.consume(info.getBytes("name"));
+        blackhole.consume(info.getLong("piece length"));
+    }
+}
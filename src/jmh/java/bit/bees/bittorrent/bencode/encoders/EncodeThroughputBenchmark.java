@@ -0,0 +1,135 @@
+package bit.bees.bittorrent.bencode.encoders;
+
+import bit.bees.bittorrent.bencode.BencodeCorpus;
+import bit.bees.bittorrent.bencode.ByteThroughput;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encodes every {@link BencodeCorpus} document: into an exactly sized buffer, streamed into a sink, and
+ * as text through {@link DictionaryEncoder}. The string, number and list encoders are measured on the
+ * largest token of their kind in the document. Run with {@code -prof gc} to see the allocation rate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EncodeThroughputBenchmark {
+
+    @Param
+    private BencodeCorpus corpus;
+
+    private final StringEncoder stringEncoder = new StringEncoder();
+    private final NumberEncoder numberEncoder = new NumberEncoder();
+    private final ValueEncoder valueEncoder = new ValueEncoder(stringEncoder, numberEncoder);
+    private final ListEncoder listEncoder = new ListEncoder(valueEncoder);
+    private final DictionaryEncoder dictionaryEncoder = new DictionaryEncoder(valueEncoder);
+    private final Encoder encoder = new Encoder(valueEncoder);
+
+    private Map<String, Object> value;
+    private long encodedLength;
+    private Object largestString;
+    private Object largestNumber;
+    private Object largestList;
+
+    @Setup
+    public void setUp() {
+        value = corpus.value();
+        encodedLength = corpus.encoded().length;
+        var largest = new LargestTokens();
+        largest.visit(value);
+        largestString = largest.string;
+        largestNumber = largest.number;
+        largestList = largest.list;
+    }
+
+    @Benchmark
+    public ByteBuffer encoderToBuffer(ByteThroughput throughput) {
+        throughput.add(encodedLength);
+        return encoder.encode(value);
+    }
+
+    @Benchmark
+    public OutputStream encoderToStream(ByteThroughput throughput) throws IOException {
+        throughput.add(encodedLength);
+        var out = OutputStream.nullOutputStream();
+        encoder.encode(value, out);
+        return out;
+    }
+
+    @Benchmark
+    public String dictionaryEncoderText(ByteThroughput throughput) {
+        throughput.add(encodedLength);
+        return dictionaryEncoder.encode(value);
+    }
+
+    @Benchmark
+    public OutputStream stringEncoder() throws IOException {
+        var out = OutputStream.nullOutputStream();
+        stringEncoder.encode(largestString, out);
+        return out;
+    }
+
+    @Benchmark
+    public OutputStream numberEncoder() throws IOException {
+        var out = OutputStream.nullOutputStream();
+        numberEncoder.encode(largestNumber, out);
+        return out;
+    }
+
+    @Benchmark
+    public OutputStream listEncoder() throws IOException {
+        var out = OutputStream.nullOutputStream();
+        listEncoder.encode(largestList, out);
+        return out;
+    }
+
+    /**
+     * Finds the longest string, the largest number and the longest list of a document.
+     */
+    private static final class LargestTokens {
+
+        private Object string = "";
+        private Object number = 0L;
+        private Object list = java.util.List.of();
+
+        void visit(Object node) {
+            switch (node) {
+                case Map<?, ?> map -> map.values().forEach(this::visit);
+                case java.util.List<?> items -> {
+                    if (items.size() > ((java.util.List<?>) list).size()) {
+                        list = items;
+                    }
+                    items.forEach(this::visit);
+                }
+                case Long longValue -> {
+                    if (longValue > (Long) number) {
+                        number = longValue;
+                    }
+                }
+                default -> {
+                    if (node.toString().length() > string.toString().length()) {
+                        string = node;
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package bit.bees.bittorrent.bencode.encoders;
+
+import bit.bees.bittorrent.bencode.BencodeException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Encodes dictionaries nested {@code depth} levels deep, each level holding a few scalars and a list
+ * next to the nested dictionary. {@code legacyChain} is the former encoder chain, where every
+ * dictionary validated its whole subtree before encoding it, which makes the work quadratic in the
+ * depth. The type-dispatched encoder visits every node once.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EncoderDispatchBenchmark {
+
+    @Param({"1", "4", "16", "64"})
+    private int depth;
+
+    private final ValueEncoder valueEncoder = new ValueEncoder(new StringEncoder(), new NumberEncoder());
+    private final DictionaryEncoder dictionaryEncoder = new DictionaryEncoder(valueEncoder);
+    private final LegacyEncoderChain legacyChain = new LegacyEncoderChain();
+    private Map<String, Object> data;
+
+    @Setup
+    public void setUp() {
+        Map<String, Object> value = Map.of("length", 1024L);
+        for (int i = 0; i < depth; i++) {
+            value = Map.of("name", "level" + i, "size", i, "path", List.of("dir", "file" + i), "child", value);
+        }
+        data = value;
+    }
+
+    @Benchmark
+    public String legacyChain() {
+        return legacyChain.encode(data);
+    }
+
+    @Benchmark
+    public String dispatchedText() {
+        return dictionaryEncoder.encode(data);
+    }
+
+    @Benchmark
+    public OutputStream dispatchedStream() throws IOException {
+        var out = OutputStream.nullOutputStream();
+        valueEncoder.encode(data, out);
+        return out;
+    }
+
+    /**
+     * The previous encoders folded into one class: each container asks every candidate encoder whether
+     * it can take a value, and a dictionary encoder re-validates its subtree before encoding it.
+     */
+    private static final class LegacyEncoderChain {
+
+        String encode(Object data) {
+            if (!canEncode(data)) {
+                throw new BencodeException("Can not encode '%s'.".formatted(data));
+            }
+            return switch (data) {
+                case String string -> string.length() + ":" + string;
+                case Number number -> "i" + number + "e";
+                case Collection<?> list -> list.stream().map(this::encode).collect(Collectors.joining("", "l", "e"));
+                case Map<?, ?> map -> map.entrySet().stream()
+                        .sorted((a, b) -> a.getKey().toString().compareTo(b.getKey().toString()))
+                        .map(entry -> encode(entry.getKey()) + encode(entry.getValue()))
+                        .collect(Collectors.joining("", "d", "e"));
+                default -> throw new BencodeException("Can not encode '%s'.".formatted(data));
+            };
+        }
+
+        private boolean canEncode(Object data) {
+            return switch (data) {
+                case String ignored -> true;
+                case Integer ignored -> true;
+                case Long ignored -> true;
+                case Collection<?> list -> list.stream().allMatch(this::canEncode);
+                case Map<?, ?> map -> map.keySet().stream().allMatch(String.class::isInstance)
+                        && map.values().stream().allMatch(this::canEncode);
+                case null, default -> false;
+            };
+        }
+    }
+}
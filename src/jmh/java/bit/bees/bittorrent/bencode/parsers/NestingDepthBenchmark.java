@@ -0,0 +1,54 @@
+package bit.bees.bittorrent.bencode.parsers;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parses dictionaries nested {@code depth} levels deep. With single-pass parsing the time per
+ * operation grows linearly with the depth; any per-level re-validation shows up as exponential growth.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NestingDepthBenchmark {
+
+    @Param({"1", "2", "4", "8", "16", "32", "64"})
+    private int depth;
+
+    private final DictionaryParser parser = new DictionaryParser(
+            new ValueParser(new StringParser(), new NumberParser(), new KeyCache(KeyCache.DEFAULT_SIZE), ValueParser.DEFAULT_MAX_DEPTH));
+    private String text;
+    private byte[] bytes;
+
+    @Setup
+    public void setUp() {
+        text = "d1:a".repeat(depth) + "i1e" + "e".repeat(depth);
+        bytes = text.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    @Benchmark
+    public ParseResult<Map<String, Object>> parseString() {
+        return parser.parse(text);
+    }
+
+    @Benchmark
+    public Map<String, Object> readBytes() {
+        return parser.read(BencodeCursor.of(bytes));
+    }
+}
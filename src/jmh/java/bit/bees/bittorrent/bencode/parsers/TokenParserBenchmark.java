@@ -0,0 +1,88 @@
+package bit.bees.bittorrent.bencode.parsers;
+
+import bit.bees.bittorrent.bencode.BencodeCorpus;
+import bit.bees.bittorrent.bencode.ByteString;
+import bit.bees.bittorrent.bencode.ByteThroughput;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads single tokens with the type-specific parsers: short and 10 MB strings, integers that fit into
+ * a {@code long} and ones that do not, and the 50 000 entry {@code files} list of
+ * {@link BencodeCorpus#MULTI_FILE_TORRENT}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TokenParserBenchmark {
+
+    private final StringParser stringParser = new StringParser();
+    private final NumberParser numberParser = new NumberParser();
+    private final ListParser listParser = new ListParser(new ValueParser(stringParser, numberParser, new KeyCache(KeyCache.DEFAULT_SIZE), ValueParser.DEFAULT_MAX_DEPTH));
+
+    private byte[] shortString;
+    private byte[] piecesString;
+    private byte[] longInteger;
+    private byte[] bigInteger;
+    private byte[] filesList;
+
+    @Setup
+    public void setUp() {
+        shortString = ascii("12:file-123.dat");
+        piecesString = BencodeCorpus.encode(info(BencodeCorpus.PIECES_BLOB).get("pieces"));
+        longInteger = ascii("i1073741824e");
+        bigInteger = ascii("i123456789012345678901234567890e");
+        filesList = BencodeCorpus.encode(info(BencodeCorpus.MULTI_FILE_TORRENT).get("files"));
+    }
+
+    @Benchmark
+    public ByteString shortString() {
+        return StringParser.readBytes(BencodeCursor.of(shortString));
+    }
+
+    @Benchmark
+    public ByteString piecesString(ByteThroughput throughput) {
+        throughput.add(piecesString.length);
+        return StringParser.readBytes(BencodeCursor.of(piecesString));
+    }
+
+    @Benchmark
+    public Number longInteger() {
+        return NumberParser.readNumber(BencodeCursor.of(longInteger));
+    }
+
+    @Benchmark
+    public Number bigInteger() {
+        return NumberParser.readNumber(BencodeCursor.of(bigInteger));
+    }
+
+    @Benchmark
+    public List<Object> filesList(ByteThroughput throughput) {
+        throughput.add(filesList.length);
+        return listParser.read(BencodeCursor.of(filesList));
+    }
+
+    private static Map<?, ?> info(BencodeCorpus corpus) {
+        return (Map<?, ?>) corpus.value().get("info");
+    }
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,186 @@
+package bit.bees.bittorrent.peer;
+
+import bit.bees.bittorrent.bencode.ByteString;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the peer engines on loopback. Each simulated peer is a pair of connections within the
+ * engine under test, one asking for blocks of {@value #BLOCK_LENGTH} bytes and the other serving them.
+ * <ul>
+ *     <li>{@code roundTrip} is the latency of one request answered by one piece, on the peers in turn.</li>
+ *     <li>{@code burst} sends a request to every peer at once and waits for all pieces; its secondary
+ *     {@code messages} result is the number of requests answered per second.</li>
+ * </ul>
+ * The memory each peer takes, heap and direct buffers but not the kernel's socket buffers, is printed
+ * once the peers are connected. 10000 peers need more than 20000 file descriptors, see {@code ulimit -n}.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PeerEngineBenchmark {
+
+    private static final int BLOCK_LENGTH = 1024;
+    private static final int BUFFER_SIZE = 16 * 1024;
+    private static final int CONNECT_BATCH = 256;
+    private static final ByteString INFO_HASH = ByteString.copyOf("0123456789abcdefghij");
+
+    @Param({"selector", "virtual-threads"})
+    private String engine;
+
+    @Param({"100", "1000", "10000"})
+    private int peers;
+
+    private PeerEngine peerEngine;
+    private List<PeerConnection> connections;
+    private int next;
+    private volatile CountDownLatch replies;
+
+    @Setup
+    public void setUp() throws Exception {
+        var bufferPool = new BufferPool(BUFFER_SIZE, 64);
+        var decoder = new MessageDecoder(PeerConfiguration.DEFAULT_MAX_MESSAGE_LENGTH);
+        int maxConnections = 2 * peers + 16;
+        peerEngine = switch (engine) {
+            case "selector" -> new SelectorPeerEngine(bufferPool, decoder, maxConnections);
+            case "virtual-threads" -> new VirtualThreadPeerEngine(bufferPool, decoder, maxConnections);
+            default -> throw new IllegalArgumentException(engine);
+        };
+        long memoryBefore = usedMemory();
+
+        var address = peerEngine.listen(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), handshake -> new Seeder());
+        connections = new ArrayList<>(peers);
+        var downloader = new Downloader();
+        while (connections.size() < peers) {
+            var batch = new ArrayList<CompletableFuture<PeerConnection>>();
+            for (int i = Math.min(CONNECT_BATCH, peers - connections.size()); i > 0; i--) {
+                batch.add(peerEngine.connect(address, INFO_HASH, downloader));
+            }
+            for (var connection : batch) {
+                connections.add(connection.get(30, TimeUnit.SECONDS));
+            }
+        }
+
+        long bytesPerPeer = (usedMemory() - memoryBefore) / peers;
+        System.out.printf("%n%s engine, %d peers: %d bytes per peer%n", engine, peers, bytesPerPeer);
+    }
+
+    @TearDown
+    public void tearDown() {
+        peerEngine.close();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void roundTrip() throws InterruptedException {
+        var connection = connections.get(next);
+        next = (next + 1) % peers;
+        var latch = new CountDownLatch(1);
+        replies = latch;
+        send(() -> connection.sendRequest(0, 0, BLOCK_LENGTH));
+        latch.await();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public void burst(MessageThroughput throughput) throws InterruptedException {
+        var latch = new CountDownLatch(peers);
+        replies = latch;
+        send(() -> {
+            for (var connection : connections) {
+                connection.sendRequest(0, 0, BLOCK_LENGTH);
+            }
+        });
+        latch.await();
+        throughput.messages += peers;
+    }
+
+    /**
+     * Sends where the engine lets connections be used.
+     */
+    private void send(Runnable sends) {
+        if (peerEngine instanceof SelectorPeerEngine selectorEngine) {
+            selectorEngine.execute(sends);
+        } else {
+            sends.run();
+        }
+    }
+
+    private static long usedMemory() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        long heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+        long direct = ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class).stream()
+                .filter(pool -> pool.getName().equals("direct"))
+                .mapToLong(BufferPoolMXBean::getMemoryUsed)
+                .sum();
+        return heap + direct;
+    }
+
+    /**
+     * Secondary result of {@code burst}: requests answered per second.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class MessageThroughput {
+
+        public long messages;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            messages = 0;
+        }
+    }
+
+    private static class Seeder implements PeerHandler {
+
+        private static final ByteBuffer BLOCK = ByteBuffer.allocateDirect(BLOCK_LENGTH);
+
+        private PeerConnection connection;
+
+        @Override
+        public void onConnected(PeerConnection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        public void onRequest(int piece, int begin, int length) {
+            connection.sendPiece(piece, begin, BLOCK.duplicate());
+        }
+    }
+
+    private class Downloader implements PeerHandler {
+
+        @Override
+        public void onPiece(int piece, int begin, ByteBuffer block) {
+            replies.countDown();
+        }
+    }
+}
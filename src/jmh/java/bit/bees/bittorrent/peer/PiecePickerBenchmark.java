@@ -0,0 +1,191 @@
+package bit.bees.bittorrent.peer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.BitSet;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Picks pieces among {@code peers} peers, each having a random share of the {@code pieces} pieces.
+ * An operation is what a download does per piece: a pick for one peer, taking the picked piece out
+ * (and back in to keep the state steady), and a {@code have} from another peer along with one that is
+ * gone. {@code naive} does the same with a rescan of the peer's pieces per pick, for comparison, and
+ * {@code bitfield} measures a peer other than a seed connecting and disconnecting. {@code skewed} picks
+ * for peers that only have pieces of the last tenth, while one more peer has all others, which are
+ * thereby the rarest. {@code interleaved} picks for a peer that has every other piece, all of them
+ * downloaded already, while the pieces in between are wanted: the peer has none of those.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PiecePickerBenchmark {
+
+    private static final int SEQUENCE_LENGTH = 1 << 16;
+
+    @Param({"100000", "1000000"})
+    private int pieces;
+
+    @Param({"200"})
+    private int peers;
+
+    private BitSet[] peerPieces;
+    private PiecePicker rarestFirst;
+    private PiecePicker sequential;
+    private PiecePicker skewed;
+    private BitSet[] skewedPeerPieces;
+    private PiecePicker interleaved;
+    private final BitSet evenPieces = new BitSet();
+    private NaivePicker naive;
+    private final int[] peerSequence = new int[SEQUENCE_LENGTH];
+    private final int[] pieceSequence = new int[SEQUENCE_LENGTH];
+    private int next;
+
+    @Setup
+    public void setUp() {
+        var random = new Random(42);
+        peerPieces = new BitSet[peers];
+        rarestFirst = new PiecePicker(pieces, new BitSet(), random);
+        sequential = new PiecePicker(pieces, new BitSet(), random);
+        sequential.setMode(PiecePicker.Mode.SEQUENTIAL);
+        naive = new NaivePicker(pieces);
+        for (int peer = 0; peer < peers; peer++) {
+            double share = random.nextDouble();
+            var bits = new BitSet(pieces);
+            for (int piece = 0; piece < pieces; piece++) {
+                if (random.nextDouble() < share) {
+                    bits.set(piece);
+                }
+            }
+            peerPieces[peer] = bits;
+            rarestFirst.peerHas(bits);
+            sequential.peerHas(bits);
+            naive.peerHas(bits);
+        }
+        skewed = new PiecePicker(pieces, new BitSet(), random);
+        skewedPeerPieces = new BitSet[peers];
+        int rare = pieces - pieces / 10;
+        var rarePieces = new BitSet(pieces);
+        rarePieces.set(0, rare);
+        skewed.peerHas(rarePieces);
+        for (int peer = 0; peer < peers; peer++) {
+            var bits = new BitSet(pieces);
+            bits.or(peerPieces[peer]);
+            bits.clear(0, rare);
+            skewedPeerPieces[peer] = bits;
+            skewed.peerHas(bits);
+        }
+        for (int piece = 0; piece < pieces; piece += 2) {
+            evenPieces.set(piece);
+        }
+        interleaved = new PiecePicker(pieces, evenPieces, random);
+        var allPieces = new BitSet(pieces);
+        allPieces.set(0, pieces);
+        interleaved.peerHas(allPieces);
+        for (int i = 0; i < SEQUENCE_LENGTH; i++) {
+            peerSequence[i] = random.nextInt(peers);
+            pieceSequence[i] = random.nextInt(pieces);
+        }
+    }
+
+    @Benchmark
+    public int rarestFirst() {
+        return pickAndUpdate(rarestFirst);
+    }
+
+    @Benchmark
+    public int sequential() {
+        return pickAndUpdate(sequential);
+    }
+
+    @Benchmark
+    public int skewed() {
+        int i = next++ & SEQUENCE_LENGTH - 1;
+        int piece = skewed.pick(skewedPeerPieces[peerSequence[i]]);
+        if (piece >= 0) {
+            skewed.remove(piece);
+            skewed.add(piece);
+        }
+        return piece;
+    }
+
+    @Benchmark
+    public int interleaved() {
+        return interleaved.pick(evenPieces);
+    }
+
+    @Benchmark
+    public int naive() {
+        int i = next++ & SEQUENCE_LENGTH - 1;
+        int piece = naive.pick(peerPieces[peerSequence[i]]);
+        if (piece >= 0) {
+            naive.wanted.clear(piece);
+            naive.wanted.set(piece);
+        }
+        naive.availability[pieceSequence[i]]++;
+        naive.availability[pieceSequence[i]]--;
+        return piece;
+    }
+
+    @Benchmark
+    public int bitfield() {
+        int i = next++ & SEQUENCE_LENGTH - 1;
+        var bits = peerPieces[peerSequence[i]];
+        rarestFirst.peerHas(bits);
+        rarestFirst.peerLost(bits);
+        return bits.size();
+    }
+
+    private int pickAndUpdate(PiecePicker picker) {
+        int i = next++ & SEQUENCE_LENGTH - 1;
+        int piece = picker.pick(peerPieces[peerSequence[i]]);
+        if (piece >= 0) {
+            picker.remove(piece);
+            picker.add(piece);
+        }
+        picker.peerHas(pieceSequence[i]);
+        picker.peerLost(pieceSequence[i]);
+        return piece;
+    }
+
+    /**
+     * Rarest first by walking all pieces of the peer.
+     */
+    private static class NaivePicker {
+
+        final int[] availability;
+        final BitSet wanted = new BitSet();
+
+        NaivePicker(int pieceCount) {
+            availability = new int[pieceCount];
+            wanted.set(0, pieceCount);
+        }
+
+        void peerHas(BitSet pieces) {
+            pieces.stream().forEach(piece -> availability[piece]++);
+        }
+
+        int pick(BitSet peerPieces) {
+            int best = -1;
+            for (int piece = peerPieces.nextSetBit(0); piece >= 0; piece = peerPieces.nextSetBit(piece + 1)) {
+                if (wanted.get(piece) && (best < 0 || availability[piece] < availability[best])) {
+                    best = piece;
+                }
+            }
+            return best;
+        }
+    }
+}
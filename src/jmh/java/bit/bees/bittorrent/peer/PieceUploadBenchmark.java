@@ -0,0 +1,197 @@
+package bit.bees.bittorrent.peer;
+
+import bit.bees.bittorrent.bencode.ByteString;
+import bit.bees.bittorrent.bencode.ByteThroughput;
+import bit.bees.bittorrent.metainfo.FileEntry;
+import bit.bees.bittorrent.metainfo.InfoDictionary;
+import bit.bees.bittorrent.metainfo.PieceHashes;
+import bit.bees.bittorrent.storage.PieceFiles;
+import bit.bees.bittorrent.storage.PieceLayout;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Seeds a file of {@code megabytes} from the page cache to a downloader on loopback, which asks for
+ * one megabyte of blocks at a time and drops what it receives. The secondary {@code megabytes} result
+ * is the upload bandwidth in MB/s; the CPU time the process spent per gigabyte sent, both sides
+ * together, is printed after every iteration.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class PieceUploadBenchmark {
+
+    private static final int PIECE_LENGTH = 1 << 20;
+    private static final int BLOCK_LENGTH = 16 * 1024;
+    private static final int BLOCKS = PIECE_LENGTH / BLOCK_LENGTH;
+    private static final ByteString INFO_HASH = ByteString.copyOf("0123456789abcdefghij");
+
+    @Param({"256"})
+    private int megabytes;
+
+    @Param({"selector", "virtual-threads"})
+    private String engine;
+
+    /** Whether blocks go out with transferTo or are copied through buffers. */
+    @Param({"true", "false"})
+    private boolean zeroCopy;
+
+    private Path directory;
+    private PieceFiles files;
+    private PeerEngine peerEngine;
+    private SocketChannel client;
+    private final ByteBuffer requests = ByteBuffer.allocateDirect(BLOCKS * MessageEncoder.REQUEST_LENGTH);
+    private final ByteBuffer input = ByteBuffer.allocateDirect(BLOCKS * (MessageEncoder.PIECE_HEADER_LENGTH + BLOCK_LENGTH));
+    private int piece;
+    private long cpuTime;
+    private long bytesSent;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("upload");
+        long length = (long) megabytes << 20;
+        try (var channel = FileChannel.open(directory.resolve("payload"), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            var chunk = ByteBuffer.allocate(PIECE_LENGTH);
+            var random = new Random(42);
+            for (long written = 0; written < length; written += PIECE_LENGTH) {
+                random.nextBytes(chunk.clear().array());
+                while (chunk.hasRemaining()) {
+                    channel.write(chunk);
+                }
+            }
+        }
+        var pieces = PieceHashes.of(ByteString.of(new byte[megabytes * PieceHashes.HASH_LENGTH]));
+        var info = new InfoDictionary("payload", PIECE_LENGTH, pieces, List.of(new FileEntry(List.of("payload"), length)), true);
+        files = new PieceFiles(PieceLayout.of(info, directory));
+
+        var bufferPool = new BufferPool(PeerConfiguration.DEFAULT_BUFFER_SIZE, 64);
+        var decoder = new MessageDecoder(PeerConfiguration.DEFAULT_MAX_MESSAGE_LENGTH);
+        peerEngine = switch (engine) {
+            case "selector" -> new SelectorPeerEngine(bufferPool, decoder, 16);
+            case "virtual-threads" -> new VirtualThreadPeerEngine(bufferPool, decoder, 16);
+            default -> throw new IllegalArgumentException(engine);
+        };
+        var uploader = new PieceUploader(zeroCopy, PieceUploader.DEFAULT_MAX_BLOCK_LENGTH, PieceUploader.DEFAULT_MAX_QUEUED_BYTES);
+        var address = peerEngine.listen(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), handshake -> new Seeder(uploader, files));
+
+        client = SocketChannel.open(address);
+        var handshake = ByteBuffer.allocate(Handshake.LENGTH);
+        Handshake.of(INFO_HASH, Handshake.newPeerId()).writeTo(handshake);
+        client.write(handshake.flip());
+        readFully(handshake.clear());
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        client.close();
+        peerEngine.close();
+        files.close();
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void startCpuClock() {
+        cpuTime = processCpuTime();
+        bytesSent = 0;
+    }
+
+    @TearDown(Level.Iteration)
+    public void printCpuTime() {
+        double gigabytes = bytesSent / 1e9;
+        System.out.printf("%n%.0f ms CPU per GB uploaded%n", (processCpuTime() - cpuTime) / 1e6 / gigabytes);
+    }
+
+    /**
+     * Downloads the next piece, block by block.
+     */
+    @Benchmark
+    public int upload(ByteThroughput throughput) throws IOException {
+        requests.clear();
+        for (int block = 0; block < BLOCKS; block++) {
+            MessageEncoder.writeRequest(requests, piece, block * BLOCK_LENGTH, BLOCK_LENGTH);
+        }
+        requests.flip();
+        while (requests.hasRemaining()) {
+            client.write(requests);
+        }
+        readFully(input.clear());
+        piece = (piece + 1) % megabytes;
+        bytesSent += PIECE_LENGTH;
+        throughput.add(PIECE_LENGTH);
+        return input.get(MessageEncoder.PIECE_HEADER_LENGTH);
+    }
+
+    private void readFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (client.read(buffer) < 0) {
+                throw new EOFException();
+            }
+        }
+    }
+
+    private static long processCpuTime() {
+        return ((com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean()).getProcessCpuTime();
+    }
+
+    private static class Seeder implements PeerHandler {
+
+        private final PieceUploader uploader;
+        private final PieceFiles files;
+        private PeerConnection connection;
+
+        Seeder(PieceUploader uploader, PieceFiles files) {
+            this.uploader = uploader;
+            this.files = files;
+        }
+
+        @Override
+        public void onConnected(PeerConnection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        public void onRequest(int piece, int begin, int length) {
+            try {
+                uploader.upload(connection, files, piece, begin, length);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package bit.bees.bittorrent.storage;
+
+import bit.bees.bittorrent.bencode.ByteString;
+import bit.bees.bittorrent.bencode.ByteThroughput;
+import bit.bees.bittorrent.metainfo.FileEntry;
+import bit.bees.bittorrent.metainfo.InfoDictionary;
+import bit.bees.bittorrent.metainfo.PieceHashes;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Verifies a multi-gigabyte payload of 256 MB files, by default 4 GB below {@code java.io.tmpdir}
+ * (set {@code -Dverify.payload.dir} to benchmark another disk). The secondary {@code megabytes}
+ * result is the verification bandwidth in MB/s.
+ * <p>
+ * The payload is written once per trial and is then usually held in the page cache, which measures
+ * hashing across cores. Drop the caches between iterations, e.g. with
+ * {@code echo 3 > /proc/sys/vm/drop_caches}, or pick a payload larger than memory to measure the disk.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 1, time = 10)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+public class PieceVerifierBenchmark {
+
+    private static final int FILE_SIZE = 256 << 20;
+    private static final int CHUNK_SIZE = 4 << 20;
+
+    @Param({"4096"})
+    private int megabytes;
+
+    @Param({"1048576"})
+    private int pieceLength;
+
+    /** Worker threads, 0 for one per core. */
+    @Param({"1", "0"})
+    private int parallelism;
+
+    private Path directory;
+    private InfoDictionary info;
+    private PieceVerifier verifier;
+
+    @Setup
+    public void setUp() throws IOException, NoSuchAlgorithmException {
+        directory = Files.createTempDirectory(Path.of(System.getProperty("verify.payload.dir", System.getProperty("java.io.tmpdir"))), "verify");
+        Files.createDirectories(directory.resolve("payload"));
+
+        long totalLength = (long) megabytes << 20;
+        int pieceCount = (int) ((totalLength + pieceLength - 1) / pieceLength);
+        byte[] hashes = new byte[pieceCount * PieceHashes.HASH_LENGTH];
+        var digest = MessageDigest.getInstance("SHA-1");
+        var chunk = ByteBuffer.allocateDirect(CHUNK_SIZE);
+        var random = new Random(42);
+        var files = new ArrayList<FileEntry>();
+
+        long written = 0;
+        int piece = 0;
+        int pieceFill = 0;
+        while (written < totalLength) {
+            var name = "file" + files.size();
+            long fileLength = Math.min(FILE_SIZE, totalLength - written);
+            try (var channel = FileChannel.open(directory.resolve("payload").resolve(name),
+                    StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                for (long fileWritten = 0; fileWritten < fileLength; ) {
+                    chunk.clear().limit((int) Math.min(CHUNK_SIZE, fileLength - fileWritten));
+                    while (chunk.hasRemaining()) {
+                        chunk.putLong(chunk.position(), random.nextLong());
+                        chunk.position(Math.min(chunk.limit(), chunk.position() + 4096));
+                    }
+                    chunk.flip();
+                    // Hash the chunk piece by piece before writing it out
+                    while (chunk.hasRemaining()) {
+                        int length = Math.min(chunk.remaining(), pieceLength - pieceFill);
+                        digest.update(chunk.slice(chunk.position(), length));
+                        chunk.position(chunk.position() + length);
+                        pieceFill += length;
+                        if (pieceFill == pieceLength) {
+                            System.arraycopy(digest.digest(), 0, hashes, piece++ * PieceHashes.HASH_LENGTH, PieceHashes.HASH_LENGTH);
+                            pieceFill = 0;
+                        }
+                    }
+                    chunk.flip();
+                    while (chunk.hasRemaining()) {
+                        channel.write(chunk);
+                    }
+                    fileWritten += chunk.limit();
+                }
+            }
+            files.add(new FileEntry(List.of(name), fileLength));
+            written += fileLength;
+        }
+        if (pieceFill > 0) {
+            System.arraycopy(digest.digest(), 0, hashes, piece * PieceHashes.HASH_LENGTH, PieceHashes.HASH_LENGTH);
+        }
+
+        info = new InfoDictionary("payload", pieceLength, PieceHashes.of(ByteString.of(hashes)), files, false);
+        verifier = new PieceVerifier(parallelism);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    @Benchmark
+    public VerificationResult verify(ByteThroughput throughput) throws IOException {
+        var result = verifier.verify(info, directory);
+        if (!result.isComplete()) {
+            throw new IllegalStateException("Only %d of %d pieces verified".formatted(result.validCount(), result.pieceCount()));
+        }
+        throughput.add((long) megabytes << 20);
+        return result;
+    }
+}
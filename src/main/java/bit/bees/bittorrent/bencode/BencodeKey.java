@@ -0,0 +1,17 @@
+package bit.bees.bittorrent.bencode;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Dictionary key a record component is bound to, for keys that are not valid Java names such as
+ * {@code "min interval"} or {@code "piece length"}. Components without it are bound to their name.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.RECORD_COMPONENT)
+public @interface BencodeKey {
+
+    String value();
+}
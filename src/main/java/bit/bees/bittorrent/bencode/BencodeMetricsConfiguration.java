@@ -0,0 +1,50 @@
+package bit.bees.bittorrent.bencode;
+
+import bit.bees.bittorrent.bencode.parsers.KeyCache;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Decoder metrics are off unless {@code bencode.metrics.enabled=true} and a {@link MeterRegistry} is
+ * around, in which case they are registered with it like any other meter. The application has no web
+ * endpoint to read them from; a registry that publishes them has to be configured for that.
+ */
+@Configuration(proxyBeanMethods = false)
+class BencodeMetricsConfiguration {
+
+    @Bean
+    DecoderMetrics decoderMetrics(ObjectProvider<MeterRegistry> registry,
+                                  @Value("${bencode.metrics.enabled:false}") boolean enabled) {
+        MeterRegistry meterRegistry = enabled ? registry.getIfAvailable() : null;
+        return meterRegistry == null ? DecoderMetrics.NOOP : new MicrometerDecoderMetrics(meterRegistry);
+    }
+
+    /**
+     * Key cache lookups as {@code bencode.decode.key.cache} counters tagged with the result, plus the
+     * hit ratio as a gauge.
+     */
+    @Bean
+    MeterBinder keyCacheMetrics(KeyCache keyCache, @Value("${bencode.metrics.enabled:false}") boolean enabled) {
+        return registry -> {
+            if (!enabled) {
+                return;
+            }
+            FunctionCounter.builder("bencode.decode.key.cache", keyCache, KeyCache::hits)
+                    .tag("result", "hit")
+                    .description("Dictionary keys resolved from the key cache")
+                    .register(registry);
+            FunctionCounter.builder("bencode.decode.key.cache", keyCache, KeyCache::misses)
+                    .tag("result", "miss")
+                    .description("Dictionary keys decoded because the key cache did not hold them")
+                    .register(registry);
+            Gauge.builder("bencode.decode.key.cache.hit.ratio", keyCache, KeyCache::hitRatio)
+                    .register(registry);
+        };
+    }
+}
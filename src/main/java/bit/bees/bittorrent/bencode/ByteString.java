@@ -0,0 +1,180 @@
+package bit.bees.bittorrent.bencode;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Immutable bencode byte string.
+ * <p>
+ * A byte string is a view over a range of some buffer, usually the buffer it was decoded from, so
+ * decoding never copies string content. Text is only produced when asked for: {@link #toString()}
+ * decodes the bytes as UTF-8 once and caches the result. Equality, hashing and ordering are defined
+ * on the raw bytes, ordering being unsigned byte-wise as bencode dictionary keys require.
+ */
+public final class ByteString implements Comparable<ByteString> {
+
+    public static final ByteString EMPTY = new ByteString(ByteBuffer.allocate(0), 0, 0);
+
+    private final ByteBuffer buffer;
+    private final int offset;
+    private final int length;
+
+    private String text;
+    private int hash;
+
+    private ByteString(ByteBuffer buffer, int offset, int length) {
+        this.buffer = buffer;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * Byte string backed by the given array. The array is not copied and must not be modified afterwards.
+     */
+    public static ByteString of(byte[] bytes) {
+        return of(bytes, 0, bytes.length);
+    }
+
+    public static ByteString of(byte[] bytes, int offset, int length) {
+        return view(ByteBuffer.wrap(bytes), offset, length);
+    }
+
+    /**
+     * Byte string viewing {@code length} bytes of the buffer starting at the absolute index {@code offset}.
+     * The buffer's position and limit are irrelevant and never changed.
+     */
+    public static ByteString view(ByteBuffer buffer, int offset, int length) {
+        if (offset < 0 || length < 0 || offset > buffer.capacity() - length) {
+            throw new IndexOutOfBoundsException("Range [%d, %d) is out of bounds for capacity %d"
+                    .formatted(offset, offset + length, buffer.capacity()));
+        }
+        return new ByteString(buffer, offset, length);
+    }
+
+    public static ByteString copyOf(String text) {
+        var byteString = of(text.getBytes(StandardCharsets.UTF_8));
+        byteString.text = text;
+        return byteString;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public boolean isEmpty() {
+        return length == 0;
+    }
+
+    public byte byteAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("Index %d is out of bounds for length %d".formatted(index, length));
+        }
+        return buffer.get(offset + index);
+    }
+
+    /**
+     * View of the bytes in {@code [from, to)}, sharing this string's buffer.
+     */
+    public ByteString substring(int from, int to) {
+        if (from < 0 || to > length || from > to) {
+            throw new IndexOutOfBoundsException("Range [%d, %d) is out of bounds for length %d".formatted(from, to, length));
+        }
+        return new ByteString(buffer, offset + from, to - from);
+    }
+
+    public byte[] toByteArray() {
+        byte[] bytes = new byte[length];
+        buffer.get(offset, bytes);
+        return bytes;
+    }
+
+    /**
+     * Read-only buffer positioned at the first byte of this string and limited after its last byte.
+     */
+    public ByteBuffer asReadOnlyBuffer() {
+        return buffer.slice(offset, length).asReadOnlyBuffer();
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        if (buffer.hasArray()) {
+            out.write(buffer.array(), buffer.arrayOffset() + offset, length);
+        } else {
+            out.write(toByteArray());
+        }
+    }
+
+    public String toString(Charset charset) {
+        if (buffer.hasArray()) {
+            return new String(buffer.array(), buffer.arrayOffset() + offset, length, charset);
+        }
+        return new String(toByteArray(), charset);
+    }
+
+    /**
+     * The bytes decoded as UTF-8, malformed sequences being replaced.
+     */
+    @Override
+    public String toString() {
+        String result = text;
+        if (result == null) {
+            result = toString(StandardCharsets.UTF_8);
+            text = result;
+        }
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof ByteString that) || length != that.length) {
+            return false;
+        }
+        if (buffer.hasArray() && that.buffer.hasArray()) {
+            int from = buffer.arrayOffset() + offset;
+            int thatFrom = that.buffer.arrayOffset() + that.offset;
+            return Arrays.equals(buffer.array(), from, from + length, that.buffer.array(), thatFrom, thatFrom + length);
+        }
+        for (int i = 0; i < length; i++) {
+            if (buffer.get(offset + i) != that.buffer.get(that.offset + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = hash;
+        if (result == 0 && length > 0) {
+            result = 1;
+            for (int i = offset; i < offset + length; i++) {
+                result = 31 * result + buffer.get(i);
+            }
+            hash = result;
+        }
+        return result;
+    }
+
+    @Override
+    public int compareTo(ByteString other) {
+        if (buffer.hasArray() && other.buffer.hasArray()) {
+            int from = buffer.arrayOffset() + offset;
+            int otherFrom = other.buffer.arrayOffset() + other.offset;
+            return Arrays.compareUnsigned(buffer.array(), from, from + length, other.buffer.array(), otherFrom, otherFrom + other.length);
+        }
+        int commonLength = Math.min(length, other.length);
+        for (int i = 0; i < commonLength; i++) {
+            int result = Byte.compareUnsigned(buffer.get(offset + i), other.buffer.get(other.offset + i));
+            if (result != 0) {
+                return result;
+            }
+        }
+        return Integer.compare(length, other.length);
+    }
+}
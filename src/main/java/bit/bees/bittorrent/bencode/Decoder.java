@@ -1,10 +1,72 @@
 package bit.bees.bittorrent.bencode;
 
+import bit.bees.bittorrent.bencode.parsers.BencodeCursor;
+import bit.bees.bittorrent.bencode.parsers.ParseResult;
+import bit.bees.bittorrent.bencode.parsers.ValueParser;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Entry point for decoding bencoded bytes. The whole input is walked once with a single
+ * {@link BencodeCursor} shared by all parsers, so nested values are never copied before parsing.
+ * Byte strings are returned as {@link ByteString} views of the input. Decoding bytes or a buffer
+ * {@linkplain BencodeCursor#borrow(ByteBuffer) borrows} the thread's cursor, so apart from the values
+ * only the returned {@link ParseResult} is allocated.
+ */
+@Component
 public class Decoder {
 
-    public String decode(String encodedData) {
+    private final ValueParser valueParser;
+    private final DecoderMetrics metrics;
+
+    public Decoder(ValueParser valueParser, DecoderMetrics metrics) {
+        this.valueParser = valueParser;
+        this.metrics = metrics;
+    }
+
+    public ParseResult<Object> decode(byte[] encodedData) {
+        return decode(ByteBuffer.wrap(encodedData));
+    }
+
+    public ParseResult<Object> decode(ByteBuffer encodedData) {
+        var cursor = BencodeCursor.borrow(encodedData);
+        try {
+            return decode(cursor);
+        } finally {
+            cursor.release();
+        }
+    }
+
+    /**
+     * Decodes the value at the cursor position. On success the parsed length is the number of bytes
+     * the value occupies; anything following it is left unread.
+     */
+    public ParseResult<Object> decode(BencodeCursor cursor) {
+        if (!metrics.isEnabled()) {
+            return read(cursor);
+        }
+
+        cursor.clearTokenCounts();
+        long start = System.nanoTime();
+        var result = read(cursor);
+        long elapsed = System.nanoTime() - start;
+        if (result.status() == ParseResult.Status.SUCCESS) {
+            metrics.recordSuccess(cursor.tokenCounts(), result.parsedLength(), elapsed);
+        } else {
+            metrics.recordFailure(result.error(), elapsed);
+        }
+        return result;
+    }
 
-        return encodedData;
+    private ParseResult<Object> read(BencodeCursor cursor) {
+        int startPosition = cursor.position();
+        try {
+            Object parsedData = valueParser.readValue(cursor);
+            return ParseResult.success(null, parsedData, cursor.position() - startPosition);
+        } catch (BencodeException e) {
+            return ParseResult.failure(null, e);
+        }
     }
 
 }
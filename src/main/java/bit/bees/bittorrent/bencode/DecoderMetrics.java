@@ -0,0 +1,37 @@
+package bit.bees.bittorrent.bencode;
+
+import bit.bees.bittorrent.bencode.parsers.TokenCounts;
+
+/**
+ * Receives the outcome of every {@link Decoder} call. The {@link #NOOP} instance, used unless metrics
+ * are enabled, makes the decoder skip measuring altogether.
+ */
+public interface DecoderMetrics {
+
+    DecoderMetrics NOOP = new DecoderMetrics() {
+        @Override
+        public boolean isEnabled() {
+            return false;
+        }
+
+        @Override
+        public void recordSuccess(TokenCounts tokens, int decodedBytes, long elapsedNanos) {
+        }
+
+        @Override
+        public void recordFailure(Throwable error, long elapsedNanos) {
+        }
+    };
+
+    /**
+     * Whether decodes should be timed and reported at all.
+     */
+    boolean isEnabled();
+
+    /**
+     * @param tokens what the decoded value consisted of, as counted while it was read
+     */
+    void recordSuccess(TokenCounts tokens, int decodedBytes, long elapsedNanos);
+
+    void recordFailure(Throwable error, long elapsedNanos);
+}
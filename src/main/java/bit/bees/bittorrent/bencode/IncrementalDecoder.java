@@ -0,0 +1,208 @@
+package bit.bees.bittorrent.bencode;
+
+import bit.bees.bittorrent.bencode.parsers.BencodeEvent;
+import bit.bees.bittorrent.bencode.parsers.BencodeReader;
+import bit.bees.bittorrent.bencode.parsers.ValueParser;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decodes one bencoded value from fragments as they arrive, e.g. off a socket.
+ * <p>
+ * Each {@link #feed(ByteBuffer)} continues where the previous one stopped: the stack of open lists and
+ * dictionaries is kept between calls and bytes already consumed are never scanned again. Truncated
+ * input is reported as {@link Status#NEED_MORE_INPUT}, distinct from {@link Status#MALFORMED} input.
+ * Values are built like {@link Decoder} builds them, except that byte strings are copied, since the
+ * fed buffers may be reused by the caller. Input nesting deeper than the limit, by default
+ * {@value ValueParser#DEFAULT_MAX_DEPTH} levels like for {@link Decoder}, is malformed.
+ * <p>
+ * Instances are stateful and not thread-safe; use one per connection or message.
+ */
+public final class IncrementalDecoder {
+
+    public enum Status {
+        NEED_MORE_INPUT,
+        COMPLETE,
+        MALFORMED
+    }
+
+    private final int maxTokenLength;
+    private final int maxDepth;
+
+    private BencodeReader reader;
+    private final Deque<Container> containers = new ArrayDeque<>();
+    private Status status;
+    private Object value;
+    private BencodeException error;
+
+    public IncrementalDecoder() {
+        this(BencodeReader.DEFAULT_MAX_TOKEN_LENGTH);
+    }
+
+    /**
+     * @param maxTokenLength longest string accepted, in bytes
+     */
+    public IncrementalDecoder(int maxTokenLength) {
+        this(maxTokenLength, ValueParser.DEFAULT_MAX_DEPTH);
+    }
+
+    /**
+     * @param maxTokenLength longest string accepted, in bytes
+     * @param maxDepth       most lists and dictionaries open at once
+     */
+    public IncrementalDecoder(int maxTokenLength, int maxDepth) {
+        this.maxTokenLength = maxTokenLength;
+        this.maxDepth = maxDepth;
+        reset();
+    }
+
+    /**
+     * Consumes the next fragment of input. Once the value is complete, the fragment's position is left
+     * right behind the value's last byte, so whatever follows it can be read from there.
+     */
+    public Status feed(ByteBuffer fragment) {
+        if (status != Status.NEED_MORE_INPUT) {
+            throw new IllegalStateException("Decoder is %s, reset it to decode another value".formatted(status));
+        }
+
+        reader.feed(fragment);
+        try {
+            BencodeEvent event;
+            while ((event = next()) != BencodeEvent.NEED_MORE_INPUT) {
+                if (accept(event)) {
+                    fragment.position(fragment.limit() - reader.buffered());
+                    status = Status.COMPLETE;
+                    return status;
+                }
+            }
+        } catch (BencodeException e) {
+            error = e;
+            status = Status.MALFORMED;
+        }
+        return status;
+    }
+
+    public Status status() {
+        return status;
+    }
+
+    /**
+     * The decoded value, once the status is {@link Status#COMPLETE}.
+     */
+    public Object value() {
+        if (status != Status.COMPLETE) {
+            throw new IllegalStateException("Decoder is %s".formatted(status));
+        }
+        return value;
+    }
+
+    /**
+     * Why the input was rejected, once the status is {@link Status#MALFORMED}.
+     */
+    public BencodeException error() {
+        return error;
+    }
+
+    /**
+     * Number of bytes consumed since the decoder was created or reset.
+     */
+    public long consumed() {
+        return reader.offset();
+    }
+
+    /**
+     * Forgets all state, readying the decoder for another value.
+     */
+    public void reset() {
+        reader = BencodeReader.fed(maxTokenLength, maxDepth);
+        containers.clear();
+        status = Status.NEED_MORE_INPUT;
+        value = null;
+        error = null;
+    }
+
+    private BencodeEvent next() {
+        try {
+            return reader.next();
+        } catch (IOException e) {
+            // a fed reader never does any I/O itself
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Applies a token to the open containers.
+     *
+     * @return whether the token completed the top level value
+     */
+    private boolean accept(BencodeEvent event) {
+        return switch (event) {
+            case START_DICT -> open(new Container(new HashMap<>()));
+            case START_LIST -> open(new Container(new ArrayList<>()));
+            case KEY -> setKey(reader.bytes());
+            case BYTES -> add(ByteString.of(reader.bytes().toByteArray()));
+            case INT -> add(reader.number());
+            case END -> add(containers.pop().value);
+            case NEED_MORE_INPUT, END_OF_INPUT -> throw new IllegalStateException("Unexpected " + event);
+        };
+    }
+
+    private boolean open(Container container) {
+        containers.push(container);
+        return false;
+    }
+
+    /**
+     * Checks the order of the key on its raw bytes, as {@code ValueParser} does, since keys that are not
+     * valid UTF-8 may decode to equal strings.
+     */
+    private boolean setKey(ByteString keyBytes) {
+        Container dictionary = containers.element();
+        if (dictionary.keyBytes != null && dictionary.keyBytes.compareTo(keyBytes) > 0) {
+            throw new BencodeException("Keys are not in lexicographic order: last key = '%s', current key = '%s' at offset %d"
+                    .formatted(dictionary.key, keyBytes.toString(StandardCharsets.UTF_8), reader.offset()));
+        }
+        byte[] key = keyBytes.toByteArray();
+        dictionary.keyBytes = ByteString.of(key);
+        dictionary.key = new String(key, StandardCharsets.UTF_8);
+        return false;
+    }
+
+    @SuppressWarnings("unchecked")
+    private boolean add(Object item) {
+        Container parent = containers.peek();
+        if (parent == null) {
+            value = item;
+            return true;
+        }
+        if (parent.value instanceof List<?> list) {
+            ((List<Object>) list).add(item);
+        } else {
+            ((Map<String, Object>) parent.value).put(parent.key, item);
+        }
+        return false;
+    }
+
+    /**
+     * An open list or dictionary, with the key of the value that is being read for a dictionary.
+     */
+    private static final class Container {
+
+        private final Object value;
+        private String key;
+        private ByteString keyBytes;
+
+        private Container(Object value) {
+            this.value = value;
+        }
+    }
+}
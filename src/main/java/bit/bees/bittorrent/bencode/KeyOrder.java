@@ -0,0 +1,56 @@
+package bit.bees.bittorrent.bencode;
+
+import java.util.Comparator;
+
+/**
+ * The order bencode requires for dictionary keys: byte-wise over the raw key bytes, each byte taken
+ * as unsigned. {@code String} keys are ordered as their UTF-8 encoding would be, which is Unicode code
+ * point order, without encoding them.
+ * <p>
+ * This differs from {@link String#compareTo(String)} where characters outside the Basic Multilingual
+ * Plane meet characters from {@code U+E000} up: UTF-16 puts the former first, UTF-8 the latter.
+ */
+public final class KeyOrder {
+
+    /**
+     * Orders {@code String} and {@link ByteString} keys, in any mix.
+     */
+    public static final Comparator<Object> COMPARATOR = KeyOrder::compare;
+
+    private KeyOrder() {
+    }
+
+    public static int compare(Object key1, Object key2) {
+        return switch (key1) {
+            case String string1 when key2 instanceof String string2 -> compare(string1, string2);
+            case ByteString bytes1 when key2 instanceof ByteString bytes2 -> bytes1.compareTo(bytes2);
+            case String string1 when key2 instanceof ByteString bytes2 -> ByteString.copyOf(string1).compareTo(bytes2);
+            case ByteString bytes1 when key2 instanceof String string2 -> bytes1.compareTo(ByteString.copyOf(string2));
+            case null, default -> throw new IllegalArgumentException("Keys must be String or ByteString, not %s and %s".formatted(
+                    key1 == null ? null : key1.getClass().getName(), key2 == null ? null : key2.getClass().getName()));
+        };
+    }
+
+    public static int compare(String key1, String key2) {
+        int commonLength = Math.min(key1.length(), key2.length());
+        for (int i = 0; i < commonLength; i++) {
+            char char1 = key1.charAt(i);
+            char char2 = key2.charAt(i);
+            if (char1 != char2) {
+                return Integer.compare(utf8Rank(char1), utf8Rank(char2));
+            }
+        }
+        return Integer.compare(key1.length(), key2.length());
+    }
+
+    /**
+     * Moves surrogates above {@code U+E000}-{@code U+FFFF}, where the four byte UTF-8 sequences of the
+     * characters they encode sort.
+     */
+    private static int utf8Rank(char c) {
+        if (c < 0xD800) {
+            return c;
+        }
+        return c >= 0xE000 ? c - 0x800 : c + 0x2000;
+    }
+}
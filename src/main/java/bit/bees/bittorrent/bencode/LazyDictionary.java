@@ -0,0 +1,199 @@
+package bit.bees.bittorrent.bencode;
+
+import bit.bees.bittorrent.bencode.parsers.BencodeCursor;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Bencoded dictionary that is read on demand.
+ * <p>
+ * Nothing is decoded up front. A lookup scans the entries only as far as the key it is after, skipping
+ * the values on the way structurally and recording where each key and value starts; later lookups
+ * reuse those offsets. Values are decoded only when they are accessed, nested lists and dictionaries
+ * again as lazy views over the same buffer. Reading a few keys of a large torrent therefore allocates
+ * a handful of small objects, however many files it lists.
+ * <p>
+ * Parts of the input that are skipped are checked for structure only, so malformed content is
+ * reported once it is actually read. Instances are not thread-safe, the offset index being filled
+ * in as the dictionary is read.
+ */
+public final class LazyDictionary {
+
+    private final ByteBuffer source;
+    private final int start;
+
+    /** Per entry: key content offset, key length and value offset. */
+    private int[] entries = new int[3 * 8];
+    private int size;
+    private int scanPosition = -1;
+    private boolean complete;
+
+    LazyDictionary(ByteBuffer source, int start) {
+        this.source = source;
+        this.start = start;
+    }
+
+    public static LazyDictionary of(byte[] data) {
+        return of(ByteBuffer.wrap(data));
+    }
+
+    /**
+     * Lazy view of the dictionary at the buffer's position. The buffer's content must not change while
+     * the view is in use, but its position and limit may.
+     */
+    public static LazyDictionary of(ByteBuffer data) {
+        var source = data.duplicate();
+        return LazyValues.dictionaryAt(source, source.position());
+    }
+
+    public int size() {
+        scanAll();
+        return size;
+    }
+
+    public boolean containsKey(String key) {
+        return indexOf(key) >= 0;
+    }
+
+    /**
+     * Keys in the order they appear in the input.
+     */
+    public List<ByteString> keys() {
+        scanAll();
+        var keys = new ArrayList<ByteString>(size);
+        for (int i = 0; i < size; i++) {
+            keys.add(ByteString.view(source, entries[3 * i], entries[3 * i + 1]));
+        }
+        return keys;
+    }
+
+    /**
+     * Value of the key, or {@code null} if there is none. Strings come as {@link ByteString} views,
+     * integers as {@code Long} or, if too large, {@code BigInteger}, and lists and dictionaries as
+     * {@link LazyList} and {@link LazyDictionary}.
+     */
+    public Object get(String key) {
+        int index = indexOf(key);
+        return index < 0 ? null : LazyValues.valueAt(source, entries[3 * index + 2]);
+    }
+
+    public ByteString getBytes(String key) {
+        return LazyValues.bytesAt(source, valueOffsetOf(key));
+    }
+
+    /**
+     * String value decoded as UTF-8.
+     */
+    public String getString(String key) {
+        return getBytes(key).toString();
+    }
+
+    public long getLong(String key) {
+        return LazyValues.longAt(source, valueOffsetOf(key));
+    }
+
+    public LazyList getList(String key) {
+        return LazyValues.listAt(source, valueOffsetOf(key));
+    }
+
+    public LazyDictionary getDictionary(String key) {
+        return LazyValues.dictionaryAt(source, valueOffsetOf(key));
+    }
+
+    /**
+     * Exact encoded bytes of the value as a view of the input, or {@code null} if there is no such key.
+     * This is what the info hash of a torrent is computed over.
+     */
+    public ByteString getRaw(String key) {
+        int index = indexOf(key);
+        if (index < 0) {
+            return null;
+        }
+        return LazyValues.cursorAt(source, entries[3 * index + 2]).readRaw();
+    }
+
+    private int valueOffsetOf(String key) {
+        int index = indexOf(key);
+        if (index < 0) {
+            throw new BencodeException("Missing key '%s'".formatted(key));
+        }
+        return entries[3 * index + 2];
+    }
+
+    private int indexOf(String key) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < size; i++) {
+            if (keyEquals(i, keyBytes)) {
+                return i;
+            }
+        }
+        while (scanNext()) {
+            if (keyEquals(size - 1, keyBytes)) {
+                return size - 1;
+            }
+        }
+        return -1;
+    }
+
+    private boolean keyEquals(int index, byte[] key) {
+        int offset = entries[3 * index];
+        if (entries[3 * index + 1] != key.length) {
+            return false;
+        }
+        for (int i = 0; i < key.length; i++) {
+            if (source.get(offset + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void scanAll() {
+        while (scanNext()) {
+            // keep recording entries
+        }
+    }
+
+    /**
+     * Records the offsets of the next entry.
+     *
+     * @return whether there was another entry, {@code false} once the end of the dictionary is reached
+     */
+    private boolean scanNext() {
+        if (complete) {
+            return false;
+        }
+
+        BencodeCursor cursor;
+        if (scanPosition < 0) {
+            cursor = LazyValues.cursorAt(source, start);
+            cursor.expect('d');
+        } else {
+            cursor = LazyValues.cursorAt(source, scanPosition);
+        }
+
+        if (cursor.peekIs('e')) {
+            complete = true;
+            scanPosition = cursor.position();
+            return false;
+        }
+
+        ByteString key = LazyValues.readKey(cursor);
+        int valueOffset = cursor.position();
+        cursor.skipValue();
+
+        if (3 * size == entries.length) {
+            entries = Arrays.copyOf(entries, 2 * entries.length);
+        }
+        entries[3 * size] = valueOffset - key.length();
+        entries[3 * size + 1] = key.length();
+        entries[3 * size + 2] = valueOffset;
+        size++;
+        scanPosition = cursor.position();
+        return true;
+    }
+}
@@ -0,0 +1,117 @@
+package bit.bees.bittorrent.bencode;
+
+import bit.bees.bittorrent.bencode.parsers.BencodeCursor;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Bencoded list that is read on demand. Only the offsets of its items are recorded, by skipping over
+ * them structurally the first time an item or the size is asked for; an item itself is decoded only
+ * when it is accessed, nested lists and dictionaries again as lazy views.
+ * <p>
+ * Instances are not thread-safe, the offset index being filled in as the list is read.
+ */
+public final class LazyList {
+
+    private final ByteBuffer source;
+    private final int start;
+
+    private int[] offsets = new int[8];
+    private int size;
+    private int scanPosition = -1;
+    private boolean complete;
+
+    LazyList(ByteBuffer source, int start) {
+        this.source = source;
+        this.start = start;
+    }
+
+    public static LazyList of(byte[] data) {
+        return of(ByteBuffer.wrap(data));
+    }
+
+    /**
+     * Lazy view of the list at the buffer's position. The buffer's content must not change while the
+     * view is in use, but its position and limit may.
+     */
+    public static LazyList of(ByteBuffer data) {
+        var source = data.duplicate();
+        return LazyValues.listAt(source, source.position());
+    }
+
+    public int size() {
+        scanTo(Integer.MAX_VALUE);
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return !scanTo(0);
+    }
+
+    /**
+     * Item at the given index, decoded as described in {@link LazyDictionary#get(String)}.
+     */
+    public Object get(int index) {
+        return LazyValues.valueAt(source, offsetOf(index));
+    }
+
+    public ByteString getBytes(int index) {
+        return LazyValues.bytesAt(source, offsetOf(index));
+    }
+
+    public String getString(int index) {
+        return getBytes(index).toString();
+    }
+
+    public long getLong(int index) {
+        return LazyValues.longAt(source, offsetOf(index));
+    }
+
+    public LazyList getList(int index) {
+        return LazyValues.listAt(source, offsetOf(index));
+    }
+
+    public LazyDictionary getDictionary(int index) {
+        return LazyValues.dictionaryAt(source, offsetOf(index));
+    }
+
+    private int offsetOf(int index) {
+        if (index < 0 || !scanTo(index)) {
+            throw new IndexOutOfBoundsException("Index %d is out of bounds for length %d".formatted(index, size()));
+        }
+        return offsets[index];
+    }
+
+    /**
+     * Records item offsets until the given index is known or the list ends.
+     *
+     * @return whether the list has an item at the given index
+     */
+    private boolean scanTo(int index) {
+        if (index < size || complete) {
+            return index < size;
+        }
+
+        BencodeCursor cursor;
+        if (scanPosition < 0) {
+            cursor = LazyValues.cursorAt(source, start);
+            cursor.expect('l');
+        } else {
+            cursor = LazyValues.cursorAt(source, scanPosition);
+        }
+
+        while (size <= index && !cursor.peekIs('e')) {
+            if (size == offsets.length) {
+                offsets = Arrays.copyOf(offsets, size * 2);
+            }
+            offsets[size++] = cursor.position();
+            cursor.skipValue();
+        }
+        if (cursor.peekIs('e')) {
+            complete = true;
+        }
+        scanPosition = cursor.position();
+        return index < size;
+    }
+}
@@ -0,0 +1,77 @@
+package bit.bees.bittorrent.bencode;
+
+import bit.bees.bittorrent.bencode.parsers.BencodeCursor;
+import bit.bees.bittorrent.bencode.parsers.NumberParser;
+import bit.bees.bittorrent.bencode.parsers.StringParser;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Materialises single values for {@link LazyDictionary} and {@link LazyList}. Every lazy container of
+ * one document shares the same source buffer and addresses values by absolute index into it.
+ */
+final class LazyValues {
+
+    private LazyValues() {
+    }
+
+    static BencodeCursor cursorAt(ByteBuffer source, int position) {
+        var cursor = BencodeCursor.of(source);
+        cursor.position(position);
+        return cursor;
+    }
+
+    /**
+     * Value starting at the given index: a {@link ByteString} view, a {@code Long} (or a
+     * {@code BigInteger} if it does not fit), or a lazy container that has not been scanned yet.
+     */
+    static Object valueAt(ByteBuffer source, int position) {
+        var cursor = cursorAt(source, position);
+        return switch (cursor.peek()) {
+            case 'd' -> new LazyDictionary(source, position);
+            case 'l' -> new LazyList(source, position);
+            case 'i' -> NumberParser.readNumber(cursor);
+            default -> StringParser.readBytes(cursor);
+        };
+    }
+
+    static ByteString bytesAt(ByteBuffer source, int position) {
+        var cursor = cursorAt(source, position);
+        expectPrefix(cursor, cursor.peek() >= '0' && cursor.peek() <= '9', "string");
+        return StringParser.readBytes(cursor);
+    }
+
+    static long longAt(ByteBuffer source, int position) {
+        var cursor = cursorAt(source, position);
+        expectPrefix(cursor, cursor.peekIs('i'), "integer");
+        return NumberParser.readLong(cursor);
+    }
+
+    static LazyList listAt(ByteBuffer source, int position) {
+        var cursor = cursorAt(source, position);
+        expectPrefix(cursor, cursor.peekIs('l'), "list");
+        return new LazyList(source, position);
+    }
+
+    static LazyDictionary dictionaryAt(ByteBuffer source, int position) {
+        var cursor = cursorAt(source, position);
+        expectPrefix(cursor, cursor.peekIs('d'), "dictionary");
+        return new LazyDictionary(source, position);
+    }
+
+    /**
+     * Reads a dictionary key at the cursor, leaving the cursor at the value.
+     */
+    static ByteString readKey(BencodeCursor cursor) {
+        if (cursor.peek() < '0' || cursor.peek() > '9') {
+            throw new BencodeException("Dictionary key must be a string at offset %d".formatted(cursor.consumed()));
+        }
+        return StringParser.readBytes(cursor);
+    }
+
+    private static void expectPrefix(BencodeCursor cursor, boolean matches, String type) {
+        if (!matches) {
+            throw new BencodeException("Expected %s at offset %d".formatted(type, cursor.consumed()));
+        }
+    }
+}
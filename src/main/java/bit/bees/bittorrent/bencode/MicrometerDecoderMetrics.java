@@ -0,0 +1,116 @@
+package bit.bees.bittorrent.bencode;
+
+import bit.bees.bittorrent.bencode.parsers.TokenCounts;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes decoder throughput to Micrometer:
+ * <ul>
+ *     <li>{@code bencode.decode} timer with a latency histogram, tagged {@code outcome=success|failure}</li>
+ *     <li>{@code bencode.decode.bytes} counter of decoded bytes</li>
+ *     <li>{@code bencode.decode.tokens} counter tagged {@code type=string|integer|list|dictionary},
+ *     dictionary keys counting as strings</li>
+ *     <li>{@code bencode.decode.depth} summary of the nesting depth per document</li>
+ *     <li>{@code bencode.decode.failures} counter tagged with the {@code reason} of the failure</li>
+ * </ul>
+ * Token counts and depth are counted on the cursor by the {@code ValueParser} while it reads, so the
+ * decoded value is not walked again.
+ */
+class MicrometerDecoderMetrics implements DecoderMetrics {
+
+    private final MeterRegistry registry;
+    private final Timer successTimer;
+    private final Timer failureTimer;
+    private final Counter decodedBytes;
+    private final Counter strings;
+    private final Counter integers;
+    private final Counter lists;
+    private final Counter dictionaries;
+    private final DistributionSummary depth;
+
+    MicrometerDecoderMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        this.successTimer = timer(registry, "success");
+        this.failureTimer = timer(registry, "failure");
+        this.decodedBytes = Counter.builder("bencode.decode.bytes")
+                .baseUnit("bytes")
+                .description("Bytes of successfully decoded bencode")
+                .register(registry);
+        this.strings = tokens(registry, "string");
+        this.integers = tokens(registry, "integer");
+        this.lists = tokens(registry, "list");
+        this.dictionaries = tokens(registry, "dictionary");
+        this.depth = DistributionSummary.builder("bencode.decode.depth")
+                .description("Nesting depth of decoded documents")
+                .register(registry);
+    }
+
+    private static Timer timer(MeterRegistry registry, String outcome) {
+        return Timer.builder("bencode.decode")
+                .description("Time to decode one bencoded value")
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    private static Counter tokens(MeterRegistry registry, String type) {
+        return Counter.builder("bencode.decode.tokens")
+                .description("Decoded tokens by type")
+                .tag("type", type)
+                .register(registry);
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return true;
+    }
+
+    @Override
+    public void recordSuccess(TokenCounts tokens, int decodedBytes, long elapsedNanos) {
+        successTimer.record(elapsedNanos, TimeUnit.NANOSECONDS);
+        this.decodedBytes.increment(decodedBytes);
+        depth.record(tokens.depth());
+        strings.increment(tokens.strings());
+        integers.increment(tokens.integers());
+        lists.increment(tokens.lists());
+        dictionaries.increment(tokens.dictionaries());
+    }
+
+    @Override
+    public void recordFailure(Throwable error, long elapsedNanos) {
+        failureTimer.record(elapsedNanos, TimeUnit.NANOSECONDS);
+        registry.counter("bencode.decode.failures", "reason", reason(error)).increment();
+    }
+
+    /**
+     * The fixed leading part of the innermost message, e.g. {@code Integer with leading zero} for
+     * {@code Integer with leading zero at offset 12}. Quoted input, numbers and offsets are cut off to
+     * keep the number of distinct tags small.
+     */
+    static String reason(Throwable error) {
+        Throwable cause = error;
+        while (cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        String message = cause.getMessage() == null ? "" : cause.getMessage();
+
+        int end = message.indexOf(" at offset");
+        if (end < 0) {
+            end = message.length();
+        }
+        for (int i = 0; i < end; i++) {
+            char c = message.charAt(i);
+            if (c == '\'' || c == ':' || Character.isDigit(c)) {
+                end = i;
+                break;
+            }
+        }
+        String reason = message.substring(0, end).strip();
+        return reason.isEmpty() ? cause.getClass().getSimpleName() : reason;
+    }
+}
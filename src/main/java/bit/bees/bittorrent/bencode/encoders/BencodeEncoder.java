@@ -1,6 +1,10 @@
 package bit.bees.bittorrent.bencode.encoders;
 
-import java.util.function.Consumer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 
 interface BencodeEncoder {
 
@@ -8,13 +12,27 @@ interface BencodeEncoder {
 
     <T> String encode(T data);
 
-    default <T> boolean encode(T data, Consumer<String> callback) {
-        if (canEncode(data)) {
-            var encodedData = encode(data);
-            callback.accept(encodedData);
-            return true;
+    /**
+     * Writes the encoded value straight to the stream, without building intermediate strings.
+     */
+    <T> void encode(T data, OutputStream out) throws IOException;
+
+    /**
+     * Exact number of bytes {@link #encode(Object, OutputStream)} writes for the value.
+     */
+    <T> long encodedLength(T data);
+
+    /**
+     * Streams the value into a buffer of exactly the encoded size and decodes it as UTF-8 text.
+     */
+    static <T> String encodeAsText(BencodeEncoder encoder, T data) {
+        var out = new ByteArrayOutputStream(Math.toIntExact(encoder.encodedLength(data)));
+        try {
+            encoder.encode(data, out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
-        return false;
+        return out.toString(StandardCharsets.UTF_8);
     }
 
 }
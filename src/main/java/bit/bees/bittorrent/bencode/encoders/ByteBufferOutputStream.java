@@ -0,0 +1,63 @@
+package bit.bees.bittorrent.bencode.encoders;
+
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Output stream writing into a {@link ByteBuffer}, which is replaced by one twice as large whenever it
+ * runs full. Sized right up front, it never reallocates.
+ */
+public class ByteBufferOutputStream extends OutputStream {
+
+    private ByteBuffer buffer;
+
+    public ByteBufferOutputStream(int initialCapacity) {
+        this(ByteBuffer.allocate(initialCapacity));
+    }
+
+    /**
+     * Writes from the buffer's current position on. Growing keeps the buffer heap or direct as it was.
+     */
+    public ByteBufferOutputStream(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    /**
+     * The buffer written so far, its position right after the last byte written. Call
+     * {@link ByteBuffer#flip()} to read the content.
+     */
+    public ByteBuffer buffer() {
+        return buffer;
+    }
+
+    @Override
+    public void write(int b) {
+        ensureRemaining(1);
+        buffer.put((byte) b);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) {
+        ensureRemaining(length);
+        buffer.put(bytes, offset, length);
+    }
+
+    public void write(ByteBuffer source) {
+        ensureRemaining(source.remaining());
+        buffer.put(source);
+    }
+
+    private void ensureRemaining(int length) {
+        if (buffer.remaining() >= length) {
+            return;
+        }
+        int required = buffer.position() + length;
+        if (required < 0) {
+            throw new OutOfMemoryError("Required buffer size exceeds the maximum capacity");
+        }
+        int newCapacity = Math.max(required, (int) Math.min(Integer.MAX_VALUE - 8, buffer.capacity() * 2L));
+        ByteBuffer grown = buffer.isDirect() ? ByteBuffer.allocateDirect(newCapacity) : ByteBuffer.allocate(newCapacity);
+        grown.put(buffer.flip());
+        buffer = grown;
+    }
+}
@@ -0,0 +1,57 @@
+package bit.bees.bittorrent.bencode.encoders;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Output stream staging small writes in a fixed buffer before handing them to a channel. Writes larger
+ * than the staging buffer go to the channel directly. The channel has to be in blocking mode.
+ */
+class ChannelOutputStream extends OutputStream {
+
+    private final WritableByteChannel channel;
+    private final ByteBuffer staging;
+
+    /**
+     * Stages writes in the given buffer, which has to be empty, i.e. cleared.
+     */
+    ChannelOutputStream(WritableByteChannel channel, ByteBuffer staging) {
+        this.channel = channel;
+        this.staging = staging;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (!staging.hasRemaining()) {
+            flush();
+        }
+        staging.put((byte) b);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        if (length > staging.remaining()) {
+            flush();
+        }
+        if (length > staging.capacity()) {
+            writeFully(ByteBuffer.wrap(bytes, offset, length));
+        } else {
+            staging.put(bytes, offset, length);
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        staging.flip();
+        writeFully(staging);
+        staging.clear();
+    }
+
+    private void writeFully(ByteBuffer source) throws IOException {
+        while (source.hasRemaining()) {
+            channel.write(source);
+        }
+    }
+}
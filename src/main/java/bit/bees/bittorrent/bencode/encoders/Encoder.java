@@ -1,9 +1,82 @@
 package bit.bees.bittorrent.bencode.encoders;
 
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Entry point for encoding values as bencode. Tokens are written straight to the given sink, nothing
+ * is concatenated on the way.
+ */
+@Component
 public class Encoder {
 
-    public String encode(String toBeEncodedData) {
-        return toBeEncodedData;
+    private static final int CHANNEL_STAGING_SIZE = 64 * 1024;
+
+    /**
+     * Staging buffer of each platform thread, taken out while in use so that a nested encode gets a
+     * buffer of its own. Virtual threads are too many and too short-lived to keep one each.
+     */
+    private static final ThreadLocal<ByteBuffer> STAGING = new ThreadLocal<>();
+
+    private final ValueEncoder valueEncoder;
+
+    Encoder(ValueEncoder valueEncoder) {
+        this.valueEncoder = valueEncoder;
+    }
+
+    /**
+     * Writes the encoded value to the stream as it goes. An unsupported value nested somewhere in the
+     * data is only noticed once it is reached, so the stream may hold partial output by then; use
+     * {@link #encode(Object)} when that matters.
+     */
+    public void encode(Object data, OutputStream out) throws IOException {
+        valueEncoder.encode(data, out);
+    }
+
+    /**
+     * Writes the encoded value to a blocking channel, staging small tokens in one fixed-size buffer that
+     * is reused by the calling thread.
+     */
+    public void encode(Object data, WritableByteChannel channel) throws IOException {
+        ByteBuffer staging = STAGING.get();
+        if (staging == null) {
+            staging = ByteBuffer.allocate(CHANNEL_STAGING_SIZE);
+        } else {
+            STAGING.set(null);
+        }
+        try {
+            var out = new ChannelOutputStream(channel, staging.clear());
+            encode(data, out);
+            out.flush();
+        } finally {
+            if (!Thread.currentThread().isVirtual()) {
+                STAGING.set(staging);
+            }
+        }
+    }
+
+    /**
+     * Encodes into a heap buffer of exactly the encoded size, allocated once. The buffer is returned
+     * flipped, ready to be read. Sizing the buffer walks the whole value first, so unsupported values
+     * are rejected before anything is written.
+     */
+    public ByteBuffer encode(Object data) {
+        var out = new ByteBufferOutputStream(Math.toIntExact(valueEncoder.encodedLength(data)));
+        try {
+            valueEncoder.encode(data, out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.buffer().flip();
+    }
+
+    public long encodedLength(Object data) {
+        return valueEncoder.encodedLength(data);
     }
 
 }
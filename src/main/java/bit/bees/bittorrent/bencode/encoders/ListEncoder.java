@@ -3,52 +3,44 @@ package bit.bees.bittorrent.bencode.encoders;
 import bit.bees.bittorrent.bencode.BencodeException;
 import org.springframework.stereotype.Component;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.Collection;
-import java.util.List;
-import java.util.function.Consumer;
 
 @Component
 class ListEncoder implements BencodeEncoder {
 
-    private final Collection<BencodeEncoder> bencodeEncoders;
+    private final ValueEncoder valueEncoder;
 
-    ListEncoder(StringEncoder stringEncoder, NumberEncoder numberEncoder, DictionaryEncoder dictionaryEncoder) {
-        this.bencodeEncoders = List.of(stringEncoder, numberEncoder, dictionaryEncoder);
+    ListEncoder(ValueEncoder valueEncoder) {
+        this.valueEncoder = valueEncoder;
     }
 
     @Override
     public <T> boolean canEncode(T data) {
-        if (data instanceof Collection<?> collectionData) {
-            return collectionData.stream().allMatch(this::isItemCanEncoded);
-        }
-        return false;
+        return data instanceof Collection<?> && valueEncoder.canEncode(data);
     }
 
     @Override
     public <T> String encode(T data) {
-        if (canEncode(data) && data instanceof Collection<?> collectionData) {
-            var result = new StringBuilder();
-            for (Object item : collectionData) {
-                encodeItem(item, result::append);
-            }
-            return "l" + result + "e";
-        }
-        throw new BencodeException("Can not encode '%s' as dictionary.".formatted(data));
+        return BencodeEncoder.encodeAsText(this, data);
     }
 
-    private void encodeItem(Object item, Consumer<String> encodedDataCollector) {
-        for (BencodeEncoder encoder : bencodeEncoders) {
-            encoder.encode(item, encodedDataCollector);
-        }
+    @Override
+    public <T> void encode(T data, OutputStream out) throws IOException {
+        valueEncoder.encodeList(asList(data), out);
     }
 
-    private boolean isItemCanEncoded(Object item) {
-        for (BencodeEncoder encoder : bencodeEncoders) {
-            if (encoder.canEncode(item)) {
-                return true;
-            }
+    @Override
+    public <T> long encodedLength(T data) {
+        return valueEncoder.listLength(asList(data));
+    }
+
+    private static Collection<?> asList(Object data) {
+        if (data instanceof Collection<?> collectionData) {
+            return collectionData;
         }
-        return false;
+        throw new BencodeException("Can not encode '%s' as list.".formatted(data));
     }
 
 }
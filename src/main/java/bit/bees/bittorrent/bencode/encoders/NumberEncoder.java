@@ -3,7 +3,10 @@ package bit.bees.bittorrent.bencode.encoders;
 import bit.bees.bittorrent.bencode.BencodeException;
 import org.springframework.stereotype.Component;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
 
 @Component
 class NumberEncoder implements BencodeEncoder {
@@ -27,4 +30,71 @@ class NumberEncoder implements BencodeEncoder {
         throw new BencodeException("Can not encode '%s' as number.".formatted(data));
     }
 
+    @Override
+    public <T> void encode(T data, OutputStream out) throws IOException {
+        switch (data) {
+            case Integer integerData -> encode(integerData.longValue(), out);
+            case Long longData -> encode(longData.longValue(), out);
+            case BigInteger bigIntegerData when bigIntegerData.bitLength() < Long.SIZE -> encode(bigIntegerData.longValue(), out);
+            case BigInteger bigIntegerData -> {
+                out.write('i');
+                out.write(bigIntegerData.toString().getBytes(StandardCharsets.US_ASCII));
+                out.write('e');
+            }
+            case null, default -> throw new BencodeException("Can not encode '%s' as number.".formatted(data));
+        }
+    }
+
+    @Override
+    public <T> long encodedLength(T data) {
+        return switch (data) {
+            case Integer integerData -> 2 + decimalLength(integerData);
+            case Long longData -> 2 + decimalLength(longData);
+            case BigInteger bigIntegerData when bigIntegerData.bitLength() < Long.SIZE -> 2 + decimalLength(bigIntegerData.longValue());
+            case BigInteger bigIntegerData -> 2 + bigIntegerData.toString().length();
+            case null, default -> throw new BencodeException("Can not encode '%s' as number.".formatted(data));
+        };
+    }
+
+    /**
+     * Writes {@code i<value>e} without boxing the value or building its text.
+     */
+    public void encode(long value, OutputStream out) throws IOException {
+        out.write('i');
+        writeDecimal(value, out);
+        out.write('e');
+    }
+
+    /**
+     * Writes the decimal digits of the value, most significant first. The digits are taken from the
+     * negated value, so {@link Long#MIN_VALUE} needs no special case.
+     */
+    static void writeDecimal(long value, OutputStream out) throws IOException {
+        long negated = value;
+        if (value < 0) {
+            out.write('-');
+        } else {
+            negated = -value;
+        }
+
+        long divisor = 1;
+        while (negated / divisor <= -10) {
+            divisor *= 10;
+        }
+        while (divisor > 0) {
+            out.write('0' - (int) ((negated / divisor) % 10));
+            divisor /= 10;
+        }
+    }
+
+    static int decimalLength(long value) {
+        int length = value < 0 ? 2 : 1;
+        long negated = value < 0 ? value : -value;
+        while (negated <= -10) {
+            negated /= 10;
+            length++;
+        }
+        return length;
+    }
+
 }
@@ -1,24 +1,142 @@
 package bit.bees.bittorrent.bencode.encoders;
 
 import bit.bees.bittorrent.bencode.BencodeException;
+import bit.bees.bittorrent.bencode.ByteString;
 import org.springframework.stereotype.Component;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
 @Component
 class StringEncoder implements BencodeEncoder {
 
+    static final int SCRATCH_LENGTH = 1024;
+
+    /**
+     * Target for the UTF-8 bytes of {@code String}s that fit, kept by each platform thread so encoding
+     * them allocates nothing. Taken out while in use, like {@link Encoder}'s staging buffer. Virtual
+     * threads are too many to keep one each and encode into an array of the exact size instead.
+     */
+    private static final ThreadLocal<byte[]> SCRATCH = new ThreadLocal<>();
+
     @Override
     public <T> boolean canEncode(T data) {
-        return data instanceof String;
+        return data instanceof String || data instanceof ByteString;
     }
 
+    /**
+     * Encodes as text. The length prefix always counts the UTF-8 bytes of the content, so
+     * {@link ByteString}s holding binary data must go through {@link #encode(Object, OutputStream)}.
+     */
     @Override
     public <T> String encode(T data) {
-        if (canEncode(data)) {
-            if (data instanceof String stringData) {
-                return stringData.length() + ":" + stringData;
+        return switch (data) {
+            case String stringData -> utf8Length(stringData) + ":" + stringData;
+            case ByteString byteStringData -> byteStringData.length() + ":" + byteStringData;
+            case null, default -> throw new BencodeException("Can not encode '%s' as string.".formatted(data));
+        };
+    }
+
+    /**
+     * Writes the exact bytes of the string, {@code String}s as UTF-8 and {@link ByteString}s as they are.
+     */
+    @Override
+    public <T> void encode(T data, OutputStream out) throws IOException {
+        switch (data) {
+            case String stringData -> encode(stringData, out);
+            case ByteString byteStringData -> {
+                NumberEncoder.writeDecimal(byteStringData.length(), out);
+                out.write(':');
+                byteStringData.writeTo(out);
+            }
+            case null, default -> throw new BencodeException("Can not encode '%s' as string.".formatted(data));
+        }
+    }
+
+    private static void encode(String data, OutputStream out) throws IOException {
+        int length = utf8Length(data);
+        NumberEncoder.writeDecimal(length, out);
+        out.write(':');
+        if (length > SCRATCH_LENGTH || Thread.currentThread().isVirtual()) {
+            out.write(data.getBytes(StandardCharsets.UTF_8));
+            return;
+        }
+        byte[] scratch = SCRATCH.get();
+        if (scratch == null) {
+            scratch = new byte[SCRATCH_LENGTH];
+        } else {
+            SCRATCH.set(null);
+        }
+        try {
+            writeUtf8(data, scratch);
+            out.write(scratch, 0, length);
+        } finally {
+            SCRATCH.set(scratch);
+        }
+    }
+
+    @Override
+    public <T> long encodedLength(T data) {
+        int length = switch (data) {
+            case String stringData -> utf8Length(stringData);
+            case ByteString byteStringData -> byteStringData.length();
+            case null, default -> throw new BencodeException("Can not encode '%s' as string.".formatted(data));
+        };
+        return NumberEncoder.decimalLength(length) + 1 + length;
+    }
+
+    /**
+     * Puts the bytes {@code data.getBytes(UTF_8)} would produce into the target, which has to hold
+     * {@link #utf8Length(String)} bytes. Unpaired surrogates become {@code '?'}, as they do there.
+     */
+    static void writeUtf8(String data, byte[] target) {
+        int length = data.length();
+        int index = 0;
+        for (int i = 0; i < length; i++) {
+            char c = data.charAt(i);
+            if (c < 0x80) {
+                target[index++] = (byte) c;
+            } else if (c < 0x800) {
+                target[index++] = (byte) (0xc0 | (c >> 6));
+                target[index++] = (byte) (0x80 | (c & 0x3f));
+            } else if (!Character.isSurrogate(c)) {
+                target[index++] = (byte) (0xe0 | (c >> 12));
+                target[index++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                target[index++] = (byte) (0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(data.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, data.charAt(++i));
+                target[index++] = (byte) (0xf0 | (codePoint >> 18));
+                target[index++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+                target[index++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+                target[index++] = (byte) (0x80 | (codePoint & 0x3f));
+            } else {
+                target[index++] = '?';
+            }
+        }
+    }
+
+    /**
+     * Number of bytes {@code data.getBytes(UTF_8)} would produce, computed without encoding.
+     */
+    static int utf8Length(String data) {
+        int length = data.length();
+        int utf8Length = length;
+        for (int i = 0; i < length; i++) {
+            char c = data.charAt(i);
+            if (c < 0x80) {
+                continue;
+            }
+            if (c < 0x800) {
+                utf8Length += 1;
+            } else if (!Character.isSurrogate(c)) {
+                utf8Length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(data.charAt(i + 1))) {
+                utf8Length += 2;
+                i++;
             }
         }
-        throw new BencodeException("Can not encode '%s' as string.".formatted(data));
+        return utf8Length;
     }
 
 }
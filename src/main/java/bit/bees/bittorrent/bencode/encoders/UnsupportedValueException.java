@@ -0,0 +1,52 @@
+package bit.bees.bittorrent.bencode.encoders;
+
+import bit.bees.bittorrent.bencode.BencodeException;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Raised for a value bencode has no representation for. While the exception travels up through the
+ * enclosing lists and dictionaries, each of them adds its index or key, so the message names the exact
+ * place of the offending value, e.g. {@code info.files[3].length}.
+ */
+class UnsupportedValueException extends BencodeException {
+
+    private final transient Object value;
+    private final Deque<String> path = new ArrayDeque<>();
+
+    UnsupportedValueException(Object value) {
+        super("Can not encode '%s'".formatted(value));
+        this.value = value;
+    }
+
+    UnsupportedValueException inList(int index) {
+        path.addFirst("[" + index + "]");
+        return this;
+    }
+
+    UnsupportedValueException inDictionary(Object key) {
+        path.addFirst(String.valueOf(key));
+        return this;
+    }
+
+    String path() {
+        var result = new StringBuilder();
+        for (String segment : path) {
+            if (!result.isEmpty() && !segment.startsWith("[")) {
+                result.append('.');
+            }
+            result.append(segment);
+        }
+        return result.toString();
+    }
+
+    @Override
+    public String getMessage() {
+        String type = value == null ? "null" : value.getClass().getName();
+        if (path.isEmpty()) {
+            return "Can not encode '%s' of type %s".formatted(value, type);
+        }
+        return "Can not encode '%s' of type %s at %s".formatted(value, type, path());
+    }
+}
@@ -0,0 +1,179 @@
+package bit.bees.bittorrent.bencode.encoders;
+
+import bit.bees.bittorrent.bencode.ByteString;
+import bit.bees.bittorrent.bencode.KeyOrder;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.SortedMap;
+
+/**
+ * Encodes any supported value, dispatching on its type once per node with a {@code switch}. Nested
+ * values are neither validated up front nor offered to every encoder in turn; an unsupported value
+ * fails with an {@link UnsupportedValueException} naming its path.
+ */
+@Component
+class ValueEncoder implements BencodeEncoder {
+
+    private final StringEncoder stringEncoder;
+    private final NumberEncoder numberEncoder;
+
+    ValueEncoder(StringEncoder stringEncoder, NumberEncoder numberEncoder) {
+        this.stringEncoder = stringEncoder;
+        this.numberEncoder = numberEncoder;
+    }
+
+    @Override
+    public <T> boolean canEncode(T data) {
+        return switch (data) {
+            case String ignored -> true;
+            case ByteString ignored -> true;
+            case Integer ignored -> true;
+            case Long ignored -> true;
+            case BigInteger ignored -> true;
+            case Collection<?> list -> list.stream().allMatch(this::canEncode);
+            case Map<?, ?> dictionary -> dictionary.entrySet().stream()
+                    .allMatch(entry -> isKey(entry.getKey()) && canEncode(entry.getValue()));
+            case null, default -> false;
+        };
+    }
+
+    @Override
+    public <T> String encode(T data) {
+        return BencodeEncoder.encodeAsText(this, data);
+    }
+
+    /**
+     * Writes the value as it goes. If some nested value turns out to be unsupported, whatever was
+     * written before it stays in the stream.
+     */
+    @Override
+    public <T> void encode(T data, OutputStream out) throws IOException {
+        switch (data) {
+            case String string -> stringEncoder.encode(string, out);
+            case ByteString bytes -> stringEncoder.encode(bytes, out);
+            case Integer number -> numberEncoder.encode(number.longValue(), out);
+            case Long number -> numberEncoder.encode(number.longValue(), out);
+            case BigInteger number -> numberEncoder.encode(number, out);
+            case Collection<?> list -> encodeList(list, out);
+            case Map<?, ?> dictionary -> encodeDictionary(dictionary, out);
+            case null, default -> throw new UnsupportedValueException(data);
+        }
+    }
+
+    @Override
+    public <T> long encodedLength(T data) {
+        return switch (data) {
+            case String string -> stringEncoder.encodedLength(string);
+            case ByteString bytes -> stringEncoder.encodedLength(bytes);
+            case Integer number -> numberEncoder.encodedLength(number);
+            case Long number -> numberEncoder.encodedLength(number);
+            case BigInteger number -> numberEncoder.encodedLength(number);
+            case Collection<?> list -> listLength(list);
+            case Map<?, ?> dictionary -> dictionaryLength(dictionary);
+            case null, default -> throw new UnsupportedValueException(data);
+        };
+    }
+
+    void encodeList(Collection<?> list, OutputStream out) throws IOException {
+        out.write('l');
+        int index = 0;
+        try {
+            for (Object item : list) {
+                encode(item, out);
+                index++;
+            }
+        } catch (UnsupportedValueException e) {
+            throw e.inList(index);
+        }
+        out.write('e');
+    }
+
+    void encodeDictionary(Map<?, ?> dictionary, OutputStream out) throws IOException {
+        out.write('d');
+        for (Map.Entry<?, ?> entry : inKeyOrder(dictionary)) {
+            Object key = entry.getKey();
+            try {
+                stringEncoder.encode(requireKey(key), out);
+                encode(entry.getValue(), out);
+            } catch (UnsupportedValueException e) {
+                throw e.inDictionary(key);
+            }
+        }
+        out.write('e');
+    }
+
+    long listLength(Collection<?> list) {
+        long length = 2;
+        int index = 0;
+        try {
+            for (Object item : list) {
+                length += encodedLength(item);
+                index++;
+            }
+        } catch (UnsupportedValueException e) {
+            throw e.inList(index);
+        }
+        return length;
+    }
+
+    long dictionaryLength(Map<?, ?> dictionary) {
+        long length = 2;
+        for (Map.Entry<?, ?> entry : dictionary.entrySet()) {
+            Object key = entry.getKey();
+            try {
+                length += stringEncoder.encodedLength(requireKey(key));
+                length += encodedLength(entry.getValue());
+            } catch (UnsupportedValueException e) {
+                throw e.inDictionary(key);
+            }
+        }
+        return length;
+    }
+
+    private static boolean isKey(Object key) {
+        return key instanceof String || key instanceof ByteString;
+    }
+
+    private static Object requireKey(Object key) {
+        if (!isKey(key)) {
+            throw new UnsupportedValueException(key);
+        }
+        return key;
+    }
+
+    /**
+     * Entries in {@link KeyOrder}. Maps sorted by {@link KeyOrder#COMPARATOR} are taken as they are;
+     * others are checked in one pass and only copied and sorted if that finds keys out of order, so
+     * a {@code TreeMap} or an insertion ordered map filled in key order is never sorted.
+     */
+    private static Iterable<? extends Map.Entry<?, ?>> inKeyOrder(Map<?, ?> dictionary) {
+        if (dictionary instanceof SortedMap<?, ?> sorted && sorted.comparator() == KeyOrder.COMPARATOR) {
+            return dictionary.entrySet();
+        }
+
+        Object previousKey = null;
+        boolean sorted = true;
+        for (Object key : dictionary.keySet()) {
+            if (!isKey(key)) {
+                throw new UnsupportedValueException(key).inDictionary(key);
+            }
+            if (sorted && previousKey != null && KeyOrder.compare(previousKey, key) > 0) {
+                sorted = false;
+            }
+            previousKey = key;
+        }
+        if (sorted) {
+            return dictionary.entrySet();
+        }
+
+        Map.Entry<?, ?>[] entries = dictionary.entrySet().toArray(Map.Entry<?, ?>[]::new);
+        Arrays.sort(entries, (entry1, entry2) -> KeyOrder.compare(entry1.getKey(), entry2.getKey()));
+        return Arrays.asList(entries);
+    }
+}
@@ -0,0 +1,381 @@
+package bit.bees.bittorrent.bencode.parsers;
+
+import bit.bees.bittorrent.bencode.BencodeException;
+import bit.bees.bittorrent.bencode.ByteString;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Read position over a bencoded byte source, shared by every parser taking part in a single decode.
+ * <p>
+ * Parsers advance the cursor as they consume tokens, so nested values are read in place instead of
+ * being re-parsed from copies of the remaining input. The underlying buffer is accessed with absolute
+ * indexes only; its own position and limit are never modified.
+ * <p>
+ * Callers that are done with a cursor before they return can {@linkplain #borrow(ByteBuffer) borrow}
+ * the one kept per thread instead of allocating their own.
+ */
+public final class BencodeCursor {
+
+    private static final ThreadLocal<BencodeCursor> SCRATCH =
+            ThreadLocal.withInitial(() -> new BencodeCursor(ByteBuffer.allocate(0), 0, 0, false));
+
+    private ByteBuffer buffer;
+    private int start;
+    private int limit;
+    private boolean textInput;
+    private int position;
+    private boolean borrowed;
+
+    // Counted by the ValueParser as it reads, see tokenCounts()
+    private int strings;
+    private int integers;
+    private int lists;
+    private int dictionaries;
+    private int depth;
+
+    private BencodeCursor(ByteBuffer buffer, int start, int limit, boolean textInput) {
+        this.buffer = buffer;
+        this.start = start;
+        this.limit = limit;
+        this.textInput = textInput;
+        this.position = start;
+    }
+
+    public static BencodeCursor of(byte[] data) {
+        return new BencodeCursor(ByteBuffer.wrap(data), 0, data.length, false);
+    }
+
+    /**
+     * Cursor over the remaining bytes of the given buffer, i.e. from its position up to its limit.
+     */
+    public static BencodeCursor of(ByteBuffer buffer) {
+        return new BencodeCursor(buffer, buffer.position(), buffer.limit(), false);
+    }
+
+    /**
+     * The calling thread's cursor, set over the remaining bytes of the given buffer. It has to be
+     * {@linkplain #release() released} before the caller returns and must not be referenced by anything
+     * handed out; values read through it only refer to the buffer. While it is out, further calls on the
+     * same thread get new cursors.
+     */
+    public static BencodeCursor borrow(ByteBuffer buffer) {
+        var cursor = SCRATCH.get();
+        if (cursor.borrowed) {
+            return of(buffer);
+        }
+        cursor.reset(buffer, buffer.position(), buffer.limit());
+        cursor.borrowed = true;
+        return cursor;
+    }
+
+    /**
+     * Hands a {@linkplain #borrow(ByteBuffer) borrowed} cursor back to its thread. Does nothing for
+     * cursors that were not borrowed.
+     */
+    public void release() {
+        if (borrowed) {
+            borrowed = false;
+            buffer = null;
+        }
+    }
+
+    /**
+     * Points the cursor at the range {@code [start, limit)} of another buffer of binary input.
+     */
+    void reset(ByteBuffer buffer, int start, int limit) {
+        this.buffer = buffer;
+        this.start = start;
+        this.limit = limit;
+        this.textInput = false;
+        this.position = start;
+        clearTokenCounts();
+    }
+
+    /**
+     * Cursor over a string carrying bencoded data, where every char stands for one byte
+     * (ISO-8859-1), which is how the {@code String} based parser API has always treated its input.
+     */
+    static BencodeCursor of(String data) {
+        byte[] bytes = data.getBytes(StandardCharsets.ISO_8859_1);
+        return new BencodeCursor(ByteBuffer.wrap(bytes), 0, bytes.length, true);
+    }
+
+    /**
+     * What the {@link ValueParser} has read through the cursor since it was created, set over other
+     * input or the counts were cleared. Only reading values counts, not skipping or validating them.
+     */
+    public TokenCounts tokenCounts() {
+        return new TokenCounts(strings, integers, lists, dictionaries, depth);
+    }
+
+    public void clearTokenCounts() {
+        strings = 0;
+        integers = 0;
+        lists = 0;
+        dictionaries = 0;
+        depth = 0;
+    }
+
+    void countString() {
+        strings++;
+    }
+
+    void countInteger() {
+        integers++;
+    }
+
+    void countList(int depth) {
+        lists++;
+        this.depth = Math.max(this.depth, depth);
+    }
+
+    void countDictionary(int depth) {
+        dictionaries++;
+        this.depth = Math.max(this.depth, depth);
+    }
+
+    /**
+     * Whether the input came in as a {@code String}. Byte strings read from text input are handed out
+     * as {@code String}s again, while binary input yields {@link ByteString} views.
+     */
+    boolean isTextInput() {
+        return textInput;
+    }
+
+    public int position() {
+        return position;
+    }
+
+    public void position(int newPosition) {
+        if (newPosition < start || newPosition > limit) {
+            throw new IllegalArgumentException("Position %d is out of range [%d, %d]".formatted(newPosition, start, limit));
+        }
+        this.position = newPosition;
+    }
+
+    /**
+     * Number of bytes consumed since the cursor was created.
+     */
+    public int consumed() {
+        return position - start;
+    }
+
+    public int remaining() {
+        return limit - position;
+    }
+
+    public boolean hasRemaining() {
+        return position < limit;
+    }
+
+    /**
+     * Byte at the current position, without consuming it.
+     */
+    public byte peek() {
+        if (position >= limit) {
+            throw error("Unexpected end of input");
+        }
+        return buffer.get(position);
+    }
+
+    /**
+     * Whether the byte at the current position is the given one. Never fails at the end of input.
+     */
+    public boolean peekIs(char expected) {
+        return position < limit && buffer.get(position) == (byte) expected;
+    }
+
+    public byte next() {
+        if (position >= limit) {
+            throw error("Unexpected end of input");
+        }
+        return buffer.get(position++);
+    }
+
+    /**
+     * Consumes the given byte, failing if the input continues with anything else.
+     */
+    public void expect(char expected) {
+        if (!peekIs(expected)) {
+            throw error("Expected '%s'".formatted(expected));
+        }
+        position++;
+    }
+
+    public void skip(int length) {
+        if (length < 0 || length > remaining()) {
+            throw error("Can not skip %d bytes".formatted(length));
+        }
+        position += length;
+    }
+
+    /**
+     * Consumes one complete value of any type without building it. Only the structure is checked:
+     * string lengths must fit the input, integers may hold only sign and digit bytes, and every
+     * container must be terminated. Nested containers are tracked with a depth counter, so arbitrarily
+     * deep values are skipped without recursion or allocation.
+     */
+    public void skipValue() {
+        int depth = 0;
+        int index = position;
+        do {
+            if (index >= limit) {
+                position = index;
+                throw error("Unexpected end of input");
+            }
+            byte prefix = buffer.get(index);
+            if (prefix == 'l' || prefix == 'd') {
+                index++;
+                depth++;
+            } else if (prefix == 'e' && depth > 0) {
+                index++;
+                depth--;
+            } else if (prefix == 'i') {
+                index = skipInteger(index + 1);
+            } else if (prefix >= '0' && prefix <= '9') {
+                index = skipString(index);
+            } else {
+                position = index;
+                throw error("Unexpected '%c'".formatted((char) prefix));
+            }
+        } while (depth > 0);
+        position = index;
+    }
+
+    /**
+     * Consumes one complete value like {@link #skipValue()} and returns its exact encoded bytes as a
+     * view of the input.
+     */
+    public ByteString readRaw() {
+        int from = position;
+        skipValue();
+        return consumedSince(from);
+    }
+
+    /**
+     * View of the input already consumed from {@code from} up to the current position, i.e. the exact
+     * encoded bytes of whatever was read in between.
+     */
+    public ByteString consumedSince(int from) {
+        if (from < start || from > position) {
+            throw new IllegalArgumentException("Position %d is out of range [%d, %d]".formatted(from, start, position));
+        }
+        return ByteString.view(buffer, from, position - from);
+    }
+
+    private int skipInteger(int index) {
+        byte next;
+        while (index < limit && (next = buffer.get(index)) != 'e') {
+            if ((next < '0' || next > '9') && next != '-' && next != '+') {
+                position = index;
+                throw error("Invalid integer");
+            }
+            index++;
+        }
+        if (index >= limit) {
+            position = index;
+            throw error("Unexpected end of input");
+        }
+        return index + 1;
+    }
+
+    private int skipString(int index) {
+        long length = 0;
+        byte next;
+        while (index < limit && (next = buffer.get(index)) >= '0' && next <= '9' && length <= limit) {
+            length = (length * 10) + (next - '0');
+            index++;
+        }
+        if (index >= limit || buffer.get(index) != ':' || length > limit - index - 1) {
+            position = index;
+            throw error("Invalid string length");
+        }
+        return index + 1 + (int) length;
+    }
+
+    ByteBuffer buffer() {
+        return buffer;
+    }
+
+    /**
+     * Compares two ranges of the input byte-wise, each byte taken as unsigned.
+     */
+    int compareBytes(int offset1, int length1, int offset2, int length2) {
+        if (buffer.hasArray()) {
+            int from1 = buffer.arrayOffset() + offset1;
+            int from2 = buffer.arrayOffset() + offset2;
+            return Arrays.compareUnsigned(buffer.array(), from1, from1 + length1, buffer.array(), from2, from2 + length2);
+        }
+        int commonLength = Math.min(length1, length2);
+        for (int i = 0; i < commonLength; i++) {
+            int result = Byte.compareUnsigned(buffer.get(offset1 + i), buffer.get(offset2 + i));
+            if (result != 0) {
+                return result;
+            }
+        }
+        return Integer.compare(length1, length2);
+    }
+
+    /**
+     * Compares the given bytes with a range of the input, both taken as unsigned.
+     */
+    int compareBytes(byte[] bytes, int offset, int length) {
+        if (buffer.hasArray()) {
+            int from = buffer.arrayOffset() + offset;
+            return Arrays.compareUnsigned(bytes, 0, bytes.length, buffer.array(), from, from + length);
+        }
+        int commonLength = Math.min(bytes.length, length);
+        for (int i = 0; i < commonLength; i++) {
+            int result = Byte.compareUnsigned(bytes[i], buffer.get(offset + i));
+            if (result != 0) {
+                return result;
+            }
+        }
+        return Integer.compare(bytes.length, length);
+    }
+
+    /**
+     * Decodes {@code length} bytes at the absolute index {@code offset}, without moving the cursor.
+     */
+    String text(int offset, int length, Charset charset) {
+        if (buffer.hasArray()) {
+            return new String(buffer.array(), buffer.arrayOffset() + offset, length, charset);
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(offset, bytes);
+        return new String(bytes, charset);
+    }
+
+    /**
+     * Decodes {@code length} bytes from the current position as ISO-8859-1 text and consumes them.
+     */
+    String readText(int length) {
+        if (length < 0 || length > remaining()) {
+            throw error("Expected %d more bytes".formatted(length));
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(position, bytes);
+        position += length;
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * View of the next {@code length} bytes, which are consumed without being copied.
+     */
+    public ByteString readBytes(int length) {
+        if (length < 0 || length > remaining()) {
+            throw error("Expected %d more bytes".formatted(length));
+        }
+        ByteString bytes = ByteString.view(buffer, position, length);
+        position += length;
+        return bytes;
+    }
+
+    BencodeException error(String message) {
+        return new BencodeException("%s at offset %d".formatted(message, consumed()));
+    }
+}
@@ -0,0 +1,21 @@
+package bit.bees.bittorrent.bencode.parsers;
+
+/**
+ * Token reported by {@link BencodeReader}.
+ */
+public enum BencodeEvent {
+    START_DICT,
+    START_LIST,
+    /** Dictionary key, available from {@link BencodeReader#bytes()}. */
+    KEY,
+    /** Byte string value, available from {@link BencodeReader#bytes()}. */
+    BYTES,
+    /** Integer value, available from {@link BencodeReader#number()}. */
+    INT,
+    /** End of the innermost open list or dictionary. */
+    END,
+    /** A non-blocking source has no bytes available right now; call again once it has. */
+    NEED_MORE_INPUT,
+    /** The source is exhausted after a complete value. */
+    END_OF_INPUT
+}
@@ -6,4 +6,25 @@ public interface BencodeParser<T> {
 
     ParseResult<T> parse(String data);
 
+    /**
+     * Reads one value starting at the cursor position and leaves the cursor right after it.
+     *
+     * @throws bit.bees.bittorrent.bencode.BencodeException if the input at the cursor is not a valid value
+     */
+    T read(BencodeCursor cursor);
+
+    /**
+     * Reads one value the way it is stored inside lists and dictionaries. Only differs from
+     * {@link #read(BencodeCursor)} where the representation depends on the kind of input.
+     */
+    default Object readValue(BencodeCursor cursor) {
+        return read(cursor);
+    }
+
+    /**
+     * Whether a value of this parser's type can begin with the given byte. Type prefixes never
+     * overlap, so at most one parser accepts any given byte.
+     */
+    boolean canStartWith(byte prefix);
+
 }
@@ -0,0 +1,402 @@
+package bit.bees.bittorrent.bencode.parsers;
+
+import bit.bees.bittorrent.bencode.BencodeException;
+import bit.bees.bittorrent.bencode.ByteString;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+
+/**
+ * Pull parser reporting bencoded input as a sequence of {@link BencodeEvent}s, without building values.
+ * <p>
+ * Input is read in chunks into one buffer, so memory stays bounded by the chunk size, the largest
+ * single string and the nesting depth, however large the document is. Nesting is limited like
+ * {@link ValueParser} limits it, to {@value ValueParser#DEFAULT_MAX_DEPTH} levels unless given
+ * otherwise. A token cut off at the end of a
+ * chunk is completed from the next one: digits already scanned are not scanned again and the content
+ * of a string is only awaited once its length is known. With a non-blocking channel that has nothing
+ * to offer, {@link #next()} returns {@link BencodeEvent#NEED_MORE_INPUT} and resumes on the next call.
+ * <p>
+ * A reader can also be {@linkplain #fed(int) fed} with bytes by its caller instead of reading them
+ * itself, which suits input arriving in packets or fragments.
+ * <p>
+ * Several values may follow each other in the input. Structure and integers are fully checked;
+ * dictionary key order is not, as that would require remembering the keys.
+ */
+public final class BencodeReader implements Closeable {
+
+    public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+    public static final int DEFAULT_MAX_TOKEN_LENGTH = 64 * 1024 * 1024;
+
+    private static final int MAX_LENGTH_DIGITS = 10;
+
+    private final InputStream in;
+    private final ReadableByteChannel channel;
+    private final int maxTokenLength;
+    private final int maxDepth;
+
+    private ByteBuffer buffer;
+    private long offset;
+    private boolean endOfInput;
+
+    private byte[] containers = new byte[16];
+    private int depth;
+    private boolean expectKey;
+
+    private int scanned;
+    private int pendingLength = -1;
+    private boolean pendingKey;
+
+    private ByteString bytes;
+    private Number number;
+
+    /** Re-pointed at each integer token instead of allocating a cursor per integer. */
+    private final BencodeCursor integerCursor = BencodeCursor.of(new byte[0]);
+
+    private BencodeReader(InputStream in, ReadableByteChannel channel, int chunkSize, int maxTokenLength, int maxDepth) {
+        if (chunkSize <= 0 || maxTokenLength < chunkSize) {
+            throw new IllegalArgumentException("Invalid chunk size %d or maximum token length %d".formatted(chunkSize, maxTokenLength));
+        }
+        if (maxDepth <= 0) {
+            throw new IllegalArgumentException("Invalid maximum depth %d".formatted(maxDepth));
+        }
+        this.in = in;
+        this.channel = channel;
+        this.maxTokenLength = maxTokenLength;
+        this.maxDepth = maxDepth;
+        this.buffer = ByteBuffer.allocate(chunkSize).flip();
+    }
+
+    public static BencodeReader of(InputStream in) {
+        return of(in, DEFAULT_CHUNK_SIZE, DEFAULT_MAX_TOKEN_LENGTH);
+    }
+
+    /**
+     * @param chunkSize      bytes requested from the stream at a time
+     * @param maxTokenLength longest string or integer accepted, in bytes
+     */
+    public static BencodeReader of(InputStream in, int chunkSize, int maxTokenLength) {
+        return new BencodeReader(in, null, chunkSize, maxTokenLength, ValueParser.DEFAULT_MAX_DEPTH);
+    }
+
+    public static BencodeReader of(ReadableByteChannel channel) {
+        return of(channel, DEFAULT_CHUNK_SIZE, DEFAULT_MAX_TOKEN_LENGTH);
+    }
+
+    public static BencodeReader of(ReadableByteChannel channel, int chunkSize, int maxTokenLength) {
+        return new BencodeReader(null, channel, chunkSize, maxTokenLength, ValueParser.DEFAULT_MAX_DEPTH);
+    }
+
+    /**
+     * Reader without a source of its own. Bytes are handed to it with {@link #feed(ByteBuffer)}, and
+     * {@link #next()} returns {@link BencodeEvent#NEED_MORE_INPUT} whenever they run out.
+     */
+    public static BencodeReader fed(int maxTokenLength) {
+        return fed(maxTokenLength, ValueParser.DEFAULT_MAX_DEPTH);
+    }
+
+    /**
+     * @param maxTokenLength longest string or integer accepted, in bytes
+     * @param maxDepth       most lists and dictionaries open at once
+     */
+    public static BencodeReader fed(int maxTokenLength, int maxDepth) {
+        return new BencodeReader(null, null, Math.min(DEFAULT_CHUNK_SIZE, maxTokenLength), maxTokenLength, maxDepth);
+    }
+
+    /**
+     * Appends the remaining bytes of the given buffer to the unread input of a {@linkplain #fed(int) fed}
+     * reader. The buffer is read up to its limit.
+     */
+    public void feed(ByteBuffer data) {
+        if (in != null || channel != null) {
+            throw new IllegalStateException("Reader has a source of its own");
+        }
+        buffer.compact();
+        if (buffer.remaining() < data.remaining()) {
+            int capacity = Math.max(2 * buffer.capacity(), buffer.position() + data.remaining());
+            buffer = ByteBuffer.allocate(capacity).put(buffer.flip());
+        }
+        buffer.put(data);
+        buffer.flip();
+    }
+
+    /**
+     * Number of bytes received from the source or fed but not consumed yet.
+     */
+    public int buffered() {
+        return buffer.remaining();
+    }
+
+    /**
+     * Reads the next token, blocking only as long as the source does.
+     */
+    public BencodeEvent next() throws IOException {
+        bytes = null;
+        number = null;
+        while (true) {
+            BencodeEvent event = readToken();
+            if (event != null) {
+                return event;
+            }
+            if (endOfInput) {
+                if (depth == 0 && pendingLength < 0 && !buffer.hasRemaining()) {
+                    return BencodeEvent.END_OF_INPUT;
+                }
+                throw error("Unexpected end of input");
+            }
+            if (fill() == 0) {
+                return BencodeEvent.NEED_MORE_INPUT;
+            }
+        }
+    }
+
+    /**
+     * Content of the last {@link BencodeEvent#KEY} or {@link BencodeEvent#BYTES}. The view shares the
+     * reader's buffer and is only valid until the next call to {@link #next()}; copy it to keep it.
+     */
+    public ByteString bytes() {
+        if (bytes == null) {
+            throw new IllegalStateException("Last event was not a string");
+        }
+        return bytes;
+    }
+
+    /**
+     * Value of the last {@link BencodeEvent#INT}: a {@code Long}, or a {@code BigInteger} if it does
+     * not fit.
+     */
+    public Number number() {
+        if (number == null) {
+            throw new IllegalStateException("Last event was not an integer");
+        }
+        return number;
+    }
+
+    public long longValue() {
+        if (!(number() instanceof Long longValue)) {
+            throw new BencodeException("Integer does not fit into a long: %s".formatted(number));
+        }
+        return longValue;
+    }
+
+    /**
+     * Number of lists and dictionaries currently open.
+     */
+    public int depth() {
+        return depth;
+    }
+
+    /**
+     * Offset in the input of the next unread byte.
+     */
+    public long offset() {
+        return offset;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (in != null) {
+            in.close();
+        } else if (channel != null) {
+            channel.close();
+        }
+    }
+
+    /**
+     * Reads one token from the buffered bytes.
+     *
+     * @return the token, or {@code null} if the buffered bytes end in the middle of it
+     */
+    private BencodeEvent readToken() {
+        if (pendingLength >= 0) {
+            return readStringContent();
+        }
+        if (!buffer.hasRemaining()) {
+            return null;
+        }
+
+        byte prefix = buffer.get(buffer.position());
+        boolean inDictionary = depth > 0 && containers[depth - 1] == 'd';
+        if (expectKey && prefix != 'e' && !isDigit(prefix)) {
+            throw error("Dictionary key must be a string");
+        }
+        if (inDictionary && !expectKey && prefix == 'e') {
+            throw error("Missing value for dictionary key");
+        }
+
+        return switch (prefix) {
+            case 'd' -> startContainer(prefix, BencodeEvent.START_DICT);
+            case 'l' -> startContainer(prefix, BencodeEvent.START_LIST);
+            case 'e' -> endContainer();
+            case 'i' -> readInteger();
+            case '0', '1', '2', '3', '4', '5', '6', '7', '8', '9' -> readStringLength();
+            default -> throw error("Unexpected '%c'".formatted((char) prefix));
+        };
+    }
+
+    private BencodeEvent startContainer(byte type, BencodeEvent event) {
+        if (depth == maxDepth) {
+            throw error("Nesting exceeds the limit of %d levels".formatted(maxDepth));
+        }
+        if (depth == containers.length) {
+            containers = Arrays.copyOf(containers, 2 * depth);
+        }
+        containers[depth++] = type;
+        expectKey = type == 'd';
+        consume(1);
+        return event;
+    }
+
+    private BencodeEvent endContainer() {
+        if (depth == 0) {
+            throw error("Unexpected 'e'");
+        }
+        depth--;
+        consume(1);
+        valueDone();
+        return BencodeEvent.END;
+    }
+
+    private BencodeEvent readInteger() {
+        int start = buffer.position();
+        int end = scan(start + Math.max(1, scanned), 'e');
+        if (end < 0) {
+            return null;
+        }
+
+        integerCursor.reset(buffer, start, end + 1);
+        try {
+            number = NumberParser.readNumber(integerCursor);
+        } catch (BencodeException e) {
+            throw new BencodeException("Invalid integer at offset %d".formatted(offset), e);
+        }
+        consume(end + 1 - start);
+        valueDone();
+        return BencodeEvent.INT;
+    }
+
+    private BencodeEvent readStringLength() {
+        int start = buffer.position();
+        int colon = scan(start + scanned, ':');
+        if (colon < 0) {
+            return null;
+        }
+
+        long length = 0;
+        for (int i = start; i < colon; i++) {
+            if (i > start && length == 0) {
+                throw error("Invalid string length");
+            }
+            length = (length * 10) + (buffer.get(i) - '0');
+        }
+        if (length > maxTokenLength) {
+            throw error("String length %d exceeds the limit of %d bytes".formatted(length, maxTokenLength));
+        }
+
+        consume(colon + 1 - start);
+        pendingLength = (int) length;
+        pendingKey = expectKey;
+        return readStringContent();
+    }
+
+    private BencodeEvent readStringContent() {
+        if (buffer.remaining() < pendingLength) {
+            return null;
+        }
+        bytes = ByteString.view(buffer, buffer.position(), pendingLength);
+        consume(pendingLength);
+        pendingLength = -1;
+        if (pendingKey) {
+            expectKey = false;
+            return BencodeEvent.KEY;
+        }
+        valueDone();
+        return BencodeEvent.BYTES;
+    }
+
+    /**
+     * Index of the terminator of the current integer or string length, starting the search at
+     * {@code from}. Only digits may come before it, and a sign right after the {@code i} of an
+     * integer. If the buffered bytes end first, remembers how far the token has been scanned and
+     * returns {@code -1}.
+     */
+    private int scan(int from, char terminator) {
+        int limit = buffer.limit();
+        for (int i = from; i < limit; i++) {
+            byte next = buffer.get(i);
+            if (next == terminator) {
+                scanned = 0;
+                return i;
+            }
+            if (terminator == ':' && (!isDigit(next) || i - buffer.position() >= MAX_LENGTH_DIGITS)) {
+                throw error("Invalid string length");
+            }
+            if (terminator == 'e' && !isDigit(next) && (i != buffer.position() + 1 || (next != '-' && next != '+'))) {
+                throw error("Invalid integer");
+            }
+        }
+        scanned = limit - buffer.position();
+        return -1;
+    }
+
+    private void valueDone() {
+        expectKey = depth > 0 && containers[depth - 1] == 'd';
+    }
+
+    private void consume(int length) {
+        buffer.position(buffer.position() + length);
+        offset += length;
+    }
+
+    /**
+     * Moves the unread bytes to the front of the buffer and reads more behind them, growing the buffer
+     * if a single token does not fit.
+     *
+     * @return number of bytes read, {@code -1} at the end of the input
+     */
+    private int fill() throws IOException {
+        if (in == null && channel == null) {
+            return 0;
+        }
+        buffer.compact();
+        if (!buffer.hasRemaining() || pendingLength > buffer.capacity()) {
+            grow();
+        }
+
+        int read;
+        if (in != null) {
+            read = in.read(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            if (read > 0) {
+                buffer.position(buffer.position() + read);
+            }
+        } else {
+            read = channel.read(buffer);
+        }
+        buffer.flip();
+
+        if (read < 0) {
+            endOfInput = true;
+        }
+        return read;
+    }
+
+    private void grow() {
+        if (buffer.capacity() >= maxTokenLength) {
+            throw error("Token exceeds the limit of %d bytes".formatted(maxTokenLength));
+        }
+        int capacity = (int) Math.min(maxTokenLength, Math.max(2L * buffer.capacity(), pendingLength));
+        buffer = ByteBuffer.allocate(capacity).put(buffer.flip());
+    }
+
+    private BencodeException error(String message) {
+        return new BencodeException("%s at offset %d".formatted(message, offset));
+    }
+
+    private static boolean isDigit(byte value) {
+        return value >= '0' && value <= '9';
+    }
+}
@@ -1,141 +1,58 @@
 package bit.bees.bittorrent.bencode.parsers;
 
 import bit.bees.bittorrent.bencode.BencodeException;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import bit.bees.bittorrent.bencode.ByteString;
 import org.springframework.stereotype.Service;
 
-import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
 @Service
 public class DictionaryParser implements BencodeParser<Map<String, Object>> {
 
-    private static final Logger log = LoggerFactory.getLogger(DictionaryParser.class);
     private static final char PREFIX = 'd';
-    private static final char SUFFIX = 'e';
 
-    private static final List<BencodeParser<?>> keyParsers = java.util.List.of(new StringParser());
-    private static final List<BencodeParser<?>> valueParsers = java.util.List.of(
-            new ListParser(),
-            new NumberParser(),
-            new StringParser(),
-            new DictionaryParser()
-    );
+    private final ValueParser valueParser;
 
-    @Override
-    public boolean isParsable(String data) {
-        log.info("Checking if '{}' is parsable", data);
-        boolean isParsable = false;
-
-        if (data != null && !data.isBlank() && data.startsWith(String.valueOf(PREFIX))) {
-
-            int keyValuePairStartIndex = 1;
-            KeyValueParseResult result;
-
-            String lastKey = "";
-            boolean keysInOrder = true;
-
-            while ((result = tryToParse(data, keyValuePairStartIndex)).isSuccess()) {
-                String parsedKey = String.valueOf(result.keyResult.parsedData());
-                if (lastKey.compareTo(parsedKey) > 0) {
-                    keysInOrder = false;
-                    log.info("Keys are not in lexicographic order: last key = '{}', current key = '{}'", lastKey, parsedKey);
-                    break;
-                }
-                lastKey = parsedKey;
-                keyValuePairStartIndex = keyValuePairStartIndex + result.parsedLength();
-            }
-            if (keysInOrder && isEndOfTheDictionary(data, keyValuePairStartIndex)) {
-                isParsable = true;
-            }
-        }
-
-        log.info("'{}' is{} parsable", data, (isParsable ? "" : " not"));
-        return isParsable;
-    }
-
-    private static boolean isEndOfTheDictionary(String data, int index) {
-        return index < data.length() && data.charAt(index) == SUFFIX;
-    }
-
-    private KeyValueParseResult tryToParse(String data, int keyValuePairStartIdx) {
-        if (keyValuePairStartIdx >= data.length()) {
-            return KeyValueParseResult.failure(data, new BencodeException("Invalid key pair starting index provided"));
-        }
-
-        var keyResult = parseKeyOrValue(data, keyValuePairStartIdx, keyParsers);
-        if (keyResult.status() == ParseResult.Status.FAILURE) {
-            return KeyValueParseResult.failure(data, new BencodeException("Failed parsing key", keyResult.error()));
-        }
-
-        int valueStartIndex = keyValuePairStartIdx + keyResult.parsedLength();
-        var valueResult = parseKeyOrValue(data, valueStartIndex, valueParsers);
-        if (valueResult.status() == ParseResult.Status.FAILURE) {
-            return KeyValueParseResult.failure(data, new BencodeException("Failed parsing value", valueResult.error()));
-        }
-
-        return KeyValueParseResult.success(data, keyResult, valueResult);
+    public DictionaryParser(ValueParser valueParser) {
+        this.valueParser = valueParser;
     }
 
-    private static ParseResult<?> parseKeyOrValue(String data, int keyStartIndex, List<BencodeParser<?>> parsers) {
-        String inputData = data.substring(keyStartIndex);
-        for (var keyParser : parsers) {
-            var result = keyParser.parse(inputData);
-            if (result.status() == ParseResult.Status.SUCCESS) {
-                return result;
-            }
-        }
-        return ParseResult.failure(inputData, new BencodeException("Not parsable by available parsers"));
+    @Override
+    public boolean isParsable(String data) {
+        return valueParser.isValid(data, PREFIX, true);
     }
 
     @Override
     public ParseResult<Map<String, Object>> parse(String data) {
-        if (!isParsable(data)) {
+        if (data == null || data.isEmpty()) {
             return ParseResult.failure(data, new BencodeException("'%s' is not parsable".formatted(data)));
         }
 
-        int keyValuePairStartIndex = 1;
-        KeyValueParseResult result;
-        Map<String, Object> keyValues = new HashMap<>();
-
-        int parsedLength = 2;
-        while ((result = tryToParse(data, keyValuePairStartIndex)).isSuccess()) {
-            String key = String.valueOf(result.keyResult.parsedData());
-            Object values = result.valueResult.parsedData();
-            keyValues.put(key, values);
-            parsedLength += result.parsedLength();
-            keyValuePairStartIndex = keyValuePairStartIndex + result.parsedLength();
+        var cursor = BencodeCursor.of(data);
+        try {
+            Map<String, Object> parsedData = read(cursor);
+            return ParseResult.success(data, parsedData, cursor.consumed());
+        } catch (BencodeException e) {
+            return ParseResult.failure(data, new BencodeException("'%s' is not parsable".formatted(data), e));
         }
-        return ParseResult.success(data, keyValues, parsedLength);
     }
 
-    private record KeyValueParseResult(
-            String data,
-            ParseResult<?> keyResult,
-            ParseResult<?> valueResult,
-            int parsedLength,
-            Throwable error) {
-
-        boolean isSuccess() {
-            return (keyResult != null && valueResult != null)
-                    && keyResult.status() == ParseResult.Status.SUCCESS
-                    && valueResult.status() == ParseResult.Status.SUCCESS;
-        }
+    @Override
+    public boolean canStartWith(byte prefix) {
+        return prefix == PREFIX;
+    }
 
-        static KeyValueParseResult success(String data, ParseResult<?> keyResult, ParseResult<?> valueResult) {
-            return new KeyValueParseResult(
-                    data,
-                    keyResult,
-                    valueResult,
-                    keyResult.parsedLength() + valueResult.parsedLength(),
-                    null);
-        }
+    @Override
+    public Map<String, Object> read(BencodeCursor cursor) {
+        return valueParser.readDictionary(cursor);
+    }
 
-        static KeyValueParseResult failure(String data, Throwable error) {
-            return new KeyValueParseResult(data, null, null, -1, error);
-        }
+    /**
+     * Reads the dictionary and records the exact encoded bytes of each value, see
+     * {@link ValueParser#readDictionary(BencodeCursor, Map)}.
+     */
+    public Map<String, Object> read(BencodeCursor cursor, Map<String, ByteString> rawValues) {
+        return valueParser.readDictionary(cursor, rawValues);
     }
 
 }
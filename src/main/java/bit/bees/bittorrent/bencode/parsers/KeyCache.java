@@ -0,0 +1,115 @@
+package bit.bees.bittorrent.bencode.parsers;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Canonical {@code String}s for dictionary keys decoded from binary input.
+ * <p>
+ * Tracker replies, DHT messages and extension handshakes use the same few keys over and over. The
+ * cache is a fixed table indexed by the hash of the raw key bytes; a key found there is compared in
+ * place and its existing {@code String} returned, so a hit allocates nothing. A miss decodes the key
+ * and takes over its slot. Keys longer than {@value #MAX_KEY_LENGTH} bytes are never cached.
+ * <p>
+ * The table holds {@code bencode.key-cache.size} slots, {@value #DEFAULT_SIZE} by default, rounded
+ * up to a power of two; {@code 0} turns caching off. Slots are replaced without locking, which at
+ * worst costs a lookup its hit.
+ */
+@Component
+public class KeyCache {
+
+    public static final int DEFAULT_SIZE = 1024;
+    public static final int MAX_KEY_LENGTH = 64;
+
+    private final Entry[] entries;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public KeyCache(@Value("${bencode.key-cache.size:" + DEFAULT_SIZE + "}") int size) {
+        this.entries = size > 0 ? new Entry[Integer.highestOneBit(Math.max(1, (size << 1) - 1))] : new Entry[0];
+    }
+
+    /**
+     * The {@code length} bytes at {@code offset} of the buffer decoded as UTF-8.
+     */
+    public String key(ByteBuffer buffer, int offset, int length) {
+        if (entries.length == 0 || length > MAX_KEY_LENGTH) {
+            misses.increment();
+            return decode(buffer, offset, length);
+        }
+
+        int hash = hash(buffer, offset, length);
+        int slot = hash & (entries.length - 1);
+        Entry entry = entries[slot];
+        if (entry != null && entry.hash == hash && entry.matches(buffer, offset, length)) {
+            hits.increment();
+            return entry.text;
+        }
+
+        misses.increment();
+        byte[] bytes = new byte[length];
+        buffer.get(offset, bytes);
+        var text = new String(bytes, StandardCharsets.UTF_8);
+        entries[slot] = new Entry(hash, bytes, text);
+        return text;
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    /**
+     * Share of lookups answered from the cache, {@code 0} before the first lookup.
+     */
+    public double hitRatio() {
+        long hitCount = hits();
+        long total = hitCount + misses();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    public int size() {
+        return entries.length;
+    }
+
+    private static String decode(ByteBuffer buffer, int offset, int length) {
+        byte[] bytes = new byte[length];
+        buffer.get(offset, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int hash(ByteBuffer buffer, int offset, int length) {
+        int hash = length;
+        for (int i = offset; i < offset + length; i++) {
+            hash = 31 * hash + buffer.get(i);
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    private record Entry(int hash, byte[] bytes, String text) {
+
+        boolean matches(ByteBuffer buffer, int offset, int length) {
+            if (bytes.length != length) {
+                return false;
+            }
+            if (buffer.hasArray()) {
+                int from = buffer.arrayOffset() + offset;
+                return Arrays.equals(bytes, 0, length, buffer.array(), from, from + length);
+            }
+            for (int i = 0; i < length; i++) {
+                if (bytes[i] != buffer.get(offset + i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
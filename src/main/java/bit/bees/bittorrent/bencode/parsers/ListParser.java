@@ -1,82 +1,51 @@
 package bit.bees.bittorrent.bencode.parsers;
 
 import bit.bees.bittorrent.bencode.BencodeException;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
-import java.util.ArrayList;
 import java.util.List;
 
 @Component
 public class ListParser implements BencodeParser<List<Object>> {
 
-    private static final Logger log = LoggerFactory.getLogger(ListParser.class);
     private static final char PREFIX = 'l';
-    private static final char SUFFIX = 'e';
 
-    private final List<BencodeParser<?>> parsers = List.of(new StringParser(), new NumberParser());
+    private final ValueParser valueParser;
 
-    @Override
-    public boolean isParsable(String data) {
-        log.info("Checking if '{}' is parsable as list.", data);
-        boolean isParsable = false;
-
-        if (data != null && !data.isBlank() && data.startsWith(String.valueOf(PREFIX))) {
-            int itemStartIndex = 1;
-            ParseResult<?> result;
-
-            while ((result = tryToParse(data, itemStartIndex)).status() == ParseResult.Status.SUCCESS) {
-                itemStartIndex = (itemStartIndex + result.parsedLength());
-            }
-
-            // If next item start index is the actual end position of the list. i.e, char at index is 'e'
-            if (isEndOfTheList(data, itemStartIndex)) {
-                isParsable = true;
-            }
-        }
-
-        log.info("'{}' is{} parsable", data, (isParsable ? "" : " not"));
-        return isParsable;
+    public ListParser(ValueParser valueParser) {
+        this.valueParser = valueParser;
     }
 
-    private ParseResult<?> tryToParse(String data, int itemStartIndex) {
-        if (itemStartIndex >= data.length()) {
-            return ParseResult.failure(data, new BencodeException("Invalid starting index in the given data"));
-        }
-        String inputData = data.substring(itemStartIndex);
-        for (BencodeParser<?> parser : parsers) {
-            var result = parser.parse(inputData);
-            if (result.status() == ParseResult.Status.SUCCESS) {
-                return result;
-            }
-        }
-        return ParseResult.failure(inputData, new BencodeException("Not parsable by available parsers"));
+    @Override
+    public boolean isParsable(String data) {
+        return valueParser.isValid(data, PREFIX, true);
     }
 
     @Override
     public ParseResult<List<Object>> parse(String data) {
-        if (!isParsable(data)) {
-            var error = new BencodeException("'%s' is not parsable".formatted(data));
-            return ParseResult.failure(data, error);
+        if (data == null || data.isEmpty()) {
+            return ParseResult.failure(data, new BencodeException("'%s' is not parsable".formatted(data)));
         }
 
-        int itemStartIndex = 1;
-        ParseResult<?> result;
-        List<Object> items = new ArrayList<>();
-
-        while ((result = tryToParse(data, itemStartIndex)).status() == ParseResult.Status.SUCCESS) {
-            items.add(result.parsedData());
-            itemStartIndex = (itemStartIndex + result.parsedLength());
+        var cursor = BencodeCursor.of(data);
+        try {
+            List<Object> parsedData = read(cursor);
+            return ParseResult.success(data, parsedData, cursor.consumed());
+        } catch (BencodeException e) {
+            return ParseResult.failure(data, new BencodeException("'%s' is not parsable".formatted(data), e));
         }
+    }
 
-        int listEndIndex = (itemStartIndex - 1);
-        int parsedLength = (listEndIndex + 2);
-
-        return ParseResult.success(data, items, parsedLength);
+    @Override
+    public boolean canStartWith(byte prefix) {
+        return prefix == PREFIX;
     }
 
-    private static boolean isEndOfTheList(String data, int index) {
-        return index < data.length() && data.charAt(index) == SUFFIX;
+    /**
+     * Reads a list whose items may be lists and dictionaries again.
+     */
+    @Override
+    public List<Object> read(BencodeCursor cursor) {
+        return valueParser.readList(cursor);
     }
 }
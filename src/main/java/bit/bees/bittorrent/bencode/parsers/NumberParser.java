@@ -1,8 +1,6 @@
 package bit.bees.bittorrent.bencode.parsers;
 
 import bit.bees.bittorrent.bencode.BencodeException;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
 import java.math.BigInteger;
@@ -10,53 +8,189 @@ import java.math.BigInteger;
 @Component
 public class NumberParser implements BencodeParser<BigInteger> {
 
-    private final Logger log = LoggerFactory.getLogger(NumberParser.class);
+    private static final char PREFIX = 'i';
+    private static final char SUFFIX = 'e';
+
+    /**
+     * Marker returned by {@link #readDigits(BencodeCursor)} when the digits do not fit into a {@code long}.
+     */
+    private static final long OVERFLOW = Long.MIN_VALUE;
 
     @Override
     public boolean isParsable(String data) {
-        log.info("Checking if '{}' is parsable as integer", data);
-        boolean isParsable = false;
-
-        if (data != null && data.startsWith("i")) {
-            int numberEndIndex = data.indexOf('e') - 1;
-            if (numberEndIndex >= 0) {
-                int numberStartIndex = 1;
-                var numberString = data.substring(numberStartIndex, numberEndIndex + 1);
-                isParsable = isValidNumber(numberString);
-            }
+        return parse(data).status() == ParseResult.Status.SUCCESS;
+    }
+
+    @Override
+    public ParseResult<BigInteger> parse(String data) {
+        if (data == null || data.isEmpty()) {
+            return ParseResult.failure(data, new BencodeException("'%s' is not parsable".formatted(data)));
+        }
+
+        var cursor = BencodeCursor.of(data);
+        try {
+            BigInteger parsedData = read(cursor);
+            return ParseResult.success(data, parsedData, cursor.consumed());
+        } catch (BencodeException e) {
+            return ParseResult.failure(data, new BencodeException("'%s' is not parsable".formatted(data), e));
+        }
+    }
+
+    @Override
+    public boolean canStartWith(byte prefix) {
+        return prefix == PREFIX;
+    }
+
+    /**
+     * Reads {@code i<number>e}. The number may carry a sign, but neither {@code -0} nor leading zeros
+     * are allowed.
+     */
+    @Override
+    public BigInteger read(BencodeCursor cursor) {
+        Number number = readNumber(cursor);
+        return number instanceof BigInteger bigInteger ? bigInteger : BigInteger.valueOf(number.longValue());
+    }
+
+    /**
+     * {@link Long} for binary input, falling back to {@link BigInteger} only when the value does not fit.
+     * Text input keeps yielding {@link BigInteger}s.
+     */
+    @Override
+    public Object readValue(BencodeCursor cursor) {
+        return cursor.isTextInput() ? read(cursor) : readNumber(cursor);
+    }
+
+    /**
+     * Reads an integer as a {@link Long}, or as a {@link BigInteger} if it overflows a {@code long}.
+     */
+    public static Number readNumber(BencodeCursor cursor) {
+        int start = cursor.position();
+        long value = readDigits(cursor);
+        if (value == OVERFLOW && !cursor.peekIs(SUFFIX)) {
+            return readBigInteger(cursor, start);
+        }
+        cursor.expect(SUFFIX);
+        return value;
+    }
+
+    /**
+     * Reads an integer that must fit into a {@code long}, without allocating.
+     */
+    public static long readLong(BencodeCursor cursor) {
+        long value = readDigits(cursor);
+        if (value == OVERFLOW && !cursor.peekIs(SUFFIX)) {
+            throw cursor.error("Integer does not fit into a long");
         }
+        cursor.expect(SUFFIX);
+        return value;
+    }
 
-        log.info("'{}' is{} parsable", data, (isParsable ? "" : " not"));
-        return isParsable;
+    /**
+     * Consumes an integer of any size, validating it like {@link #readNumber(BencodeCursor)} without
+     * building it.
+     */
+    public void skip(BencodeCursor cursor) {
+        if (readDigits(cursor) == OVERFLOW) {
+            skipDigits(cursor);
+        }
+        cursor.expect(SUFFIX);
     }
 
-    private boolean isValidNumber(String number) {
-        if (number.isBlank() || number.startsWith("-0")) {
+    /**
+     * Consumes an integer like {@link #skip(BencodeCursor)}, but reports malformed input by returning
+     * {@code false} instead of throwing, the cursor being left anywhere within the integer.
+     */
+    static boolean scan(BencodeCursor cursor) {
+        if (!cursor.peekIs(PREFIX)) {
+            return false;
+        }
+        cursor.skip(1);
+
+        boolean negative = cursor.peekIs('-');
+        if (negative || cursor.peekIs('+')) {
+            cursor.skip(1);
+        }
+        if (!cursor.hasRemaining()) {
             return false;
         }
-        if (ParserUtil.isNumber(number)) {
-            if (number.startsWith("+")) {
-                return (number.length() == 2) || (number.charAt(1) != '0');
+        byte first = cursor.next();
+        if (first < '0' || first > '9' || (first == '0' && (negative || !cursor.peekIs(SUFFIX)))) {
+            return false;
+        }
+        while (!cursor.peekIs(SUFFIX)) {
+            if (!cursor.hasRemaining()) {
+                return false;
+            }
+            byte digit = cursor.next();
+            if (digit < '0' || digit > '9') {
+                return false;
             }
-            return (number.length() == 1) || (number.charAt(0) != '0');
         }
-        return false;
+        cursor.skip(1);
+        return true;
     }
 
-    @Override
-    public ParseResult<BigInteger> parse(String data) {
-        if (!isParsable(data)) {
-            var error = new BencodeException("'%s' is not parsable".formatted(data));
-            return ParseResult.failure(data, error);
+    /**
+     * Reads the prefix, sign and digits and leaves the cursor at the suffix, or at the first digit that
+     * would overflow a {@code long}, in which case {@link #OVERFLOW} is returned.
+     * <p>
+     * Digits are accumulated as a negative number, whose range also covers {@link Long#MIN_VALUE}.
+     */
+    private static long readDigits(BencodeCursor cursor) {
+        cursor.expect(PREFIX);
+
+        byte sign = cursor.peek();
+        boolean negative = sign == '-';
+        if (negative || sign == '+') {
+            cursor.next();
         }
 
-        int numberStartIndex = 1;
-        int numberEndIndex = data.indexOf('e', numberStartIndex) - 1;
-        int parsedLength = (numberEndIndex + 2);
+        byte first = cursor.next();
+        if (first < '0' || first > '9') {
+            throw cursor.error("Integer without digits");
+        }
+        if (first == '0' && (negative || !cursor.peekIs(SUFFIX))) {
+            throw cursor.error("Integer with leading zero");
+        }
 
-        String numberString = data.substring(1, data.indexOf('e'));
-        BigInteger parsedData = ParserUtil.getAsNumber(numberString).orElseThrow();
+        long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        long multiplyLimit = limit / 10;
+        long accumulated = -(first - '0');
+        while (!cursor.peekIs(SUFFIX)) {
+            byte digit = cursor.peek();
+            if (digit < '0' || digit > '9') {
+                throw cursor.error("Invalid integer digit");
+            }
+            int digitValue = digit - '0';
+            if (accumulated < multiplyLimit || (accumulated * 10) < (limit + digitValue)) {
+                return OVERFLOW;
+            }
+            accumulated = (accumulated * 10) - digitValue;
+            cursor.next();
+        }
 
-        return ParseResult.success(data, parsedData, parsedLength);
+        return negative ? accumulated : -accumulated;
+    }
+
+    /**
+     * Continues an integer that overflowed a {@code long}, the cursor standing at the first digit that
+     * did not fit.
+     */
+    private static BigInteger readBigInteger(BencodeCursor cursor, int start) {
+        skipDigits(cursor);
+        int end = cursor.position();
+        cursor.position(start + 1);
+        var digits = cursor.readText(end - start - 1);
+        cursor.expect(SUFFIX);
+        return new BigInteger(digits);
+    }
+
+    private static void skipDigits(BencodeCursor cursor) {
+        while (!cursor.peekIs(SUFFIX)) {
+            byte digit = cursor.next();
+            if (digit < '0' || digit > '9') {
+                throw cursor.error("Invalid integer digit");
+            }
+        }
     }
 }
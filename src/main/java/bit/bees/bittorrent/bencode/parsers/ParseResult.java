@@ -11,11 +11,11 @@ public record ParseResult<T>(
         SUCCESS, FAILURE
     }
 
-    static <T> ParseResult<T> success(String input, T parsedData, int parsedLength) {
+    public static <T> ParseResult<T> success(String input, T parsedData, int parsedLength) {
         return new ParseResult<>(input, Status.SUCCESS, parsedData, parsedLength, null);
     }
 
-    static <T> ParseResult<T> failure(String input, Throwable error) {
+    public static <T> ParseResult<T> failure(String input, Throwable error) {
         return new ParseResult<>(input, Status.FAILURE, null, -1, error);
     }
 }
@@ -2,19 +2,57 @@ package bit.bees.bittorrent.bencode.parsers;
 
 import java.math.BigInteger;
 import java.util.Optional;
+import java.util.OptionalLong;
 
 public final class ParserUtil {
 
     public static boolean isNumber(String string) {
-        return getAsNumber(string).isPresent();
+        return string != null && isSignedDigits(string);
     }
 
     public static Optional<BigInteger> getAsNumber(String data) {
-        try {
-            return Optional.of(new BigInteger(data));
-        } catch (Exception e) {
+        if (!isNumber(data)) {
             return Optional.empty();
         }
+        OptionalLong longValue = getAsLong(data);
+        return Optional.of(longValue.isPresent() ? BigInteger.valueOf(longValue.getAsLong()) : new BigInteger(data));
+    }
+
+    /**
+     * Parses an optionally signed decimal, or returns empty if it is not one or does not fit into a
+     * {@code long}.
+     */
+    public static OptionalLong getAsLong(String data) {
+        if (!isNumber(data)) {
+            return OptionalLong.empty();
+        }
+        boolean negative = data.charAt(0) == '-';
+        int index = (negative || data.charAt(0) == '+') ? 1 : 0;
+        long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        long multiplyLimit = limit / 10;
+        long accumulated = 0;
+        for (; index < data.length(); index++) {
+            int digit = data.charAt(index) - '0';
+            if (accumulated < multiplyLimit || (accumulated * 10) < (limit + digit)) {
+                return OptionalLong.empty();
+            }
+            accumulated = (accumulated * 10) - digit;
+        }
+        return OptionalLong.of(negative ? accumulated : -accumulated);
+    }
+
+    private static boolean isSignedDigits(String string) {
+        int start = (!string.isEmpty() && (string.charAt(0) == '-' || string.charAt(0) == '+')) ? 1 : 0;
+        if (start == string.length()) {
+            return false;
+        }
+        for (int i = start; i < string.length(); i++) {
+            char c = string.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
     }
 
     private ParserUtil() {
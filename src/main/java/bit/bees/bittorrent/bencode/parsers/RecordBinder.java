@@ -0,0 +1,363 @@
+package bit.bees.bittorrent.bencode.parsers;
+
+import bit.bees.bittorrent.bencode.BencodeException;
+import bit.bees.bittorrent.bencode.BencodeKey;
+import bit.bees.bittorrent.bencode.ByteString;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.RecordComponent;
+import java.lang.reflect.Type;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decodes bencoded dictionaries straight into records, without building a {@code Map} first.
+ * <p>
+ * Each record component is bound to the dictionary key of its name, or to the key given by
+ * {@link BencodeKey}. Components may be {@code long}, {@code int} and {@code boolean} or their boxed
+ * types, {@code BigInteger}, {@code String} (decoded as UTF-8), {@code byte[]}, {@link ByteString},
+ * other records, {@code List}s of any of these, or {@code Object} and {@code Map<String, Object>} for
+ * values decoded as {@link ValueParser} does. Keys no component is bound to are skipped without being
+ * decoded. A missing key leaves its component {@code null}, except for primitive components, which
+ * must be present.
+ * <p>
+ * The codec of a record type is built once and cached: its keys sorted as bencode sorts them, so
+ * entries are matched in a single merge pass, and a method handle on the canonical constructor that
+ * takes primitive components from a {@code long[]}, so they are never boxed.
+ */
+@Component
+public class RecordBinder {
+
+    private static final char DICTIONARY_PREFIX = 'd';
+    private static final char LIST_PREFIX = 'l';
+    private static final char SUFFIX = 'e';
+    private static final int MAX_COMPONENTS = Long.SIZE;
+
+    private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(Object.class, Object[].class, long[].class);
+
+    private final StringParser stringParser;
+    private final NumberParser numberParser;
+    private final ValueParser valueParser;
+    private final int maxDepth;
+
+    private final ClassValue<RecordCodec> codecs = new ClassValue<>() {
+        @Override
+        protected RecordCodec computeValue(Class<?> type) {
+            return createCodec(type);
+        }
+    };
+
+    public RecordBinder(StringParser stringParser, NumberParser numberParser, ValueParser valueParser,
+                        @Value("${bencode.max-depth:" + ValueParser.DEFAULT_MAX_DEPTH + "}") int maxDepth) {
+        this.stringParser = stringParser;
+        this.numberParser = numberParser;
+        this.valueParser = valueParser;
+        this.maxDepth = maxDepth;
+    }
+
+    public <T extends Record> T decode(byte[] data, Class<T> type) {
+        return read(BencodeCursor.of(data), type);
+    }
+
+    /**
+     * Decodes the dictionary at the buffer's position, leaving the buffer's position unchanged.
+     */
+    public <T extends Record> T decode(ByteBuffer data, Class<T> type) {
+        return read(BencodeCursor.of(data), type);
+    }
+
+    /**
+     * Reads one dictionary at the cursor position into a record of the given type.
+     *
+     * @throws BencodeException if the input is malformed or does not fit the record
+     * @throws IllegalArgumentException if the record has components of unsupported types
+     */
+    public <T extends Record> T read(BencodeCursor cursor, Class<T> type) {
+        return type.cast(codecs.get(type).read(cursor, 1));
+    }
+
+    private RecordCodec createCodec(Class<?> type) {
+        if (!type.isRecord()) {
+            throw new IllegalArgumentException("%s is not a record".formatted(type.getName()));
+        }
+        RecordComponent[] components = type.getRecordComponents();
+        if (components.length > MAX_COMPONENTS) {
+            throw new IllegalArgumentException("%s has more than %d components".formatted(type.getName(), MAX_COMPONENTS));
+        }
+
+        var bindings = new ArrayList<Binding>(components.length);
+        var parameterTypes = new Class<?>[components.length];
+        int primitiveCount = 0;
+        int referenceCount = 0;
+        for (int i = 0; i < components.length; i++) {
+            RecordComponent component = components[i];
+            Class<?> componentType = component.getType();
+            parameterTypes[i] = componentType;
+            var annotation = component.getAnnotation(BencodeKey.class);
+            String key = annotation != null ? annotation.value() : component.getName();
+            bindings.add(componentType.isPrimitive()
+                    ? new Binding(key, i, primitiveCount++, primitiveReader(type, componentType), null)
+                    : new Binding(key, i, referenceCount++, null, referenceReader(type, component.getGenericType())));
+        }
+        bindings.sort(Comparator.comparing(Binding::bytes, Arrays::compareUnsigned));
+        for (int i = 1; i < bindings.size(); i++) {
+            if (Arrays.equals(bindings.get(i - 1).bytes(), bindings.get(i).bytes())) {
+                throw new IllegalArgumentException("%s binds key '%s' twice".formatted(type.getName(), bindings.get(i).key()));
+            }
+        }
+
+        return new RecordCodec(type, bindings.toArray(Binding[]::new), constructor(type, parameterTypes, bindings),
+                primitiveCount, referenceCount);
+    }
+
+    /**
+     * Canonical constructor adapted to {@code (Object[] references, long[] primitives)}, each component
+     * taken from its slot in one of the arrays.
+     */
+    private static MethodHandle constructor(Class<?> type, Class<?>[] parameterTypes, List<Binding> bindings) {
+        MethodHandle constructor;
+        try {
+            constructor = MethodHandles.privateLookupIn(type, MethodHandles.lookup())
+                    .findConstructor(type, MethodType.methodType(void.class, parameterTypes));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalArgumentException("Can not access the canonical constructor of %s".formatted(type.getName()), e);
+        }
+
+        var getters = new MethodHandle[parameterTypes.length];
+        var reorder = new int[parameterTypes.length];
+        for (Binding binding : bindings) {
+            Class<?> parameterType = parameterTypes[binding.component()];
+            MethodHandle getter;
+            if (parameterType.isPrimitive()) {
+                getter = MethodHandles.insertArguments(MethodHandles.arrayElementGetter(long[].class), 1, binding.slot());
+                getter = MethodHandles.explicitCastArguments(getter, MethodType.methodType(parameterType, long[].class));
+                reorder[binding.component()] = 1;
+            } else {
+                getter = MethodHandles.insertArguments(MethodHandles.arrayElementGetter(Object[].class), 1, binding.slot());
+                getter = getter.asType(MethodType.methodType(parameterType, Object[].class));
+            }
+            getters[binding.component()] = getter;
+        }
+
+        constructor = MethodHandles.filterArguments(constructor, 0, getters);
+        constructor = constructor.asType(constructor.type().changeReturnType(Object.class));
+        return MethodHandles.permuteArguments(constructor, CONSTRUCTOR_TYPE, reorder);
+    }
+
+    /**
+     * Reader for a primitive component, returning {@code boolean}s as {@code 0} or {@code 1}.
+     */
+    private PrimitiveReader primitiveReader(Class<?> record, Class<?> type) {
+        if (type == long.class) {
+            return NumberParser::readLong;
+        }
+        if (type == int.class) {
+            return this::readInt;
+        }
+        if (type == boolean.class) {
+            return cursor -> NumberParser.readLong(cursor) != 0 ? 1 : 0;
+        }
+        throw unsupported(record, type);
+    }
+
+    private ValueReader referenceReader(Class<?> record, Type type) {
+        if (type instanceof ParameterizedType parameterized && parameterized.getRawType() instanceof Class<?> raw) {
+            Type[] arguments = parameterized.getActualTypeArguments();
+            if (raw == List.class) {
+                ValueReader elementReader = referenceReader(record, arguments[0]);
+                return (cursor, depth) -> readList(cursor, depth, elementReader);
+            }
+            if (raw == Map.class && arguments[0] == String.class && arguments[1] == Object.class) {
+                return (cursor, depth) -> valueParser.readDictionary(cursor);
+            }
+        } else if (type instanceof Class<?> raw) {
+            if (raw == Long.class) {
+                return (cursor, depth) -> NumberParser.readLong(cursor);
+            }
+            if (raw == Integer.class) {
+                return (cursor, depth) -> readInt(cursor);
+            }
+            if (raw == Boolean.class) {
+                return (cursor, depth) -> NumberParser.readLong(cursor) != 0;
+            }
+            if (raw == BigInteger.class) {
+                return (cursor, depth) -> numberParser.read(cursor);
+            }
+            if (raw == String.class) {
+                return (cursor, depth) -> StringParser.readBytes(cursor).toString(StandardCharsets.UTF_8);
+            }
+            if (raw == byte[].class) {
+                return (cursor, depth) -> StringParser.readBytes(cursor).toByteArray();
+            }
+            if (raw == ByteString.class) {
+                return (cursor, depth) -> StringParser.readBytes(cursor);
+            }
+            if (raw == Object.class) {
+                return (cursor, depth) -> valueParser.readValue(cursor);
+            }
+            if (raw.isRecord()) {
+                // Looked up on use, so records may refer to themselves
+                return (cursor, depth) -> codecs.get(raw).read(cursor, depth + 1);
+            }
+        }
+        throw unsupported(record, type);
+    }
+
+    private long readInt(BencodeCursor cursor) {
+        long value = NumberParser.readLong(cursor);
+        if (value != (int) value) {
+            throw cursor.error("Integer %d does not fit into an int".formatted(value));
+        }
+        return (int) value;
+    }
+
+    private List<Object> readList(BencodeCursor cursor, int depth, ValueReader elementReader) {
+        checkDepth(cursor, depth + 1);
+        cursor.expect(LIST_PREFIX);
+        List<Object> items = new ArrayList<>();
+        while (!cursor.peekIs(SUFFIX)) {
+            items.add(elementReader.read(cursor, depth + 1));
+        }
+        cursor.expect(SUFFIX);
+        return items;
+    }
+
+    private void checkDepth(BencodeCursor cursor, int depth) {
+        if (depth > maxDepth) {
+            throw cursor.error("Nesting exceeds the limit of %d levels".formatted(maxDepth));
+        }
+    }
+
+    private static IllegalArgumentException unsupported(Class<?> record, Type type) {
+        return new IllegalArgumentException("Unsupported component type %s in %s".formatted(type.getTypeName(), record.getName()));
+    }
+
+    @FunctionalInterface
+    private interface PrimitiveReader {
+        long read(BencodeCursor cursor);
+    }
+
+    @FunctionalInterface
+    private interface ValueReader {
+        Object read(BencodeCursor cursor, int depth);
+    }
+
+    /**
+     * Component bound to a key. Exactly one of the readers is set, depending on whether the component
+     * goes into the primitive or the reference slots.
+     */
+    private record Binding(String key, byte[] bytes, int component, int slot,
+                           PrimitiveReader primitiveReader, ValueReader referenceReader) {
+
+        Binding(String key, int component, int slot, PrimitiveReader primitiveReader, ValueReader referenceReader) {
+            this(key, key.getBytes(StandardCharsets.UTF_8), component, slot, primitiveReader, referenceReader);
+        }
+    }
+
+    private final class RecordCodec {
+
+        private final Class<?> type;
+        private final Binding[] bindings;
+        private final MethodHandle constructor;
+        private final int primitiveCount;
+        private final int referenceCount;
+
+        RecordCodec(Class<?> type, Binding[] bindings, MethodHandle constructor, int primitiveCount, int referenceCount) {
+            this.type = type;
+            this.bindings = bindings;
+            this.constructor = constructor;
+            this.primitiveCount = primitiveCount;
+            this.referenceCount = referenceCount;
+        }
+
+        Object read(BencodeCursor cursor, int depth) {
+            checkDepth(cursor, depth);
+            cursor.expect(DICTIONARY_PREFIX);
+
+            var references = new Object[referenceCount];
+            var primitives = new long[primitiveCount];
+            long present = 0;
+            int next = 0;
+            int lastKeyEnd = -1;
+            int lastKeyLength = 0;
+            while (!cursor.peekIs(SUFFIX)) {
+                int keyLength = readKey(cursor, lastKeyEnd, lastKeyLength);
+                int keyOffset = cursor.position() - keyLength;
+                lastKeyEnd = cursor.position();
+                lastKeyLength = keyLength;
+
+                // Both key sequences are sorted, so bindings sorting before this key are absent
+                int order = 1;
+                while (next < bindings.length && (order = cursor.compareBytes(bindings[next].bytes(), keyOffset, keyLength)) < 0) {
+                    next++;
+                }
+                if (order != 0) {
+                    valueParser.skipValue(cursor);
+                    continue;
+                }
+
+                Binding binding = bindings[next];
+                try {
+                    if (binding.primitiveReader() != null) {
+                        primitives[binding.slot()] = binding.primitiveReader().read(cursor);
+                    } else {
+                        references[binding.slot()] = binding.referenceReader().read(cursor, depth);
+                    }
+                } catch (BencodeException e) {
+                    throw new BencodeException("Invalid value for '%s' of %s".formatted(binding.key(), type.getSimpleName()), e);
+                }
+                present |= 1L << binding.component();
+            }
+            cursor.expect(SUFFIX);
+
+            for (Binding binding : bindings) {
+                if (binding.primitiveReader() != null && (present & (1L << binding.component())) == 0) {
+                    throw cursor.error("Missing key '%s' of %s".formatted(binding.key(), type.getSimpleName()));
+                }
+            }
+            return construct(references, primitives);
+        }
+
+        /**
+         * Consumes a key and checks it does not sort before the previous one, see
+         * {@link ValueParser}.
+         */
+        private int readKey(BencodeCursor cursor, int lastKeyEnd, int lastKeyLength) {
+            if (!stringParser.canStartWith(cursor.peek())) {
+                throw cursor.error("Dictionary key must be a string");
+            }
+            int keyLength = StringParser.readLength(cursor);
+            int keyOffset = cursor.position();
+            cursor.skip(keyLength);
+            if (lastKeyEnd >= 0 && cursor.compareBytes(lastKeyEnd - lastKeyLength, lastKeyLength, keyOffset, keyLength) > 0) {
+                throw cursor.error("Keys are not in lexicographic order: last key = '%s', current key = '%s'"
+                        .formatted(cursor.text(lastKeyEnd - lastKeyLength, lastKeyLength, StandardCharsets.UTF_8),
+                                cursor.text(keyOffset, keyLength, StandardCharsets.UTF_8)));
+            }
+            return keyLength;
+        }
+
+        private Object construct(Object[] references, long[] primitives) {
+            try {
+                return (Object) constructor.invokeExact(references, primitives);
+            } catch (RuntimeException e) {
+                throw new BencodeException("Can not create %s: %s".formatted(type.getSimpleName(), e.getMessage()), e);
+            } catch (Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new BencodeException("Can not create %s".formatted(type.getSimpleName()), e);
+            }
+        }
+    }
+}
@@ -1,64 +1,136 @@
 package bit.bees.bittorrent.bencode.parsers;
 
 import bit.bees.bittorrent.bencode.BencodeException;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import bit.bees.bittorrent.bencode.ByteString;
 import org.springframework.stereotype.Component;
 
-import java.math.BigInteger;
-
-import static bit.bees.bittorrent.bencode.parsers.ParserUtil.getAsNumber;
+import java.nio.charset.StandardCharsets;
 
 @Component
 public class StringParser implements BencodeParser<String> {
 
-    private final Logger log = LoggerFactory.getLogger(StringParser.class);
-
     @Override
     public boolean isParsable(String data) {
-        log.debug("Checking if '{}' is parsable as string", data);
-        boolean isParsable = false;
-
-        if (data != null && !data.isEmpty()) {
-            int colonIndex = data.indexOf(':');
-            if (colonIndex > 0) {
-                var possibleNumberString = data.substring(0, colonIndex);
-                if (isValidNumberPrefix(possibleNumberString)) {
-                    var lengthOpt = getAsNumber(possibleNumberString);
-                    if (lengthOpt.isPresent()) {
-                        int stringLength = lengthOpt.get().intValue();
-                        isParsable = (stringLength >= 0) && ((data.length() - colonIndex - 1) >= stringLength);
-                    }
-                }
-            }
+        return parse(data).status() == ParseResult.Status.SUCCESS;
+    }
+
+    @Override
+    public ParseResult<String> parse(String data) {
+        if (data == null || data.isEmpty()) {
+            return ParseResult.failure(data, new BencodeException("'%s' is not parsable".formatted(data)));
         }
 
-        log.info("'{}' is{} parsable", data, (isParsable ? "" : " not"));
-        return isParsable;
+        var cursor = BencodeCursor.of(data);
+        try {
+            String parsedData = read(cursor);
+            return ParseResult.success(data, parsedData, cursor.consumed());
+        } catch (BencodeException e) {
+            return ParseResult.failure(data, new BencodeException("'%s' is not parsable".formatted(data), e));
+        }
     }
 
-    private static boolean isValidNumberPrefix(String possibleNumberString) {
-        return possibleNumberString.equals("0")
-                || possibleNumberString.matches("^[1-9].*");
+    @Override
+    public boolean canStartWith(byte prefix) {
+        return prefix >= '0' && prefix <= '9';
     }
 
+    /**
+     * Reads a byte string as text, one char per byte.
+     */
     @Override
-    public ParseResult<String> parse(String data) {
-        if (!isParsable(data)) {
-            BencodeException error = new BencodeException("'%s' is not parsable".formatted(data));
-            return ParseResult.failure(data, error);
+    public String read(BencodeCursor cursor) {
+        int length = readLength(cursor);
+        return cursor.readText(length);
+    }
+
+    /**
+     * Reads a byte string as a view of the input, without copying or decoding it.
+     */
+    public static ByteString readBytes(BencodeCursor cursor) {
+        int length = readLength(cursor);
+        return cursor.readBytes(length);
+    }
+
+    /**
+     * {@link ByteString} for binary input, {@code String} for text input.
+     */
+    @Override
+    public Object readValue(BencodeCursor cursor) {
+        return cursor.isTextInput() ? read(cursor) : readBytes(cursor);
+    }
+
+    /**
+     * Reads a dictionary key. Keys in binary input are decoded as UTF-8.
+     */
+    public String readKey(BencodeCursor cursor) {
+        return cursor.isTextInput() ? read(cursor) : readBytes(cursor).toString(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Consumes a byte string, validating its length prefix, without reading its content.
+     */
+    public void skip(BencodeCursor cursor) {
+        cursor.skip(readLength(cursor));
+    }
+
+    /**
+     * Reads the length prefix like {@link #readLength(BencodeCursor)}, but reports malformed input by
+     * returning {@code -1} instead of throwing.
+     */
+    static int scanLength(BencodeCursor cursor) {
+        if (!cursor.hasRemaining()) {
+            return -1;
+        }
+        byte first = cursor.next();
+        if (first < '0' || first > '9') {
+            return -1;
         }
 
-        int colonIndex = data.indexOf(':');
-        var lengthString = data.substring(0, colonIndex);
-        var length = getAsNumber(lengthString).orElse(BigInteger.ZERO);
+        long length = first - '0';
+        while (true) {
+            if (!cursor.hasRemaining()) {
+                return -1;
+            }
+            byte next = cursor.next();
+            if (next == ':') {
+                break;
+            }
+            if (next < '0' || next > '9' || length == 0) {
+                return -1;
+            }
+            length = (length * 10) + (next - '0');
+            if (length > cursor.remaining()) {
+                return -1;
+            }
+        }
+        return length > cursor.remaining() ? -1 : (int) length;
+    }
 
-        int stringStartIndex = colonIndex + 1;
-        int stringEndIndex = stringStartIndex + length.intValue() - 1;
+    /**
+     * Reads the {@code <length>:} prefix of a string. The length is a non-negative decimal without
+     * sign or leading zeros, and it must not exceed the input that is left after the colon.
+     */
+    static int readLength(BencodeCursor cursor) {
+        byte first = cursor.next();
+        if (first < '0' || first > '9') {
+            throw cursor.error("Expected string length");
+        }
 
-        String parsedData = data.substring(stringStartIndex, stringEndIndex + 1);
-        int parsedLength = (stringEndIndex + 1);
+        long length = first - '0';
+        byte next;
+        while ((next = cursor.next()) != ':') {
+            if (next < '0' || next > '9' || length == 0) {
+                throw cursor.error("Invalid string length");
+            }
+            length = (length * 10) + (next - '0');
+            if (length > cursor.remaining()) {
+                throw cursor.error("String length %d exceeds the input".formatted(length));
+            }
+        }
 
-        return ParseResult.success(data, parsedData, parsedLength);
+        if (length > cursor.remaining()) {
+            throw cursor.error("String length %d exceeds the input".formatted(length));
+        }
+        return (int) length;
     }
 }
@@ -0,0 +1,8 @@
+package bit.bees.bittorrent.bencode.parsers;
+
+/**
+ * Values the {@link ValueParser} read through a {@link BencodeCursor}, by type, dictionary keys counting
+ * as strings, and the deepest nesting among them, {@code 0} for a lone string or integer.
+ */
+public record TokenCounts(int strings, int integers, int lists, int dictionaries, int depth) {
+}
@@ -0,0 +1,311 @@
+package bit.bees.bittorrent.bencode.parsers;
+
+import bit.bees.bittorrent.bencode.BencodeException;
+import bit.bees.bittorrent.bencode.ByteString;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Recursive-descent parser for values of any type, and the engine behind {@link ListParser},
+ * {@link DictionaryParser} and the {@code Decoder}.
+ * <p>
+ * Every value is dispatched on its leading byte with a {@code switch}, so no parser is asked in turn
+ * and nothing is allocated for the dispatch. Lists and dictionaries nest to any depth up to a limit,
+ * {@value #DEFAULT_MAX_DEPTH} unless {@code bencode.max-depth} says otherwise, which keeps hostile
+ * input from exhausting the stack.
+ */
+@Component
+public class ValueParser implements BencodeParser<Object> {
+
+    public static final int DEFAULT_MAX_DEPTH = 1024;
+
+    private static final char LIST_PREFIX = 'l';
+    private static final char DICTIONARY_PREFIX = 'd';
+    private static final char SUFFIX = 'e';
+
+    private final StringParser stringParser;
+    private final NumberParser numberParser;
+    private final KeyCache keyCache;
+    private final int maxDepth;
+
+    public ValueParser(StringParser stringParser, NumberParser numberParser, KeyCache keyCache,
+                       @Value("${bencode.max-depth:" + DEFAULT_MAX_DEPTH + "}") int maxDepth) {
+        this.stringParser = stringParser;
+        this.numberParser = numberParser;
+        this.keyCache = keyCache;
+        this.maxDepth = maxDepth;
+    }
+
+    /**
+     * Validates the input like {@link #skipValue(BencodeCursor)} does, building no values.
+     */
+    @Override
+    public boolean isParsable(String data) {
+        return isValid(data, DICTIONARY_PREFIX, false);
+    }
+
+    @Override
+    public ParseResult<Object> parse(String data) {
+        if (data == null || data.isEmpty()) {
+            return ParseResult.failure(data, new BencodeException("'%s' is not parsable".formatted(data)));
+        }
+
+        var cursor = BencodeCursor.of(data);
+        try {
+            Object parsedData = read(cursor);
+            return ParseResult.success(data, parsedData, cursor.consumed());
+        } catch (BencodeException e) {
+            return ParseResult.failure(data, new BencodeException("'%s' is not parsable".formatted(data), e));
+        }
+    }
+
+    @Override
+    public boolean canStartWith(byte prefix) {
+        return prefix == LIST_PREFIX || prefix == DICTIONARY_PREFIX
+                || numberParser.canStartWith(prefix) || stringParser.canStartWith(prefix);
+    }
+
+    @Override
+    public Object read(BencodeCursor cursor) {
+        return readValue(cursor);
+    }
+
+    @Override
+    public Object readValue(BencodeCursor cursor) {
+        return readValue(cursor, 0);
+    }
+
+    public List<Object> readList(BencodeCursor cursor) {
+        return readList(cursor, 1);
+    }
+
+    public Map<String, Object> readDictionary(BencodeCursor cursor) {
+        return readDictionary(cursor, 1, null);
+    }
+
+    /**
+     * Reads a dictionary and puts the exact encoded bytes of each of its values into {@code rawValues},
+     * e.g. to hash the {@code info} value of a torrent as it was stored. The raw bytes are views of the
+     * input, recorded in the same pass.
+     */
+    public Map<String, Object> readDictionary(BencodeCursor cursor, Map<String, ByteString> rawValues) {
+        return readDictionary(cursor, 1, rawValues);
+    }
+
+    /**
+     * Consumes one value, checking everything {@link #readValue(BencodeCursor)} checks, key order and
+     * nesting depth included, without building it. Keys are compared as raw bytes, so nothing is
+     * allocated per key or value.
+     */
+    public void skipValue(BencodeCursor cursor) {
+        skipValue(cursor, 0);
+    }
+
+    /**
+     * Whether the text starts with a valid value, optionally required to start with the given prefix.
+     * Invalid input is common here, so it is told apart without throwing.
+     */
+    boolean isValid(String data, char prefix, boolean prefixRequired) {
+        if (data == null || data.isEmpty()) {
+            return false;
+        }
+        var cursor = BencodeCursor.of(data);
+        return (!prefixRequired || cursor.peekIs(prefix)) && scanValue(cursor, 0);
+    }
+
+    private Object readValue(BencodeCursor cursor, int depth) {
+        byte prefix = cursor.peek();
+        return switch (prefix) {
+            case 'i' -> {
+                cursor.countInteger();
+                yield numberParser.readValue(cursor);
+            }
+            case LIST_PREFIX -> readList(cursor, depth + 1);
+            case DICTIONARY_PREFIX -> readDictionary(cursor, depth + 1, null);
+            case '0', '1', '2', '3', '4', '5', '6', '7', '8', '9' -> {
+                cursor.countString();
+                yield stringParser.readValue(cursor);
+            }
+            default -> throw cursor.error("Unexpected '%c'".formatted((char) prefix));
+        };
+    }
+
+    private List<Object> readList(BencodeCursor cursor, int depth) {
+        checkDepth(cursor, depth);
+        cursor.expect(LIST_PREFIX);
+        cursor.countList(depth);
+
+        List<Object> items = new ArrayList<>();
+        while (!cursor.peekIs(SUFFIX)) {
+            items.add(readValue(cursor, depth));
+        }
+        cursor.expect(SUFFIX);
+
+        return items;
+    }
+
+    private Map<String, Object> readDictionary(BencodeCursor cursor, int depth, Map<String, ByteString> rawValues) {
+        checkDepth(cursor, depth);
+        cursor.expect(DICTIONARY_PREFIX);
+        cursor.countDictionary(depth);
+
+        int lastKeyEnd = -1;
+        int lastKeyLength = 0;
+        Map<String, Object> keyValues = new HashMap<>();
+
+        while (!cursor.peekIs(SUFFIX)) {
+            int keyLength = readKey(cursor, lastKeyEnd, lastKeyLength);
+            cursor.countString();
+            String key = keyText(cursor, cursor.position() - keyLength, keyLength);
+            int valueStart = cursor.position();
+            keyValues.put(key, readValue(cursor, depth));
+            if (rawValues != null) {
+                rawValues.put(key, cursor.consumedSince(valueStart));
+            }
+            lastKeyEnd = valueStart;
+            lastKeyLength = keyLength;
+        }
+        cursor.expect(SUFFIX);
+
+        return keyValues;
+    }
+
+    private void skipValue(BencodeCursor cursor, int depth) {
+        byte prefix = cursor.peek();
+        switch (prefix) {
+            case 'i' -> numberParser.skip(cursor);
+            case LIST_PREFIX -> {
+                checkDepth(cursor, depth + 1);
+                cursor.expect(LIST_PREFIX);
+                while (!cursor.peekIs(SUFFIX)) {
+                    skipValue(cursor, depth + 1);
+                }
+                cursor.expect(SUFFIX);
+            }
+            case DICTIONARY_PREFIX -> {
+                checkDepth(cursor, depth + 1);
+                cursor.expect(DICTIONARY_PREFIX);
+                int lastKeyEnd = -1;
+                int lastKeyLength = 0;
+                while (!cursor.peekIs(SUFFIX)) {
+                    lastKeyLength = readKey(cursor, lastKeyEnd, lastKeyLength);
+                    lastKeyEnd = cursor.position();
+                    skipValue(cursor, depth + 1);
+                }
+                cursor.expect(SUFFIX);
+            }
+            case '0', '1', '2', '3', '4', '5', '6', '7', '8', '9' -> stringParser.skip(cursor);
+            default -> throw cursor.error("Unexpected '%c'".formatted((char) prefix));
+        }
+    }
+
+    /**
+     * Consumes one value checking what {@link #skipValue(BencodeCursor, int)} checks, but reports
+     * invalid input by returning {@code false} instead of throwing.
+     */
+    private boolean scanValue(BencodeCursor cursor, int depth) {
+        if (!cursor.hasRemaining()) {
+            return false;
+        }
+        switch (cursor.peek()) {
+            case 'i' -> {
+                return NumberParser.scan(cursor);
+            }
+            case LIST_PREFIX -> {
+                if (depth >= maxDepth) {
+                    return false;
+                }
+                cursor.skip(1);
+                while (!cursor.peekIs(SUFFIX)) {
+                    if (!scanValue(cursor, depth + 1)) {
+                        return false;
+                    }
+                }
+                cursor.skip(1);
+                return true;
+            }
+            case DICTIONARY_PREFIX -> {
+                if (depth >= maxDepth) {
+                    return false;
+                }
+                cursor.skip(1);
+                int lastKeyEnd = -1;
+                int lastKeyLength = 0;
+                while (!cursor.peekIs(SUFFIX)) {
+                    int keyLength = StringParser.scanLength(cursor);
+                    if (keyLength < 0) {
+                        return false;
+                    }
+                    int keyOffset = cursor.position();
+                    cursor.skip(keyLength);
+                    if (lastKeyEnd >= 0 && cursor.compareBytes(lastKeyEnd - lastKeyLength, lastKeyLength, keyOffset, keyLength) > 0) {
+                        return false;
+                    }
+                    lastKeyEnd = cursor.position();
+                    lastKeyLength = keyLength;
+                    if (!scanValue(cursor, depth + 1)) {
+                        return false;
+                    }
+                }
+                cursor.skip(1);
+                return true;
+            }
+            case '0', '1', '2', '3', '4', '5', '6', '7', '8', '9' -> {
+                int length = StringParser.scanLength(cursor);
+                if (length < 0) {
+                    return false;
+                }
+                cursor.skip(length);
+                return true;
+            }
+            default -> {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Consumes a key and checks that it does not sort before the previous key of the dictionary, which
+     * ends at {@code lastKeyEnd} ({@code -1} for none). Keys are compared in place as unsigned bytes, as
+     * bencode requires, so nothing is allocated.
+     *
+     * @return the length of the key, which ends at the cursor position
+     */
+    private int readKey(BencodeCursor cursor, int lastKeyEnd, int lastKeyLength) {
+        if (!stringParser.canStartWith(cursor.peek())) {
+            throw cursor.error("Dictionary key must be a string");
+        }
+        int keyLength = StringParser.readLength(cursor);
+        int keyOffset = cursor.position();
+        cursor.skip(keyLength);
+        int lastKeyOffset = lastKeyEnd - lastKeyLength;
+        if (lastKeyEnd >= 0 && cursor.compareBytes(lastKeyOffset, lastKeyLength, keyOffset, keyLength) > 0) {
+            throw cursor.error("Keys are not in lexicographic order: last key = '%s', current key = '%s'"
+                    .formatted(keyText(cursor, lastKeyOffset, lastKeyLength), keyText(cursor, keyOffset, keyLength)));
+        }
+        return keyLength;
+    }
+
+    /**
+     * Keys of text input are read one char per byte, keys of binary input are decoded as UTF-8 through
+     * the {@link KeyCache}.
+     */
+    private String keyText(BencodeCursor cursor, int offset, int length) {
+        if (cursor.isTextInput()) {
+            return cursor.text(offset, length, StandardCharsets.ISO_8859_1);
+        }
+        return keyCache.key(cursor.buffer(), offset, length);
+    }
+
+    private void checkDepth(BencodeCursor cursor, int depth) {
+        if (depth > maxDepth) {
+            throw cursor.error("Nesting exceeds the limit of %d levels".formatted(maxDepth));
+        }
+    }
+}
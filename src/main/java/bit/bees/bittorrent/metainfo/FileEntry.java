@@ -0,0 +1,13 @@
+package bit.bees.bittorrent.metainfo;
+
+import java.util.List;
+
+/**
+ * File of a torrent, its path given as directory and file name components below the torrent's root.
+ */
+public record FileEntry(List<String> path, long length) {
+
+    public FileEntry {
+        path = List.copyOf(path);
+    }
+}
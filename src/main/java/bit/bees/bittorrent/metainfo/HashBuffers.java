@@ -0,0 +1,42 @@
+package bit.bees.bittorrent.metainfo;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * The direct buffers {@link TorrentBuilder}s read content into for hashing: {@value #BUFFER_COUNT} of
+ * {@value #BUFFER_SIZE} bytes at most, however many cores there are and builds run at once. Buffers are
+ * allocated when first needed and kept for the next build, since the memory of a dropped direct buffer
+ * is only released by a garbage collection. Thread-safe.
+ */
+final class HashBuffers {
+
+    /** Holds a whole piece of the largest length, and a whole number of pieces of any other. */
+    static final int BUFFER_SIZE = (int) TorrentBuilder.MAX_PIECE_LENGTH;
+    static final int BUFFER_COUNT = 4;
+
+    private final BlockingQueue<ByteBuffer> idle = new ArrayBlockingQueue<>(BUFFER_COUNT);
+    private int allocated;
+
+    /**
+     * A cleared buffer, waiting for one to be released if all of them are in use.
+     */
+    ByteBuffer take() throws InterruptedException {
+        ByteBuffer buffer = idle.poll();
+        if (buffer != null) {
+            return buffer;
+        }
+        synchronized (this) {
+            if (allocated < BUFFER_COUNT) {
+                allocated++;
+                return ByteBuffer.allocateDirect(BUFFER_SIZE);
+            }
+        }
+        return idle.take();
+    }
+
+    void release(ByteBuffer buffer) {
+        idle.add(buffer.clear());
+    }
+}
@@ -0,0 +1,27 @@
+package bit.bees.bittorrent.metainfo;
+
+import java.util.List;
+
+/**
+ * The {@code info} dictionary of a torrent.
+ * <p>
+ * Single-file torrents are described by one {@link FileEntry} whose path is just the name, so both
+ * layouts can be handled alike.
+ *
+ * @param singleFile whether the torrent has the single-file layout, its name being the file name rather
+ *                   than the root directory
+ */
+public record InfoDictionary(String name, long pieceLength, PieceHashes pieces, List<FileEntry> files, boolean singleFile) {
+
+    public InfoDictionary {
+        files = List.copyOf(files);
+    }
+
+    public long totalLength() {
+        long total = 0;
+        for (FileEntry file : files) {
+            total += file.length();
+        }
+        return total;
+    }
+}
@@ -0,0 +1,60 @@
+package bit.bees.bittorrent.metainfo;
+
+import bit.bees.bittorrent.bencode.ByteString;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Info hash of a torrent: the digest of the exact encoded bytes of its {@code info} dictionary.
+ * <p>
+ * The digest is computed over the bytes as they were stored, never over a re-encoded dictionary,
+ * which could differ from the original and would give a hash no peer or tracker knows.
+ */
+public record InfoHash(Version version, ByteString digest) {
+
+    public enum Version {
+        /** SHA-1, the original info hash. */
+        V1("SHA-1"),
+        /** SHA-256 as defined by BEP 52. */
+        V2("SHA-256");
+
+        private final String algorithm;
+
+        Version(String algorithm) {
+            this.algorithm = algorithm;
+        }
+    }
+
+    /**
+     * Hashes the encoded {@code info} dictionary.
+     */
+    public static InfoHash of(Version version, ByteString rawInfo) {
+        MessageDigest messageDigest;
+        try {
+            messageDigest = MessageDigest.getInstance(version.algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("%s is not available".formatted(version.algorithm), e);
+        }
+        messageDigest.update(rawInfo.asReadOnlyBuffer());
+        return new InfoHash(version, ByteString.of(messageDigest.digest()));
+    }
+
+    /**
+     * The 20 bytes identifying the torrent to trackers and peers. For v2 this is the SHA-256 digest
+     * truncated as BEP 52 specifies.
+     */
+    public ByteString truncated() {
+        return digest.substring(0, 20);
+    }
+
+    public String toHex() {
+        return HexFormat.of().formatHex(digest.toByteArray());
+    }
+
+    @Override
+    public String toString() {
+        return version + ":" + toHex();
+    }
+}
@@ -0,0 +1,21 @@
+package bit.bees.bittorrent.metainfo;
+
+import java.nio.file.Path;
+
+/**
+ * Outcome of hashing one torrent file of a batch: either its info hash or the error that prevented it.
+ */
+public record InfoHashResult(Path torrentFile, InfoHash infoHash, Exception error) {
+
+    public static InfoHashResult success(Path torrentFile, InfoHash infoHash) {
+        return new InfoHashResult(torrentFile, infoHash, null);
+    }
+
+    public static InfoHashResult failure(Path torrentFile, Exception error) {
+        return new InfoHashResult(torrentFile, null, error);
+    }
+
+    public boolean isSuccess() {
+        return error == null;
+    }
+}
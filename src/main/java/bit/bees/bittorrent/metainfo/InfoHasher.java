@@ -0,0 +1,51 @@
+package bit.bees.bittorrent.metainfo;
+
+import bit.bees.bittorrent.bencode.BencodeException;
+import bit.bees.bittorrent.bencode.ByteString;
+import bit.bees.bittorrent.bencode.LazyDictionary;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Computes info hashes straight from torrent files.
+ * <p>
+ * Only as much of a file is decoded as it takes to find the {@code info} value: the top-level
+ * dictionary is read lazily and the value is skipped structurally, after which its bytes are hashed
+ * in place from the memory mapped file.
+ */
+@Service
+public class InfoHasher {
+
+    public InfoHash hash(Path torrentFile, InfoHash.Version version) throws IOException {
+        ByteString rawInfo;
+        try {
+            rawInfo = LazyDictionary.of(MetainfoLoader.map(torrentFile)).getRaw("info");
+        } catch (BencodeException e) {
+            throw new MetainfoException("'%s' is not a valid torrent: %s".formatted(torrentFile, e.getMessage()), e);
+        }
+        if (rawInfo == null) {
+            throw new MetainfoException("'%s' is not a valid torrent: Missing key 'info'".formatted(torrentFile));
+        }
+        return InfoHash.of(version, rawInfo);
+    }
+
+    /**
+     * Hashes the files in parallel on the common fork-join pool. Results come in the order of the
+     * given files; a file that can not be read or decoded yields a failed result and does not stop
+     * the others.
+     */
+    public List<InfoHashResult> hashAll(List<Path> torrentFiles, InfoHash.Version version) {
+        return torrentFiles.parallelStream()
+                .map(torrentFile -> {
+                    try {
+                        return InfoHashResult.success(torrentFile, hash(torrentFile, version));
+                    } catch (IOException | RuntimeException e) {
+                        return InfoHashResult.failure(torrentFile, e);
+                    }
+                })
+                .toList();
+    }
+}
@@ -0,0 +1,27 @@
+package bit.bees.bittorrent.metainfo;
+
+import bit.bees.bittorrent.bencode.ByteString;
+
+import java.util.List;
+
+/**
+ * Decoded {@code .torrent} file.
+ *
+ * @param announce     tracker URL, {@code null} for trackerless torrents
+ * @param announceList tracker tiers (BEP 12), empty if the torrent has none
+ * @param rawInfo      the {@code info} dictionary exactly as it was encoded in the file
+ */
+public record Metainfo(String announce, List<List<String>> announceList, InfoDictionary info, ByteString rawInfo) {
+
+    public Metainfo {
+        announceList = announceList.stream().map(List::copyOf).toList();
+    }
+
+    public InfoHash infoHash() {
+        return infoHash(InfoHash.Version.V1);
+    }
+
+    public InfoHash infoHash(InfoHash.Version version) {
+        return InfoHash.of(version, rawInfo);
+    }
+}
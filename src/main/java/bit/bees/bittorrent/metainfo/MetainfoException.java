@@ -0,0 +1,11 @@
+package bit.bees.bittorrent.metainfo;
+
+public class MetainfoException extends RuntimeException {
+    public MetainfoException(String message) {
+        super(message);
+    }
+
+    public MetainfoException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
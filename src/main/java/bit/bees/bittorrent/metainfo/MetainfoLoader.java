@@ -0,0 +1,171 @@
+package bit.bees.bittorrent.metainfo;
+
+import bit.bees.bittorrent.bencode.BencodeException;
+import bit.bees.bittorrent.bencode.ByteString;
+import bit.bees.bittorrent.bencode.parsers.BencodeCursor;
+import bit.bees.bittorrent.bencode.parsers.DictionaryParser;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads {@code .torrent} files into {@link Metainfo}.
+ * <p>
+ * Files are memory mapped and decoded in place by the {@link DictionaryParser}, whose byte strings are
+ * views of the mapping. The piece hashes, usually the bulk of a torrent, are therefore neither read
+ * eagerly nor copied; the mapping lives as long as the {@link PieceHashes} referring to it. The exact
+ * bytes of the {@code info} dictionary are recorded in the same pass for computing the {@link InfoHash}.
+ */
+@Service
+public class MetainfoLoader {
+
+    private final DictionaryParser dictionaryParser;
+
+    public MetainfoLoader(DictionaryParser dictionaryParser) {
+        this.dictionaryParser = dictionaryParser;
+    }
+
+    public Metainfo load(Path torrentFile) throws IOException {
+        ByteBuffer mapped = map(torrentFile);
+        try {
+            return read(mapped);
+        } catch (MetainfoException e) {
+            throw new MetainfoException("'%s' is not a valid torrent: %s".formatted(torrentFile, e.getMessage()), e);
+        }
+    }
+
+    /**
+     * Maps the whole torrent file read-only. The mapping is released once the buffer and every view of
+     * it are unreachable.
+     */
+    static ByteBuffer map(Path torrentFile) throws IOException {
+        try (var channel = FileChannel.open(torrentFile, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new MetainfoException("'%s' is too large for a torrent file".formatted(torrentFile));
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+    }
+
+    public Metainfo read(byte[] data) {
+        return read(ByteBuffer.wrap(data));
+    }
+
+    /**
+     * Reads the torrent held by the remaining bytes of the buffer, without moving its position. The
+     * buffer's content must not change while the returned metainfo is in use.
+     */
+    public Metainfo read(ByteBuffer data) {
+        var cursor = BencodeCursor.of(data);
+        Map<String, Object> torrent;
+        var rawValues = new HashMap<String, ByteString>();
+        try {
+            torrent = dictionaryParser.read(cursor, rawValues);
+        } catch (BencodeException e) {
+            throw new MetainfoException(e.getMessage(), e);
+        }
+        if (cursor.hasRemaining()) {
+            throw new MetainfoException("Unexpected data after the torrent at offset %d".formatted(cursor.consumed()));
+        }
+
+        var announce = optional(torrent, "announce", ByteString.class);
+        var announceList = new ArrayList<List<String>>();
+        var tiers = optional(torrent, "announce-list", List.class);
+        if (tiers != null) {
+            for (Object tier : tiers) {
+                announceList.add(strings(expect(tier, "announce-list", List.class)));
+            }
+        }
+        return new Metainfo(
+                announce == null ? null : announce.toString(),
+                announceList,
+                info(required(torrent, "info", Map.class)),
+                rawValues.get("info"));
+    }
+
+    private static InfoDictionary info(Map<?, ?> info) {
+        var name = pathComponent(required(info, "name", ByteString.class).toString(), "name");
+        long pieceLength = required(info, "piece length", Long.class);
+        if (pieceLength <= 0) {
+            throw new MetainfoException("Invalid piece length %d".formatted(pieceLength));
+        }
+        var pieces = PieceHashes.of(required(info, "pieces", ByteString.class));
+
+        var length = optional(info, "length", Long.class);
+        var files = optional(info, "files", List.class);
+        if ((length == null) == (files == null)) {
+            throw new MetainfoException("Expected exactly one of 'length' and 'files'");
+        }
+        if (length != null) {
+            checkLength(length);
+            return new InfoDictionary(name, pieceLength, pieces, List.of(new FileEntry(List.of(name), length)), true);
+        }
+
+        var fileEntries = new ArrayList<FileEntry>(files.size());
+        for (Object file : files) {
+            var entry = expect(file, "files", Map.class);
+            var path = strings(required(entry, "path", List.class));
+            if (path.isEmpty()) {
+                throw new MetainfoException("Empty path in 'files'");
+            }
+            path.forEach(component -> pathComponent(component, "path"));
+            fileEntries.add(new FileEntry(path, checkLength(required(entry, "length", Long.class))));
+        }
+        return new InfoDictionary(name, pieceLength, pieces, fileEntries, false);
+    }
+
+    private static long checkLength(long length) {
+        if (length < 0) {
+            throw new MetainfoException("Invalid file length %d".formatted(length));
+        }
+        return length;
+    }
+
+    /**
+     * Checks a file or directory name, which must stay within the directory it is resolved against.
+     */
+    private static String pathComponent(String component, String key) {
+        if (component.isEmpty() || component.equals(".") || component.equals("..")
+                || component.indexOf('/') >= 0 || component.indexOf('\\') >= 0) {
+            throw new MetainfoException("Invalid file name '%s' in '%s'".formatted(component, key));
+        }
+        return component;
+    }
+
+    private static List<String> strings(List<?> values) {
+        var strings = new ArrayList<String>(values.size());
+        for (Object value : values) {
+            strings.add(expect(value, "string list", ByteString.class).toString());
+        }
+        return strings;
+    }
+
+    private static <T> T required(Map<?, ?> dictionary, String key, Class<T> type) {
+        T value = optional(dictionary, key, type);
+        if (value == null) {
+            throw new MetainfoException("Missing key '%s'".formatted(key));
+        }
+        return value;
+    }
+
+    private static <T> T optional(Map<?, ?> dictionary, String key, Class<T> type) {
+        Object value = dictionary.get(key);
+        return value == null ? null : expect(value, key, type);
+    }
+
+    private static <T> T expect(Object value, String name, Class<T> type) {
+        if (!type.isInstance(value)) {
+            throw new MetainfoException("Unexpected %s in '%s'".formatted(value.getClass().getSimpleName(), name));
+        }
+        return type.cast(value);
+    }
+}
@@ -0,0 +1,75 @@
+package bit.bees.bittorrent.metainfo;
+
+import bit.bees.bittorrent.bencode.ByteString;
+
+import java.nio.ByteBuffer;
+
+/**
+ * SHA-1 hashes of all pieces of a torrent, addressed by piece index.
+ * <p>
+ * The hashes stay in the bytes they were decoded from, typically the memory mapped torrent file, and
+ * are never copied into per-piece objects: {@link #hash(int)} returns a view and
+ * {@link #matches(int, byte[])} compares in place.
+ */
+public final class PieceHashes {
+
+    public static final int HASH_LENGTH = 20;
+
+    private final ByteString hashes;
+
+    private PieceHashes(ByteString hashes) {
+        this.hashes = hashes;
+    }
+
+    /**
+     * Piece hashes over the concatenated 20 byte SHA-1 digests of the {@code pieces} value.
+     */
+    public static PieceHashes of(ByteString hashes) {
+        if (hashes.length() % HASH_LENGTH != 0) {
+            throw new MetainfoException("Length of the piece hashes %d is not a multiple of %d".formatted(hashes.length(), HASH_LENGTH));
+        }
+        return new PieceHashes(hashes);
+    }
+
+    public int count() {
+        return hashes.length() / HASH_LENGTH;
+    }
+
+    /**
+     * View of the hash of the piece, sharing the underlying bytes.
+     */
+    public ByteString hash(int index) {
+        checkIndex(index);
+        return hashes.substring(index * HASH_LENGTH, (index + 1) * HASH_LENGTH);
+    }
+
+    /**
+     * Whether the digest is the expected hash of the piece.
+     */
+    public boolean matches(int index, byte[] digest) {
+        checkIndex(index);
+        if (digest.length != HASH_LENGTH) {
+            return false;
+        }
+        int offset = index * HASH_LENGTH;
+        for (int i = 0; i < HASH_LENGTH; i++) {
+            if (hashes.byteAt(offset + i) != digest[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Read-only buffer over all hashes, piece {@code i} starting at {@code i * HASH_LENGTH}.
+     */
+    public ByteBuffer asReadOnlyBuffer() {
+        return hashes.asReadOnlyBuffer();
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= count()) {
+            throw new IndexOutOfBoundsException("Piece %d is out of bounds for %d pieces".formatted(index, count()));
+        }
+    }
+}
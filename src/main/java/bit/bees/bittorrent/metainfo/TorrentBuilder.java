@@ -0,0 +1,295 @@
+package bit.bees.bittorrent.metainfo;
+
+import bit.bees.bittorrent.bencode.ByteString;
+import bit.bees.bittorrent.bencode.encoders.Encoder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Builds a {@code .torrent} file for a file or a directory tree.
+ * <p>
+ * The content is read sequentially, file after file, into a few direct buffers holding whole pieces,
+ * which the {@link TorrentCreator} shares among its builds. The pieces of each filled buffer are split
+ * among a pool of workers for hashing while reading goes on into the next, so a single pass over the
+ * disk keeps every core busy and memory stays bounded by the buffers, see {@link HashBuffers}. Workers
+ * store each hash at its piece's position, which puts them back in order however the work was
+ * scheduled. The finished torrent is streamed through the bencode {@link Encoder} into
+ * the file; the piece hashes are written from the array they were computed into.
+ * <p>
+ * Builders are obtained from {@link TorrentCreator} and are meant for a single torrent.
+ */
+public final class TorrentBuilder {
+
+    static final long MIN_PIECE_LENGTH = 16 * 1024;
+    static final long MAX_PIECE_LENGTH = 16 * 1024 * 1024;
+    private static final long TARGET_PIECE_COUNT = 1500;
+
+    private static final ThreadLocal<MessageDigest> SHA1 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is not available", e);
+        }
+    });
+
+    private final Path source;
+    private final Encoder encoder;
+    private final InfoHasher infoHasher;
+    private final int parallelism;
+    private final HashBuffers buffers;
+
+    private String announce;
+    private List<List<String>> announceList = List.of();
+    private long pieceLength;
+    private String comment;
+    private String createdBy;
+    private Instant creationDate = Instant.now();
+    private boolean privateTorrent;
+
+    TorrentBuilder(Path source, Encoder encoder, InfoHasher infoHasher, int parallelism, HashBuffers buffers) {
+        this.source = source;
+        this.encoder = encoder;
+        this.infoHasher = infoHasher;
+        this.parallelism = parallelism;
+        this.buffers = buffers;
+    }
+
+    public TorrentBuilder announce(String announce) {
+        this.announce = announce;
+        return this;
+    }
+
+    public TorrentBuilder announceList(List<List<String>> announceList) {
+        this.announceList = announceList;
+        return this;
+    }
+
+    /**
+     * Fixes the piece length, a power of two from 16 KiB to 16 MiB. Left unset, it is chosen from the
+     * total size for about {@value #TARGET_PIECE_COUNT} pieces.
+     */
+    public TorrentBuilder pieceLength(long pieceLength) {
+        if (pieceLength < MIN_PIECE_LENGTH || pieceLength > MAX_PIECE_LENGTH || Long.bitCount(pieceLength) != 1) {
+            throw new IllegalArgumentException("Piece length %d is not a power of two from %d to %d"
+                    .formatted(pieceLength, MIN_PIECE_LENGTH, MAX_PIECE_LENGTH));
+        }
+        this.pieceLength = pieceLength;
+        return this;
+    }
+
+    public TorrentBuilder comment(String comment) {
+        this.comment = comment;
+        return this;
+    }
+
+    public TorrentBuilder createdBy(String createdBy) {
+        this.createdBy = createdBy;
+        return this;
+    }
+
+    /**
+     * Creation date to record, the time the builder was created by default, {@code null} for none.
+     */
+    public TorrentBuilder creationDate(Instant creationDate) {
+        this.creationDate = creationDate;
+        return this;
+    }
+
+    public TorrentBuilder privateTorrent(boolean privateTorrent) {
+        this.privateTorrent = privateTorrent;
+        return this;
+    }
+
+    /**
+     * Hashes the content and writes the torrent file.
+     *
+     * @return the info hash of the new torrent
+     */
+    public InfoHash write(Path torrentFile) throws IOException {
+        var files = listFiles();
+        long totalLength = 0;
+        for (SourceFile file : files) {
+            totalLength += file.length();
+        }
+        long chosenPieceLength = pieceLength > 0 ? pieceLength : defaultPieceLength(totalLength);
+        byte[] hashes = hashPieces(files, totalLength, (int) chosenPieceLength);
+
+        try (var channel = FileChannel.open(torrentFile, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            encoder.encode(torrent(files, chosenPieceLength, hashes), channel);
+        }
+        return infoHasher.hash(torrentFile, InfoHash.Version.V1);
+    }
+
+    /**
+     * Power of two giving about {@value #TARGET_PIECE_COUNT} pieces, within 16 KiB and 16 MiB.
+     */
+    static long defaultPieceLength(long totalLength) {
+        long pieceLength = Long.highestOneBit(Math.max(1, totalLength / TARGET_PIECE_COUNT));
+        return Math.clamp(pieceLength, MIN_PIECE_LENGTH, MAX_PIECE_LENGTH);
+    }
+
+    private List<SourceFile> listFiles() throws IOException {
+        if (Files.isRegularFile(source)) {
+            return List.of(new SourceFile(source, List.of(), Files.size(source)));
+        }
+        if (!Files.isDirectory(source)) {
+            throw new MetainfoException("'%s' is neither a file nor a directory".formatted(source));
+        }
+        var files = new ArrayList<SourceFile>();
+        try (Stream<Path> paths = Files.walk(source)) {
+            for (Path path : paths.filter(Files::isRegularFile).sorted().toList()) {
+                var components = new ArrayList<String>();
+                for (Path component : source.relativize(path)) {
+                    components.add(component.toString());
+                }
+                files.add(new SourceFile(path, components, Files.size(path)));
+            }
+        }
+        if (files.isEmpty()) {
+            throw new MetainfoException("'%s' contains no files".formatted(source));
+        }
+        return files;
+    }
+
+    private byte[] hashPieces(List<SourceFile> files, long totalLength, int pieceLength) throws IOException {
+        long pieceCount = (totalLength + pieceLength - 1) / pieceLength;
+        if (pieceCount * PieceHashes.HASH_LENGTH > Integer.MAX_VALUE) {
+            throw new MetainfoException("%d bytes need too many pieces of %d bytes".formatted(totalLength, pieceLength));
+        }
+        byte[] hashes = new byte[(int) pieceCount * PieceHashes.HASH_LENGTH];
+        int piecesPerBuffer = HashBuffers.BUFFER_SIZE / pieceLength;
+
+        var tasks = new ArrayList<Future<?>>();
+        try (ExecutorService workers = Executors.newFixedThreadPool(parallelism)) {
+            int firstPiece = 0;
+            ByteBuffer buffer = buffers.take();
+            try {
+                for (SourceFile file : files) {
+                    try (var channel = FileChannel.open(file.path(), StandardOpenOption.READ)) {
+                        long remaining = file.length();
+                        while (remaining > 0) {
+                            int limit = (int) Math.min(buffer.capacity(), buffer.position() + remaining);
+                            int read = channel.read(buffer.limit(limit));
+                            if (read < 0) {
+                                throw new MetainfoException("'%s' changed while it was read".formatted(file.path()));
+                            }
+                            remaining -= read;
+                            if (!buffer.hasRemaining() && buffer.limit() == buffer.capacity()) {
+                                hashLater(workers, buffer.flip(), firstPiece, pieceLength, hashes, tasks);
+                                firstPiece += piecesPerBuffer;
+                                // The workers release the filled buffer, whatever happens from here on
+                                buffer = null;
+                                buffer = buffers.take();
+                            }
+                        }
+                    }
+                }
+                if (buffer.position() > 0) {
+                    hashLater(workers, buffer.flip(), firstPiece, pieceLength, hashes, tasks);
+                    buffer = null;
+                }
+            } finally {
+                if (buffer != null) {
+                    buffers.release(buffer);
+                }
+            }
+            for (Future<?> task : tasks) {
+                task.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while hashing '%s'".formatted(source), e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Hashing '%s' failed".formatted(source), e.getCause());
+        }
+        return hashes;
+    }
+
+    /**
+     * Hashes the pieces in the buffer, split among up to {@code parallelism} workers, and releases the
+     * buffer once the last of them is done.
+     */
+    private void hashLater(ExecutorService workers, ByteBuffer buffer, int firstPiece, int pieceLength,
+                           byte[] hashes, List<Future<?>> tasks) {
+        int pieces = (buffer.limit() + pieceLength - 1) / pieceLength;
+        int parts = Math.min(parallelism, pieces);
+        var unfinished = new AtomicInteger(parts);
+        for (int part = 0; part < parts; part++) {
+            int from = part * pieces / parts;
+            int to = (part + 1) * pieces / parts;
+            tasks.add(workers.submit(() -> {
+                try {
+                    MessageDigest digest = SHA1.get();
+                    for (int piece = from; piece < to; piece++) {
+                        int offset = piece * pieceLength;
+                        digest.update(buffer.slice(offset, Math.min(pieceLength, buffer.limit() - offset)));
+                        System.arraycopy(digest.digest(), 0, hashes, (firstPiece + piece) * PieceHashes.HASH_LENGTH, PieceHashes.HASH_LENGTH);
+                    }
+                } finally {
+                    if (unfinished.decrementAndGet() == 0) {
+                        buffers.release(buffer);
+                    }
+                }
+            }));
+        }
+    }
+
+    private Map<String, Object> torrent(List<SourceFile> files, long pieceLength, byte[] hashes) {
+        Map<String, Object> info = new HashMap<>();
+        info.put("name", source.getFileName().toString());
+        info.put("piece length", pieceLength);
+        info.put("pieces", ByteString.of(hashes));
+        if (Files.isRegularFile(source)) {
+            info.put("length", files.getFirst().length());
+        } else {
+            var fileList = new ArrayList<Map<String, Object>>(files.size());
+            for (SourceFile file : files) {
+                fileList.add(Map.of("length", file.length(), "path", file.components()));
+            }
+            info.put("files", fileList);
+        }
+        if (privateTorrent) {
+            info.put("private", 1L);
+        }
+
+        Map<String, Object> torrent = new HashMap<>();
+        torrent.put("info", info);
+        if (announce != null) {
+            torrent.put("announce", announce);
+        }
+        if (!announceList.isEmpty()) {
+            torrent.put("announce-list", announceList);
+        }
+        if (comment != null) {
+            torrent.put("comment", comment);
+        }
+        if (createdBy != null) {
+            torrent.put("created by", createdBy);
+        }
+        if (creationDate != null) {
+            torrent.put("creation date", creationDate.getEpochSecond());
+        }
+        return torrent;
+    }
+
+    private record SourceFile(Path path, List<String> components, long length) {
+    }
+}
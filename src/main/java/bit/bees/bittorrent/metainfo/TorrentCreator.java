@@ -0,0 +1,33 @@
+package bit.bees.bittorrent.metainfo;
+
+import bit.bees.bittorrent.bencode.encoders.Encoder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.file.Path;
+
+/**
+ * Creates {@code .torrent} files for local content, see {@link TorrentBuilder}.
+ */
+@Service
+public class TorrentCreator {
+
+    private final Encoder encoder;
+    private final InfoHasher infoHasher;
+    private final int parallelism;
+    private final HashBuffers buffers = new HashBuffers();
+
+    public TorrentCreator(Encoder encoder, InfoHasher infoHasher,
+                          @Value("${metainfo.create.parallelism:0}") int parallelism) {
+        this.encoder = encoder;
+        this.infoHasher = infoHasher;
+        this.parallelism = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Starts a torrent for the file or directory.
+     */
+    public TorrentBuilder builder(Path source) {
+        return new TorrentBuilder(source, encoder, infoHasher, parallelism, buffers);
+    }
+}
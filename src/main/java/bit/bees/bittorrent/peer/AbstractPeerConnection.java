@@ -0,0 +1,204 @@
+package bit.bees.bittorrent.peer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * What the engines' connections have in common: messages are encoded into room the engine hands out
+ * with {@link #beginMessage(int)}, and decoded messages are passed on to the {@link PeerHandler} only
+ * while the connection is open, so a handler closing its connection hears nothing more from it.
+ */
+abstract class AbstractPeerConnection implements PeerConnection, MessageHandler {
+
+    PeerHandler handler;
+    Handshake remoteHandshake;
+
+    AbstractPeerConnection(PeerHandler handler) {
+        this.handler = handler;
+    }
+
+    /**
+     * Room for a message of the given length, which has to be written before {@link #endMessage()}.
+     */
+    abstract ByteBuffer beginMessage(int length);
+
+    /**
+     * The message is written; always called after {@link #beginMessage(int)} returned.
+     */
+    abstract void endMessage();
+
+    @Override
+    public Handshake remoteHandshake() {
+        return remoteHandshake;
+    }
+
+    @Override
+    public void sendKeepAlive() {
+        var buffer = beginMessage(MessageEncoder.KEEP_ALIVE_LENGTH);
+        try {
+            MessageEncoder.writeKeepAlive(buffer);
+        } finally {
+            endMessage();
+        }
+    }
+
+    @Override
+    public void sendChoke() {
+        sendState(MessageType.CHOKE);
+    }
+
+    @Override
+    public void sendUnchoke() {
+        sendState(MessageType.UNCHOKE);
+    }
+
+    @Override
+    public void sendInterested() {
+        sendState(MessageType.INTERESTED);
+    }
+
+    @Override
+    public void sendNotInterested() {
+        sendState(MessageType.NOT_INTERESTED);
+    }
+
+    @Override
+    public void sendHave(int piece) {
+        var buffer = beginMessage(MessageEncoder.HAVE_LENGTH);
+        try {
+            MessageEncoder.writeHave(buffer, piece);
+        } finally {
+            endMessage();
+        }
+    }
+
+    @Override
+    public void sendBitfield(ByteBuffer bits, int pieceCount) {
+        var buffer = beginMessage(MessageEncoder.bitfieldLength(pieceCount));
+        try {
+            MessageEncoder.writeBitfield(buffer, bits, pieceCount);
+        } finally {
+            endMessage();
+        }
+    }
+
+    @Override
+    public void sendRequest(int piece, int begin, int length) {
+        var buffer = beginMessage(MessageEncoder.REQUEST_LENGTH);
+        try {
+            MessageEncoder.writeRequest(buffer, piece, begin, length);
+        } finally {
+            endMessage();
+        }
+    }
+
+    @Override
+    public void sendCancel(int piece, int begin, int length) {
+        var buffer = beginMessage(MessageEncoder.REQUEST_LENGTH);
+        try {
+            MessageEncoder.writeCancel(buffer, piece, begin, length);
+        } finally {
+            endMessage();
+        }
+    }
+
+    @Override
+    public void sendPiece(int piece, int begin, ByteBuffer block) {
+        var buffer = beginMessage(MessageEncoder.PIECE_HEADER_LENGTH + block.remaining());
+        try {
+            MessageEncoder.writePiece(buffer, piece, begin, block);
+        } finally {
+            endMessage();
+        }
+    }
+
+    private void sendState(MessageType type) {
+        var buffer = beginMessage(MessageEncoder.STATE_LENGTH);
+        try {
+            MessageEncoder.writeState(buffer, type);
+        } finally {
+            endMessage();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "PeerConnection[" + remoteAddress() + "]";
+    }
+
+    @Override
+    public void onKeepAlive() {
+        if (isOpen()) {
+            handler.onKeepAlive();
+        }
+    }
+
+    @Override
+    public void onChoke() {
+        if (isOpen()) {
+            handler.onChoke();
+        }
+    }
+
+    @Override
+    public void onUnchoke() {
+        if (isOpen()) {
+            handler.onUnchoke();
+        }
+    }
+
+    @Override
+    public void onInterested() {
+        if (isOpen()) {
+            handler.onInterested();
+        }
+    }
+
+    @Override
+    public void onNotInterested() {
+        if (isOpen()) {
+            handler.onNotInterested();
+        }
+    }
+
+    @Override
+    public void onHave(int piece) {
+        if (isOpen()) {
+            handler.onHave(piece);
+        }
+    }
+
+    @Override
+    public void onBitfield(ByteBuffer bits) {
+        if (isOpen()) {
+            handler.onBitfield(bits);
+        }
+    }
+
+    @Override
+    public void onRequest(int piece, int begin, int length) {
+        if (isOpen()) {
+            handler.onRequest(piece, begin, length);
+        }
+    }
+
+    @Override
+    public void onPiece(int piece, int begin, ByteBuffer block) {
+        if (isOpen()) {
+            handler.onPiece(piece, begin, block);
+        }
+    }
+
+    @Override
+    public void onCancel(int piece, int begin, int length) {
+        if (isOpen()) {
+            handler.onCancel(piece, begin, length);
+        }
+    }
+
+    @Override
+    public void onOther(int id, ByteBuffer payload) {
+        if (isOpen()) {
+            handler.onOther(id, payload);
+        }
+    }
+}
@@ -0,0 +1,352 @@
+package bit.bees.bittorrent.peer;
+
+import bit.bees.bittorrent.storage.PieceLayout;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Decides which blocks of a torrent the {@link RequestPipeline}s of its connections request, so that
+ * every missing block is requested from one peer at a time.
+ * <p>
+ * Pieces that have been started are finished first, then the {@link PiecePicker} picks new ones to
+ * start, rarest first unless set otherwise; it learns what the peers have from the pipelines. Once
+ * every missing block has been requested, the scheduler enters endgame mode and hands out blocks
+ * that are already requested from other peers too; the first copy to arrive wins, and the other
+ * requests for it are cancelled. Thread-safe.
+ */
+public final class BlockScheduler {
+
+    /**
+     * Length of the blocks pieces are requested in; only the last block of the torrent may be shorter.
+     */
+    public static final int BLOCK_LENGTH = 16 * 1024;
+
+    private final PieceLayout layout;
+    private final BlockSink sink;
+    private final BitSet downloaded;
+    private final PiecePicker picker;
+    private final byte[] filePriorities;
+    /** Pieces with blocks requested or received, in the order they were started. */
+    private final Map<Integer, PieceProgress> started = new LinkedHashMap<>();
+    private final List<RequestPipeline> pipelines = new ArrayList<>();
+    /** Blocks of started pieces and wanted ones, see {@link PiecePicker}, that nobody has sent or been asked for. */
+    private long unrequestedBlocks;
+
+    /**
+     * @param downloaded the pieces that are already there and are not downloaded again
+     */
+    public BlockScheduler(PieceLayout layout, BitSet downloaded, BlockSink sink) {
+        this.layout = layout;
+        this.sink = sink;
+        this.downloaded = (BitSet) downloaded.clone();
+        this.downloaded.clear(layout.pieceCount(), Math.max(layout.pieceCount(), downloaded.length()));
+        for (int piece = this.downloaded.nextClearBit(0); piece < layout.pieceCount(); piece = this.downloaded.nextClearBit(piece + 1)) {
+            unrequestedBlocks += blockCount(piece);
+        }
+        this.picker = new PiecePicker(layout.pieceCount(), this.downloaded, new Random());
+        this.filePriorities = new byte[layout.files().size()];
+        Arrays.fill(filePriorities, (byte) PiecePicker.DEFAULT_PRIORITY);
+    }
+
+    public int pieceCount() {
+        return layout.pieceCount();
+    }
+
+    public synchronized boolean isDownloaded(int piece) {
+        return downloaded.get(piece);
+    }
+
+    public synchronized int downloadedCount() {
+        return downloaded.cardinality();
+    }
+
+    public synchronized boolean isComplete() {
+        return downloaded.cardinality() == layout.pieceCount();
+    }
+
+    /**
+     * Whether every wanted block is requested, so that blocks are requested from several peers.
+     */
+    public synchronized boolean isEndgame() {
+        return unrequestedBlocks == 0 && !started.isEmpty();
+    }
+
+    /**
+     * Hands the piece out again after all its blocks were received, because it failed verification.
+     */
+    public synchronized void pieceFailed(int piece) {
+        if (downloaded.get(piece) && !started.containsKey(piece)) {
+            downloaded.clear(piece);
+            picker.add(piece);
+            if (picker.priority(piece) > 0) {
+                unrequestedBlocks += blockCount(piece);
+            }
+        }
+    }
+
+    public synchronized void setMode(PiecePicker.Mode mode) {
+        picker.setMode(mode);
+    }
+
+    /**
+     * Sets the priority of the file's pieces, see {@link PiecePicker#setPriority}. A piece shared
+     * with other files takes the highest priority among them. Started pieces are finished whatever
+     * their priority.
+     */
+    public synchronized void setFilePriority(int file, int priority) {
+        if (priority < 0 || priority > PiecePicker.MAX_PRIORITY) {
+            throw new IllegalArgumentException("Priority %d is not between 0 and %d".formatted(priority, PiecePicker.MAX_PRIORITY));
+        }
+        filePriorities[file] = (byte) priority;
+        long length = layout.fileLength(file);
+        if (length == 0) {
+            return;
+        }
+        int first = layout.pieceAt(layout.fileOffset(file));
+        int last = layout.pieceAt(layout.fileOffset(file) + length - 1);
+        setPriority(first, first + 1, piecePriority(first));
+        if (last > first) {
+            setPriority(first + 1, last, priority);
+            setPriority(last, last + 1, piecePriority(last));
+        }
+    }
+
+    private int piecePriority(int piece) {
+        int[] priority = {0};
+        layout.forEachSegment(piece, (file, fileOffset, length) -> {
+            priority[0] = Math.max(priority[0], filePriorities[file]);
+            return true;
+        });
+        return priority[0];
+    }
+
+    private void setPriority(int from, int to, int priority) {
+        for (int piece = from; piece < to; piece++) {
+            if (!downloaded.get(piece) && !started.containsKey(piece) && picker.priority(piece) > 0 != priority > 0) {
+                unrequestedBlocks += priority > 0 ? blockCount(piece) : -blockCount(piece);
+            }
+        }
+        picker.setPriority(from, to, priority);
+    }
+
+    /**
+     * Length of the block at offset {@code begin} of the piece.
+     */
+    int blockLength(int piece, int begin) {
+        return Math.min(BLOCK_LENGTH, layout.pieceLength(piece) - begin);
+    }
+
+    synchronized void register(RequestPipeline pipeline) {
+        pipelines.add(pipeline);
+    }
+
+    synchronized void unregister(RequestPipeline pipeline) {
+        pipelines.remove(pipeline);
+    }
+
+    synchronized void peerHas(int piece) {
+        picker.peerHas(piece);
+    }
+
+    synchronized void peerHas(BitSet pieces) {
+        picker.peerHas(pieces);
+    }
+
+    synchronized void seedJoined() {
+        picker.seedJoined();
+    }
+
+    synchronized void seedLeft() {
+        picker.seedLeft();
+    }
+
+    /**
+     * A peer with the pieces is gone.
+     */
+    synchronized void peerLost(BitSet pieces) {
+        picker.peerLost(pieces);
+    }
+
+    /**
+     * The next block to request from the pipeline's peer, packed by {@link #pack}, or {@code -1} if
+     * the peer has none that is needed.
+     */
+    synchronized long next(RequestPipeline pipeline) {
+        BitSet pieces = pipeline.pieces();
+        for (PieceProgress progress : started.values()) {
+            if (progress.unrequested > 0 && pieces.get(progress.piece)) {
+                return request(progress, progress.nextUnrequested());
+            }
+        }
+        int piece = picker.pick(pieces);
+        if (piece >= 0) {
+            picker.remove(piece);
+            var progress = new PieceProgress(piece, blockCount(piece));
+            started.put(piece, progress);
+            return request(progress, 0);
+        }
+        if (unrequestedBlocks == 0) {
+            return nextDuplicate(pipeline);
+        }
+        return -1;
+    }
+
+    /**
+     * In endgame mode, the block with the fewest requests that the pipeline has not requested yet.
+     */
+    private long nextDuplicate(RequestPipeline pipeline) {
+        PieceProgress best = null;
+        int bestBlock = -1;
+        for (PieceProgress progress : started.values()) {
+            if (!pipeline.pieces().get(progress.piece)) {
+                continue;
+            }
+            for (int block = progress.received.nextClearBit(0); block < progress.requests.length; block = progress.received.nextClearBit(block + 1)) {
+                if ((best == null || progress.requests[block] < best.requests[bestBlock])
+                        && !pipeline.isRequested(progress.piece, block * BLOCK_LENGTH)) {
+                    best = progress;
+                    bestBlock = block;
+                }
+            }
+        }
+        return best == null ? -1 : request(best, bestBlock);
+    }
+
+    private long request(PieceProgress progress, int block) {
+        if (progress.requests[block]++ == 0) {
+            progress.unrequested--;
+            unrequestedBlocks--;
+        }
+        return pack(progress.piece, block * BLOCK_LENGTH);
+    }
+
+    /**
+     * Takes back the pipeline's requests for the blocks, which its peer will not send, so that they can
+     * be requested from others.
+     */
+    synchronized void abandon(int[] pieces, int[] begins, int count) {
+        for (int i = 0; i < count; i++) {
+            PieceProgress progress = started.get(pieces[i]);
+            int block = begins[i] / BLOCK_LENGTH;
+            if (progress != null && !progress.received.get(block) && progress.requests[block] > 0
+                    && --progress.requests[block] == 0) {
+                progress.unrequested++;
+                unrequestedBlocks++;
+            }
+        }
+    }
+
+    /**
+     * Takes a block that arrived and passes it on to the sink unless it is there already.
+     *
+     * @param requested whether the receiving pipeline had requested the block
+     * @return whether other pipelines have requested the block too and should cancel their requests
+     */
+    synchronized boolean received(int piece, int begin, ByteBuffer block, boolean requested) {
+        PieceProgress progress = started.get(piece);
+        if (progress == null || begin < 0 || begin % BLOCK_LENGTH != 0 || begin >= layout.pieceLength(piece)
+                || block.remaining() != blockLength(piece, begin)) {
+            return false;
+        }
+        int index = begin / BLOCK_LENGTH;
+        if (progress.received.get(index)) {
+            return false;
+        }
+        int otherRequests = progress.requests[index] - (requested ? 1 : 0);
+        if (progress.requests[index] == 0) {
+            progress.unrequested--;
+            unrequestedBlocks--;
+        }
+        progress.received.set(index);
+        sink.onBlock(piece, begin, block);
+        if (progress.received.cardinality() == progress.requests.length) {
+            started.remove(piece);
+            downloaded.set(piece);
+            sink.onPieceDownloaded(piece);
+        }
+        return otherRequests > 0;
+    }
+
+    /**
+     * Cancels the requests of all pipelines but the given one for a block that has arrived. The
+     * pipelines are called without holding the scheduler's lock, as they call back into it.
+     */
+    void cancelDuplicates(RequestPipeline receiver, int piece, int begin) {
+        List<RequestPipeline> others;
+        synchronized (this) {
+            others = List.copyOf(pipelines);
+        }
+        for (RequestPipeline pipeline : others) {
+            if (pipeline != receiver) {
+                pipeline.cancel(piece, begin);
+            }
+        }
+    }
+
+    private int blockCount(int piece) {
+        return (layout.pieceLength(piece) + BLOCK_LENGTH - 1) / BLOCK_LENGTH;
+    }
+
+    static long pack(int piece, int begin) {
+        return (long) piece << 32 | begin;
+    }
+
+    static int piece(long block) {
+        return (int) (block >>> 32);
+    }
+
+    static int begin(long block) {
+        return (int) block;
+    }
+
+    /**
+     * Receives the downloaded data. It is called with the scheduler locked, so calls never overlap,
+     * but it should be quick about it.
+     */
+    public interface BlockSink {
+
+        /**
+         * A block arrived for the first time. The buffer is only valid during the call.
+         */
+        void onBlock(int piece, int begin, ByteBuffer block);
+
+        /**
+         * Every block of the piece has arrived. If it fails verification,
+         * {@link BlockScheduler#pieceFailed(int)} has it downloaded again.
+         */
+        default void onPieceDownloaded(int piece) {
+        }
+    }
+
+    private static final class PieceProgress {
+
+        final int piece;
+        /** Number of outstanding requests per block. */
+        final int[] requests;
+        final BitSet received;
+        /** Blocks neither received nor requested. */
+        int unrequested;
+
+        PieceProgress(int piece, int blockCount) {
+            this.piece = piece;
+            this.requests = new int[blockCount];
+            this.received = new BitSet(blockCount);
+            this.unrequested = blockCount;
+        }
+
+        int nextUnrequested() {
+            for (int block = 0; ; block++) {
+                if (requests[block] == 0 && !received.get(block)) {
+                    return block;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package bit.bees.bittorrent.peer;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Direct buffers of one size, kept for reuse so that connections only hold a buffer while they have
+ * data in flight. Allocating a direct buffer is expensive and its memory is released late, so buffers
+ * are handed back instead of dropped; at most {@code maxPooled} are kept idle. Thread-safe.
+ */
+public final class BufferPool {
+
+    private final int bufferSize;
+    private final BlockingQueue<ByteBuffer> idle;
+
+    public BufferPool(int bufferSize, int maxPooled) {
+        if (bufferSize <= 0 || maxPooled <= 0) {
+            throw new IllegalArgumentException("Invalid buffer size %d or pool size %d".formatted(bufferSize, maxPooled));
+        }
+        this.bufferSize = bufferSize;
+        this.idle = new ArrayBlockingQueue<>(maxPooled);
+    }
+
+    public int bufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * A cleared buffer of {@link #bufferSize()} bytes, pooled if one is idle.
+     */
+    public ByteBuffer acquire() {
+        ByteBuffer buffer = idle.poll();
+        return buffer != null ? buffer : ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    /**
+     * Hands a buffer back. Buffers this pool does not hand out, i.e. heap buffers or buffers of another
+     * size, are ignored, so callers may pass any buffer they are done with.
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer != null && buffer.isDirect() && buffer.capacity() == bufferSize) {
+            idle.offer(buffer.clear());
+        }
+    }
+
+    /**
+     * Number of buffers waiting to be reused.
+     */
+    public int idleCount() {
+        return idle.size();
+    }
+}
@@ -0,0 +1,80 @@
+package bit.bees.bittorrent.peer;
+
+import bit.bees.bittorrent.bencode.ByteString;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+
+/**
+ * The handshake opening every peer connection: the protocol name, eight reserved bytes announcing
+ * extensions, the 20 byte info hash of the torrent and the 20 byte id of the peer.
+ */
+public record Handshake(ByteString reserved, ByteString infoHash, ByteString peerId) {
+
+    public static final int LENGTH = 68;
+
+    private static final byte[] PROTOCOL = "BitTorrent protocol".getBytes(StandardCharsets.US_ASCII);
+    private static final int RESERVED_LENGTH = 8;
+    private static final int ID_LENGTH = 20;
+    private static final String CLIENT_PREFIX = "-BB0001-";
+    private static final String ID_CHARACTERS = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz";
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    public Handshake {
+        requireLength("Reserved bytes", reserved, RESERVED_LENGTH);
+        requireLength("Info hash", infoHash, ID_LENGTH);
+        requireLength("Peer id", peerId, ID_LENGTH);
+    }
+
+    /**
+     * Handshake without extensions.
+     */
+    public static Handshake of(ByteString infoHash, ByteString peerId) {
+        return new Handshake(ByteString.of(new byte[RESERVED_LENGTH]), infoHash, peerId);
+    }
+
+    /**
+     * A fresh peer id in the Azureus style: a client prefix followed by random alphanumerics.
+     */
+    public static ByteString newPeerId() {
+        var id = new StringBuilder(CLIENT_PREFIX);
+        while (id.length() < ID_LENGTH) {
+            id.append(ID_CHARACTERS.charAt(RANDOM.nextInt(ID_CHARACTERS.length())));
+        }
+        return ByteString.copyOf(id.toString());
+    }
+
+    /**
+     * Reads a handshake from the buffer's position, which must have {@link #LENGTH} bytes remaining.
+     * The fields are copied out of the buffer.
+     *
+     * @throws PeerProtocolException if the bytes are not a BitTorrent handshake
+     */
+    public static Handshake read(ByteBuffer buffer) {
+        int start = buffer.position();
+        if (buffer.get(start) != PROTOCOL.length
+                || buffer.slice(start + 1, PROTOCOL.length).compareTo(ByteBuffer.wrap(PROTOCOL)) != 0) {
+            throw new PeerProtocolException("Not a BitTorrent handshake");
+        }
+        byte[] fields = new byte[RESERVED_LENGTH + 2 * ID_LENGTH];
+        buffer.get(start + 1 + PROTOCOL.length, fields);
+        buffer.position(start + LENGTH);
+        return new Handshake(ByteString.of(fields, 0, RESERVED_LENGTH),
+                ByteString.of(fields, RESERVED_LENGTH, ID_LENGTH),
+                ByteString.of(fields, RESERVED_LENGTH + ID_LENGTH, ID_LENGTH));
+    }
+
+    public void writeTo(ByteBuffer buffer) {
+        buffer.put((byte) PROTOCOL.length).put(PROTOCOL)
+                .put(reserved.asReadOnlyBuffer())
+                .put(infoHash.asReadOnlyBuffer())
+                .put(peerId.asReadOnlyBuffer());
+    }
+
+    private static void requireLength(String field, ByteString value, int length) {
+        if (value.length() != length) {
+            throw new IllegalArgumentException("%s must be %d bytes, not %d".formatted(field, length, value.length()));
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package bit.bees.bittorrent.peer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Decodes length-prefixed peer wire messages in place.
+ * <p>
+ * Each complete frame between the buffer's position and limit is handed to a {@link MessageHandler}
+ * as primitive arguments or as a window of the buffer itself, so decoding allocates nothing, whatever
+ * the buffer is. A frame that is cut off is left in the buffer to be completed by the next read.
+ * Frames are checked against the fixed length of their type and against a maximum length, which
+ * bounds the buffer a connection needs.
+ */
+public final class MessageDecoder {
+
+    public static final int LENGTH_PREFIX = 4;
+
+    private final int maxMessageLength;
+
+    /**
+     * @param maxMessageLength longest message accepted, not counting the length prefix
+     */
+    public MessageDecoder(int maxMessageLength) {
+        if (maxMessageLength < 13) {
+            throw new IllegalArgumentException("Maximum message length %d is too small".formatted(maxMessageLength));
+        }
+        this.maxMessageLength = maxMessageLength;
+    }
+
+    public int maxMessageLength() {
+        return maxMessageLength;
+    }
+
+    /**
+     * Passes every complete message between the buffer's position and limit to the handler and leaves
+     * the position at the start of the first incomplete frame. The handler may move the position and
+     * limit within a payload; both are restored afterwards.
+     *
+     * @return the number of messages decoded
+     * @throws PeerProtocolException if a frame is malformed, the position then being at its start
+     */
+    public int decode(ByteBuffer buffer, MessageHandler handler) {
+        int count = 0;
+        int limit = buffer.limit();
+        int frameLength;
+        while ((frameLength = completeFrameLength(buffer)) > 0) {
+            int start = buffer.position();
+            try {
+                dispatch(buffer, start + LENGTH_PREFIX, frameLength - LENGTH_PREFIX, handler);
+            } catch (RuntimeException e) {
+                buffer.limit(limit).position(start);
+                throw e;
+            }
+            buffer.limit(limit).position(start + frameLength);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Length of the frame at the buffer's position, prefix included, or {@code 0} if its prefix is not
+     * complete yet. Lets a caller make room for a frame longer than its buffer.
+     *
+     * @throws PeerProtocolException if the frame is longer than the maximum message length
+     */
+    public int frameLength(ByteBuffer buffer) {
+        if (buffer.remaining() < LENGTH_PREFIX) {
+            return 0;
+        }
+        int length = buffer.getInt(buffer.position());
+        if (length < 0 || length > maxMessageLength) {
+            throw new PeerProtocolException("Message length %d exceeds the limit of %d".formatted(
+                    Integer.toUnsignedLong(length), maxMessageLength));
+        }
+        return LENGTH_PREFIX + length;
+    }
+
+    private int completeFrameLength(ByteBuffer buffer) {
+        int frameLength = frameLength(buffer);
+        return frameLength > 0 && frameLength <= buffer.remaining() ? frameLength : 0;
+    }
+
+    private static void dispatch(ByteBuffer buffer, int offset, int length, MessageHandler handler) {
+        if (length == 0) {
+            handler.onKeepAlive();
+            return;
+        }
+        int id = buffer.get(offset) & 0xff;
+        MessageType type = MessageType.of(id);
+        if (type == null) {
+            handler.onOther(id, window(buffer, offset + 1, length - 1));
+            return;
+        }
+        switch (type) {
+            case CHOKE -> {
+                expectLength(type, length, 1);
+                handler.onChoke();
+            }
+            case UNCHOKE -> {
+                expectLength(type, length, 1);
+                handler.onUnchoke();
+            }
+            case INTERESTED -> {
+                expectLength(type, length, 1);
+                handler.onInterested();
+            }
+            case NOT_INTERESTED -> {
+                expectLength(type, length, 1);
+                handler.onNotInterested();
+            }
+            case HAVE -> {
+                expectLength(type, length, 5);
+                handler.onHave(buffer.getInt(offset + 1));
+            }
+            case BITFIELD -> handler.onBitfield(window(buffer, offset + 1, length - 1));
+            case REQUEST -> {
+                expectLength(type, length, 13);
+                handler.onRequest(buffer.getInt(offset + 1), buffer.getInt(offset + 5), buffer.getInt(offset + 9));
+            }
+            case PIECE -> {
+                if (length < 9) {
+                    throw malformed(type, length);
+                }
+                int piece = buffer.getInt(offset + 1);
+                int begin = buffer.getInt(offset + 5);
+                handler.onPiece(piece, begin, window(buffer, offset + 9, length - 9));
+            }
+            case CANCEL -> {
+                expectLength(type, length, 13);
+                handler.onCancel(buffer.getInt(offset + 1), buffer.getInt(offset + 5), buffer.getInt(offset + 9));
+            }
+        }
+    }
+
+    private static ByteBuffer window(ByteBuffer buffer, int offset, int length) {
+        return buffer.limit(offset + length).position(offset);
+    }
+
+    private static void expectLength(MessageType type, int length, int expected) {
+        if (length != expected) {
+            throw malformed(type, length);
+        }
+    }
+
+    private static PeerProtocolException malformed(MessageType type, int length) {
+        return new PeerProtocolException("Invalid %s message of length %d".formatted(type, length));
+    }
+}
@@ -0,0 +1,93 @@
+package bit.bees.bittorrent.peer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Writes peer wire messages into buffers, length prefix included. Every method puts one message at
+ * the buffer's position, which has to have {@code *_LENGTH} bytes remaining for it, and advances the
+ * position past it.
+ */
+public final class MessageEncoder {
+
+    public static final int KEEP_ALIVE_LENGTH = 4;
+    public static final int STATE_LENGTH = 5;
+    public static final int HAVE_LENGTH = 9;
+    public static final int REQUEST_LENGTH = 17;
+    public static final int PIECE_HEADER_LENGTH = 13;
+
+    private MessageEncoder() {
+    }
+
+    public static void writeKeepAlive(ByteBuffer buffer) {
+        buffer.putInt(0);
+    }
+
+    /**
+     * One of the payload-less messages, {@code choke}, {@code unchoke}, {@code interested} or
+     * {@code not interested}.
+     */
+    public static void writeState(ByteBuffer buffer, MessageType type) {
+        if (type.ordinal() > MessageType.NOT_INTERESTED.ordinal()) {
+            throw new IllegalArgumentException("%s messages carry a payload".formatted(type));
+        }
+        buffer.putInt(1).put(type.id());
+    }
+
+    public static void writeHave(ByteBuffer buffer, int piece) {
+        buffer.putInt(5).put(MessageType.HAVE.id()).putInt(piece);
+    }
+
+    public static int bitfieldLength(int pieceCount) {
+        return MessageDecoder.LENGTH_PREFIX + 1 + (pieceCount + 7) / 8;
+    }
+
+    /**
+     * Writes the bitfield of {@code pieceCount} pieces, the bits being taken from {@code bits} from its
+     * position on and the spare bits of the last byte cleared. The position of {@code bits} is kept.
+     */
+    public static void writeBitfield(ByteBuffer buffer, ByteBuffer bits, int pieceCount) {
+        int length = (pieceCount + 7) / 8;
+        if (bits.remaining() < length) {
+            throw new IllegalArgumentException("%d bytes do not hold %d pieces".formatted(bits.remaining(), pieceCount));
+        }
+        buffer.putInt(1 + length).put(MessageType.BITFIELD.id());
+        buffer.put(buffer.position(), bits, bits.position(), length);
+        buffer.position(buffer.position() + length);
+        int spareBits = length * 8 - pieceCount;
+        if (spareBits > 0) {
+            int last = buffer.position() - 1;
+            buffer.put(last, (byte) (buffer.get(last) & (0xff << spareBits)));
+        }
+    }
+
+    public static void writeRequest(ByteBuffer buffer, int piece, int begin, int length) {
+        writeBlockMessage(buffer, MessageType.REQUEST, piece, begin, length);
+    }
+
+    public static void writeCancel(ByteBuffer buffer, int piece, int begin, int length) {
+        writeBlockMessage(buffer, MessageType.CANCEL, piece, begin, length);
+    }
+
+    /**
+     * The part of a {@code piece} message in front of its block of {@code blockLength} bytes, for
+     * blocks that are sent separately.
+     */
+    public static void writePieceHeader(ByteBuffer buffer, int piece, int begin, int blockLength) {
+        buffer.putInt(9 + blockLength).put(MessageType.PIECE.id()).putInt(piece).putInt(begin);
+    }
+
+    /**
+     * A whole {@code piece} message, the block being the remaining bytes of {@code block}, whose
+     * position is kept.
+     */
+    public static void writePiece(ByteBuffer buffer, int piece, int begin, ByteBuffer block) {
+        int blockLength = block.remaining();
+        writePieceHeader(buffer, piece, begin, blockLength);
+        buffer.put(buffer.position(), block, block.position(), blockLength);
+        buffer.position(buffer.position() + blockLength);
+    }
+
+    private static void writeBlockMessage(ByteBuffer buffer, MessageType type, int piece, int begin, int length) {
+        buffer.putInt(13).put(type.id()).putInt(piece).putInt(begin).putInt(length);
+    }
+}
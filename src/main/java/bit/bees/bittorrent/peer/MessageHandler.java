@@ -0,0 +1,48 @@
+package bit.bees.bittorrent.peer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Receives the messages {@link MessageDecoder} finds in a peer's input, one call per message.
+ * <p>
+ * Payloads are passed as the decoder's own buffer, positioned at the first payload byte and limited
+ * after the last one. They are only valid during the call; whatever is needed later has to be copied.
+ */
+public interface MessageHandler {
+
+    default void onKeepAlive() {
+    }
+
+    default void onChoke() {
+    }
+
+    default void onUnchoke() {
+    }
+
+    default void onInterested() {
+    }
+
+    default void onNotInterested() {
+    }
+
+    default void onHave(int piece) {
+    }
+
+    default void onBitfield(ByteBuffer bits) {
+    }
+
+    default void onRequest(int piece, int begin, int length) {
+    }
+
+    default void onPiece(int piece, int begin, ByteBuffer block) {
+    }
+
+    default void onCancel(int piece, int begin, int length) {
+    }
+
+    /**
+     * Message with an id outside {@link MessageType}, e.g. from the DHT or extension protocols.
+     */
+    default void onOther(int id, ByteBuffer payload) {
+    }
+}
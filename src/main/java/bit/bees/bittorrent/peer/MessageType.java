@@ -0,0 +1,35 @@
+package bit.bees.bittorrent.peer;
+
+/**
+ * Messages of the BEP 3 peer wire protocol, identified by the byte following the length prefix.
+ */
+public enum MessageType {
+    CHOKE(0),
+    UNCHOKE(1),
+    INTERESTED(2),
+    NOT_INTERESTED(3),
+    HAVE(4),
+    BITFIELD(5),
+    REQUEST(6),
+    PIECE(7),
+    CANCEL(8);
+
+    private static final MessageType[] BY_ID = values();
+
+    private final byte id;
+
+    MessageType(int id) {
+        this.id = (byte) id;
+    }
+
+    public byte id() {
+        return id;
+    }
+
+    /**
+     * The type with the given id, or {@code null} for ids this protocol version does not define.
+     */
+    public static MessageType of(int id) {
+        return id >= 0 && id < BY_ID.length ? BY_ID[id] : null;
+    }
+}
@@ -0,0 +1,46 @@
+package bit.bees.bittorrent.peer;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * Buffers, framing and the engine shared by the peer connections of the process. A connection borrows
+ * pooled buffers of {@code peer.buffer-size} bytes, the peer wire messages are limited to
+ * {@code peer.max-message-length} bytes and {@code peer.engine} picks how connections are run, either
+ * {@code selector} or {@code virtual-threads}, see {@link PeerEngine}.
+ */
+@Configuration(proxyBeanMethods = false)
+class PeerConfiguration {
+
+    static final int DEFAULT_BUFFER_SIZE = 32 * 1024;
+    static final int DEFAULT_BUFFER_POOL_SIZE = 1024;
+    static final int DEFAULT_MAX_MESSAGE_LENGTH = 1024 * 1024;
+    static final int DEFAULT_MAX_CONNECTIONS = 8192;
+    static final int DEFAULT_HANDSHAKE_TIMEOUT_SECONDS = 30;
+
+    @Bean
+    BufferPool peerBufferPool(@Value("${peer.buffer-size:" + DEFAULT_BUFFER_SIZE + "}") int bufferSize,
+                              @Value("${peer.buffer-pool-size:" + DEFAULT_BUFFER_POOL_SIZE + "}") int poolSize) {
+        return new BufferPool(bufferSize, poolSize);
+    }
+
+    @Bean
+    MessageDecoder messageDecoder(@Value("${peer.max-message-length:" + DEFAULT_MAX_MESSAGE_LENGTH + "}") int maxMessageLength) {
+        return new MessageDecoder(maxMessageLength);
+    }
+
+    @Bean
+    PeerEngine peerEngine(BufferPool bufferPool, MessageDecoder decoder,
+                          @Value("${peer.engine:selector}") String engine,
+                          @Value("${peer.max-connections:" + DEFAULT_MAX_CONNECTIONS + "}") int maxConnections,
+                          @Value("${peer.handshake-timeout:" + DEFAULT_HANDSHAKE_TIMEOUT_SECONDS + "s}") Duration handshakeTimeout) {
+        return switch (engine) {
+            case "selector" -> new SelectorPeerEngine(bufferPool, decoder, maxConnections, handshakeTimeout);
+            case "virtual-threads" -> new VirtualThreadPeerEngine(bufferPool, decoder, maxConnections, handshakeTimeout);
+            default -> throw new IllegalArgumentException("Unknown peer engine '%s'".formatted(engine));
+        };
+    }
+}
@@ -0,0 +1,77 @@
+package bit.bees.bittorrent.peer;
+
+import bit.bees.bittorrent.bencode.ByteString;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * An open connection to a peer that has completed the handshake.
+ * <p>
+ * Messages are queued and written out in batches, so several sends in a row usually leave in one
+ * socket write. Unless the implementation says otherwise, connections are not thread-safe and are
+ * used from the thread their {@link PeerHandler} is called on.
+ */
+public interface PeerConnection {
+
+    InetSocketAddress remoteAddress();
+
+    /**
+     * The handshake the peer sent.
+     */
+    Handshake remoteHandshake();
+
+    void sendKeepAlive();
+
+    void sendChoke();
+
+    void sendUnchoke();
+
+    void sendInterested();
+
+    void sendNotInterested();
+
+    void sendHave(int piece);
+
+    /**
+     * Sends the first {@code pieceCount} bits of {@code bits}, from its position on.
+     */
+    void sendBitfield(ByteBuffer bits, int pieceCount);
+
+    void sendRequest(int piece, int begin, int length);
+
+    void sendCancel(int piece, int begin, int length);
+
+    /**
+     * Sends the remaining bytes of {@code block}, which are copied before the call returns.
+     */
+    void sendPiece(int piece, int begin, ByteBuffer block);
+
+    /**
+     * Sends {@code length} bytes of the file from {@code position} on as the block. They go from the
+     * file to the socket with {@link FileChannel#transferTo}, which the kernel serves without copying
+     * them through the process where it can. The file has to stay open until they are written, and a
+     * file ending before the block does closes the connection.
+     */
+    void sendPiece(int piece, int begin, FileChannel file, long position, int length);
+
+    /**
+     * Number of bytes queued but not yet written to the socket.
+     */
+    long queuedBytes();
+
+    boolean isOpen();
+
+    /**
+     * Closes the connection, discarding queued messages.
+     */
+    void close();
+
+    /**
+     * The info hash of the torrent shared on this connection.
+     */
+    default ByteString infoHash() {
+        return remoteHandshake().infoHash();
+    }
+}
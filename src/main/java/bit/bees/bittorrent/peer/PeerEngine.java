@@ -0,0 +1,57 @@
+package bit.bees.bittorrent.peer;
+
+import bit.bees.bittorrent.bencode.ByteString;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * Opens and runs peer connections. The engines differ in how they run them, which tells on which
+ * threads handlers are called and whether connections may be shared between threads:
+ * <ul>
+ *     <li>{@link SelectorPeerEngine} runs every connection on one thread around a selector, with the
+ *     least memory per connection.</li>
+ *     <li>{@link VirtualThreadPeerEngine} runs each connection on a virtual thread of its own with
+ *     blocking reads.</li>
+ * </ul>
+ * The engine of the application is chosen with {@code peer.engine}.
+ */
+public interface PeerEngine extends AutoCloseable {
+
+    /**
+     * The id this engine sends in its handshakes.
+     */
+    ByteString peerId();
+
+    /**
+     * Accepts incoming connections on the given address. Once a peer's handshake is in, the acceptor is
+     * asked for the handler of the connection; it returns {@code null} to turn the peer away, e.g. for
+     * an info hash that is not shared.
+     *
+     * @return the address actually bound, telling the port if {@code 0} was asked for
+     */
+    InetSocketAddress listen(InetSocketAddress address, Function<Handshake, PeerHandler> acceptor) throws IOException;
+
+    /**
+     * Connects to a peer and exchanges handshakes for the given torrent.
+     *
+     * @param infoHash the 20 byte info hash, see {@link bit.bees.bittorrent.metainfo.InfoHash#truncated()}
+     * @return completed with the connection once the peer's handshake is in, or exceptionally if the
+     * connection fails, the peer answers for another torrent or the engine has no room for it
+     */
+    CompletableFuture<PeerConnection> connect(InetSocketAddress address, ByteString infoHash, PeerHandler handler);
+
+    /**
+     * Number of connections, whether they have completed the handshake or not.
+     */
+    int connectionCount();
+
+    /**
+     * Closes every connection and listening socket and waits for the engine's threads to finish. An
+     * interrupt does not cut the wait short; the thread's interrupt status is set again once it is over.
+     */
+    @Override
+    void close();
+}
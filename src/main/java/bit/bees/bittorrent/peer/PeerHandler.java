@@ -0,0 +1,22 @@
+package bit.bees.bittorrent.peer;
+
+/**
+ * Per-connection logic of a peer session: receives its messages and learns when it starts and ends.
+ * Each connection has a handler of its own.
+ */
+public interface PeerHandler extends MessageHandler {
+
+    /**
+     * The handshake completed; messages may be sent from here on.
+     */
+    default void onConnected(PeerConnection connection) {
+    }
+
+    /**
+     * The connection is closed, by either side.
+     *
+     * @param cause why it was closed, {@code null} if it was closed locally or the peer hung up
+     */
+    default void onDisconnected(PeerConnection connection, Exception cause) {
+    }
+}
@@ -0,0 +1,12 @@
+package bit.bees.bittorrent.peer;
+
+/**
+ * A peer broke the wire protocol, e.g. with a malformed handshake or a message of the wrong length.
+ * The connection to such a peer is closed.
+ */
+public class PeerProtocolException extends RuntimeException {
+
+    public PeerProtocolException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,331 @@
+package bit.bees.bittorrent.peer;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Objects;
+import java.util.Random;
+
+/**
+ * Picks the piece to start downloading next from a peer, among the pieces that are wanted: those that
+ * are neither downloaded nor started and have a priority above {@code 0}.
+ * <p>
+ * Wanted pieces are kept in one list per pair of priority and availability, the number of connected
+ * peers that have the piece. The lists are linked through arrays indexed by piece, so a piece changes
+ * lists in constant time when its availability or priority changes, and a pick walks the lists from
+ * the highest priority and the rarest pieces on until it finds one the peer has. A walk that takes too
+ * long, because the peer has few of the rarest pieces, turns to the pieces the peer has instead: it
+ * takes the rarest of those it comes across in as many steps through the bitfields, from where the
+ * last such walk stopped on.
+ * Pieces of equal priority and availability are picked in random order, so that peers spread their
+ * requests. Seeds, the peers with every piece, add to the availability of all pieces alike and are
+ * only counted, which spares walking their bitfields. Not thread-safe.
+ */
+public final class PiecePicker {
+
+    public static final int MAX_PRIORITY = 7;
+    public static final int DEFAULT_PRIORITY = 4;
+    /** Availabilities from {@code AVAILABILITY_LEVELS - 1} on share a list. */
+    static final int AVAILABILITY_LEVELS = 1024;
+    private static final int WALK_LIMIT = 1024;
+
+    public enum Mode {
+        /** Rarest pieces first, to spread them among the peers. */
+        RAREST_FIRST,
+        /** Lowest index first, to stream the content while it downloads. */
+        SEQUENTIAL
+    }
+
+    private final int pieceCount;
+    private final int[] availability;
+    private final byte[] priorities;
+    // The lists, by key(piece); -1 ends them
+    private final int[] heads = new int[MAX_PRIORITY * AVAILABILITY_LEVELS];
+    private final int[] next;
+    private final int[] previous;
+    private final BitSet nonEmptyLists = new BitSet(heads.length);
+    /** Pieces that are not downloaded or started, whatever their priority. */
+    private final BitSet missing;
+    /** Missing pieces with a priority, which are those in the lists. */
+    private final BitSet wanted = new BitSet();
+    /** No wanted piece has a lower index. */
+    private int firstWanted;
+    /** Where the walk over the pieces of a peer goes on, see {@link #pickAmong}. */
+    private int cursor;
+    private int seeds;
+    private Mode mode = Mode.RAREST_FIRST;
+
+    /**
+     * @param downloaded the pieces that are never picked
+     */
+    public PiecePicker(int pieceCount, BitSet downloaded, Random random) {
+        this.pieceCount = pieceCount;
+        this.availability = new int[pieceCount];
+        this.priorities = new byte[pieceCount];
+        this.next = new int[pieceCount];
+        this.previous = new int[pieceCount];
+        this.missing = new BitSet(pieceCount);
+        Arrays.fill(heads, -1);
+        Arrays.fill(priorities, (byte) DEFAULT_PRIORITY);
+        missing.set(0, pieceCount);
+        missing.andNot(downloaded);
+        missing.clear(pieceCount, Math.max(pieceCount, downloaded.length()));
+
+        // Linked in random order, so that pieces of a list are too
+        int[] order = missing.stream().toArray();
+        for (int i = order.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int piece = order[i];
+            order[i] = order[j];
+            order[j] = piece;
+        }
+        for (int piece : order) {
+            link(piece);
+        }
+    }
+
+    public int pieceCount() {
+        return pieceCount;
+    }
+
+    public Mode mode() {
+        return mode;
+    }
+
+    public void setMode(Mode mode) {
+        this.mode = Objects.requireNonNull(mode);
+    }
+
+    /**
+     * Number of connected peers that have the piece.
+     */
+    public int availability(int piece) {
+        return availability[piece] + seeds;
+    }
+
+    public int priority(int piece) {
+        return priorities[piece];
+    }
+
+    /**
+     * Sets the priority of the pieces from {@code from} to {@code to}, exclusive. Pieces of priority
+     * {@code 0} are not picked, those of higher priority are picked first in {@link Mode#RAREST_FIRST}.
+     */
+    public void setPriority(int from, int to, int priority) {
+        Objects.checkFromToIndex(from, to, pieceCount);
+        if (priority < 0 || priority > MAX_PRIORITY) {
+            throw new IllegalArgumentException("Priority %d is not between 0 and %d".formatted(priority, MAX_PRIORITY));
+        }
+        for (int piece = from; piece < to; piece++) {
+            if (priorities[piece] != priority) {
+                if (wanted.get(piece)) {
+                    unlink(piece);
+                }
+                priorities[piece] = (byte) priority;
+                if (priority > 0 && missing.get(piece)) {
+                    link(piece);
+                }
+            }
+        }
+    }
+
+    /**
+     * Whether the piece may be picked, which it is unless it is downloaded, started or of priority
+     * {@code 0}.
+     */
+    public boolean isWanted(int piece) {
+        return wanted.get(piece);
+    }
+
+    /**
+     * Takes the piece out, as it is downloaded or started.
+     */
+    public void remove(int piece) {
+        if (wanted.get(piece)) {
+            unlink(piece);
+        }
+        missing.clear(piece);
+    }
+
+    /**
+     * Puts a removed piece back, e.g. after it failed verification.
+     */
+    public void add(int piece) {
+        if (!missing.get(piece)) {
+            missing.set(piece);
+            if (priorities[piece] > 0) {
+                link(piece);
+            }
+        }
+    }
+
+    /**
+     * A peer announced the piece.
+     */
+    public void peerHas(int piece) {
+        changeAvailability(piece, 1);
+    }
+
+    /**
+     * A peer announced the pieces, with its bitfield.
+     */
+    public void peerHas(BitSet pieces) {
+        for (int piece = pieces.nextSetBit(0); piece >= 0 && piece < pieceCount; piece = pieces.nextSetBit(piece + 1)) {
+            changeAvailability(piece, 1);
+        }
+    }
+
+    public void seedJoined() {
+        seeds++;
+    }
+
+    public void seedLeft() {
+        seeds--;
+    }
+
+    public void peerLost(int piece) {
+        changeAvailability(piece, -1);
+    }
+
+    /**
+     * A peer that had the pieces is gone.
+     */
+    public void peerLost(BitSet pieces) {
+        for (int piece = pieces.nextSetBit(0); piece >= 0 && piece < pieceCount; piece = pieces.nextSetBit(piece + 1)) {
+            changeAvailability(piece, -1);
+        }
+    }
+
+    /**
+     * The wanted piece to start next from a peer with the given pieces, or {@code -1} if it has none.
+     * The piece stays wanted until it is {@linkplain #remove removed}. In {@link Mode#RAREST_FIRST}, a
+     * peer whose few wanted pieces lie far apart among many it lacks or that are not wanted may get
+     * {@code -1} nonetheless; the next pick goes on looking where this one stopped.
+     */
+    public int pick(BitSet peerPieces) {
+        return mode == Mode.SEQUENTIAL ? pickSequential(peerPieces) : pickRarest(peerPieces);
+    }
+
+    private int pickSequential(BitSet peerPieces) {
+        int first = wanted.nextSetBit(firstWanted);
+        if (first < 0) {
+            firstWanted = pieceCount;
+            return -1;
+        }
+        firstWanted = first;
+        return firstCommon(peerPieces, first);
+    }
+
+    private int pickRarest(BitSet peerPieces) {
+        int steps = 0;
+        for (int key = nonEmptyLists.nextSetBit(0); key >= 0; key = nonEmptyLists.nextSetBit(key + 1)) {
+            // No peer but the seeds has these, least of all this one
+            if (key % AVAILABILITY_LEVELS == 0 && seeds == 0) {
+                continue;
+            }
+            for (int piece = heads[key]; piece >= 0; piece = next[piece]) {
+                if (peerPieces.get(piece)) {
+                    return piece;
+                }
+                if (++steps == WALK_LIMIT) {
+                    return pickAmong(peerPieces, key);
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * The wanted piece of the peer with the lowest key among those found in {@value #WALK_LIMIT} steps
+     * from the cursor on, wrapping around at the end, or {@code -1}. A step skips to the next wanted
+     * piece, or to the next piece of the peer when it lacks that one, so the steps are bounded however
+     * the bitfields interleave. A key of {@code lowestKey} is the lowest there is and ends the walk
+     * early.
+     */
+    private int pickAmong(BitSet peerPieces, int lowestKey) {
+        int best = -1;
+        int bestKey = Integer.MAX_VALUE;
+        int piece = cursor;
+        for (int steps = 0; steps < WALK_LIMIT; steps++) {
+            int wantedPiece = piece < pieceCount ? wanted.nextSetBit(piece) : -1;
+            if (wantedPiece < 0) {
+                piece = 0;
+                continue;
+            }
+            int peerPiece = peerPieces.nextSetBit(wantedPiece);
+            if (peerPiece != wantedPiece) {
+                piece = Math.max(peerPiece, 0);
+                continue;
+            }
+            piece = wantedPiece + 1;
+            int key = key(wantedPiece);
+            if (key < bestKey) {
+                best = wantedPiece;
+                bestKey = key;
+                if (key == lowestKey) {
+                    break;
+                }
+            }
+        }
+        cursor = piece;
+        return best;
+    }
+
+    /**
+     * The first wanted piece of the peer from {@code from} on, or {@code -1}.
+     */
+    private int firstCommon(BitSet peerPieces, int from) {
+        int piece = wanted.nextSetBit(from);
+        while (piece >= 0) {
+            int peerPiece = peerPieces.nextSetBit(piece);
+            if (peerPiece == piece || peerPiece < 0) {
+                return peerPiece;
+            }
+            piece = wanted.nextSetBit(peerPiece);
+        }
+        return -1;
+    }
+
+    private void changeAvailability(int piece, int delta) {
+        if (wanted.get(piece)) {
+            unlink(piece);
+            availability[piece] += delta;
+            link(piece);
+        } else {
+            availability[piece] += delta;
+        }
+    }
+
+    private int key(int piece) {
+        return (MAX_PRIORITY - priorities[piece]) * AVAILABILITY_LEVELS + Math.min(availability[piece], AVAILABILITY_LEVELS - 1);
+    }
+
+    private void link(int piece) {
+        int key = key(piece);
+        int head = heads[key];
+        next[piece] = head;
+        previous[piece] = -1;
+        if (head >= 0) {
+            previous[head] = piece;
+        }
+        heads[key] = piece;
+        nonEmptyLists.set(key);
+        wanted.set(piece);
+        firstWanted = Math.min(firstWanted, piece);
+    }
+
+    private void unlink(int piece) {
+        int key = key(piece);
+        if (previous[piece] >= 0) {
+            next[previous[piece]] = next[piece];
+        } else {
+            heads[key] = next[piece];
+            if (heads[key] < 0) {
+                nonEmptyLists.clear(key);
+            }
+        }
+        if (next[piece] >= 0) {
+            previous[next[piece]] = previous[piece];
+        }
+        wanted.clear(piece);
+    }
+}
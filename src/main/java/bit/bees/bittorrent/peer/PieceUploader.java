@@ -0,0 +1,81 @@
+package bit.bees.bittorrent.peer;
+
+import bit.bees.bittorrent.storage.PieceFiles;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Answers {@code request} messages from the files of a torrent.
+ * <p>
+ * A block within one file is sent straight from that file with
+ * {@link PeerConnection#sendPiece(int, int, java.nio.channels.FileChannel, long, int)}, so the kernel
+ * copies it from the page cache to the socket and it never passes through the heap. A block spanning
+ * files, which happens at most once per file boundary, is read into a buffer and sent from there, and
+ * so are all blocks with {@code peer.upload.zero-copy=false}.
+ * <p>
+ * Requests for blocks longer than {@code peer.upload.max-block-length} are refused, as is any request
+ * while the connection has {@code peer.upload.max-queued-bytes} or more waiting to be written, so that
+ * a peer can neither have large buffers allocated nor pile up output it does not read. Either closes
+ * the connection.
+ */
+@Component
+public class PieceUploader {
+
+    /** Longest block that may be configured; peers request {@value BlockScheduler#BLOCK_LENGTH} bytes. */
+    public static final int MAX_BLOCK_LENGTH = 128 * 1024;
+    static final int DEFAULT_MAX_BLOCK_LENGTH = BlockScheduler.BLOCK_LENGTH;
+    /** As much as a {@link RequestPipeline} keeps requested at most. */
+    static final int DEFAULT_MAX_QUEUED_BYTES = RequestPipeline.MAX_DEPTH * BlockScheduler.BLOCK_LENGTH;
+
+    private final boolean zeroCopy;
+    private final int maxBlockLength;
+    private final long maxQueuedBytes;
+
+    public PieceUploader(@Value("${peer.upload.zero-copy:true}") boolean zeroCopy,
+                         @Value("${peer.upload.max-block-length:" + DEFAULT_MAX_BLOCK_LENGTH + "}") int maxBlockLength,
+                         @Value("${peer.upload.max-queued-bytes:" + DEFAULT_MAX_QUEUED_BYTES + "}") long maxQueuedBytes) {
+        if (maxBlockLength <= 0 || maxBlockLength > MAX_BLOCK_LENGTH) {
+            throw new IllegalArgumentException("Block length %d is not between 1 and %d".formatted(maxBlockLength, MAX_BLOCK_LENGTH));
+        }
+        this.zeroCopy = zeroCopy;
+        this.maxBlockLength = maxBlockLength;
+        this.maxQueuedBytes = maxQueuedBytes;
+    }
+
+    /**
+     * Sends the block of {@code length} bytes at offset {@code begin} of the piece.
+     *
+     * @throws PeerProtocolException    if the block is too long or too much output is queued already
+     * @throws IndexOutOfBoundsException if the block does not lie within the piece
+     * @throws IOException               if a file the block is read from can not be opened or read
+     */
+    public void upload(PeerConnection connection, PieceFiles files, int piece, int begin, int length) throws IOException {
+        if (length > maxBlockLength) {
+            throw new PeerProtocolException("Request for %d bytes, more than %d".formatted(length, maxBlockLength));
+        }
+        if (connection.queuedBytes() >= maxQueuedBytes) {
+            throw new PeerProtocolException("Request while %d bytes wait to be sent, %d at most"
+                    .formatted(connection.queuedBytes(), maxQueuedBytes));
+        }
+        if (zeroCopy) {
+            long[] region = {-1, 0};
+            files.layout().forEachSegment(piece, begin, length, (file, fileOffset, segmentLength) -> {
+                if (segmentLength == length) {
+                    region[0] = file;
+                    region[1] = fileOffset;
+                }
+                return false;
+            });
+            if (region[0] >= 0) {
+                connection.sendPiece(piece, begin, files.channel((int) region[0]), region[1], length);
+                return;
+            }
+        }
+        var block = ByteBuffer.allocate(length);
+        files.read(piece, begin, block);
+        connection.sendPiece(piece, begin, block.flip());
+    }
+}
@@ -0,0 +1,312 @@
+package bit.bees.bittorrent.peer;
+
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import static bit.bees.bittorrent.peer.BlockScheduler.BLOCK_LENGTH;
+
+/**
+ * Downloads blocks from one peer, keeping enough requests outstanding to cover the bandwidth-delay
+ * product of the connection. Each connection that downloads has a pipeline of its own as its handler;
+ * the blocks come from the torrent's {@link BlockScheduler}.
+ * <p>
+ * The pipeline measures the rate blocks arrive at and the round-trip time, the least time a request
+ * took to be answered. It keeps twice as many requests outstanding as the product of both covers,
+ * between {@value #MIN_DEPTH} and {@value #MAX_DEPTH}, which doubles the depth every round trip until
+ * the link is full. Requests queue up at the peer from then on, so the round-trip time is measured
+ * again every {@value #RTT_WINDOW_SECONDS} seconds with the depth dropped to the minimum for a round
+ * trip. Requests are topped up in batches from within the message callbacks, so that they leave in
+ * one socket write.
+ */
+public class RequestPipeline implements PeerHandler {
+
+    public static final int MIN_DEPTH = 2;
+    public static final int MAX_DEPTH = 500;
+    static final int RTT_WINDOW_SECONDS = 10;
+
+    private static final double DEPTH_GAIN = 2;
+    private static final int MAX_BATCH = 16;
+    private static final long RTT_WINDOW = TimeUnit.SECONDS.toNanos(RTT_WINDOW_SECONDS);
+    private static final long MIN_RATE_INTERVAL = TimeUnit.MILLISECONDS.toNanos(10);
+    /** Weight of a rate sample below the current rate; higher samples are taken as they are. */
+    private static final double RATE_DECAY = 0.25;
+
+    private final BlockScheduler scheduler;
+    private final LongSupplier nanoClock;
+    private final BitSet pieces = new BitSet();
+    private PeerConnection connection;
+    private boolean choked = true;
+    private boolean interested;
+    /** Whether the peer had every piece from the start and is counted as a seed. */
+    private boolean seed;
+
+    // Outstanding requests, oldest first
+    private final int[] requestedPieces = new int[MAX_DEPTH];
+    private final int[] requestedBegins = new int[MAX_DEPTH];
+    private final long[] sentAt = new long[MAX_DEPTH];
+    /** Whether a request was sent with at most one other ahead of it, so that it measures the RTT. */
+    private final boolean[] probe = new boolean[MAX_DEPTH];
+    private int outstanding;
+
+    /** Bytes per second. */
+    private double rate;
+    private long rateIntervalStart;
+    private long rateIntervalBytes;
+    private long roundTripTime;
+    private long roundTripTimeMeasured;
+    private boolean probing;
+
+    public RequestPipeline(BlockScheduler scheduler) {
+        this(scheduler, System::nanoTime);
+    }
+
+    RequestPipeline(BlockScheduler scheduler, LongSupplier nanoClock) {
+        this.scheduler = scheduler;
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * Number of requests currently kept outstanding, see {@link RequestPipeline}.
+     */
+    public synchronized int depth() {
+        if (probing || roundTripTime == 0) {
+            return MIN_DEPTH;
+        }
+        double blocks = Math.ceil(DEPTH_GAIN * rate * roundTripTime / 1e9 / BLOCK_LENGTH);
+        return (int) Math.max(MIN_DEPTH, Math.min(MAX_DEPTH, blocks));
+    }
+
+    public synchronized int outstandingRequests() {
+        return outstanding;
+    }
+
+    /**
+     * Measured download rate in bytes per second.
+     */
+    public synchronized double rate() {
+        return rate;
+    }
+
+    /**
+     * Measured round-trip time in nanoseconds, {@code 0} until the first block arrived.
+     */
+    public synchronized long roundTripTime() {
+        return roundTripTime;
+    }
+
+    @Override
+    public synchronized void onConnected(PeerConnection connection) {
+        this.connection = connection;
+        scheduler.register(this);
+    }
+
+    @Override
+    public void onDisconnected(PeerConnection connection, Exception cause) {
+        scheduler.unregister(this);
+        synchronized (this) {
+            abandonAll();
+            if (seed) {
+                scheduler.seedLeft();
+            } else {
+                scheduler.peerLost(pieces);
+            }
+            seed = false;
+            pieces.clear();
+        }
+    }
+
+    @Override
+    public synchronized void onChoke() {
+        choked = true;
+        abandonAll();
+    }
+
+    @Override
+    public synchronized void onUnchoke() {
+        choked = false;
+        fill();
+    }
+
+    @Override
+    public synchronized void onHave(int piece) {
+        if (piece < 0 || piece >= scheduler.pieceCount()) {
+            throw new PeerProtocolException("Have for piece %d of %d".formatted(piece, scheduler.pieceCount()));
+        }
+        if (!pieces.get(piece)) {
+            pieces.set(piece);
+            scheduler.peerHas(piece);
+            piecesAdded(piece, piece + 1);
+        }
+    }
+
+    @Override
+    public synchronized void onBitfield(ByteBuffer bits) {
+        int pieceCount = scheduler.pieceCount();
+        if (bits.remaining() != (pieceCount + 7) / 8) {
+            throw new PeerProtocolException("Bitfield of %d bytes for %d pieces".formatted(bits.remaining(), pieceCount));
+        }
+        var added = new BitSet(pieceCount);
+        for (int i = 0; i < bits.remaining(); i++) {
+            int bitsOfByte = bits.get(bits.position() + i) & 0xff;
+            for (int bit = 0; bitsOfByte != 0; bit++, bitsOfByte = bitsOfByte << 1 & 0xff) {
+                if ((bitsOfByte & 0x80) != 0 && i * 8 + bit < pieceCount) {
+                    added.set(i * 8 + bit);
+                }
+            }
+        }
+        if (pieces.isEmpty() && added.cardinality() == pieceCount) {
+            seed = true;
+            pieces.or(added);
+            scheduler.seedJoined();
+        } else {
+            added.andNot(pieces);
+            pieces.or(added);
+            scheduler.peerHas(added);
+        }
+        piecesAdded(0, pieceCount);
+    }
+
+    @Override
+    public void onPiece(int piece, int begin, ByteBuffer block) {
+        boolean cancelDuplicates;
+        synchronized (this) {
+            long now = nanoClock.getAsLong();
+            int index = indexOf(piece, begin);
+            if (index >= 0) {
+                measure(now, now - sentAt[index], probe[index]);
+                remove(index);
+            }
+            countReceived(now, block.remaining());
+            cancelDuplicates = scheduler.received(piece, begin, block, index >= 0);
+            fill();
+        }
+        // Outside of the lock, as the other pipelines may be calling into this one
+        if (cancelDuplicates) {
+            scheduler.cancelDuplicates(this, piece, begin);
+        }
+    }
+
+    /**
+     * Cancels the request for a block that arrived from another peer, if there is one.
+     */
+    synchronized void cancel(int piece, int begin) {
+        int index = indexOf(piece, begin);
+        if (index >= 0) {
+            remove(index);
+            if (connection.isOpen()) {
+                connection.sendCancel(piece, begin, scheduler.blockLength(piece, begin));
+            }
+            fill();
+        }
+    }
+
+    /**
+     * The pieces the peer has. Only called by the scheduler on behalf of this pipeline.
+     */
+    BitSet pieces() {
+        return pieces;
+    }
+
+    /**
+     * Whether the block is requested from the peer. Only called by the scheduler on behalf of this
+     * pipeline.
+     */
+    boolean isRequested(int piece, int begin) {
+        return indexOf(piece, begin) >= 0;
+    }
+
+    private void piecesAdded(int from, int to) {
+        if (!interested) {
+            for (int piece = pieces.nextSetBit(from); piece >= 0 && piece < to; piece = pieces.nextSetBit(piece + 1)) {
+                if (!scheduler.isDownloaded(piece)) {
+                    interested = true;
+                    connection.sendInterested();
+                    break;
+                }
+            }
+        }
+        fill();
+    }
+
+    /**
+     * Tops the outstanding requests up to the depth once a batch of them is missing.
+     */
+    private void fill() {
+        if (choked || connection == null || !connection.isOpen()) {
+            return;
+        }
+        int depth = depth();
+        int batch = Math.max(1, Math.min(MAX_BATCH, depth / 4));
+        if (outstanding > depth - batch) {
+            return;
+        }
+        while (outstanding < depth) {
+            long block = scheduler.next(this);
+            if (block < 0) {
+                break;
+            }
+            int piece = BlockScheduler.piece(block);
+            int begin = BlockScheduler.begin(block);
+            long now = nanoClock.getAsLong();
+            if (outstanding == 0) {
+                rateIntervalStart = now;
+                rateIntervalBytes = 0;
+            }
+            requestedPieces[outstanding] = piece;
+            requestedBegins[outstanding] = begin;
+            sentAt[outstanding] = now;
+            probe[outstanding] = outstanding < MIN_DEPTH;
+            outstanding++;
+            connection.sendRequest(piece, begin, scheduler.blockLength(piece, begin));
+        }
+    }
+
+    private void measure(long now, long latency, boolean probeRequest) {
+        if (roundTripTime == 0 || latency < roundTripTime || probing && probeRequest) {
+            roundTripTime = Math.max(1, latency);
+            roundTripTimeMeasured = now;
+            probing = false;
+        } else if (!probing && now - roundTripTimeMeasured > RTT_WINDOW) {
+            probing = true;
+        }
+    }
+
+    private void countReceived(long now, int length) {
+        rateIntervalBytes += length;
+        long elapsed = now - rateIntervalStart;
+        if (elapsed >= Math.max(roundTripTime, MIN_RATE_INTERVAL)) {
+            // The depth is held down while probing, which says nothing about the rate
+            if (!probing) {
+                double sample = rateIntervalBytes * 1e9 / elapsed;
+                rate = sample > rate ? sample : rate + (sample - rate) * RATE_DECAY;
+            }
+            rateIntervalStart = now;
+            rateIntervalBytes = 0;
+        }
+    }
+
+    private int indexOf(int piece, int begin) {
+        for (int i = 0; i < outstanding; i++) {
+            if (requestedPieces[i] == piece && requestedBegins[i] == begin) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void remove(int index) {
+        int moved = outstanding - index - 1;
+        System.arraycopy(requestedPieces, index + 1, requestedPieces, index, moved);
+        System.arraycopy(requestedBegins, index + 1, requestedBegins, index, moved);
+        System.arraycopy(sentAt, index + 1, sentAt, index, moved);
+        System.arraycopy(probe, index + 1, probe, index, moved);
+        outstanding--;
+    }
+
+    private void abandonAll() {
+        scheduler.abandon(requestedPieces, requestedBegins, outstanding);
+        outstanding = 0;
+    }
+}
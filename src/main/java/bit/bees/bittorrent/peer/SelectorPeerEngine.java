@@ -0,0 +1,693 @@
+package bit.bees.bittorrent.peer;
+
+import bit.bees.bittorrent.bencode.ByteString;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Peer wire protocol engine running every connection on a single thread around a {@link Selector}.
+ * <p>
+ * Sockets are non-blocking and read into one direct buffer owned by the engine thread; messages are
+ * decoded from there in place. Only a connection left with part of a message borrows a buffer from
+ * the {@link BufferPool} to keep it until the rest arrives, and only while it has output queued does
+ * it hold buffers for that, so idle connections cost no buffer memory. Messages sent while handling
+ * input or a task are queued and written once the engine is done with it, which batches them into
+ * few socket writes.
+ * <p>
+ * Handlers and tasks run on the engine thread and must not block. Connections may only be used on
+ * that thread; other threads hand work over with {@link #execute(Runnable)}. The thread is started by
+ * the first {@link #listen} or {@link #connect}. Beyond {@code maxConnections}, incoming connections
+ * are closed right away and outgoing ones fail. A connection whose handshake is not complete within the
+ * handshake timeout, from being accepted or from starting to connect, is closed, so that sockets that
+ * stay silent do not hold on to a place.
+ * <p>
+ * Closing the engine, or its selector failing, closes every connection and server. Connections and
+ * servers that were still waiting to be set up on the engine thread are given up, connecting ones
+ * failing with a {@link ClosedChannelException}.
+ */
+public class SelectorPeerEngine implements PeerEngine {
+
+    private final BufferPool bufferPool;
+    private final MessageDecoder decoder;
+    private final int maxConnections;
+    private final long handshakeTimeout;
+    private final ByteString peerId;
+
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final Set<Connection> connections = new HashSet<>();
+    private final List<ServerSocketChannel> servers = new ArrayList<>();
+    private final List<Connection> pendingFlushes = new ArrayList<>();
+    /** Connections by handshake deadline, which is the order they were opened in. */
+    private final Queue<Connection> handshakeDeadlines = new ArrayDeque<>();
+    private final Consumer<SelectionKey> keyHandler = this::handle;
+
+    private Selector selector;
+    private ByteBuffer readBuffer;
+    private Thread thread;
+    private volatile boolean closed;
+    private volatile int connectionCount;
+
+    public SelectorPeerEngine(BufferPool bufferPool, MessageDecoder decoder, int maxConnections) {
+        this(bufferPool, decoder, maxConnections, Duration.ofSeconds(PeerConfiguration.DEFAULT_HANDSHAKE_TIMEOUT_SECONDS));
+    }
+
+    public SelectorPeerEngine(BufferPool bufferPool, MessageDecoder decoder, int maxConnections, Duration handshakeTimeout) {
+        this.bufferPool = bufferPool;
+        this.decoder = decoder;
+        this.maxConnections = maxConnections;
+        this.handshakeTimeout = handshakeTimeout.toNanos();
+        this.peerId = Handshake.newPeerId();
+    }
+
+    @Override
+    public ByteString peerId() {
+        return peerId;
+    }
+
+    @Override
+    public InetSocketAddress listen(InetSocketAddress address, Function<Handshake, PeerHandler> acceptor) throws IOException {
+        start();
+        var server = ServerSocketChannel.open();
+        try {
+            server.configureBlocking(false);
+            server.bind(address, 1024);
+        } catch (IOException e) {
+            server.close();
+            throw e;
+        }
+        execute(new SetUp(() -> {
+            try {
+                server.register(selector, SelectionKey.OP_ACCEPT, acceptor);
+                servers.add(server);
+            } catch (IOException e) {
+                closeQuietly(server);
+            }
+        }, () -> closeQuietly(server)));
+        return (InetSocketAddress) server.getLocalAddress();
+    }
+
+    @Override
+    public CompletableFuture<PeerConnection> connect(InetSocketAddress address, ByteString infoHash, PeerHandler handler) {
+        start();
+        var outgoing = Handshake.of(infoHash, peerId);
+        var future = new CompletableFuture<PeerConnection>();
+        execute(new SetUp(() -> {
+            if (connections.size() >= maxConnections) {
+                future.completeExceptionally(connectionLimitReached());
+                return;
+            }
+            Connection connection = null;
+            try {
+                var channel = SocketChannel.open();
+                connection = new Connection(channel, null, handler, infoHash, future);
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                connection.register(SelectionKey.OP_CONNECT);
+                outgoing.writeTo(connection.reserve(Handshake.LENGTH));
+                if (channel.connect(address)) {
+                    connection.finishConnect();
+                }
+            } catch (IOException | RuntimeException e) {
+                if (connection != null) {
+                    connection.close(e);
+                }
+                future.completeExceptionally(e);
+            }
+        }, () -> future.completeExceptionally(new ClosedChannelException())));
+        return future;
+    }
+
+    /**
+     * Runs the task on the engine thread, after whatever the engine is doing right now.
+     */
+    public void execute(Runnable task) {
+        if (closed) {
+            throw new IllegalStateException("Peer engine is closed");
+        }
+        start();
+        tasks.add(task);
+        selector.wakeup();
+        // The engine thread may have given up its tasks since the check above
+        if (closed) {
+            abandonTasks();
+        }
+    }
+
+    @Override
+    public int connectionCount() {
+        return connectionCount;
+    }
+
+    @Override
+    public void close() {
+        Thread engineThread;
+        synchronized (this) {
+            closed = true;
+            engineThread = thread;
+        }
+        if (engineThread == null) {
+            return;
+        }
+        selector.wakeup();
+        if (engineThread != Thread.currentThread()) {
+            boolean interrupted = false;
+            while (engineThread.isAlive()) {
+                try {
+                    engineThread.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private synchronized void start() {
+        if (closed) {
+            throw new IllegalStateException("Peer engine is closed");
+        }
+        if (thread != null) {
+            return;
+        }
+        try {
+            selector = Selector.open();
+        } catch (IOException e) {
+            throw new IllegalStateException("Can not open a selector", e);
+        }
+        readBuffer = ByteBuffer.allocateDirect(bufferPool.bufferSize());
+        thread = Thread.ofPlatform().name("peer-engine").daemon().start(this::run);
+    }
+
+    private void run() {
+        try {
+            while (!closed) {
+                Runnable task;
+                while ((task = tasks.poll()) != null) {
+                    runTask(task);
+                }
+                flushPending();
+                long timeout = closeUnansweredHandshakes();
+                if (timeout > 0) {
+                    selector.select(keyHandler, timeout);
+                } else {
+                    selector.select(keyHandler);
+                }
+                flushPending();
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Peer engine selector failed", e);
+        } finally {
+            closed = true;
+            abandonTasks();
+            for (Connection connection : List.copyOf(connections)) {
+                connection.close(null);
+            }
+            servers.forEach(SelectorPeerEngine::closeQuietly);
+            closeQuietly(selector);
+        }
+    }
+
+    /**
+     * Drops the tasks that are still queued, once the engine is closed, letting go of what they were to
+     * set up.
+     */
+    private void abandonTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            if (task instanceof SetUp setUp) {
+                setUp.abandon().run();
+            }
+        }
+    }
+
+    /**
+     * Runs a task, reporting a failure to the thread's uncaught exception handler instead of letting
+     * it stop the engine.
+     */
+    private void runTask(Runnable task) {
+        try {
+            task.run();
+        } catch (RuntimeException e) {
+            thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void handle(SelectionKey key) {
+        if (!key.isValid()) {
+            return;
+        }
+        if (key.attachment() instanceof Connection connection) {
+            connection.handle(key.readyOps());
+        } else if (key.isAcceptable()) {
+            accept((ServerSocketChannel) key.channel(), (Function<Handshake, PeerHandler>) key.attachment());
+        }
+    }
+
+    private void accept(ServerSocketChannel server, Function<Handshake, PeerHandler> acceptor) {
+        SocketChannel channel;
+        try {
+            while ((channel = server.accept()) != null) {
+                if (connections.size() >= maxConnections) {
+                    closeQuietly(channel);
+                    continue;
+                }
+                try {
+                    channel.configureBlocking(false);
+                    channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                    new Connection(channel, acceptor, null, null, null).register(SelectionKey.OP_READ);
+                } catch (IOException e) {
+                    closeQuietly(channel);
+                }
+            }
+        } catch (IOException e) {
+            // a failing accept affects one pending connection, the server keeps listening
+        }
+    }
+
+    /**
+     * Closes the connections whose handshake deadline has passed.
+     *
+     * @return milliseconds until the next deadline, at least {@code 1}, or {@code 0} if there is none
+     */
+    private long closeUnansweredHandshakes() {
+        long now = System.nanoTime();
+        Connection connection;
+        while ((connection = handshakeDeadlines.peek()) != null) {
+            if (connection.established || !connection.open) {
+                handshakeDeadlines.remove();
+            } else if (connection.handshakeDeadline - now <= 0) {
+                handshakeDeadlines.remove();
+                connection.close(new SocketTimeoutException("No handshake within %d ms"
+                        .formatted(TimeUnit.NANOSECONDS.toMillis(handshakeTimeout))));
+            } else {
+                return Math.max(1, TimeUnit.NANOSECONDS.toMillis(connection.handshakeDeadline - now + 999_999));
+            }
+        }
+        return 0;
+    }
+
+    private void flushPending() {
+        for (int i = 0; i < pendingFlushes.size(); i++) {
+            Connection connection = pendingFlushes.get(i);
+            connection.flushPending = false;
+            if (connection.open && connection.channel.isConnected()) {
+                try {
+                    connection.flush();
+                } catch (IOException e) {
+                    connection.close(e);
+                }
+            }
+        }
+        pendingFlushes.clear();
+    }
+
+    private PeerProtocolException connectionLimitReached() {
+        return new PeerProtocolException("Connection limit of %d reached".formatted(maxConnections));
+    }
+
+    private static void closeQuietly(AutoCloseable closeable) {
+        try {
+            closeable.close();
+        } catch (Exception e) {
+            // nothing left to do with it
+        }
+    }
+
+    /**
+     * A task that sets up a connection or server, with what to do instead if the engine closes before
+     * it runs.
+     */
+    private record SetUp(Runnable task, Runnable abandon) implements Runnable {
+
+        @Override
+        public void run() {
+            task.run();
+        }
+    }
+
+    /**
+     * A piece message whose block is queued as part of a file, handed to the socket by the kernel as far
+     * as the platform allows. The header travels with it, so blocks in a row take no output buffer.
+     */
+    private static final class FileRegion {
+
+        private final ByteBuffer header;
+        private final FileChannel file;
+        private long position;
+        private long remaining;
+
+        FileRegion(ByteBuffer header, FileChannel file, long position, long length) {
+            this.header = header;
+            this.file = file;
+            this.position = position;
+            this.remaining = length;
+        }
+
+        /**
+         * Sends as much of the region as the socket takes.
+         *
+         * @return the number of bytes sent
+         */
+        long transferTo(SocketChannel channel) throws IOException {
+            if (header.hasRemaining()) {
+                int headerSent = channel.write(header);
+                if (header.hasRemaining()) {
+                    return headerSent;
+                }
+                return headerSent + transferTo(channel);
+            }
+            long sent = file.transferTo(position, remaining, channel);
+            if (sent == 0 && position + remaining > file.size()) {
+                throw new EOFException("File ends at %d, before the block does".formatted(file.size()));
+            }
+            position += sent;
+            remaining -= sent;
+            return sent;
+        }
+    }
+
+    /**
+     * Connection state, confined to the engine thread.
+     */
+    private final class Connection extends AbstractPeerConnection {
+
+        private final SocketChannel channel;
+        private final Function<Handshake, PeerHandler> acceptor;
+        private final ByteString infoHash;
+        private final CompletableFuture<PeerConnection> connected;
+        /** Buffers filled up to their position, and file regions. */
+        private final ArrayDeque<Object> outbound = new ArrayDeque<>(2);
+
+        private final long handshakeDeadline = System.nanoTime() + handshakeTimeout;
+        private SelectionKey key;
+        private ByteBuffer inbound;
+        private long queuedBytes;
+        private boolean open = true;
+        private boolean established;
+        private boolean writeInterest;
+        private boolean flushPending;
+        private boolean reading;
+
+        /**
+         * Either an incoming connection with its acceptor, or an outgoing one with its handler, the info
+         * hash it was opened for and the future completing once it is established.
+         */
+        Connection(SocketChannel channel, Function<Handshake, PeerHandler> acceptor, PeerHandler handler,
+                   ByteString infoHash, CompletableFuture<PeerConnection> connected) {
+            super(handler);
+            this.channel = channel;
+            this.acceptor = acceptor;
+            this.infoHash = infoHash;
+            this.connected = connected;
+        }
+
+        void register(int interestOps) throws ClosedChannelException {
+            key = channel.register(selector, interestOps, this);
+            connections.add(this);
+            handshakeDeadlines.add(this);
+            connectionCount = connections.size();
+        }
+
+        void handle(int readyOps) {
+            try {
+                if ((readyOps & SelectionKey.OP_CONNECT) != 0) {
+                    finishConnect();
+                }
+                if (open && (readyOps & SelectionKey.OP_READ) != 0) {
+                    read();
+                }
+                if (open && (readyOps & SelectionKey.OP_WRITE) != 0) {
+                    flush();
+                }
+            } catch (Exception e) {
+                close(e);
+            }
+        }
+
+        void finishConnect() throws IOException {
+            if (channel.finishConnect()) {
+                writeInterest = false;
+                key.interestOps(SelectionKey.OP_READ);
+                flush();
+            }
+        }
+
+        /**
+         * Reads what the socket has and decodes the complete messages. The input buffer is only given
+         * back after decoding, even if a handler closes the connection in between.
+         */
+        private void read() throws IOException {
+            ByteBuffer buffer = inbound != null ? inbound : readBuffer.clear();
+            if (channel.read(buffer) < 0) {
+                close(null);
+                return;
+            }
+            buffer.flip();
+            reading = true;
+            try {
+                if (remoteHandshake == null && buffer.remaining() >= Handshake.LENGTH) {
+                    handshake(Handshake.read(buffer));
+                }
+                if (remoteHandshake != null) {
+                    decoder.decode(buffer, this);
+                }
+                if (open) {
+                    keep(buffer);
+                }
+            } finally {
+                reading = false;
+                if (!open) {
+                    releaseInbound();
+                }
+            }
+        }
+
+        private void handshake(Handshake handshake) {
+            remoteHandshake = handshake;
+            if (acceptor != null) {
+                handler = acceptor.apply(handshake);
+                if (handler == null) {
+                    throw new PeerProtocolException("Info hash %s is not shared".formatted(handshake.infoHash()));
+                }
+                Handshake.of(handshake.infoHash(), peerId).writeTo(reserve(Handshake.LENGTH));
+            } else if (!handshake.infoHash().equals(infoHash)) {
+                throw new PeerProtocolException("Peer answered for another info hash");
+            }
+            established = true;
+            if (connected != null) {
+                connected.complete(this);
+            }
+            handler.onConnected(this);
+        }
+
+        /**
+         * Keeps the unread rest of the input, i.e. an incomplete message, in a buffer of the connection
+         * large enough for the whole message. A connection with nothing left gives its buffer back.
+         */
+        private void keep(ByteBuffer buffer) {
+            int leftover = buffer.remaining();
+            if (leftover == 0) {
+                releaseInbound();
+                return;
+            }
+            int needed = Math.max(leftover, remoteHandshake == null ? Handshake.LENGTH : decoder.frameLength(buffer));
+            if (buffer == inbound && needed <= buffer.capacity()) {
+                buffer.compact();
+                return;
+            }
+            ByteBuffer target = needed <= bufferPool.bufferSize() ? bufferPool.acquire() : ByteBuffer.allocate(needed);
+            target.put(buffer);
+            if (buffer == inbound) {
+                bufferPool.release(buffer);
+            }
+            inbound = target;
+        }
+
+        private void releaseInbound() {
+            bufferPool.release(inbound);
+            inbound = null;
+        }
+
+        /**
+         * Room for a message of the given length at the end of the output queue.
+         */
+        private ByteBuffer reserve(int length) {
+            if (!open) {
+                throw new IllegalStateException("Connection to %s is closed".formatted(remoteAddress()));
+            }
+            ByteBuffer tail = outbound.peekLast() instanceof ByteBuffer buffer ? buffer : null;
+            if (tail == null || tail.remaining() < length) {
+                tail = length <= bufferPool.bufferSize() ? bufferPool.acquire() : ByteBuffer.allocate(length);
+                outbound.addLast(tail);
+            }
+            queuedBytes += length;
+            if (!flushPending) {
+                flushPending = true;
+                pendingFlushes.add(this);
+            }
+            return tail;
+        }
+
+        @Override
+        ByteBuffer beginMessage(int length) {
+            checkSendable();
+            return reserve(length);
+        }
+
+        @Override
+        void endMessage() {
+            // flushed once the engine is done with the current input or task
+        }
+
+        @Override
+        public void sendPiece(int piece, int begin, FileChannel file, long position, int length) {
+            checkSendable();
+            var header = ByteBuffer.allocate(MessageEncoder.PIECE_HEADER_LENGTH);
+            MessageEncoder.writePieceHeader(header, piece, begin, length);
+            outbound.addLast(new FileRegion(header.flip(), file, position, length));
+            queuedBytes += MessageEncoder.PIECE_HEADER_LENGTH + length;
+            if (!flushPending) {
+                flushPending = true;
+                pendingFlushes.add(this);
+            }
+        }
+
+        /**
+         * Writes queued output until the socket takes no more, in which case writing resumes once the
+         * socket is writable again.
+         */
+        void flush() throws IOException {
+            Object next;
+            while ((next = outbound.peekFirst()) != null) {
+                if (next instanceof FileRegion region) {
+                    queuedBytes -= region.transferTo(channel);
+                    if (region.header.hasRemaining() || region.remaining > 0) {
+                        setWriteInterest(true);
+                        return;
+                    }
+                    outbound.removeFirst();
+                    continue;
+                }
+                var head = (ByteBuffer) next;
+                head.flip();
+                queuedBytes -= channel.write(head);
+                if (head.hasRemaining()) {
+                    head.compact();
+                    setWriteInterest(true);
+                    return;
+                }
+                outbound.removeFirst();
+                bufferPool.release(head);
+            }
+            setWriteInterest(false);
+        }
+
+        private void setWriteInterest(boolean interest) {
+            if (interest != writeInterest) {
+                writeInterest = interest;
+                key.interestOps(interest ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+            }
+        }
+
+        void close(Exception cause) {
+            if (!open) {
+                return;
+            }
+            open = false;
+            if (key != null) {
+                key.cancel();
+            }
+            closeQuietly(channel);
+            if (!reading) {
+                releaseInbound();
+            }
+            for (Object next : outbound) {
+                if (next instanceof ByteBuffer buffer) {
+                    bufferPool.release(buffer);
+                }
+            }
+            outbound.clear();
+            queuedBytes = 0;
+            connections.remove(this);
+            connectionCount = connections.size();
+
+            if (connected != null && !connected.isDone()) {
+                connected.completeExceptionally(cause != null ? cause : new ClosedChannelException());
+            }
+            if (established) {
+                try {
+                    handler.onDisconnected(this, cause);
+                } catch (RuntimeException e) {
+                    // the connection is gone either way
+                }
+            }
+        }
+
+        private void checkSendable() {
+            checkThread();
+            if (!open) {
+                throw new IllegalStateException("Connection to %s is closed".formatted(remoteAddress()));
+            }
+            if (!established) {
+                throw new IllegalStateException("Handshake with %s is not complete".formatted(remoteAddress()));
+            }
+        }
+
+        private void checkThread() {
+            if (Thread.currentThread() != thread) {
+                throw new IllegalStateException("Peer connections are used on the engine thread, see execute()");
+            }
+        }
+
+        @Override
+        public InetSocketAddress remoteAddress() {
+            try {
+                return (InetSocketAddress) channel.getRemoteAddress();
+            } catch (IOException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public long queuedBytes() {
+            return queuedBytes;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void close() {
+            checkThread();
+            close(null);
+        }
+    }
+}
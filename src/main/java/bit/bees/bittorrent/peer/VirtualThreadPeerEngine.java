@@ -0,0 +1,526 @@
+package bit.bees.bittorrent.peer;
+
+import bit.bees.bittorrent.bencode.ByteString;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Peer wire protocol engine running each connection on a virtual thread of its own, which reads with
+ * plain blocking calls and decodes the messages in place like the {@link SelectorPeerEngine} does.
+ * <p>
+ * A session holds a buffer of the {@link BufferPool} for its input as long as it lives, and one for
+ * output while it writes, so it takes more memory than a connection of the selector engine. In turn,
+ * handlers may block, and connections are thread-safe. Messages sent by the handler while it handles
+ * input are written together once that input is done, messages sent from other threads right away.
+ * <p>
+ * At most {@code maxConnections} sessions run at once: listening sockets accept no more until one of
+ * them ends, and outgoing connections beyond the limit fail. A timer closes sessions whose handshake is
+ * not complete within the handshake timeout, so that silent sockets give their place, thread and
+ * buffer back.
+ */
+public class VirtualThreadPeerEngine implements PeerEngine {
+
+    private final BufferPool bufferPool;
+    private final MessageDecoder decoder;
+    private final int maxConnections;
+    private final long handshakeTimeout;
+    private final Semaphore permits;
+    private final ByteString peerId;
+    private final ThreadFactory threadFactory = Thread.ofVirtual().name("peer-", 0).factory();
+    private final ScheduledThreadPoolExecutor handshakeTimer;
+
+    private final Set<Session> sessions = ConcurrentHashMap.newKeySet();
+    private final Set<ServerSocketChannel> servers = ConcurrentHashMap.newKeySet();
+    private final Set<Thread> threads = ConcurrentHashMap.newKeySet();
+    private volatile boolean closed;
+
+    public VirtualThreadPeerEngine(BufferPool bufferPool, MessageDecoder decoder, int maxConnections) {
+        this(bufferPool, decoder, maxConnections, Duration.ofSeconds(PeerConfiguration.DEFAULT_HANDSHAKE_TIMEOUT_SECONDS));
+    }
+
+    public VirtualThreadPeerEngine(BufferPool bufferPool, MessageDecoder decoder, int maxConnections, Duration handshakeTimeout) {
+        this.bufferPool = bufferPool;
+        this.decoder = decoder;
+        this.maxConnections = maxConnections;
+        this.handshakeTimeout = handshakeTimeout.toNanos();
+        this.permits = new Semaphore(maxConnections);
+        this.peerId = Handshake.newPeerId();
+        this.handshakeTimer = new ScheduledThreadPoolExecutor(1, Thread.ofVirtual().name("peer-handshake-timer").factory());
+        handshakeTimer.setRemoveOnCancelPolicy(true);
+    }
+
+    @Override
+    public ByteString peerId() {
+        return peerId;
+    }
+
+    @Override
+    public InetSocketAddress listen(InetSocketAddress address, Function<Handshake, PeerHandler> acceptor) throws IOException {
+        checkOpen();
+        var server = ServerSocketChannel.open();
+        try {
+            server.bind(address, 1024);
+        } catch (IOException e) {
+            server.close();
+            throw e;
+        }
+        servers.add(server);
+        start(() -> accept(server, acceptor));
+        return (InetSocketAddress) server.getLocalAddress();
+    }
+
+    @Override
+    public CompletableFuture<PeerConnection> connect(InetSocketAddress address, ByteString infoHash, PeerHandler handler) {
+        checkOpen();
+        var outgoing = Handshake.of(infoHash, peerId);
+        var future = new CompletableFuture<PeerConnection>();
+        if (!permits.tryAcquire()) {
+            future.completeExceptionally(new PeerProtocolException("Connection limit of %d reached".formatted(maxConnections)));
+            return future;
+        }
+        SocketChannel channel;
+        try {
+            channel = SocketChannel.open();
+        } catch (IOException e) {
+            permits.release();
+            future.completeExceptionally(e);
+            return future;
+        }
+        startSession(new Session(channel, null, handler, outgoing, address, future));
+        return future;
+    }
+
+    @Override
+    public int connectionCount() {
+        return sessions.size();
+    }
+
+    /**
+     * {@inheritDoc} Threads still blocked in a handler are interrupted.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        handshakeTimer.shutdownNow();
+        servers.forEach(VirtualThreadPeerEngine::closeQuietly);
+        sessions.forEach(Session::close);
+        boolean interrupted = false;
+        for (Thread thread : threads) {
+            if (thread != Thread.currentThread()) {
+                thread.interrupt();
+                while (thread.isAlive()) {
+                    try {
+                        thread.join();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Peer engine is closed");
+        }
+    }
+
+    private void start(Runnable task) {
+        var thread = threadFactory.newThread(() -> {
+            try {
+                task.run();
+            } finally {
+                threads.remove(Thread.currentThread());
+            }
+        });
+        threads.add(thread);
+        thread.start();
+    }
+
+    private void startSession(Session session) {
+        sessions.add(session);
+        start(session::run);
+    }
+
+    /**
+     * Accepts connections while there is room for them, leaving the rest in the backlog.
+     */
+    private void accept(ServerSocketChannel server, Function<Handshake, PeerHandler> acceptor) {
+        try {
+            while (!closed && server.isOpen()) {
+                permits.acquire();
+                try {
+                    startSession(new Session(server.accept(), acceptor, null, null, null, null));
+                } catch (IOException e) {
+                    // a failing accept affects one pending connection, the server keeps listening
+                    permits.release();
+                }
+            }
+        } catch (InterruptedException e) {
+            // the engine is closing
+        } finally {
+            servers.remove(server);
+            closeQuietly(server);
+        }
+    }
+
+    private static void closeQuietly(AutoCloseable closeable) {
+        try {
+            closeable.close();
+        } catch (Exception e) {
+            // nothing left to do with it
+        }
+    }
+
+    /**
+     * A connection and the virtual thread reading it. The input buffer belongs to that thread, the
+     * output buffer to whoever holds the output lock.
+     */
+    private final class Session extends AbstractPeerConnection {
+
+        private final SocketChannel channel;
+        private final Function<Handshake, PeerHandler> acceptor;
+        private final Handshake outgoing;
+        private final InetSocketAddress address;
+        private final CompletableFuture<PeerConnection> connected;
+        private final ReentrantLock outputLock = new ReentrantLock();
+
+        private Thread thread;
+        private ScheduledFuture<?> handshakeDeadline;
+        private boolean dispatching;
+        private ByteBuffer output;
+        private volatile long queuedBytes;
+        private volatile boolean open = true;
+        private volatile boolean established;
+        private volatile Exception failure;
+
+        /**
+         * Either an incoming connection with its acceptor, or an outgoing one with its handler, the
+         * handshake to open it with, the address to connect to and the future completing once it is
+         * established.
+         */
+        Session(SocketChannel channel, Function<Handshake, PeerHandler> acceptor, PeerHandler handler,
+                Handshake outgoing, InetSocketAddress address, CompletableFuture<PeerConnection> connected) {
+            super(handler);
+            this.channel = channel;
+            this.acceptor = acceptor;
+            this.outgoing = outgoing;
+            this.address = address;
+            this.connected = connected;
+        }
+
+        void run() {
+            thread = Thread.currentThread();
+            ByteBuffer input = bufferPool.acquire();
+            Exception cause = null;
+            try {
+                handshakeDeadline = handshakeTimer.schedule(this::handshakeTimedOut, handshakeTimeout, TimeUnit.NANOSECONDS);
+                if (address != null) {
+                    channel.connect(address);
+                }
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                if (outgoing != null) {
+                    writeHandshake(outgoing);
+                }
+                while (input.position() < Handshake.LENGTH) {
+                    if (channel.read(input) < 0) {
+                        throw new EOFException("Peer hung up during the handshake");
+                    }
+                }
+                input.flip();
+                handshake(Handshake.read(input));
+                handshakeDeadline.cancel(false);
+                dispatching = true;
+                try {
+                    handler.onConnected(this);
+                } finally {
+                    dispatching = false;
+                }
+                flush();
+                while (true) {
+                    dispatching = true;
+                    try {
+                        decoder.decode(input, this);
+                    } finally {
+                        dispatching = false;
+                    }
+                    flush();
+                    if (!open) {
+                        break;
+                    }
+                    input = keep(input);
+                    if (channel.read(input) < 0) {
+                        break;
+                    }
+                    input.flip();
+                }
+            } catch (Exception e) {
+                if (open) {
+                    cause = e;
+                }
+            } finally {
+                finish(input, cause != null ? cause : failure);
+            }
+        }
+
+        /**
+         * Closes the session unless the handshake is complete; its thread notices and ends it.
+         */
+        private void handshakeTimedOut() {
+            if (!established && open) {
+                failure = new SocketTimeoutException("No handshake within %d ms"
+                        .formatted(TimeUnit.NANOSECONDS.toMillis(handshakeTimeout)));
+                close();
+            }
+        }
+
+        private void handshake(Handshake handshake) {
+            remoteHandshake = handshake;
+            if (acceptor != null) {
+                handler = acceptor.apply(handshake);
+                if (handler == null) {
+                    throw new PeerProtocolException("Info hash %s is not shared".formatted(handshake.infoHash()));
+                }
+                writeHandshake(Handshake.of(handshake.infoHash(), peerId));
+            } else if (!handshake.infoHash().equals(outgoing.infoHash())) {
+                throw new PeerProtocolException("Peer answered for another info hash");
+            }
+            established = true;
+            if (connected != null) {
+                connected.complete(this);
+            }
+        }
+
+        private void writeHandshake(Handshake handshake) {
+            outputLock.lock();
+            try {
+                handshake.writeTo(reserve(Handshake.LENGTH));
+                writeOutput();
+                releaseOutput();
+            } finally {
+                outputLock.unlock();
+            }
+        }
+
+        /**
+         * Makes room for the rest of the input, i.e. an incomplete message: a pooled buffer unless the
+         * message is longer than that.
+         */
+        private ByteBuffer keep(ByteBuffer input) {
+            int needed = Math.max(input.remaining(), decoder.frameLength(input));
+            boolean pooled = input.capacity() == bufferPool.bufferSize();
+            if (pooled && needed <= input.capacity()) {
+                return input.compact();
+            }
+            ByteBuffer target = needed <= bufferPool.bufferSize() ? bufferPool.acquire() : ByteBuffer.allocate(needed);
+            target.put(input);
+            bufferPool.release(input);
+            return target;
+        }
+
+        private void finish(ByteBuffer input, Exception cause) {
+            open = false;
+            if (handshakeDeadline != null) {
+                handshakeDeadline.cancel(false);
+            }
+            closeQuietly(channel);
+            bufferPool.release(input);
+            outputLock.lock();
+            try {
+                bufferPool.release(output);
+                output = null;
+                queuedBytes = 0;
+            } finally {
+                outputLock.unlock();
+            }
+            sessions.remove(this);
+            permits.release();
+
+            if (connected != null && !connected.isDone()) {
+                connected.completeExceptionally(cause != null ? cause : new ClosedChannelException());
+            }
+            if (established) {
+                try {
+                    handler.onDisconnected(this, cause);
+                } catch (RuntimeException e) {
+                    // the connection is gone either way
+                }
+            }
+        }
+
+        @Override
+        ByteBuffer beginMessage(int length) {
+            outputLock.lock();
+            try {
+                if (!open) {
+                    throw new IllegalStateException("Connection to %s is closed".formatted(remoteAddress()));
+                }
+                if (!established) {
+                    throw new IllegalStateException("Handshake with %s is not complete".formatted(remoteAddress()));
+                }
+                return reserve(length);
+            } catch (RuntimeException e) {
+                outputLock.unlock();
+                throw e;
+            }
+        }
+
+        @Override
+        void endMessage() {
+            try {
+                if (Thread.currentThread() != thread || !dispatching) {
+                    writeOutput();
+                    releaseOutput();
+                }
+            } finally {
+                outputLock.unlock();
+            }
+        }
+
+        /**
+         * Writes the header and the output queued before it right away, so that the block can follow
+         * them straight from the file.
+         */
+        @Override
+        public void sendPiece(int piece, int begin, FileChannel file, long position, int length) {
+            var buffer = beginMessage(MessageEncoder.PIECE_HEADER_LENGTH);
+            try {
+                MessageEncoder.writePieceHeader(buffer, piece, begin, length);
+                writeOutput();
+                transfer(file, position, length);
+            } finally {
+                endMessage();
+            }
+        }
+
+        /**
+         * Room for a message at the end of the output, writing what is there if the message does not
+         * fit behind it. Called with the output lock held.
+         */
+        private ByteBuffer reserve(int length) {
+            if (output == null) {
+                output = length <= bufferPool.bufferSize() ? bufferPool.acquire() : ByteBuffer.allocate(length);
+            } else if (output.remaining() < length) {
+                writeOutput();
+                if (output.capacity() < length) {
+                    bufferPool.release(output);
+                    output = ByteBuffer.allocate(length);
+                }
+            }
+            queuedBytes += length;
+            return output;
+        }
+
+        /**
+         * Writes the whole output, blocking until the socket took it. A failing write closes the
+         * connection, discarding the output. Called with the output lock held.
+         */
+        private void writeOutput() {
+            if (output == null) {
+                return;
+            }
+            try {
+                output.flip();
+                while (open && output.hasRemaining()) {
+                    channel.write(output);
+                }
+            } catch (IOException e) {
+                fail(e);
+            }
+            output.clear();
+            queuedBytes = 0;
+        }
+
+        /**
+         * Sends the file region behind the output written before, blocking until the socket took it.
+         * Called with the output lock held.
+         */
+        private void transfer(FileChannel file, long position, int length) {
+            long end = position + length;
+            try {
+                while (open && position < end) {
+                    long sent = file.transferTo(position, end - position, channel);
+                    if (sent == 0 && end > file.size()) {
+                        throw new EOFException("File ends at %d, before the block does".formatted(file.size()));
+                    }
+                    position += sent;
+                }
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+
+        private void fail(IOException e) {
+            if (open) {
+                failure = e;
+                close();
+            }
+        }
+
+        private void releaseOutput() {
+            bufferPool.release(output);
+            output = null;
+        }
+
+        private void flush() {
+            outputLock.lock();
+            try {
+                writeOutput();
+                releaseOutput();
+            } finally {
+                outputLock.unlock();
+            }
+        }
+
+        @Override
+        public InetSocketAddress remoteAddress() {
+            try {
+                return (InetSocketAddress) channel.getRemoteAddress();
+            } catch (IOException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public long queuedBytes() {
+            return queuedBytes;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        /**
+         * Closes the socket; the session's thread notices and ends the session.
+         */
+        @Override
+        public void close() {
+            open = false;
+            closeQuietly(channel);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package bit.bees.bittorrent.storage;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Read access to the files of a torrent for uploading. Files are opened on first use and stay open
+ * until this is closed, so that blocks can be sent straight from their channels. Thread-safe.
+ */
+public final class PieceFiles implements Closeable {
+
+    private final PieceLayout layout;
+    private final FileChannel[] channels;
+    private boolean closed;
+
+    public PieceFiles(PieceLayout layout) {
+        this.layout = layout;
+        this.channels = new FileChannel[layout.files().size()];
+    }
+
+    public PieceLayout layout() {
+        return layout;
+    }
+
+    /**
+     * The channel of the file, opened for reading.
+     */
+    public synchronized FileChannel channel(int file) throws IOException {
+        if (closed) {
+            throw new IOException("Piece files are closed");
+        }
+        FileChannel channel = channels[file];
+        if (channel == null) {
+            channel = FileChannel.open(layout.files().get(file), StandardOpenOption.READ);
+            channels[file] = channel;
+        }
+        return channel;
+    }
+
+    /**
+     * Reads the block at offset {@code begin} of the piece into the remaining bytes of {@code target},
+     * across as many files as it spans.
+     *
+     * @throws EOFException if a file ends before the block does
+     */
+    public void read(int piece, int begin, ByteBuffer target) throws IOException {
+        int limit = target.limit();
+        var failure = new IOException[1];
+        layout.forEachSegment(piece, begin, target.remaining(), (file, fileOffset, length) -> {
+            try {
+                read(channel(file), fileOffset, target.limit(target.position() + length));
+                return true;
+            } catch (IOException e) {
+                failure[0] = e;
+                return false;
+            }
+        });
+        target.limit(limit);
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+    }
+
+    private static void read(FileChannel channel, long position, ByteBuffer target) throws IOException {
+        while (target.hasRemaining()) {
+            int read = channel.read(target, position);
+            if (read < 0) {
+                throw new EOFException("File ends at %d, before the block does".formatted(position));
+            }
+            position += read;
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        closed = true;
+        IOException failure = null;
+        for (int i = 0; i < channels.length; i++) {
+            if (channels[i] != null) {
+                try {
+                    channels[i].close();
+                } catch (IOException e) {
+                    failure = e;
+                }
+                channels[i] = null;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
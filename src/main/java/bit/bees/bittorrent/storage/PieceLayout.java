@@ -0,0 +1,183 @@
+package bit.bees.bittorrent.storage;
+
+import bit.bees.bittorrent.metainfo.FileEntry;
+import bit.bees.bittorrent.metainfo.InfoDictionary;
+import bit.bees.bittorrent.metainfo.MetainfoException;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Where the pieces of a torrent are stored on disk.
+ * <p>
+ * The files of a torrent are treated as one contiguous stream of bytes cut into pieces, so a piece
+ * may begin in one file and end in another. {@link #forEachSegment(int, SegmentVisitor)} resolves a
+ * piece into the file ranges that make it up.
+ */
+public final class PieceLayout {
+
+    private final List<Path> files;
+    /** Offset of each file within the torrent, followed by the total length. */
+    private final long[] fileOffsets;
+    private final long pieceLength;
+    private final int pieceCount;
+
+    private PieceLayout(List<Path> files, long[] fileOffsets, long pieceLength, int pieceCount) {
+        this.files = files;
+        this.fileOffsets = fileOffsets;
+        this.pieceLength = pieceLength;
+        this.pieceCount = pieceCount;
+    }
+
+    /**
+     * Layout of the torrent's content below the download directory: a single file is stored as
+     * {@code <directory>/<name>}, the files of a multi-file torrent as {@code <directory>/<name>/<path>}.
+     */
+    public static PieceLayout of(InfoDictionary info, Path downloadDirectory) {
+        var files = new ArrayList<Path>(info.files().size());
+        long[] fileOffsets = new long[info.files().size() + 1];
+        Path base = downloadDirectory.toAbsolutePath().normalize();
+        Path root = info.singleFile() ? downloadDirectory : resolve(downloadDirectory, info.name());
+        for (int i = 0; i < info.files().size(); i++) {
+            FileEntry file = info.files().get(i);
+            Path path = root;
+            for (String component : file.path()) {
+                path = resolve(path, component);
+            }
+            if (!path.toAbsolutePath().normalize().startsWith(base)) {
+                throw new MetainfoException("'%s' is outside of the download directory".formatted(path));
+            }
+            files.add(path);
+            fileOffsets[i + 1] = fileOffsets[i] + file.length();
+        }
+
+        long totalLength = fileOffsets[files.size()];
+        long pieceCount = (totalLength + info.pieceLength() - 1) / info.pieceLength();
+        if (pieceCount != info.pieces().count()) {
+            throw new MetainfoException("Expected %d piece hashes for %d bytes, found %d"
+                    .formatted(pieceCount, totalLength, info.pieces().count()));
+        }
+        return new PieceLayout(List.copyOf(files), fileOffsets, info.pieceLength(), (int) pieceCount);
+    }
+
+    /**
+     * Resolves a single file or directory name, which must neither be absolute nor lead up or down
+     * another level.
+     */
+    private static Path resolve(Path directory, String name) {
+        if (name.isEmpty() || name.equals(".") || name.equals("..") || name.indexOf('/') >= 0 || name.indexOf('\\') >= 0) {
+            throw new MetainfoException("Invalid file name '%s'".formatted(name));
+        }
+        Path path = directory.getFileSystem().getPath(name);
+        if (path.isAbsolute() || path.getRoot() != null || path.getNameCount() != 1) {
+            throw new MetainfoException("Invalid file name '%s'".formatted(name));
+        }
+        return directory.resolve(path);
+    }
+
+    public List<Path> files() {
+        return files;
+    }
+
+    /**
+     * Offset of the file within the torrent.
+     */
+    public long fileOffset(int file) {
+        return fileOffsets[file];
+    }
+
+    public long fileLength(int file) {
+        return fileOffsets[file + 1] - fileOffsets[file];
+    }
+
+    public long totalLength() {
+        return fileOffsets[files.size()];
+    }
+
+    public int pieceCount() {
+        return pieceCount;
+    }
+
+    /**
+     * Length of the piece, which is the nominal piece length for all pieces but the last.
+     */
+    public int pieceLength(int piece) {
+        checkPiece(piece);
+        long start = piece * pieceLength;
+        return (int) Math.min(pieceLength, totalLength() - start);
+    }
+
+    /**
+     * The piece holding the byte at the offset within the torrent.
+     */
+    public int pieceAt(long offset) {
+        return (int) (offset / pieceLength);
+    }
+
+    /**
+     * Visits the file ranges the piece consists of, in order, until the visitor returns {@code false}.
+     * Empty files are skipped.
+     *
+     * @return whether every range was visited
+     */
+    public boolean forEachSegment(int piece, SegmentVisitor visitor) {
+        return forEachSegment(piece, 0, pieceLength(piece), visitor);
+    }
+
+    /**
+     * Visits the file ranges of the block of {@code length} bytes at offset {@code begin} of the piece,
+     * like {@link #forEachSegment(int, SegmentVisitor)} does for whole pieces.
+     *
+     * @throws IndexOutOfBoundsException if the block does not lie within the piece
+     */
+    public boolean forEachSegment(int piece, int begin, int length, SegmentVisitor visitor) {
+        int pieceLength = pieceLength(piece);
+        if (begin < 0 || length < 0 || length > pieceLength - begin) {
+            throw new IndexOutOfBoundsException("Block of %d bytes at %d is out of bounds for piece %d of %d bytes"
+                    .formatted(length, begin, piece, pieceLength));
+        }
+        long position = piece * this.pieceLength + begin;
+        long end = position + length;
+        int file = fileAt(position);
+        while (position < end) {
+            long fileEnd = fileOffsets[file + 1];
+            if (fileEnd > position) {
+                int segmentLength = (int) (Math.min(end, fileEnd) - position);
+                if (!visitor.visit(file, position - fileOffsets[file], segmentLength)) {
+                    return false;
+                }
+                position += segmentLength;
+            }
+            file++;
+        }
+        return true;
+    }
+
+    /**
+     * Index of the file holding the byte at the given offset of the torrent.
+     */
+    private int fileAt(long position) {
+        int index = Arrays.binarySearch(fileOffsets, 0, files.size(), position);
+        if (index < 0) {
+            return -index - 2;
+        }
+        // Empty files share their offset with the file that follows them
+        while (index + 1 < files.size() && fileOffsets[index + 1] == position) {
+            index++;
+        }
+        return index;
+    }
+
+    private void checkPiece(int piece) {
+        if (piece < 0 || piece >= pieceCount) {
+            throw new IndexOutOfBoundsException("Piece %d is out of bounds for %d pieces".formatted(piece, pieceCount));
+        }
+    }
+
+    @FunctionalInterface
+    public interface SegmentVisitor {
+        boolean visit(int file, long fileOffset, int length);
+    }
+}
@@ -0,0 +1,236 @@
+package bit.bees.bittorrent.storage;
+
+import bit.bees.bittorrent.metainfo.InfoDictionary;
+import bit.bees.bittorrent.metainfo.PieceHashes;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.BitSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Checks the data of a torrent on disk against its piece hashes, for rechecking and resuming.
+ * <p>
+ * The payload files are memory mapped and the pieces are hashed in parallel on a fork-join pool, each
+ * worker reusing its own SHA-1 instance. Ranges of pieces are split until a task holds a few
+ * megabytes, so the work balances across workers whatever the piece length. Workers blocking on page
+ * faults leave the cores to the others; {@code storage.verify.parallelism} can raise the number of
+ * workers above the number of cores where storage needs more requests in flight to reach its
+ * bandwidth.
+ * <p>
+ * A file is mapped when the first of its pieces is hashed, so files are not all mapped up front however
+ * many the torrent has. Its buffers are dropped once all of its pieces are hashed, but the JDK only
+ * unmaps a file when the garbage collector reclaims them, so files already hashed may stay mapped until
+ * a collection runs. Missing files and files shorter than the torrent says only invalidate the pieces
+ * overlapping them.
+ */
+@Service
+public class PieceVerifier {
+
+    private static final int REGION_SHIFT = 30;
+    private static final long REGION_SIZE = 1L << REGION_SHIFT;
+    private static final long TASK_BYTES = 4 << 20;
+
+    private static final ThreadLocal<MessageDigest> SHA1 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is not available", e);
+        }
+    });
+
+    private final int parallelism;
+
+    public PieceVerifier(@Value("${storage.verify.parallelism:0}") int parallelism) {
+        this.parallelism = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+    }
+
+    public VerificationResult verify(InfoDictionary info, Path downloadDirectory) throws IOException {
+        return verify(info, downloadDirectory, ProgressListener.NONE);
+    }
+
+    public VerificationResult verify(InfoDictionary info, Path downloadDirectory, ProgressListener listener) throws IOException {
+        var layout = PieceLayout.of(info, downloadDirectory);
+        var verification = new Verification(layout, info.pieces(), listener);
+        int piecesPerTask = (int) Math.max(1, TASK_BYTES / info.pieceLength());
+        try (var pool = new ForkJoinPool(parallelism)) {
+            pool.invoke(verification.new Task(0, layout.pieceCount(), piecesPerTask));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return new VerificationResult(verification.validPieces(), layout.pieceCount());
+    }
+
+    private static final class Verification {
+
+        private final PieceLayout layout;
+        private final PieceHashes hashes;
+        private final MappedFile[] files;
+        private final ProgressListener listener;
+        private final AtomicLongArray validWords;
+        private final AtomicInteger checkedPieces = new AtomicInteger();
+
+        Verification(PieceLayout layout, PieceHashes hashes, ProgressListener listener) {
+            this.layout = layout;
+            this.hashes = hashes;
+            this.files = new MappedFile[layout.files().size()];
+            for (int file = 0; file < files.length; file++) {
+                long length = layout.fileLength(file);
+                int pieces = length == 0 ? 0 : layout.pieceAt(layout.fileOffset(file) + length - 1)
+                        - layout.pieceAt(layout.fileOffset(file)) + 1;
+                files[file] = new MappedFile(layout.files().get(file), length, pieces);
+            }
+            this.listener = listener;
+            this.validWords = new AtomicLongArray((layout.pieceCount() + 63) >>> 6);
+        }
+
+        BitSet validPieces() {
+            long[] words = new long[validWords.length()];
+            for (int i = 0; i < words.length; i++) {
+                words[i] = validWords.get(i);
+            }
+            return BitSet.valueOf(words);
+        }
+
+        void verifyPieces(int from, int to) {
+            MessageDigest digest = SHA1.get();
+            for (int piece = from; piece < to; piece++) {
+                boolean available = layout.forEachSegment(piece, (file, fileOffset, length) -> update(digest, file, fileOffset, length));
+                if (available && hashes.matches(piece, digest.digest())) {
+                    long bit = 1L << piece;
+                    validWords.getAndAccumulate(piece >>> 6, bit, (word, mask) -> word | mask);
+                }
+                digest.reset();
+                layout.forEachSegment(piece, (file, fileOffset, length) -> {
+                    files[file].pieceDone();
+                    return true;
+                });
+            }
+            listener.progress(checkedPieces.addAndGet(to - from), layout.pieceCount());
+        }
+
+        /**
+         * Feeds a range of a file to the digest.
+         *
+         * @return {@code false} if the range is not on disk
+         */
+        private boolean update(MessageDigest digest, int file, long offset, int length) {
+            ByteBuffer[] fileRegions = files[file].regions();
+            if (fileRegions == null || offset + length > regionsLength(fileRegions)) {
+                return false;
+            }
+            while (length > 0) {
+                ByteBuffer region = fileRegions[(int) (offset >>> REGION_SHIFT)];
+                int index = (int) (offset & (REGION_SIZE - 1));
+                int chunk = Math.min(length, region.capacity() - index);
+                digest.update(region.slice(index, chunk));
+                offset += chunk;
+                length -= chunk;
+            }
+            return true;
+        }
+
+        private static long regionsLength(ByteBuffer[] fileRegions) {
+            if (fileRegions.length == 0) {
+                return 0;
+            }
+            return ((long) (fileRegions.length - 1) << REGION_SHIFT) + fileRegions[fileRegions.length - 1].capacity();
+        }
+
+        /**
+         * A file mapped in regions of at most 1 GiB on first use. The regions are dropped once every piece
+         * overlapping the file is hashed, which only makes them unreachable: the file stays mapped until
+         * the garbage collector reclaims them.
+         */
+        private static final class MappedFile {
+
+            private final Path path;
+            private final long length;
+            private final AtomicInteger remainingPieces;
+            private volatile ByteBuffer[] regions;
+            /** Whether the file is not there, which is only looked up once. */
+            private volatile boolean missing;
+
+            MappedFile(Path path, long length, int pieces) {
+                this.path = path;
+                this.length = length;
+                this.remainingPieces = new AtomicInteger(pieces);
+            }
+
+            /**
+             * The regions of the file, or {@code null} if it does not exist.
+             */
+            ByteBuffer[] regions() {
+                ByteBuffer[] mapped = regions;
+                if (mapped == null && !missing) {
+                    synchronized (this) {
+                        mapped = regions;
+                        if (mapped == null && !missing) {
+                            mapped = map();
+                            regions = mapped;
+                            missing = mapped == null;
+                        }
+                    }
+                }
+                return mapped;
+            }
+
+            private ByteBuffer[] map() {
+                try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                    long size = Math.min(channel.size(), length);
+                    var mapped = new ByteBuffer[(int) ((size + REGION_SIZE - 1) >>> REGION_SHIFT)];
+                    for (int region = 0; region < mapped.length; region++) {
+                        long offset = (long) region << REGION_SHIFT;
+                        mapped[region] = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(REGION_SIZE, size - offset));
+                    }
+                    return mapped;
+                } catch (NoSuchFileException e) {
+                    return null;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+
+            void pieceDone() {
+                if (remainingPieces.decrementAndGet() == 0) {
+                    regions = null;
+                }
+            }
+        }
+
+        private final class Task extends RecursiveAction {
+
+            private final int from;
+            private final int to;
+            private final int piecesPerTask;
+
+            Task(int from, int to, int piecesPerTask) {
+                this.from = from;
+                this.to = to;
+                this.piecesPerTask = piecesPerTask;
+            }
+
+            @Override
+            protected void compute() {
+                if (to - from <= piecesPerTask) {
+                    verifyPieces(from, to);
+                    return;
+                }
+                int middle = (from + to) >>> 1;
+                invokeAll(new Task(from, middle, piecesPerTask), new Task(middle, to, piecesPerTask));
+            }
+        }
+    }
+}
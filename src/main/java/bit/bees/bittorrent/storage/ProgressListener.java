@@ -0,0 +1,14 @@
+package bit.bees.bittorrent.storage;
+
+/**
+ * Receives progress while a torrent's pieces are checked. It is called from the worker threads, so
+ * implementations must be thread-safe and quick.
+ */
+@FunctionalInterface
+public interface ProgressListener {
+
+    ProgressListener NONE = (checkedPieces, pieceCount) -> {
+    };
+
+    void progress(int checkedPieces, int pieceCount);
+}
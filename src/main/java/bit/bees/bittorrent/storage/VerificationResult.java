@@ -0,0 +1,30 @@
+package bit.bees.bittorrent.storage;
+
+import java.util.BitSet;
+
+/**
+ * Pieces found on disk with the expected hash.
+ */
+public record VerificationResult(BitSet validPieces, int pieceCount) {
+
+    public VerificationResult {
+        validPieces = (BitSet) validPieces.clone();
+    }
+
+    @Override
+    public BitSet validPieces() {
+        return (BitSet) validPieces.clone();
+    }
+
+    public boolean isValid(int piece) {
+        return validPieces.get(piece);
+    }
+
+    public int validCount() {
+        return validPieces.cardinality();
+    }
+
+    public boolean isComplete() {
+        return validCount() == pieceCount;
+    }
+}
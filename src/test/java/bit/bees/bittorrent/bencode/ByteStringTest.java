@@ -0,0 +1,81 @@
+package bit.bees.bittorrent.bencode;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.params.provider.Arguments.arguments;
+
+class ByteStringTest {
+
+    @Test
+    void viewShouldShareTheSourceBuffer() {
+        byte[] source = "xxhelloyy".getBytes(StandardCharsets.US_ASCII);
+        var view = ByteString.of(source, 2, 5);
+
+        source[2] = 'j';
+
+        assertThat(view.length()).isEqualTo(5);
+        assertThat(view.toString()).isEqualTo("jello");
+    }
+
+    @Test
+    void directBufferViewShouldBehaveLikeHeapView() throws IOException {
+        var direct = ByteBuffer.allocateDirect(8).put("abcdefgh".getBytes(StandardCharsets.US_ASCII));
+        var view = ByteString.view(direct, 2, 3);
+        var out = new ByteArrayOutputStream();
+
+        view.writeTo(out);
+
+        assertThat(view).isEqualTo(ByteString.copyOf("cde"));
+        assertThat(view.hashCode()).isEqualTo(ByteString.copyOf("cde").hashCode());
+        assertThat(out.toString(StandardCharsets.US_ASCII)).isEqualTo("cde");
+        assertThat(view.asReadOnlyBuffer().remaining()).isEqualTo(3);
+    }
+
+    @Test
+    void textShouldBeDecodedAsUtf8() {
+        var byteString = ByteString.of("naïve".getBytes(StandardCharsets.UTF_8));
+
+        assertThat(byteString.length()).isEqualTo(6);
+        assertThat(byteString.toString()).isEqualTo("naïve");
+        assertThat(byteString.toString(StandardCharsets.ISO_8859_1)).isEqualTo("naÃ¯ve");
+    }
+
+    @Test
+    void substringShouldBeAViewOfTheRange() {
+        var byteString = ByteString.copyOf("0123456789");
+
+        assertThat(byteString.substring(3, 6)).isEqualTo(ByteString.copyOf("345"));
+        assertThat(byteString.substring(4, 4).isEmpty()).isTrue();
+        assertThat(byteString.substring(3, 6).byteAt(0)).isEqualTo((byte) '3');
+        assertThatThrownBy(() -> byteString.substring(5, 11)).isInstanceOf(IndexOutOfBoundsException.class);
+        assertThatThrownBy(() -> byteString.byteAt(10)).isInstanceOf(IndexOutOfBoundsException.class);
+    }
+
+    @ParameterizedTest
+    @MethodSource("getOrderedPairs")
+    void orderingShouldBeUnsignedByteWise(byte[] smaller, byte[] larger) {
+        assertThat(ByteString.of(smaller)).isLessThan(ByteString.of(larger));
+        assertThat(ByteString.of(larger)).isGreaterThan(ByteString.of(smaller));
+    }
+
+    static Stream<Arguments> getOrderedPairs() {
+        return Stream.of(
+                arguments(new byte[]{}, new byte[]{0}),
+                arguments(new byte[]{'a'}, new byte[]{'b'}),
+                arguments(new byte[]{'a'}, new byte[]{'a', 'a'}),
+                arguments(new byte[]{0x7f}, new byte[]{(byte) 0x80}),
+                arguments(new byte[]{'z'}, new byte[]{(byte) 0xc3, (byte) 0xa9})
+        );
+    }
+}
@@ -0,0 +1,89 @@
+package bit.bees.bittorrent.bencode;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.nio.charset.StandardCharsets;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.params.provider.Arguments.arguments;
+
+@SpringBootTest(properties = "bencode.metrics.enabled=true")
+class DecoderMetricsTest {
+
+    @Autowired
+    private Decoder decoder;
+
+    @Autowired
+    private MeterRegistry registry;
+
+    @Test
+    void successfulDecodeShouldBeMeasured() {
+        double bytesBefore = registry.counter("bencode.decode.bytes").count();
+        double stringsBefore = tokens("string");
+        double integersBefore = tokens("integer");
+        double listsBefore = tokens("list");
+        double dictionariesBefore = tokens("dictionary");
+
+        var input = "d4:infod5:filesld6:lengthi1eeee4:name4:teste";
+        decoder.decode(input.getBytes(StandardCharsets.US_ASCII));
+
+        assertThat(registry.counter("bencode.decode.bytes").count() - bytesBefore).isEqualTo(input.length());
+        // The keys info, files, length and name and the value test
+        assertThat(tokens("string") - stringsBefore).isEqualTo(5);
+        assertThat(tokens("integer") - integersBefore).isEqualTo(1);
+        assertThat(tokens("list") - listsBefore).isEqualTo(1);
+        assertThat(tokens("dictionary") - dictionariesBefore).isEqualTo(3);
+        assertThat(registry.get("bencode.decode.depth").summary().max()).isGreaterThanOrEqualTo(4);
+        assertThat(registry.get("bencode.decode").tag("outcome", "success").timer().count()).isPositive();
+    }
+
+    @Test
+    void keyCacheLookupsShouldBeCounted() {
+        double hitsBefore = registry.get("bencode.decode.key.cache").tag("result", "hit").functionCounter().count();
+        var reply = "d8:completei5e8:intervali1800e5:peers0:e".getBytes(StandardCharsets.US_ASCII);
+
+        decoder.decode(reply);
+        decoder.decode(reply);
+
+        assertThat(registry.get("bencode.decode.key.cache").tag("result", "hit").functionCounter().count() - hitsBefore)
+                .isGreaterThanOrEqualTo(3);
+        assertThat(registry.get("bencode.decode.key.cache.hit.ratio").gauge().value()).isPositive();
+    }
+
+    @Test
+    void failedDecodeShouldBeCountedByReason() {
+        decoder.decode("i01e".getBytes(StandardCharsets.US_ASCII));
+
+        assertThat(registry.get("bencode.decode.failures").tag("reason", "Integer with leading zero").counter().count()).isPositive();
+        assertThat(registry.get("bencode.decode").tag("outcome", "failure").timer().count()).isPositive();
+    }
+
+    @ParameterizedTest
+    @MethodSource("getReasonTestData")
+    void failureReasonShouldLeaveOutInputAndOffsets(String message, String reason) {
+        var error = new BencodeException("'input' is not parsable", new BencodeException(message));
+
+        assertThat(MicrometerDecoderMetrics.reason(error)).isEqualTo(reason);
+    }
+
+    static Stream<Arguments> getReasonTestData() {
+        return Stream.of(
+                arguments("Unexpected end of input at offset 12", "Unexpected end of input"),
+                arguments("Unexpected 'x' at offset 0", "Unexpected"),
+                arguments("String length 65 exceeds the input at offset 3", "String length"),
+                arguments("Keys are not in lexicographic order: last key = 'b', current key = 'a' at offset 9", "Keys are not in lexicographic order"),
+                arguments("", "BencodeException")
+        );
+    }
+
+    private double tokens(String type) {
+        return registry.counter("bencode.decode.tokens", "type", type).count();
+    }
+}
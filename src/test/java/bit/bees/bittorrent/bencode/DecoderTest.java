@@ -0,0 +1,156 @@
+package bit.bees.bittorrent.bencode;
+
+import bit.bees.bittorrent.bencode.parsers.ParseResult;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.params.provider.Arguments.arguments;
+
+@SpringBootTest
+class DecoderTest {
+
+    @Autowired
+    private Decoder decoder;
+
+    @ParameterizedTest
+    @MethodSource("getValidTestData")
+    void validInputShouldPass(String input, Object expected, int parsedLength) {
+        var result = decoder.decode(input.getBytes(StandardCharsets.ISO_8859_1));
+        assertThat(result.status()).isEqualTo(ParseResult.Status.SUCCESS);
+        assertThat(result.parsedData()).isEqualTo(expected);
+        assertThat(result.parsedLength())
+                .as("parsed data length should be %d for '%s'", parsedLength, input)
+                .isEqualTo(parsedLength);
+    }
+
+    @ParameterizedTest
+    @MethodSource("getInvalidTestData")
+    void invalidInputShouldFail(String input) {
+        var result = decoder.decode(input.getBytes(StandardCharsets.ISO_8859_1));
+        assertThat(result.status()).isEqualTo(ParseResult.Status.FAILURE);
+        assertThat(result.error()).isInstanceOf(BencodeException.class);
+    }
+
+    @Test
+    void byteBufferShouldBeDecodedFromItsPositionWithoutMovingIt() {
+        var buffer = ByteBuffer.wrap("xxd3:fooi42eeyy".getBytes(StandardCharsets.ISO_8859_1));
+        buffer.position(2);
+
+        var result = decoder.decode(buffer);
+
+        assertThat(result.parsedData()).isEqualTo(Map.of("foo", 42L));
+        assertThat(result.parsedLength()).isEqualTo(11);
+        assertThat(buffer.position()).isEqualTo(2);
+    }
+
+    @Test
+    void resultsShouldStayIntactWhenTheThreadDecodesAgain() {
+        var first = decoder.decode("d3:foo3:bare".getBytes(StandardCharsets.ISO_8859_1));
+        var second = decoder.decode("l3:baze".getBytes(StandardCharsets.ISO_8859_1));
+        var failed = decoder.decode("d3:foo".getBytes(StandardCharsets.ISO_8859_1));
+
+        assertThat(first.parsedData()).isEqualTo(Map.of("foo", bytes("bar")));
+        assertThat(first.parsedLength()).isEqualTo(12);
+        assertThat(second.parsedData()).isEqualTo(List.of(bytes("baz")));
+        assertThat(failed.status()).isEqualTo(ParseResult.Status.FAILURE);
+        assertThat(decoder.decode(ByteBuffer.wrap("i7e".getBytes(StandardCharsets.ISO_8859_1))).parsedData()).isEqualTo(7L);
+    }
+
+    @Test
+    void binaryStringShouldRoundTripByteExactly() {
+        byte[] pieces = new byte[20 * 100_000];
+        new Random(7).nextBytes(pieces);
+        byte[] prefix = "d6:pieces2000000:".getBytes(StandardCharsets.US_ASCII);
+        byte[] encoded = new byte[prefix.length + pieces.length + 1];
+        System.arraycopy(prefix, 0, encoded, 0, prefix.length);
+        System.arraycopy(pieces, 0, encoded, prefix.length, pieces.length);
+        encoded[encoded.length - 1] = 'e';
+
+        var result = decoder.decode(encoded);
+
+        var decoded = (Map<?, ?>) result.parsedData();
+        var decodedPieces = (ByteString) decoded.get("pieces");
+        assertThat(decodedPieces.length()).isEqualTo(pieces.length);
+        assertThat(decodedPieces.toByteArray()).isEqualTo(pieces);
+        assertThat(result.parsedLength()).isEqualTo(encoded.length);
+    }
+
+    @Test
+    void largeListShouldBeDecodedInOnePass() {
+        int count = 200_000;
+        var encoded = "l" + "4:spam".repeat(count) + "e";
+
+        var result = decoder.decode(encoded.getBytes(StandardCharsets.ISO_8859_1));
+
+        assertThat(result.status()).isEqualTo(ParseResult.Status.SUCCESS);
+        assertThat((List<?>) result.parsedData()).hasSize(count);
+        assertThat(result.parsedLength()).isEqualTo(encoded.length());
+    }
+
+    static Stream<Arguments> getValidTestData() {
+        return Stream.of(
+                // Top level values of every type
+                arguments("4:spam", bytes("spam"), 6),
+                arguments("i42e", 42L, 4),
+                arguments("i-9223372036854775808e", Long.MIN_VALUE, 22),
+                arguments("i9223372036854775808e", new BigInteger("9223372036854775808"), 21),
+                arguments("l4:spami42ee", List.of(bytes("spam"), 42L), 12),
+                arguments("d3:bar4:spam3:fooi42ee", Map.of("bar", bytes("spam"), "foo", 42L), 22),
+
+                // Binary content is kept as it is
+                arguments("4:\u00ff\u0000\u0080\u007f", ByteString.of(new byte[]{(byte) 0xff, 0x00, (byte) 0x80, 0x7f}), 6),
+
+                // UTF-8 keys are decoded, values are left as bytes
+                arguments("d6:na\u00c3\u00afve2:\u00c3\u00a9e", Map.of("naïve", bytes("é")), 14),
+
+                // Keys are ordered by their bytes: U+E000 comes before U+1F600
+                arguments("d3:\u00ee\u0080\u0080i1e4:\u00f0\u009f\u0098\u0080i2ee", Map.of("\uE000", 1L, "\uD83D\uDE00", 2L), 19),
+
+                // Nested values
+                arguments("d4:infod6:lengthi7e4:name4:testee", Map.of("info", Map.of("name", bytes("test"), "length", 7L)), 33),
+                arguments("d4:listl1:a1:bee", Map.of("list", List.of(bytes("a"), bytes("b"))), 16),
+                arguments("d5:filesld6:lengthi1e4:pathl1:aeed6:lengthi2e4:pathl1:b1:ceeee",
+                        Map.of("files", List.of(
+                                Map.of("length", 1L, "path", List.of(bytes("a"))),
+                                Map.of("length", 2L, "path", List.of(bytes("b"), bytes("c"))))), 62),
+
+                // Trailing data is left unread
+                arguments("i1ei2e", 1L, 3),
+                arguments("lee", List.of(), 2)
+        );
+    }
+
+    private static ByteString bytes(String text) {
+        return ByteString.copyOf(text);
+    }
+
+    static Stream<String> getInvalidTestData() {
+        return Stream.of(
+                "",
+                "x",
+                "e",
+                "-1:a",
+                "5:spam",
+                "i-0e",
+                "i12",
+                "l4:spam",
+                "d3:foo",
+                "d1:b1:a1:a1:be",
+                "d4:\u00f0\u009f\u0098\u0080i2e3:\u00ee\u0080\u0080i1ee",
+                "d2:\u00c3\u00a91:a1:b1:ce"
+        );
+    }
+}
@@ -0,0 +1,144 @@
+package bit.bees.bittorrent.bencode;
+
+import bit.bees.bittorrent.bencode.IncrementalDecoder.Status;
+import bit.bees.bittorrent.bencode.parsers.BencodeReader;
+import bit.bees.bittorrent.bencode.parsers.ValueParser;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class IncrementalDecoderTest {
+
+    private static final String MESSAGE = "d1:ad2:id20:abcdefghij0123456789e1:q4:ping1:t2:aa1:y1:qe";
+
+    private static final Map<String, Object> DECODED = Map.of(
+            "a", Map.of("id", bytes("abcdefghij0123456789")),
+            "q", bytes("ping"),
+            "t", bytes("aa"),
+            "y", bytes("q"));
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 2, 5, 13, 1000})
+    void fragmentsShouldBeDecodedWhateverTheirSize(int fragmentSize) {
+        var decoder = new IncrementalDecoder();
+        byte[] input = MESSAGE.getBytes(StandardCharsets.ISO_8859_1);
+
+        for (int from = 0; from < input.length; from += fragmentSize) {
+            assertThat(decoder.status()).isEqualTo(Status.NEED_MORE_INPUT);
+            int length = Math.min(fragmentSize, input.length - from);
+            decoder.feed(ByteBuffer.wrap(input, from, length));
+        }
+
+        assertThat(decoder.status()).isEqualTo(Status.COMPLETE);
+        assertThat(decoder.value()).isEqualTo(DECODED);
+        assertThat(decoder.consumed()).isEqualTo(input.length);
+    }
+
+    @Test
+    void truncatedInputShouldNeedMoreInput() {
+        var decoder = new IncrementalDecoder();
+
+        assertThat(decoder.feed(buffer("d4:spaml1:a"))).isEqualTo(Status.NEED_MORE_INPUT);
+        assertThat(decoder.feed(buffer("i12"))).isEqualTo(Status.NEED_MORE_INPUT);
+        assertThat(decoder.feed(buffer("34ee"))).isEqualTo(Status.NEED_MORE_INPUT);
+        assertThat(decoder.feed(buffer("e"))).isEqualTo(Status.COMPLETE);
+        assertThat(decoder.value()).isEqualTo(Map.of("spam", List.of(bytes("a"), 1234L)));
+    }
+
+    @Test
+    void fragmentShouldBeLeftAtTheEndOfTheValue() {
+        var decoder = new IncrementalDecoder();
+        var first = buffer("d8:msg_typei1e5:piece");
+        var second = buffer("i0eeRAW METADATA");
+
+        decoder.feed(first);
+        var status = decoder.feed(second);
+
+        assertThat(status).isEqualTo(Status.COMPLETE);
+        assertThat(first.hasRemaining()).isFalse();
+        assertThat(StandardCharsets.ISO_8859_1.decode(second).toString()).isEqualTo("RAW METADATA");
+    }
+
+    @Test
+    void decoderShouldBeReusableAfterReset() {
+        var decoder = new IncrementalDecoder();
+        decoder.feed(buffer("i1e"));
+
+        assertThatThrownBy(() -> decoder.feed(buffer("i2e"))).isInstanceOf(IllegalStateException.class);
+
+        decoder.reset();
+        assertThat(decoder.feed(buffer("i2e"))).isEqualTo(Status.COMPLETE);
+        assertThat(decoder.value()).isEqualTo(2L);
+    }
+
+    @Test
+    void nestingBeyondTheLimitShouldBeMalformed() {
+        var decoder = new IncrementalDecoder(BencodeReader.DEFAULT_MAX_TOKEN_LENGTH, 3);
+        assertThat(decoder.feed(buffer("ld1:al"))).isEqualTo(Status.NEED_MORE_INPUT);
+
+        assertThat(decoder.feed(buffer("l"))).isEqualTo(Status.MALFORMED);
+        assertThat(decoder.error()).hasMessageContaining("limit of 3 levels");
+
+        decoder.reset();
+        assertThat(decoder.feed(buffer("ld1:alee1:be"))).isEqualTo(Status.COMPLETE);
+    }
+
+    @Test
+    void deeplyNestedInputShouldBeMalformedByDefault() {
+        var decoder = new IncrementalDecoder();
+        var status = Status.NEED_MORE_INPUT;
+
+        // Fed one byte at a time, as a peer trickling it in would
+        for (int i = 0; i < 1_000_000 && status == Status.NEED_MORE_INPUT; i++) {
+            status = decoder.feed(buffer("l"));
+        }
+
+        assertThat(status).isEqualTo(Status.MALFORMED);
+        assertThat(decoder.consumed()).isEqualTo(ValueParser.DEFAULT_MAX_DEPTH);
+    }
+
+    @ParameterizedTest
+    @MethodSource("getMalformedTestData")
+    void malformedInputShouldBeToldApartFromTruncatedInput(String input) {
+        var decoder = new IncrementalDecoder();
+
+        var status = decoder.feed(buffer(input));
+
+        assertThat(status).isEqualTo(Status.MALFORMED);
+        assertThat(decoder.error()).isInstanceOf(BencodeException.class);
+    }
+
+    static Stream<String> getMalformedTestData() {
+        return Stream.of(
+                "e",
+                "x",
+                "i-0e",
+                "i1-",
+                "04:",
+                "d1:ae",
+                "di1e",
+                "d1:b1:x1:a1:ye",
+                // Keys out of order that are not UTF-8, both decoding to U+FFFD
+                "d1:\u00ffi1e1:\u00fei2ee",
+                "l4:spamx"
+        );
+    }
+
+    private static ByteBuffer buffer(String text) {
+        return ByteBuffer.wrap(text.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    private static ByteString bytes(String text) {
+        return ByteString.copyOf(text);
+    }
+}
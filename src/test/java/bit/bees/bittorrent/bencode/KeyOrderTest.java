@@ -0,0 +1,75 @@
+package bit.bees.bittorrent.bencode;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.nio.charset.StandardCharsets;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.params.provider.Arguments.arguments;
+
+class KeyOrderTest {
+
+    @ParameterizedTest
+    @MethodSource("getOrderedKeyTestData")
+    void keysShouldBeOrderedByTheirUtf8Bytes(Object smaller, Object larger) {
+        assertThat(KeyOrder.compare(smaller, larger)).isNegative();
+        assertThat(KeyOrder.compare(larger, smaller)).isPositive();
+        assertThat(KeyOrder.compare(smaller, smaller)).isZero();
+    }
+
+    @ParameterizedTest
+    @MethodSource("getStringPairTestData")
+    void stringOrderShouldMatchTheOrderOfTheEncodedBytes(String key1, String key2) {
+        var bytes1 = ByteString.of(key1.getBytes(StandardCharsets.UTF_8));
+        var bytes2 = ByteString.of(key2.getBytes(StandardCharsets.UTF_8));
+
+        assertThat(Integer.signum(KeyOrder.compare(key1, key2))).isEqualTo(Integer.signum(bytes1.compareTo(bytes2)));
+    }
+
+    @Test
+    void otherKeyTypesShouldBeRejected() {
+        assertThatThrownBy(() -> KeyOrder.compare("a", 1)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> KeyOrder.compare((Object) null, "a")).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    static Stream<Arguments> getOrderedKeyTestData() {
+        return Stream.of(
+                // Plain ASCII strings, prefixes first
+                arguments("a", "b"),
+                arguments("", "a"),
+                arguments("piece", "piece length"),
+                arguments("piece length", "pieces"),
+
+                // Characters beyond the BMP sort after U+E000-U+FFFF, unlike in UTF-16
+                arguments("\uE000", "\uD83D\uDE00"),
+                arguments("\uFFFD", "\uD800\uDC00"),
+                arguments("\uD7FF", "\uE000"),
+
+                // Byte strings compare unsigned
+                arguments(ByteString.of(new byte[]{0x7f}), ByteString.of(new byte[]{(byte) 0x80})),
+                arguments(ByteString.copyOf("z"), ByteString.of(new byte[]{(byte) 0xff})),
+
+                // Strings and byte strings mixed
+                arguments("a", ByteString.of(new byte[]{(byte) 0x80})),
+                arguments(ByteString.copyOf("a"), "b"),
+                arguments(ByteString.copyOf("\uE000"), "\uD83D\uDE00")
+        );
+    }
+
+    static Stream<Arguments> getStringPairTestData() {
+        return Stream.of(
+                arguments("announce", "announce-list"),
+                arguments("caf\u00E9", "cafe"),
+                arguments("\u00FF", "\u0100"),
+                arguments("\u20AC", "\uE000"),
+                arguments("\uD83D\uDE00", "\uFFFF"),
+                arguments("\uD83D\uDE00", "\uD83D\uDE01"),
+                arguments("x\uD83D\uDE00", "x\uFB01")
+        );
+    }
+}
@@ -0,0 +1,147 @@
+package bit.bees.bittorrent.bencode;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class LazyDictionaryTest {
+
+    @Test
+    void valuesShouldBeDecodedByType() {
+        var dictionary = LazyDictionary.of(bytes("d1:ai-7e1:b4:spam1:cl1:xe1:dd1:yi1ee1:ei99999999999999999999ee"));
+
+        assertThat(dictionary.size()).isEqualTo(5);
+        assertThat(dictionary.get("a")).isEqualTo(-7L);
+        assertThat(dictionary.get("b")).isEqualTo(ByteString.copyOf("spam"));
+        assertThat(dictionary.get("c")).isInstanceOf(LazyList.class);
+        assertThat(dictionary.get("d")).isInstanceOf(LazyDictionary.class);
+        assertThat(dictionary.get("e")).isEqualTo(new BigInteger("99999999999999999999"));
+        assertThat(dictionary.get("missing")).isNull();
+        assertThat(dictionary.keys()).extracting(ByteString::toString).containsExactly("a", "b", "c", "d", "e");
+    }
+
+    @Test
+    void typedGettersShouldReadNestedValues() {
+        var torrent = LazyDictionary.of(bytes(
+                "d8:announce14:http://tracker4:infod6:lengthi42e4:name8:file.txt12:piece lengthi16384eee"));
+
+        var info = torrent.getDictionary("info");
+
+        assertThat(torrent.getString("announce")).isEqualTo("http://tracker");
+        assertThat(info.getString("name")).isEqualTo("file.txt");
+        assertThat(info.getLong("piece length")).isEqualTo(16384);
+        assertThat(info.containsKey("files")).isFalse();
+    }
+
+    @Test
+    void keysShouldBeMatchedAsUtf8() {
+        var dictionary = LazyDictionary.of("d6:naïvei1ee".getBytes(StandardCharsets.UTF_8));
+
+        assertThat(dictionary.getLong("naïve")).isEqualTo(1);
+    }
+
+    @Test
+    void typedGettersShouldRejectMissingKeysAndOtherTypes() {
+        var dictionary = LazyDictionary.of(bytes("d1:a4:spame"));
+
+        assertThatThrownBy(() -> dictionary.getLong("a"))
+                .isInstanceOf(BencodeException.class)
+                .hasMessage("Expected integer at offset 4");
+        assertThatThrownBy(() -> dictionary.getList("b"))
+                .isInstanceOf(BencodeException.class)
+                .hasMessage("Missing key 'b'");
+    }
+
+    @Test
+    void skippedValuesShouldOnlyBeValidatedWhenRead() {
+        var dictionary = LazyDictionary.of(bytes("d1:ai-0e1:b1:xe"));
+
+        assertThat(dictionary.getString("b")).isEqualTo("x");
+        assertThatThrownBy(() -> dictionary.get("a")).isInstanceOf(BencodeException.class);
+    }
+
+    @Test
+    void bufferShouldBeReadFromItsPositionWithoutMovingIt() {
+        var buffer = ByteBuffer.wrap(bytes("xxd3:fooi42eeyy"));
+        buffer.position(2);
+
+        var dictionary = LazyDictionary.of(buffer);
+
+        assertThat(dictionary.getLong("foo")).isEqualTo(42);
+        assertThat(buffer.position()).isEqualTo(2);
+    }
+
+    @Test
+    void rawValuesShouldBeTheExactEncodedBytes() {
+        var dictionary = LazyDictionary.of(bytes("d4:infod5:filesle4:name1:ae4:sizei3ee"));
+
+        assertThat(dictionary.getRaw("info")).isEqualTo(ByteString.copyOf("d5:filesle4:name1:ae"));
+        assertThat(dictionary.getRaw("missing")).isNull();
+    }
+
+    @Test
+    void listItemsShouldBeIndexedOnDemand() {
+        var list = LazyList.of(bytes("l4:spami42eld1:ai1eeee"));
+
+        assertThat(list.getString(0)).isEqualTo("spam");
+        assertThat(list.getLong(1)).isEqualTo(42);
+        assertThat(list.getList(2).getDictionary(0).getLong("a")).isEqualTo(1);
+        assertThat(list.size()).isEqualTo(3);
+        assertThat(LazyList.of(bytes("le")).isEmpty()).isTrue();
+        assertThatThrownBy(() -> list.get(3)).isInstanceOf(IndexOutOfBoundsException.class);
+    }
+
+    @Test
+    void largeTorrentShouldBeReadWithoutDecodingTheFileList() {
+        int fileCount = 50_000;
+        var encoded = new StringBuilder("d8:announce14:http://tracker4:infod5:filesl");
+        for (int i = 0; i < fileCount; i++) {
+            encoded.append("d6:lengthi").append(i).append("e4:pathl3:dir")
+                    .append(String.valueOf(i).length() + 4).append(":file").append(i).append("ee");
+        }
+        encoded.append("e4:name4:test12:piece lengthi262144eee");
+
+        var torrent = LazyDictionary.of(bytes(encoded.toString()));
+        var info = torrent.getDictionary("info");
+
+        assertThat(torrent.getString("announce")).isEqualTo("http://tracker");
+        assertThat(info.getString("name")).isEqualTo("test");
+        assertThat(info.getLong("piece length")).isEqualTo(262144);
+
+        var files = info.getList("files");
+        assertThat(files.size()).isEqualTo(fileCount);
+        assertThat(files.getDictionary(fileCount - 1).getList("path").getString(1)).isEqualTo("file" + (fileCount - 1));
+    }
+
+    @ParameterizedTest
+    @MethodSource("getMalformedTestData")
+    void malformedStructureShouldFail(String input) {
+        var dictionary = LazyDictionary.of(bytes(input));
+
+        assertThatThrownBy(dictionary::size).isInstanceOf(BencodeException.class);
+    }
+
+    static Stream<String> getMalformedTestData() {
+        return Stream.of(
+                "d",
+                "d1:a",
+                "di1ei2ee",
+                "d1:al",
+                "d1:ai1xe",
+                "d1:a5:spame",
+                "d1:ae"
+        );
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.ISO_8859_1);
+    }
+}
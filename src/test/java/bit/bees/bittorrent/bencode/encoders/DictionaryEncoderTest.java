@@ -1,6 +1,7 @@
 package bit.bees.bittorrent.bencode.encoders;
 
 import bit.bees.bittorrent.bencode.BencodeException;
+import bit.bees.bittorrent.bencode.KeyOrder;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
@@ -9,8 +10,10 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 
 import java.math.BigInteger;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -82,9 +85,9 @@ class DictionaryEncoderTest {
 
                 // Special characters in keys and values
                 arguments(Map.of("hello\nworld", "value"), "d11:hello\nworld5:valuee"),
-                arguments(Map.of("key", "café"), "d3:key4:cafée"),
+                arguments(Map.of("key", "café"), "d3:key5:cafée"),
                 arguments(Map.of("a:b", "c:d"), "d3:a:b3:c:de"),
-                arguments(Map.of("unicode", "naïve"), "d7:unicode5:naïvee"),
+                arguments(Map.of("unicode", "naïve"), "d7:unicode6:naïvee"),
 
                 // Edge cases
                 arguments(Map.of("", "empty"), "d0:5:emptye"),
@@ -123,7 +126,7 @@ class DictionaryEncoderTest {
                                         )
                                 )
                         )
-                ), "d11:applicationd6:configd5:peersl5:peer15:peer25:peer3ee8:settingsd8:featuresl3:dht3:pex3:utpee15:max_connectionsi100e7:timeouti30eee4:name10:BitTorrent7:version3:1.0ee"),
+                ), "d11:applicationd6:configd5:peersl5:peer15:peer25:peer3e8:settingsd8:featuresl3:dht3:pex3:utpe15:max_connectionsi100e7:timeouti30eee4:name10:BitTorrent7:version3:1.0ee"),
 
                 // Mixed types at different levels
                 arguments(Map.of(
@@ -136,7 +139,7 @@ class DictionaryEncoderTest {
                                 "created", "2023-01-01"
                         ),
                         "announce", "http://tracker.example.com"
-                ), "d8:announce27:http://tracker.example.com8:metadatad7:created10:2023-01-015:filesl4:name9:file1.txt4:sizei1024eed4:name9:file2.bin4:sizei2048eee10:total_sizei3072eee"),
+                ), "d8:announce26:http://tracker.example.com8:metadatad7:created10:2023-01-015:filesld4:name9:file1.txt4:sizei1024eed4:name9:file2.bin4:sizei2048eee10:total_sizei3072eee"),
 
                 // Multiple nested levels with all types
                 arguments(Map.of(
@@ -155,7 +158,7 @@ class DictionaryEncoderTest {
                                         List.of("udp://tracker3.com")
                                 )
                         )
-                ), "d7:torrentd13:announce_listlll16:http://tracker1.com16:http://tracker2.comeell15:udp://tracker3.comeee4:infod5:filesld6:lengthi512e4:pathl3:dir8:file.txteeed6:lengthi1024e4:pathl9:file2.dateee4:name12:test.torrent12:piece_lengthi32768e6:piecesl6:piece16:piece2eeee"),
+                ), "d7:torrentd13:announce_listll19:http://tracker1.com19:http://tracker2.comel18:udp://tracker3.comee4:infod5:filesld6:lengthi512e4:pathl3:dir8:file.txteed6:lengthi1024e4:pathl9:file2.dateee4:name12:test.torrent12:piece_lengthi32768e6:piecesl6:piece16:piece2eeee"),
 
                 // Extreme nesting depth
                 arguments(Map.of("a", Map.of("b", Map.of("c", Map.of("d", Map.of("e", "deep"))))),
@@ -166,22 +169,37 @@ class DictionaryEncoderTest {
                         "alpha", 1,
                         "beta", "two",
                         "gamma", List.of(3, 4),
-                        "delta", Map.of("nested", true),
+                        "delta", Map.of("nested", "true"),
                         "epsilon", BigInteger.valueOf(999999999L)
-                ), "d5:alphai1e4:beta3:two5:deltad6:nested1:truee7:epsiloni999999999e5:gammal3ei4eee"),
+                ), "d5:alphai1e4:beta3:two5:deltad6:nested4:truee7:epsiloni999999999e5:gammali3ei4eee"),
 
                 // Edge case: Dictionary with special key ordering
                 arguments(Map.of("z", 1, "a", 2, "m", 3), "d1:ai2e1:mi3e1:zi1ee"),
 
+                // Keys in UTF-8 byte order, which puts U+E000 before characters beyond the BMP, unlike
+                // String order
+                arguments(Map.of("\uD83D\uDE00", 1, "\uE000", 2), "d3:\uE000i2e4:\uD83D\uDE00i1ee"),
+                arguments(new TreeMap<>(Map.of("\uD83D\uDE00", 1, "\uE000", 2)), "d3:\uE000i2e4:\uD83D\uDE00i1ee"),
+
+                // Sorted input is taken as it is
+                arguments(keyOrdered(Map.of("b", 1, "a", 2)), "d1:ai2e1:bi1ee"),
+                arguments(new LinkedHashMap<>(new TreeMap<>(Map.of("c", 3, "a", 1, "b", 2))), "d1:ai1e1:bi2e1:ci3ee"),
+
                 // Very large values
                 arguments(Map.of(
                         "huge_number", new BigInteger("9".repeat(100)),
                         "long_string", "a".repeat(1000),
                         "big_list", List.of(1, 2, 3, 4, 5, 6, 7, 8, 9, 10)
-                ), "d8:big_listli1ei2ei3ei4ei5ei6ei7ei8ei9ei10ee10:huge_numberi" + "9".repeat(100) + "e11:long_string1000:" + "a".repeat(1000) + "e")
+                ), "d8:big_listli1ei2ei3ei4ei5ei6ei7ei8ei9ei10ee11:huge_numberi" + "9".repeat(100) + "e11:long_string1000:" + "a".repeat(1000) + "e")
         );
     }
 
+    private static Map<Object, Object> keyOrdered(Map<String, Object> entries) {
+        var sorted = new TreeMap<>(KeyOrder.COMPARATOR);
+        sorted.putAll(entries);
+        return sorted;
+    }
+
     static Stream<Object> getInvalidInputTestData() {
         return Stream.of(
                 // Non-map types
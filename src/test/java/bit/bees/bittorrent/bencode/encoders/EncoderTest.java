@@ -0,0 +1,139 @@
+package bit.bees.bittorrent.bencode.encoders;
+
+import bit.bees.bittorrent.bencode.BencodeException;
+import bit.bees.bittorrent.bencode.ByteString;
+import bit.bees.bittorrent.bencode.Decoder;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.params.provider.Arguments.arguments;
+
+@SpringBootTest
+class EncoderTest {
+
+    @Autowired
+    private Encoder encoder;
+
+    @Autowired
+    private Decoder decoder;
+
+    @ParameterizedTest
+    @MethodSource("getValidTestData")
+    void validInputShouldBeWrittenToStream(Object input, String expected) throws IOException {
+        var out = new ByteArrayOutputStream();
+        encoder.encode(input, out);
+        assertThat(out.toString(StandardCharsets.UTF_8)).isEqualTo(expected);
+    }
+
+    @ParameterizedTest
+    @MethodSource("getValidTestData")
+    void validInputShouldBeWrittenToChannel(Object input, String expected) throws IOException {
+        var out = new ByteArrayOutputStream();
+        encoder.encode(input, Channels.newChannel(out));
+        assertThat(out.toString(StandardCharsets.UTF_8)).isEqualTo(expected);
+    }
+
+    @ParameterizedTest
+    @MethodSource("getValidTestData")
+    void validInputShouldBeEncodedIntoExactlySizedBuffer(Object input, String expected) {
+        var buffer = encoder.encode(input);
+
+        byte[] expectedBytes = expected.getBytes(StandardCharsets.UTF_8);
+        assertThat(buffer.capacity()).isEqualTo(expectedBytes.length);
+        assertThat(buffer.remaining()).isEqualTo(expectedBytes.length);
+        assertThat(StandardCharsets.UTF_8.decode(buffer).toString()).isEqualTo(expected);
+        assertThat(encoder.encodedLength(input)).isEqualTo(expectedBytes.length);
+    }
+
+    @Test
+    void unsupportedInputShouldFail() {
+        assertThatThrownBy(() -> encoder.encode(3.14))
+                .isInstanceOf(BencodeException.class)
+                .hasMessageContaining("Can not encode");
+    }
+
+    @Test
+    void unsupportedNestedValueShouldBeReportedWithItsPath() {
+        var files = List.of(Map.of("length", 1), Map.of("length", 2), Map.of("length", 3.5));
+        var torrent = Map.of("info", Map.of("name", "test", "files", files));
+
+        assertThatThrownBy(() -> encoder.encode(torrent))
+                .isInstanceOf(BencodeException.class)
+                .hasMessageContaining("Can not encode '3.5'")
+                .hasMessageEndingWith("at info.files[2].length");
+    }
+
+    @Test
+    void largeTorrentShouldRoundTripByteExactly() throws IOException {
+        byte[] pieces = new byte[20 * 100_000];
+        new Random(11).nextBytes(pieces);
+        List<Object> files = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            files.add(Map.of(
+                    "length", (long) i,
+                    "path", List.of(ByteString.copyOf("dir"), ByteString.copyOf("file-" + i))));
+        }
+        var torrent = Map.of(
+                "announce", "http://tracker.example.com/announce",
+                "announce-list", List.of(List.of("http://tracker.example.com/announce"), List.of("udp://backup.example.com:80")),
+                "info", Map.of(
+                        "files", files,
+                        "name", "dataset",
+                        "piece length", 262_144,
+                        "pieces", ByteString.of(pieces)));
+
+        var buffer = encoder.encode(torrent);
+        var decoded = decoder.decode(buffer).parsedData();
+        var reEncoded = new ByteArrayOutputStream();
+        encoder.encode(decoded, reEncoded);
+
+        assertThat(reEncoded.toByteArray()).isEqualTo(toArray(buffer));
+    }
+
+    @Test
+    void byteBufferOutputStreamShouldGrowWhenFull() {
+        var out = new ByteBufferOutputStream(ByteBuffer.allocateDirect(2));
+
+        out.write('a');
+        out.write("bcdefgh".getBytes(StandardCharsets.US_ASCII), 0, 7);
+        out.write(ByteBuffer.wrap("ij".getBytes(StandardCharsets.US_ASCII)));
+
+        var buffer = out.buffer().flip();
+        assertThat(buffer.isDirect()).isTrue();
+        assertThat(StandardCharsets.US_ASCII.decode(buffer).toString()).isEqualTo("abcdefghij");
+    }
+
+    private static byte[] toArray(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+
+    static Stream<Arguments> getValidTestData() {
+        return Stream.of(
+                arguments("spam", "4:spam"),
+                arguments("naïve", "6:naïve"),
+                arguments(42, "i42e"),
+                arguments(List.of("spam", 42L), "l4:spami42ee"),
+                arguments(Map.of("spam", List.of("a", "b"), "cow", "moo"), "d3:cow3:moo4:spaml1:a1:bee"),
+                arguments(Map.of("x", "y".repeat(100_000)), "d1:x100000:" + "y".repeat(100_000) + "e")
+        );
+    }
+}
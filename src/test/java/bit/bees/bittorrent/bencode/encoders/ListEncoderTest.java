@@ -86,14 +86,19 @@ class ListEncoderTest {
 
                 // Lists with special string characters
                 arguments(List.of("hello\nworld"), "l11:hello\nworlde"),
-                arguments(List.of("café", "naïve"), "l4:café5:naïvee"),
+                arguments(List.of("café", "naïve"), "l5:café6:naïvee"),
                 arguments(List.of("a:b", "c:d"), "l3:a:b3:c:de"),
 
                 // Edge cases
                 arguments(List.of("", "", ""), "l0:0:0:e"),
                 arguments(List.of(0, 0, 0), "li0ei0ei0ee"),
 
-                arguments(List.of(Map.of("name", "alice"), Map.of("name", "bob")), "ld4:name5:aliceed4:name3:bobee")
+                arguments(List.of(Map.of("name", "alice"), Map.of("name", "bob")), "ld4:name5:aliceed4:name3:bobee"),
+
+                // Nested lists
+                arguments(List.of(List.of()), "llee"),
+                arguments(List.of(List.of("a", "b"), List.of("c")), "ll1:a1:bel1:cee"),
+                arguments(List.of(List.of(List.of(1))), "llli1eeee")
         );
     }
 
@@ -8,7 +8,10 @@ import org.junit.jupiter.params.provider.NullSource;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
 import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -38,6 +41,34 @@ class NumberEncoderTest {
                 .hasMessageContaining("Can not encode");
     }
 
+    @ParameterizedTest
+    @MethodSource("getValidNumberTestData")
+    void validNumberShouldBeWrittenToStream(Number input, String expected) throws IOException {
+        var out = new ByteArrayOutputStream();
+        encoder.encode(input, out);
+        assertThat(out.toString(StandardCharsets.US_ASCII)).isEqualTo(expected);
+    }
+
+    @ParameterizedTest
+    @MethodSource("getValidNumberTestData")
+    void primitiveLongShouldBeWrittenToStream(Number input, String expected) throws IOException {
+        if (input instanceof BigInteger bigInteger && bigInteger.bitLength() >= Long.SIZE) {
+            return;
+        }
+        var out = new ByteArrayOutputStream();
+        encoder.encode(input.longValue(), out);
+        assertThat(out.toString(StandardCharsets.US_ASCII)).isEqualTo(expected);
+    }
+
+    @ParameterizedTest
+    @NullSource
+    @MethodSource("getInvalidInputTestData")
+    void invalidInputShouldNotBeWrittenToStream(Object input) {
+        assertThatThrownBy(() -> encoder.encode(input, new ByteArrayOutputStream()))
+                .isInstanceOf(BencodeException.class)
+                .hasMessageContaining("Can not encode");
+    }
+
     static Stream<Arguments> getValidNumberTestData() {
         return Stream.of(
                 // Integer values
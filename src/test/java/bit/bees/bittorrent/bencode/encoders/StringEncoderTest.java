@@ -1,6 +1,8 @@
 package bit.bees.bittorrent.bencode.encoders;
 
 import bit.bees.bittorrent.bencode.BencodeException;
+import bit.bees.bittorrent.bencode.ByteString;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
@@ -8,6 +10,10 @@ import org.junit.jupiter.params.provider.NullSource;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
 import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -37,6 +43,85 @@ class StringEncoderTest {
                 .hasMessageContaining("Can not encode");
     }
 
+    @ParameterizedTest
+    @MethodSource("getValidStringTestData")
+    void validStringShouldBeWrittenAsUtf8Bytes(String input, String expected) throws IOException {
+        var out = new ByteArrayOutputStream();
+        encoder.encode(input, out);
+        assertThat(out.toByteArray()).isEqualTo(expected.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @ParameterizedTest
+    @MethodSource("getScratchBoundaryTestData")
+    void stringShouldBeWrittenLikeGetBytesWithOrWithoutScratch(String input) throws IOException {
+        byte[] content = input.getBytes(StandardCharsets.UTF_8);
+
+        var out = new ByteArrayOutputStream();
+        encoder.encode(input, out);
+
+        assertThat(out.toByteArray()).startsWith((content.length + ":").getBytes(StandardCharsets.US_ASCII)).endsWith(content);
+        assertThat((long) out.size()).isEqualTo(encoder.encodedLength(input));
+    }
+
+    @Test
+    void encodingFromWithinTheStreamShouldNotOverwriteTheScratch() throws IOException {
+        var nested = new ByteArrayOutputStream();
+        var out = new ByteArrayOutputStream() {
+            @Override
+            public void write(byte[] bytes, int offset, int length) {
+                if (nested.size() == 0 && bytes[offset] == 'o') {
+                    try {
+                        encoder.encode("nested", nested);
+                    } catch (IOException e) {
+                        throw new AssertionError(e);
+                    }
+                }
+                super.write(bytes, offset, length);
+            }
+        };
+
+        encoder.encode("outer", out);
+
+        assertThat(out.toString(StandardCharsets.UTF_8)).isEqualTo("5:outer");
+        assertThat(nested.toString(StandardCharsets.UTF_8)).isEqualTo("6:nested");
+    }
+
+    @Test
+    void stringShouldBeWrittenOnAVirtualThread() throws Exception {
+        var out = new ByteArrayOutputStream();
+        Thread.ofVirtual().start(() -> {
+            try {
+                encoder.encode("spam", out);
+            } catch (IOException e) {
+                throw new AssertionError(e);
+            }
+        }).join();
+
+        assertThat(out.toString(StandardCharsets.UTF_8)).isEqualTo("4:spam");
+    }
+
+    @Test
+    void byteStringShouldBeWrittenByteExactly() throws IOException {
+        byte[] content = new byte[20 * 100_000];
+        new Random(42).nextBytes(content);
+        var byteString = ByteString.of(content);
+
+        var out = new ByteArrayOutputStream();
+        encoder.encode(byteString, out);
+
+        byte[] prefix = "2000000:".getBytes(StandardCharsets.US_ASCII);
+        byte[] encoded = out.toByteArray();
+        assertThat(encoder.canEncode(byteString)).isTrue();
+        assertThat(encoded).hasSize(prefix.length + content.length);
+        assertThat(encoded).startsWith(prefix).endsWith(content);
+    }
+
+    @Test
+    void byteStringShouldBeEncodedAsText() {
+        assertThat(encoder.encode(ByteString.copyOf("naïve"))).isEqualTo("6:naïve");
+        assertThat(encoder.encode(ByteString.EMPTY)).isEqualTo("0:");
+    }
+
     static Stream<Arguments> getValidStringTestData() {
         return Stream.of(
                 // Empty string
@@ -58,8 +143,10 @@ class StringEncoderTest {
                 arguments(" ", "1: "),
 
                 // Strings with Unicode characters
-                arguments("café", "4:café"),
-                arguments("äöüß", "4:äöüß"),
+                arguments("café", "5:café"),
+                arguments("äöüß", "8:äöüß"),
+                arguments("日本", "6:日本"),
+                arguments("\uD83D\uDE00", "4:\uD83D\uDE00"),
 
                 // Strings containing numbers
                 arguments("123", "3:123"),
@@ -82,6 +169,23 @@ class StringEncoderTest {
         );
     }
 
+    static Stream<String> getScratchBoundaryTestData() {
+        return Stream.of(
+                // Around the scratch length
+                "a".repeat(StringEncoder.SCRATCH_LENGTH - 1),
+                "a".repeat(StringEncoder.SCRATCH_LENGTH),
+                "a".repeat(StringEncoder.SCRATCH_LENGTH + 1),
+                "\u00e9".repeat(StringEncoder.SCRATCH_LENGTH / 2),
+                "\u00e9".repeat(StringEncoder.SCRATCH_LENGTH / 2 + 1),
+
+                // Unpaired surrogates become '?'
+                "a\uD83Db",
+                "\uDE00",
+                "\uD83D",
+                "\u20ac\uD83D\uDE00\uDE00\uD83D"
+        );
+    }
+
     static Stream<Object> getInvalidInputTestData() {
         return Stream.of(
                 42,
@@ -0,0 +1,230 @@
+package bit.bees.bittorrent.bencode.parsers;
+
+import bit.bees.bittorrent.bencode.BencodeException;
+import bit.bees.bittorrent.bencode.ByteString;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.stream.Stream;
+
+import static bit.bees.bittorrent.bencode.parsers.BencodeEvent.BYTES;
+import static bit.bees.bittorrent.bencode.parsers.BencodeEvent.END;
+import static bit.bees.bittorrent.bencode.parsers.BencodeEvent.END_OF_INPUT;
+import static bit.bees.bittorrent.bencode.parsers.BencodeEvent.INT;
+import static bit.bees.bittorrent.bencode.parsers.BencodeEvent.NEED_MORE_INPUT;
+import static bit.bees.bittorrent.bencode.parsers.BencodeEvent.START_LIST;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BencodeReaderTest {
+
+    private static final String TORRENT = "d8:announce14:http://tracker4:infod5:filesld6:lengthi7e4:pathl1:aeee"
+            + "4:name4:test12:piece lengthi-16384eee";
+
+    private static final List<String> TORRENT_EVENTS = List.of(
+            "START_DICT", "KEY announce", "BYTES http://tracker", "KEY info", "START_DICT",
+            "KEY files", "START_LIST", "START_DICT", "KEY length", "INT 7", "KEY path", "START_LIST", "BYTES a",
+            "END", "END", "END", "KEY name", "BYTES test", "KEY piece length", "INT -16384", "END", "END",
+            "END_OF_INPUT");
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 2, 3, 7, 64})
+    void tokensShouldBeReportedWhateverTheChunkSize(int chunkSize) throws IOException {
+        var reader = BencodeReader.of(stream(TORRENT), chunkSize, 1024);
+
+        assertThat(events(reader)).isEqualTo(TORRENT_EVENTS);
+    }
+
+    @Test
+    void nonBlockingChannelShouldSuspendAndResume() throws IOException {
+        var channel = new TrickleChannel(List.of("d3:fo", "", "o", "i4", "", "2e4:spa", "", "m", "l1:xee"));
+        var reader = BencodeReader.of(channel, 16, 1024);
+
+        List<String> events = new ArrayList<>();
+        BencodeEvent event;
+        while ((event = reader.next()) != END_OF_INPUT) {
+            events.add(event == NEED_MORE_INPUT ? "-" : describe(event, reader));
+        }
+
+        assertThat(events).containsExactly(
+                "START_DICT", "-", "KEY foo", "-", "INT 42", "-", "KEY spam", "START_LIST", "BYTES x", "END", "END");
+    }
+
+    @Test
+    void stringsLongerThanTheChunkShouldGrowTheBuffer() throws IOException {
+        var reader = BencodeReader.of(stream("l20:" + "x".repeat(20) + "e"), 4, 64);
+
+        assertThat(reader.next()).isEqualTo(START_LIST);
+        assertThat(reader.next()).isEqualTo(BYTES);
+        assertThat(reader.bytes()).isEqualTo(ByteString.copyOf("x".repeat(20)));
+        assertThat(reader.next()).isEqualTo(END);
+    }
+
+    @Test
+    void stringsLongerThanTheLimitShouldFail() throws IOException {
+        var reader = BencodeReader.of(stream("l65:" + "x".repeat(65) + "e"), 4, 64);
+
+        assertThat(reader.next()).isEqualTo(START_LIST);
+        assertThatThrownBy(reader::next)
+                .isInstanceOf(BencodeException.class)
+                .hasMessage("String length 65 exceeds the limit of 64 bytes at offset 1");
+    }
+
+    @Test
+    void consecutiveValuesShouldBeRead() throws IOException {
+        var reader = BencodeReader.of(stream("i1ei99999999999999999999e0:"));
+
+        assertThat(reader.next()).isEqualTo(INT);
+        assertThat(reader.longValue()).isEqualTo(1);
+        assertThat(reader.next()).isEqualTo(INT);
+        assertThat(reader.number()).isEqualTo(new BigInteger("99999999999999999999"));
+        assertThat(reader.next()).isEqualTo(BYTES);
+        assertThat(reader.bytes().isEmpty()).isTrue();
+        assertThat(reader.next()).isEqualTo(END_OF_INPUT);
+        assertThat(reader.offset()).isEqualTo(27);
+    }
+
+    @Test
+    void largeListShouldBeStreamedWithBoundedMemory() throws IOException {
+        int count = 1_000_000;
+        var input = new RepeatingStream("l", "i12345e", count, "e");
+        var reader = BencodeReader.of(input, 256, 256);
+
+        long sum = 0;
+        BencodeEvent event;
+        while ((event = reader.next()) != END_OF_INPUT) {
+            if (event == INT) {
+                sum += reader.longValue();
+            }
+        }
+
+        assertThat(sum).isEqualTo(12345L * count);
+    }
+
+    @ParameterizedTest
+    @MethodSource("getMalformedTestData")
+    void malformedInputShouldFail(String input) {
+        assertThatThrownBy(() -> events(BencodeReader.of(stream(input), 2, 64)))
+                .isInstanceOf(BencodeException.class);
+    }
+
+    static Stream<String> getMalformedTestData() {
+        return Stream.of(
+                "e",
+                "x",
+                "i12",
+                "i-0e",
+                "i1x2e",
+                "5:spam",
+                "04:spam",
+                "12345678901:x",
+                "l4:spam",
+                "di1ei2ee",
+                "d1:ae",
+                "d1:a",
+                "l".repeat(ValueParser.DEFAULT_MAX_DEPTH + 1) + "e".repeat(ValueParser.DEFAULT_MAX_DEPTH + 1)
+        );
+    }
+
+    private static List<String> events(BencodeReader reader) throws IOException {
+        List<String> events = new ArrayList<>();
+        BencodeEvent event;
+        do {
+            event = reader.next();
+            events.add(describe(event, reader));
+        } while (event != END_OF_INPUT);
+        return events;
+    }
+
+    private static String describe(BencodeEvent event, BencodeReader reader) {
+        return switch (event) {
+            case KEY, BYTES -> event + " " + reader.bytes();
+            case INT -> event + " " + reader.number();
+            default -> event.name();
+        };
+    }
+
+    private static InputStream stream(String data) {
+        return new ByteArrayInputStream(data.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    /**
+     * Non-blocking channel handing out one prepared fragment per read; an empty fragment means no
+     * bytes are available at that moment.
+     */
+    private static final class TrickleChannel implements ReadableByteChannel {
+
+        private final Queue<String> fragments;
+
+        TrickleChannel(List<String> fragments) {
+            this.fragments = new ArrayDeque<>(fragments);
+        }
+
+        @Override
+        public int read(ByteBuffer destination) {
+            String fragment = fragments.poll();
+            if (fragment == null) {
+                return -1;
+            }
+            destination.put(fragment.getBytes(StandardCharsets.ISO_8859_1));
+            return fragment.length();
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * Stream of a prefix, an item repeated many times and a suffix, produced on the fly.
+     */
+    private static final class RepeatingStream extends InputStream {
+
+        private final byte[] prefix;
+        private final byte[] item;
+        private final byte[] suffix;
+        private final long length;
+        private long position;
+
+        RepeatingStream(String prefix, String item, int count, String suffix) {
+            this.prefix = prefix.getBytes(StandardCharsets.US_ASCII);
+            this.item = item.getBytes(StandardCharsets.US_ASCII);
+            this.suffix = suffix.getBytes(StandardCharsets.US_ASCII);
+            this.length = this.prefix.length + (long) count * this.item.length + this.suffix.length;
+        }
+
+        @Override
+        public int read() {
+            if (position >= length) {
+                return -1;
+            }
+            long itemsEnd = length - suffix.length;
+            long index = position++;
+            if (index < prefix.length) {
+                return prefix[(int) index];
+            }
+            if (index < itemsEnd) {
+                return item[(int) ((index - prefix.length) % item.length)];
+            }
+            return suffix[(int) (index - itemsEnd)];
+        }
+    }
+}
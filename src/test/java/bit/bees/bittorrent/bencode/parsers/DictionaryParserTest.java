@@ -1,6 +1,7 @@
 package bit.bees.bittorrent.bencode.parsers;
 
 import bit.bees.bittorrent.bencode.BencodeException;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
@@ -46,6 +47,32 @@ class DictionaryParserTest {
                 .hasMessage("'%s' is not parsable", input);
     }
 
+    @Test
+    void deeplyNestedDictionaryShouldBeParsedInOnePass() {
+        int depth = 500;
+        var input = "d1:a".repeat(depth) + "i1e" + "e".repeat(depth);
+
+        var result = parser.parse(input);
+
+        assertThat(result.status()).isEqualTo(ParseResult.Status.SUCCESS);
+        assertThat(result.parsedLength()).isEqualTo(input.length());
+    }
+
+    @Test
+    void malformedValueDeepInsideNestedDictionaryShouldFail() {
+        int depth = 500;
+        var input = "d1:a".repeat(depth) + "i01e" + "e".repeat(depth);
+
+        var result = parser.parse(input);
+
+        assertThat(result.status()).isEqualTo(ParseResult.Status.FAILURE);
+        assertThat(result.error())
+                .isInstanceOf(BencodeException.class)
+                .hasMessage("'%s' is not parsable", input)
+                .rootCause()
+                .hasMessageStartingWith("Integer with leading zero");
+    }
+
     static Stream<Arguments> getValidDictionaryTestData() {
         return Stream.of(
                 // Empty dictionary
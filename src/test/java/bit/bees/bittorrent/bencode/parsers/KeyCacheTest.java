@@ -0,0 +1,86 @@
+package bit.bees.bittorrent.bencode.parsers;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class KeyCacheTest {
+
+    @Test
+    void repeatedKeyShouldResolveToTheSameInstance() {
+        var cache = new KeyCache(16);
+        var first = buffer("xxintervalyy");
+        var second = buffer("interval");
+
+        String key = cache.key(first, 2, 8);
+
+        assertThat(key).isEqualTo("interval");
+        assertThat(cache.key(second, 0, 8)).isSameAs(key);
+        assertThat(cache.hits()).isEqualTo(1);
+        assertThat(cache.misses()).isEqualTo(1);
+        assertThat(cache.hitRatio()).isEqualTo(0.5);
+    }
+
+    @Test
+    void keysShouldBeDecodedAsUtf8() {
+        var cache = new KeyCache(16);
+        var buffer = ByteBuffer.wrap("naïve".getBytes(StandardCharsets.UTF_8));
+
+        assertThat(cache.key(buffer, 0, buffer.capacity())).isEqualTo("naïve");
+        assertThat(cache.key(buffer, 0, buffer.capacity())).isEqualTo("naïve");
+        assertThat(cache.hits()).isEqualTo(1);
+    }
+
+    @Test
+    void directBuffersShouldBeMatchedInPlace() {
+        var cache = new KeyCache(16);
+        var direct = ByteBuffer.allocateDirect(5).put("peers".getBytes(StandardCharsets.US_ASCII));
+
+        String key = cache.key(direct, 0, 5);
+
+        assertThat(cache.key(buffer("peers"), 0, 5)).isSameAs(key);
+        assertThat(cache.key(direct, 0, 5)).isSameAs(key);
+    }
+
+    @Test
+    void differentKeysShouldNeverBeConfused() {
+        var cache = new KeyCache(1);
+
+        assertThat(cache.key(buffer("a"), 0, 1)).isEqualTo("a");
+        assertThat(cache.key(buffer("b"), 0, 1)).isEqualTo("b");
+        assertThat(cache.key(buffer("a"), 0, 1)).isEqualTo("a");
+        assertThat(cache.key(buffer("ab"), 0, 1)).isEqualTo("a");
+        assertThat(cache.size()).isEqualTo(1);
+    }
+
+    @Test
+    void longKeysAndDisabledCacheShouldBypassTheTable() {
+        var cache = new KeyCache(16);
+        var longKey = "k".repeat(KeyCache.MAX_KEY_LENGTH + 1);
+        var disabled = new KeyCache(0);
+
+        cache.key(buffer(longKey), 0, longKey.length());
+        cache.key(buffer(longKey), 0, longKey.length());
+        disabled.key(buffer("t"), 0, 1);
+        disabled.key(buffer("t"), 0, 1);
+
+        assertThat(cache.hits()).isZero();
+        assertThat(cache.misses()).isEqualTo(2);
+        assertThat(disabled.hits()).isZero();
+        assertThat(disabled.size()).isZero();
+    }
+
+    @Test
+    void sizeShouldBeRoundedUpToAPowerOfTwo() {
+        assertThat(new KeyCache(1000).size()).isEqualTo(1024);
+        assertThat(new KeyCache(KeyCache.DEFAULT_SIZE).size()).isEqualTo(KeyCache.DEFAULT_SIZE);
+        assertThat(new KeyCache(3).size()).isEqualTo(4);
+    }
+
+    private static ByteBuffer buffer(String text) {
+        return ByteBuffer.wrap(text.getBytes(StandardCharsets.US_ASCII));
+    }
+}
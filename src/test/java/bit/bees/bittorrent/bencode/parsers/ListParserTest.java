@@ -10,6 +10,7 @@ import org.springframework.boot.test.context.SpringBootTest;
 
 import java.math.BigInteger;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -96,7 +97,14 @@ class ListParserTest {
                 // Complex mixed content with remaining content
                 arguments("l11:hello worldi-123e0:3:abcel11:hello worldi-123e0:3:abce", List.of("hello world", BigInteger.valueOf(-123), "", "abc"), 29),
                 arguments("l11:hello worldi-123e0:3:abcelelelelele", List.of("hello world", BigInteger.valueOf(-123), "", "abc"), 29),
-                arguments("l11:hello worldi-123e0:3:abce12345", List.of("hello world", BigInteger.valueOf(-123), "", "abc"), 29)
+                arguments("l11:hello worldi-123e0:3:abce12345", List.of("hello world", BigInteger.valueOf(-123), "", "abc"), 29),
+
+                // Nested lists and dictionaries
+                arguments("llee", List.of(List.of()), 4),
+                arguments("ll4:spamee", List.of(List.of("spam")), 10),
+                arguments("lli1eeli2ei3eee", List.of(List.of(BigInteger.ONE), List.of(BigInteger.TWO, BigInteger.valueOf(3))), 15),
+                arguments("ld4:name5:aliceed4:name3:bobee", List.of(Map.of("name", "alice"), Map.of("name", "bob")), 30),
+                arguments("ll19:http://tracker1.comel19:http://tracker2.comee", List.of(List.of("http://tracker1.com"), List.of("http://tracker2.com")), 50)
         );
     }
 
@@ -145,9 +153,10 @@ class ListParserTest {
                 "li42e4spame",
                 "l4:spami42einvalide",
 
-                // Nested structures (not supported by current parser)
+                // Unterminated nested structures
                 "lle",
-                "ll4:spamee",
+                "ll4:spame",
+                "ld1:ai1ee",
 
                 // Malformed numbers in list
                 "li-0ee",
@@ -1,6 +1,7 @@
 package bit.bees.bittorrent.bencode.parsers;
 
 import bit.bees.bittorrent.bencode.BencodeException;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
@@ -9,9 +10,11 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 
 import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
 import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.junit.jupiter.params.provider.Arguments.arguments;
 
 @SpringBootTest
@@ -42,6 +45,49 @@ class NumberParserTest {
                 .hasMessage("'%s' is not parsable", input);
     }
 
+    @ParameterizedTest
+    @MethodSource("getValidNumberTestData")
+    void validNumberShouldBeReadAsLongWhenItFits(String input, BigInteger expected, int parsedLength) {
+        var cursor = cursorOf(input);
+        var number = NumberParser.readNumber(cursor);
+
+        if (expected.bitLength() < Long.SIZE) {
+            assertThat(number).isEqualTo(expected.longValue());
+        } else {
+            assertThat(number).isEqualTo(expected);
+        }
+        assertThat(cursor.consumed()).isEqualTo(parsedLength);
+    }
+
+    @ParameterizedTest
+    @NullSource
+    @MethodSource("getInvalidNumberTestData")
+    void invalidNumberShouldNotBeReadAsLong(String input) {
+        var cursor = cursorOf(input == null ? "" : input);
+        assertThatThrownBy(() -> NumberParser.readLong(cursor)).isInstanceOf(BencodeException.class);
+    }
+
+    @Test
+    void longLimitsShouldBeReadWithoutFallback() {
+        assertThat(NumberParser.readLong(cursorOf("i9223372036854775807e"))).isEqualTo(Long.MAX_VALUE);
+        assertThat(NumberParser.readLong(cursorOf("i-9223372036854775808e"))).isEqualTo(Long.MIN_VALUE);
+        assertThat(NumberParser.readNumber(cursorOf("i-9223372036854775809e"))).isEqualTo(new BigInteger("-9223372036854775809"));
+        assertThatThrownBy(() -> NumberParser.readLong(cursorOf("i9223372036854775808e")))
+                .isInstanceOf(BencodeException.class)
+                .hasMessageContaining("does not fit");
+    }
+
+    @Test
+    void overflowingNumberWithInvalidDigitShouldFail() {
+        assertThatThrownBy(() -> NumberParser.readNumber(cursorOf("i99999999999999999999x9e")))
+                .isInstanceOf(BencodeException.class)
+                .hasMessageContaining("Invalid integer digit");
+    }
+
+    private static BencodeCursor cursorOf(String input) {
+        return BencodeCursor.of(input.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
     static Stream<Arguments> getValidNumberTestData() {
         return Stream.of(
                 arguments("i0e", BigInteger.valueOf(0), 3),
@@ -0,0 +1,169 @@
+package bit.bees.bittorrent.bencode.parsers;
+
+import bit.bees.bittorrent.bencode.BencodeException;
+import bit.bees.bittorrent.bencode.BencodeKey;
+import bit.bees.bittorrent.bencode.ByteString;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.params.provider.Arguments.arguments;
+
+@SpringBootTest
+class RecordBinderTest {
+
+    @Autowired
+    private RecordBinder binder;
+
+    record TrackerResponse(long interval, @BencodeKey("min interval") Long minInterval, byte[] peers,
+                           @BencodeKey("failure reason") String failureReason) {
+    }
+
+    record Torrent(String announce, @BencodeKey("announce-list") List<List<String>> announceList, Info info) {
+    }
+
+    record Info(String name, @BencodeKey("piece length") int pieceLength, ByteString pieces, List<FileInfo> files,
+                Long length, @BencodeKey("private") Boolean privateTorrent) {
+    }
+
+    record FileInfo(long length, List<String> path) {
+    }
+
+    record Node(String name, List<Node> children) {
+    }
+
+    record Untyped(Object value, Map<String, Object> extra, BigInteger big, boolean flag) {
+    }
+
+    record Positive(long value) {
+        Positive {
+            if (value <= 0) {
+                throw new IllegalArgumentException("value must be positive");
+            }
+        }
+    }
+
+    record Unsupported(double value) {
+    }
+
+    record RawList(List<?> values) {
+    }
+
+    record DuplicateKey(@BencodeKey("b") long a, long b) {
+    }
+
+    @Test
+    void trackerResponseShouldBeBoundSkippingUnknownKeys() {
+        var response = binder.decode(bytes("d8:completei5e8:intervali1800e12:min intervali900e"
+                + "5:peers6:\n\u0000\u0000\u0001\u001a\u00e110:tracker id3:abc15:warning messaged1:xli1ei2eeee"), TrackerResponse.class);
+
+        assertThat(response.interval()).isEqualTo(1800);
+        assertThat(response.minInterval()).isEqualTo(900L);
+        assertThat(response.peers()).containsExactly(10, 0, 0, 1, 0x1a, 0xe1);
+        assertThat(response.failureReason()).isNull();
+    }
+
+    @Test
+    void absentReferenceComponentsShouldBeNull() {
+        var response = binder.decode(bytes("d8:intervali60e5:peers0:e"), TrackerResponse.class);
+
+        assertThat(response.interval()).isEqualTo(60);
+        assertThat(response.minInterval()).isNull();
+        assertThat(response.peers()).isEmpty();
+    }
+
+    @Test
+    void nestedRecordsAndListsShouldBeBound() {
+        var torrent = binder.decode(bytes("d8:announce10:http://t/a13:announce-listll10:http://t/ael9:udp://t/b9:udp://t/cee"
+                + "7:comment1:c4:infod5:filesld6:lengthi3e4:pathl1:a5:b.txteed6:lengthi4e4:pathl1:ceee4:name3:dir"
+                + "12:piece lengthi16384e6:pieces20:xxxxxxxxxxxxxxxxxxxx7:privatei1eee"), Torrent.class);
+
+        assertThat(torrent).isEqualTo(new Torrent("http://t/a",
+                List.of(List.of("http://t/a"), List.of("udp://t/b", "udp://t/c")),
+                new Info("dir", 16384, ByteString.copyOf("x".repeat(20)),
+                        List.of(new FileInfo(3, List.of("a", "b.txt")), new FileInfo(4, List.of("c"))), null, true)));
+    }
+
+    @Test
+    void recursiveRecordsShouldBeBound() {
+        var node = binder.decode(bytes("d8:childrenld8:childrenle4:name1:bed4:name1:cee4:name1:ae"), Node.class);
+
+        assertThat(node).isEqualTo(new Node("a", List.of(new Node("b", List.of()), new Node("c", null))));
+    }
+
+    @Test
+    void untypedComponentsShouldBeDecodedAsValues() {
+        var untyped = binder.decode(bytes("d3:bigi9223372036854775808e5:extrad1:ai1ee4:flagi1e5:valuel1:xee"), Untyped.class);
+
+        assertThat(untyped).isEqualTo(new Untyped(List.of(ByteString.copyOf("x")), Map.of("a", 1L),
+                new BigInteger("9223372036854775808"), true));
+    }
+
+    @Test
+    void byteBufferShouldBeDecodedFromItsPositionWithoutMovingIt() {
+        var buffer = ByteBuffer.wrap(bytes("xxd8:intervali60e5:peers0:e"));
+        buffer.position(2);
+
+        var response = binder.decode(buffer, TrackerResponse.class);
+
+        assertThat(response.interval()).isEqualTo(60);
+        assertThat(buffer.position()).isEqualTo(2);
+    }
+
+    @ParameterizedTest
+    @MethodSource("getInvalidTestData")
+    void invalidInputShouldFail(String input, Class<? extends Record> type, String message) {
+        assertThatThrownBy(() -> binder.decode(bytes(input), type))
+                .isInstanceOf(BencodeException.class)
+                .hasMessageContaining(message);
+    }
+
+    @ParameterizedTest
+    @MethodSource("getUnsupportedTypes")
+    void unsupportedRecordsShouldBeRejected(Class<? extends Record> type, String message) {
+        assertThatThrownBy(() -> binder.decode(bytes("de"), type))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining(message);
+    }
+
+    static Stream<Arguments> getInvalidTestData() {
+        return Stream.of(
+                // Malformed input
+                arguments("", TrackerResponse.class, "Expected 'd'"),
+                arguments("le", TrackerResponse.class, "Expected 'd'"),
+                arguments("d8:intervali60e", TrackerResponse.class, "Unexpected end of input"),
+                arguments("d5:peers0:8:intervali60ee", TrackerResponse.class, "Keys are not in lexicographic order"),
+                arguments("d8:intervali60e5:peers0:1:zi1-ee", TrackerResponse.class, "Invalid integer"),
+
+                // Input not fitting the record
+                arguments("d5:peers0:e", TrackerResponse.class, "Missing key 'interval'"),
+                arguments("d8:interval2:60e", TrackerResponse.class, "Invalid value for 'interval'"),
+                arguments("d4:infod12:piece lengthi4294967296eee", Torrent.class, "Invalid value for 'info'"),
+                arguments("d5:valuei0ee", Positive.class, "value must be positive")
+        );
+    }
+
+    static Stream<Arguments> getUnsupportedTypes() {
+        return Stream.of(
+                arguments(Unsupported.class, "Unsupported component type double"),
+                arguments(RawList.class, "Unsupported component type ?"),
+                arguments(DuplicateKey.class, "binds key 'b' twice")
+        );
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.ISO_8859_1);
+    }
+}
@@ -0,0 +1,155 @@
+package bit.bees.bittorrent.bencode.parsers;
+
+import bit.bees.bittorrent.bencode.BencodeException;
+import bit.bees.bittorrent.bencode.ByteString;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.junit.jupiter.params.provider.NullSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+import static org.junit.jupiter.params.provider.Arguments.arguments;
+
+@SpringBootTest
+class ValueParserTest {
+
+    @Autowired
+    private ValueParser parser;
+
+    @ParameterizedTest
+    @MethodSource("getValidTestData")
+    void validInputShouldPass(String input, Object expected, int parsedLength) {
+        var result = parser.parse(input);
+        assertThat(result.status()).isEqualTo(ParseResult.Status.SUCCESS);
+        assertThat(result.parsedData()).isEqualTo(expected);
+        assertThat(result.parsedLength())
+                .as("parsed data length should be %d for '%s'", parsedLength, input)
+                .isEqualTo(parsedLength);
+    }
+
+    @ParameterizedTest
+    @NullSource
+    @MethodSource("getInvalidTestData")
+    void invalidInputShouldFail(String input) {
+        var result = parser.parse(input);
+        assertThat(result.status()).isEqualTo(ParseResult.Status.FAILURE);
+        assertThat(result.error())
+                .isInstanceOf(BencodeException.class)
+                .hasMessage("'%s' is not parsable", input);
+    }
+
+    @Test
+    void nestingUpToTheLimitShouldPass() {
+        var limited = new ValueParser(new StringParser(), new NumberParser(), new KeyCache(KeyCache.DEFAULT_SIZE), 3);
+
+        assertThat(limited.parse("lld1:ai1eeee").parsedData()).isEqualTo(List.of(List.of(Map.of("a", BigInteger.ONE))));
+    }
+
+    @Test
+    void nestingBeyondTheLimitShouldFail() {
+        var limited = new ValueParser(new StringParser(), new NumberParser(), new KeyCache(KeyCache.DEFAULT_SIZE), 3);
+
+        var result = limited.parse("llllleeeee");
+
+        assertThat(result.status()).isEqualTo(ParseResult.Status.FAILURE);
+        assertThat(result.error()).rootCause().hasMessage("Nesting exceeds the limit of 3 levels at offset 3");
+    }
+
+    @Test
+    void multiFileTorrentShouldBeParsedInOnePass() {
+        var input = "d8:announce14:http://tracker13:announce-listll14:http://trackerel6:udp://ee"
+                + "4:infod5:filesld6:lengthi1e4:pathl3:dir1:aeed6:lengthi2e4:pathl1:beee"
+                + "4:name4:test12:piece lengthi16384e6:pieces0:ee";
+
+        var result = parser.parse(input);
+
+        assertThat(result.parsedLength()).isEqualTo(input.length());
+        assertThat(result.parsedData()).isEqualTo(Map.of(
+                "announce", "http://tracker",
+                "announce-list", List.of(List.of("http://tracker"), List.of("udp://")),
+                "info", Map.of(
+                        "files", List.of(
+                                Map.of("length", BigInteger.ONE, "path", List.of("dir", "a")),
+                                Map.of("length", BigInteger.TWO, "path", List.of("b"))),
+                        "name", "test",
+                        "piece length", BigInteger.valueOf(16384),
+                        "pieces", "")));
+    }
+
+    @Test
+    void rawValuesShouldBeTheExactEncodedBytes() {
+        var input = "d4:infod6:lengthi7e4:name4:teste4:listli-1e0:ee";
+        var rawValues = new HashMap<String, ByteString>();
+
+        var parsed = parser.readDictionary(BencodeCursor.of(input.getBytes(StandardCharsets.ISO_8859_1)), rawValues);
+
+        assertThat(parsed).containsOnlyKeys("info", "list");
+        assertThat(rawValues).containsOnly(
+                entry("info", ByteString.copyOf("d6:lengthi7e4:name4:teste")),
+                entry("list", ByteString.copyOf("li-1e0:e")));
+    }
+
+    @Test
+    void valuesShouldBeCountedOnTheCursorAsTheyAreRead() {
+        var cursor = BencodeCursor.of("d4:infod6:lengthi7e4:name4:teste4:listli-1e0:leeee".getBytes(StandardCharsets.ISO_8859_1));
+
+        parser.readValue(cursor);
+
+        assertThat(cursor.tokenCounts()).isEqualTo(new TokenCounts(6, 2, 2, 2, 3));
+        cursor.clearTokenCounts();
+        assertThat(cursor.tokenCounts()).isEqualTo(new TokenCounts(0, 0, 0, 0, 0));
+    }
+
+    static Stream<Arguments> getValidTestData() {
+        return Stream.of(
+                // Values of every type
+                arguments("4:spam", "spam", 6),
+                arguments("i42e", BigInteger.valueOf(42), 4),
+                arguments("le", List.of(), 2),
+                arguments("de", Map.of(), 2),
+
+                // Lists and dictionaries inside each other
+                arguments("llee", List.of(List.of()), 4),
+                arguments("ldee", List.of(Map.of()), 4),
+                arguments("d1:ald1:bleeee", Map.of("a", List.of(Map.of("b", List.of()))), 14),
+                arguments("l" + "l".repeat(100) + "e".repeat(100) + "e", nestedLists(101), 202),
+
+                // Trailing data is left unread
+                arguments("i1ei2e", BigInteger.ONE, 3),
+                arguments("l1:aee", List.of("a"), 5)
+        );
+    }
+
+    static Stream<String> getInvalidTestData() {
+        return Stream.of(
+                "",
+                "e",
+                "x",
+                "i-0e",
+                "lli1e",
+                "ld1:ae",
+                "dl1:ae1:be",
+                "d1:b1:x1:a1:ye",
+                "l".repeat(2000) + "e".repeat(2000)
+        );
+    }
+
+    private static Object nestedLists(int depth) {
+        Object value = List.of();
+        for (int i = 1; i < depth; i++) {
+            value = List.of(value);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,48 @@
+package bit.bees.bittorrent.metainfo;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HashBuffersTest {
+
+    @Test
+    void buffersBeyondTheCountShouldWaitForARelease() throws Exception {
+        var buffers = new HashBuffers();
+        var taken = new ArrayList<ByteBuffer>();
+        for (int i = 0; i < HashBuffers.BUFFER_COUNT; i++) {
+            taken.add(buffers.take());
+        }
+        assertThat(taken).allMatch(ByteBuffer::isDirect);
+        var distinct = Collections.newSetFromMap(new IdentityHashMap<ByteBuffer, Boolean>());
+        distinct.addAll(taken);
+        assertThat(distinct).hasSize(HashBuffers.BUFFER_COUNT);
+
+        try (var executor = Executors.newSingleThreadExecutor()) {
+            var waiting = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return buffers.take();
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            }, executor);
+            Thread.sleep(100);
+            assertThat(waiting).isNotDone();
+
+            taken.getFirst().put((byte) 1);
+            buffers.release(taken.getFirst());
+
+            var buffer = waiting.get(10, TimeUnit.SECONDS);
+            assertThat(buffer).isSameAs(taken.getFirst());
+            assertThat(buffer.position()).isZero();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package bit.bees.bittorrent.metainfo;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest
+class InfoHasherTest {
+
+    private static final String TORRENT =
+            "d8:announce16:http://tracker/a4:infod6:lengthi5e4:name5:a.txt12:piece lengthi16384e6:pieces20:AAAAAAAAAAAAAAAAAAAAee";
+
+    @Autowired
+    private InfoHasher hasher;
+
+    @Autowired
+    private MetainfoLoader loader;
+
+    @TempDir
+    private Path directory;
+
+    @Test
+    void hashShouldMatchTheLoadedMetainfo() throws IOException {
+        var file = write("a.torrent", TORRENT);
+
+        assertThat(hasher.hash(file, InfoHash.Version.V1)).isEqualTo(loader.load(file).infoHash());
+        assertThat(hasher.hash(file, InfoHash.Version.V2)).isEqualTo(loader.load(file).infoHash(InfoHash.Version.V2));
+    }
+
+    @Test
+    void torrentWithoutInfoShouldFail() throws IOException {
+        var file = write("empty.torrent", "de");
+
+        assertThatThrownBy(() -> hasher.hash(file, InfoHash.Version.V1))
+                .isInstanceOf(MetainfoException.class)
+                .hasMessageContaining("Missing key 'info'");
+    }
+
+    @Test
+    void batchShouldHashEveryFileInOrderAndReportFailures() throws IOException {
+        var files = new ArrayList<Path>();
+        for (int i = 0; i < 200; i++) {
+            files.add(write(i + ".torrent", "d4:infod6:lengthi%de4:name1:a12:piece lengthi1e6:pieces0:ee".formatted(i)));
+        }
+        files.add(write("broken.torrent", "d4:info"));
+        files.add(directory.resolve("missing.torrent"));
+
+        var results = hasher.hashAll(files, InfoHash.Version.V1);
+
+        assertThat(results).extracting(InfoHashResult::torrentFile).containsExactlyElementsOf(files);
+        for (int i = 0; i < 200; i++) {
+            assertThat(results.get(i).infoHash()).isEqualTo(loader.load(files.get(i)).infoHash());
+        }
+        assertThat(results.subList(0, 200)).allMatch(InfoHashResult::isSuccess);
+        assertThat(results.get(200).error()).isInstanceOf(MetainfoException.class);
+        assertThat(results.get(201).error()).isInstanceOf(NoSuchFileException.class);
+        assertThat(results.stream().map(InfoHashResult::infoHash).distinct().count()).isEqualTo(201);
+    }
+
+    private Path write(String name, String content) throws IOException {
+        return Files.write(directory.resolve(name), content.getBytes(StandardCharsets.ISO_8859_1));
+    }
+}
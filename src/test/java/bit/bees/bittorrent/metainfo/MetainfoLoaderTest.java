@@ -0,0 +1,161 @@
+package bit.bees.bittorrent.metainfo;
+
+import bit.bees.bittorrent.bencode.ByteString;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest
+class MetainfoLoaderTest {
+
+    private static final String SINGLE_FILE =
+            "d8:announce16:http://tracker/a4:infod6:lengthi5e4:name5:a.txt12:piece lengthi16384e6:pieces20:AAAAAAAAAAAAAAAAAAAAee";
+
+    private static final String MULTI_FILE =
+            "d13:announce-listll8:http://a8:http://bel7:udp://cee4:infod5:filesld6:lengthi1e4:pathl1:xeed6:lengthi2e4:pathl3:sub1:yeee"
+                    + "4:name3:dir12:piece lengthi4e6:pieces40:BBBBBBBBBBBBBBBBBBBBCCCCCCCCCCCCCCCCCCCCee";
+
+    @Autowired
+    private MetainfoLoader loader;
+
+    @TempDir
+    private Path directory;
+
+    @Test
+    void singleFileTorrentShouldBeLoadedFromFile() throws IOException {
+        var file = directory.resolve("a.torrent");
+        Files.write(file, bytes(SINGLE_FILE));
+
+        var metainfo = loader.load(file);
+
+        assertThat(metainfo.announce()).isEqualTo("http://tracker/a");
+        assertThat(metainfo.announceList()).isEmpty();
+        var info = metainfo.info();
+        assertThat(info.name()).isEqualTo("a.txt");
+        assertThat(info.singleFile()).isTrue();
+        assertThat(info.pieceLength()).isEqualTo(16384);
+        assertThat(info.files()).containsExactly(new FileEntry(List.of("a.txt"), 5));
+        assertThat(info.totalLength()).isEqualTo(5);
+        assertThat(info.pieces().count()).isEqualTo(1);
+        assertThat(info.pieces().hash(0).toString()).isEqualTo("A".repeat(20));
+    }
+
+    @Test
+    void multiFileTorrentShouldBeRead() {
+        var metainfo = loader.read(bytes(MULTI_FILE));
+
+        assertThat(metainfo.announce()).isNull();
+        assertThat(metainfo.announceList()).containsExactly(List.of("http://a", "http://b"), List.of("udp://c"));
+        var info = metainfo.info();
+        assertThat(info.name()).isEqualTo("dir");
+        assertThat(info.singleFile()).isFalse();
+        assertThat(info.files()).containsExactly(
+                new FileEntry(List.of("x"), 1),
+                new FileEntry(List.of("sub", "y"), 2));
+        assertThat(info.totalLength()).isEqualTo(3);
+        assertThat(info.pieces().count()).isEqualTo(2);
+        assertThat(info.pieces().matches(1, bytes("C".repeat(20)))).isTrue();
+        assertThat(info.pieces().matches(0, bytes("C".repeat(20)))).isFalse();
+    }
+
+    @Test
+    void infoHashShouldBeComputedOverTheStoredInfoBytes() {
+        var metainfo = loader.read(bytes(SINGLE_FILE));
+
+        assertThat(metainfo.rawInfo()).isEqualTo(ByteString.of(bytes(
+                "d6:lengthi5e4:name5:a.txt12:piece lengthi16384e6:pieces20:AAAAAAAAAAAAAAAAAAAAe")));
+        assertThat(metainfo.infoHash().toHex()).isEqualTo("57dbb584ee2949d14ea359b3c3e66eba8ff6ac94");
+        assertThat(metainfo.infoHash(InfoHash.Version.V2).toHex())
+                .isEqualTo("a58797a5b3663c9f2b812a3ef228a03f7a4be2b1e8a5f9c04958d595a627b2d7");
+        assertThat(metainfo.infoHash(InfoHash.Version.V2).truncated().length()).isEqualTo(20);
+    }
+
+    @Test
+    void infoHashShouldKeepNamesThatAreNotUtf8() {
+        // The name is ISO-8859-1 "café", which does not survive decoding as UTF-8 and re-encoding
+        var metainfo = loader.read(bytes("d4:infod6:lengthi1e4:name4:caf\u00e912:piece lengthi1e6:pieces0:ee"));
+
+        assertThat(metainfo.info().name()).isEqualTo("caf\ufffd");
+        assertThat(metainfo.infoHash().toHex()).isEqualTo("cceb6fe1b1943693749ef2fac329a1e7ca326e31");
+    }
+
+    @Test
+    void invalidFileShouldNameThePath() throws IOException {
+        var file = directory.resolve("broken.torrent");
+        Files.write(file, bytes("d8:announce1:xe"));
+
+        assertThatThrownBy(() -> loader.load(file))
+                .isInstanceOf(MetainfoException.class)
+                .hasMessageContaining("broken.torrent")
+                .hasMessageContaining("Missing key 'info'");
+    }
+
+    @ParameterizedTest
+    @MethodSource("getInvalidTestData")
+    void invalidTorrentShouldFail(String input) {
+        assertThatThrownBy(() -> loader.read(bytes(input)))
+                .isInstanceOf(MetainfoException.class);
+    }
+
+    static Stream<String> getInvalidTestData() {
+        return Stream.of(
+                // Not a dictionary or not bencode at all
+                "",
+                "le",
+                "d4:infod",
+
+                // Trailing data
+                SINGLE_FILE + "x",
+
+                // Missing or mistyped info values
+                "d4:infod6:lengthi5e12:piece lengthi1e6:pieces0:ee",
+                "d4:infod6:lengthi5e4:name1:a6:pieces0:ee",
+                "d4:infod6:lengthi5e4:name1:a12:piece lengthi0e6:pieces0:ee",
+                "d4:infod6:lengthi5e4:name1:a12:piece length1:16:pieces0:ee",
+                "d4:infod6:lengthi5e4:name1:a12:piece lengthi1e6:pieces3:abcee",
+
+                // Neither or both of 'length' and 'files'
+                "d4:infod4:name1:a12:piece lengthi1e6:pieces0:ee",
+                "d4:infod5:filesle6:lengthi5e4:name1:a12:piece lengthi1e6:pieces0:ee",
+
+                // Negative lengths
+                "d4:infod6:lengthi-1e4:name1:a12:piece lengthi1e6:pieces0:ee",
+                "d4:infod5:filesld6:lengthi-1e4:pathl1:xeee4:name1:a12:piece lengthi1e6:pieces0:ee",
+
+                // Names that would leave the download directory
+                "d4:infod6:lengthi5e4:name0:12:piece lengthi1e6:pieces0:ee",
+                "d4:infod6:lengthi5e4:name2:..12:piece lengthi1e6:pieces0:ee",
+                "d4:infod6:lengthi5e4:name4:/etc12:piece lengthi1e6:pieces0:ee",
+                "d4:infod5:filesld6:lengthi1e4:pathl2:..1:xeee4:name1:a12:piece lengthi1e6:pieces0:ee",
+                "d4:infod5:filesld6:lengthi1e4:pathl1:.eee4:name1:a12:piece lengthi1e6:pieces0:ee",
+                "d4:infod5:filesld6:lengthi1e4:pathl0:eee4:name1:a12:piece lengthi1e6:pieces0:ee",
+                "d4:infod5:filesld6:lengthi1e4:pathl4:a/..eee4:name1:a12:piece lengthi1e6:pieces0:ee",
+                "d4:infod5:filesld6:lengthi1e4:pathl3:a\\beee4:name1:a12:piece lengthi1e6:pieces0:ee",
+
+                // Malformed files
+                "d4:infod5:filesli1ee4:name1:a12:piece lengthi1e6:pieces0:ee",
+                "d4:infod5:filesld6:lengthi1e4:pathleee4:name1:a12:piece lengthi1e6:pieces0:ee",
+                "d4:infod5:filesld4:pathl1:xeee4:name1:a12:piece lengthi1e6:pieces0:ee",
+
+                // Malformed announce list
+                "d13:announce-listl1:ae4:infod6:lengthi5e4:name1:a12:piece lengthi1e6:pieces0:eee"
+        );
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.ISO_8859_1);
+    }
+}
@@ -0,0 +1,188 @@
+package bit.bees.bittorrent.metainfo;
+
+import bit.bees.bittorrent.storage.PieceVerifier;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.params.provider.Arguments.arguments;
+
+@SpringBootTest
+class TorrentCreatorTest {
+
+    @Autowired
+    private TorrentCreator creator;
+
+    @Autowired
+    private MetainfoLoader loader;
+
+    @Autowired
+    private PieceVerifier verifier;
+
+    @TempDir
+    private Path directory;
+
+    @Test
+    void directoryShouldBecomeAMultiFileTorrent() throws IOException {
+        var content = directory.resolve("content");
+        write(content.resolve("b.bin"), 40_000);
+        write(content.resolve("a/x.bin"), 100_000);
+        write(content.resolve("a/y.bin"), 0);
+        write(content.resolve("c.bin"), 3);
+        var torrentFile = directory.resolve("content.torrent");
+
+        var infoHash = creator.builder(content)
+                .announce("http://tracker/announce")
+                .announceList(List.of(List.of("http://tracker/announce"), List.of("udp://backup:80")))
+                .comment("test data")
+                .pieceLength(32 * 1024)
+                .write(torrentFile);
+
+        var metainfo = loader.load(torrentFile);
+        assertThat(metainfo.infoHash()).isEqualTo(infoHash);
+        assertThat(metainfo.announce()).isEqualTo("http://tracker/announce");
+        assertThat(metainfo.announceList()).containsExactly(List.of("http://tracker/announce"), List.of("udp://backup:80"));
+        var info = metainfo.info();
+        assertThat(info.name()).isEqualTo("content");
+        assertThat(info.singleFile()).isFalse();
+        assertThat(info.pieceLength()).isEqualTo(32 * 1024);
+        assertThat(info.files()).containsExactly(
+                new FileEntry(List.of("a", "x.bin"), 100_000),
+                new FileEntry(List.of("a", "y.bin"), 0),
+                new FileEntry(List.of("b.bin"), 40_000),
+                new FileEntry(List.of("c.bin"), 3));
+        assertThat(info.pieces().count()).isEqualTo(5);
+        assertThat(verifier.verify(info, directory).isComplete()).isTrue();
+    }
+
+    @Test
+    void fileShouldBecomeASingleFileTorrent() throws IOException, NoSuchAlgorithmException {
+        var file = directory.resolve("data.bin");
+        byte[] data = write(file, 20_000_000);
+        var torrentFile = directory.resolve("data.torrent");
+
+        creator.builder(file).creationDate(Instant.ofEpochSecond(1_700_000_000)).privateTorrent(true).write(torrentFile);
+
+        var metainfo = loader.load(torrentFile);
+        var info = metainfo.info();
+        assertThat(info.singleFile()).isTrue();
+        assertThat(info.files()).containsExactly(new FileEntry(List.of("data.bin"), 20_000_000));
+        assertThat(info.pieceLength()).isEqualTo(16 * 1024);
+        assertThat(info.pieces().count()).isEqualTo(1221);
+        assertThat(info.pieces().matches(1220, sha1(data, 1220 * 16 * 1024, 20_000_000))).isTrue();
+        assertThat(new String(Files.readAllBytes(torrentFile), StandardCharsets.ISO_8859_1))
+                .startsWith("d13:creation datei1700000000e4:infod")
+                .contains("7:privatei1e");
+        assertThat(verifier.verify(info, directory).isComplete()).isTrue();
+    }
+
+    @Test
+    void buildsAtOnceShouldShareTheBuffers() throws Exception {
+        // More builds than buffers, each of more content than a buffer holds
+        var file = directory.resolve("data.bin");
+        write(file, HashBuffers.BUFFER_SIZE + 1_000_000);
+        var infoHashes = new ArrayList<Future<InfoHash>>();
+
+        try (var executor = Executors.newFixedThreadPool(2 * HashBuffers.BUFFER_COUNT)) {
+            for (int i = 0; i < 2 * HashBuffers.BUFFER_COUNT; i++) {
+                var torrentFile = directory.resolve("data-%d.torrent".formatted(i));
+                infoHashes.add(executor.submit(() -> creator.builder(file).creationDate(null).write(torrentFile)));
+            }
+        }
+
+        var info = loader.load(directory.resolve("data-0.torrent")).info();
+        assertThat(verifier.verify(info, directory).isComplete()).isTrue();
+        for (Future<InfoHash> infoHash : infoHashes) {
+            assertThat(infoHash.get()).isEqualTo(infoHashes.getFirst().get());
+        }
+    }
+
+    @Test
+    void emptyDirectoryShouldFail() throws IOException {
+        var empty = Files.createDirectories(directory.resolve("empty"));
+
+        assertThatThrownBy(() -> creator.builder(empty).write(directory.resolve("empty.torrent")))
+                .isInstanceOf(MetainfoException.class)
+                .hasMessageContaining("contains no files");
+    }
+
+    @ParameterizedTest
+    @MethodSource("getInvalidPieceLengthTestData")
+    void pieceLengthShouldBeAPowerOfTwoInRange(long pieceLength) {
+        assertThatThrownBy(() -> creator.builder(directory).pieceLength(pieceLength))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @ParameterizedTest
+    @MethodSource("getPieceLengthTestData")
+    void pieceLengthShouldFollowTheTotalSize(long totalLength, long expectedPieceLength) {
+        assertThat(TorrentBuilder.defaultPieceLength(totalLength)).isEqualTo(expectedPieceLength);
+    }
+
+    static Stream<Arguments> getPieceLengthTestData() {
+        return Stream.of(
+                // Small content gets the minimum
+                arguments(0L, 16 * 1024L),
+                arguments(10_000_000L, 16 * 1024L),
+
+                // About 1500 pieces in between
+                arguments(1_000_000_000L, 512 * 1024L),
+                arguments(10_000_000_000L, 4 * 1024 * 1024L),
+
+                // Huge content gets the maximum
+                arguments(100_000_000_000L, 16 * 1024 * 1024L),
+                arguments(10_000_000_000_000L, 16 * 1024 * 1024L)
+        );
+    }
+
+    static Stream<Long> getInvalidPieceLengthTestData() {
+        return Stream.of(
+                // Not a power of two
+                100_000L,
+                3 * 16 * 1024L,
+
+                // Out of range, including lengths that do not fit into an int
+                8 * 1024L,
+                0L,
+                -16 * 1024L,
+                32 * 1024 * 1024L,
+                1L << 31,
+                1L << 32,
+                Long.MIN_VALUE
+        );
+    }
+
+    private static byte[] write(Path file, int length) throws IOException {
+        Files.createDirectories(file.getParent());
+        byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+        Files.write(file, data);
+        return data;
+    }
+
+    private static byte[] sha1(byte[] data, int from, int to) throws NoSuchAlgorithmException {
+        var digest = MessageDigest.getInstance("SHA-1");
+        digest.update(data, from, to - from);
+        return digest.digest();
+    }
+}
@@ -0,0 +1,239 @@
+package bit.bees.bittorrent.peer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.params.provider.Arguments.arguments;
+
+class MessageDecoderTest {
+
+    private final MessageDecoder decoder = new MessageDecoder(1024);
+
+    @ParameterizedTest
+    @MethodSource("getMessageTestData")
+    void encodedMessageShouldBeDecoded(Consumer<ByteBuffer> encoder, String expected) {
+        var buffer = ByteBuffer.allocate(2048);
+        encoder.accept(buffer);
+        buffer.flip();
+        var handler = new RecordingHandler();
+
+        int count = decoder.decode(buffer, handler);
+
+        assertThat(count).isEqualTo(1);
+        assertThat(handler.events).containsExactly(expected);
+        assertThat(buffer.hasRemaining()).isFalse();
+    }
+
+    @Test
+    void framesShouldBeDecodedByteByByte() {
+        var encoded = ByteBuffer.allocate(256);
+        MessageEncoder.writeHave(encoded, 7);
+        MessageEncoder.writeKeepAlive(encoded);
+        MessageEncoder.writePiece(encoded, 1, 16384, ByteBuffer.wrap(new byte[]{1, 2, 3}));
+        encoded.flip();
+        var buffer = ByteBuffer.allocate(256).flip();
+        var handler = new RecordingHandler();
+
+        int count = 0;
+        while (encoded.hasRemaining()) {
+            buffer.compact().put(encoded.get()).flip();
+            count += decoder.decode(buffer, handler);
+        }
+
+        assertThat(count).isEqualTo(3);
+        assertThat(handler.events).containsExactly("have 7", "keep-alive", "piece 1 16384 010203");
+    }
+
+    @Test
+    void incompleteFrameShouldBeLeftInTheBuffer() {
+        var buffer = ByteBuffer.allocate(64);
+        MessageEncoder.writeState(buffer, MessageType.UNCHOKE);
+        MessageEncoder.writeRequest(buffer, 1, 2, 3);
+        buffer.flip().limit(buffer.limit() - 1);
+        var handler = new RecordingHandler();
+
+        int count = decoder.decode(buffer, handler);
+
+        assertThat(count).isEqualTo(1);
+        assertThat(handler.events).containsExactly("unchoke");
+        assertThat(buffer.position()).isEqualTo(MessageEncoder.STATE_LENGTH);
+        assertThat(decoder.frameLength(buffer)).isEqualTo(MessageEncoder.REQUEST_LENGTH);
+    }
+
+    @Test
+    void handlerShouldNotMoveTheBufferOutOfItsFrames() {
+        var buffer = ByteBuffer.allocate(64);
+        MessageEncoder.writePiece(buffer, 0, 0, ByteBuffer.wrap(new byte[]{9, 9}));
+        MessageEncoder.writeHave(buffer, 3);
+        buffer.flip();
+        var events = new ArrayList<String>();
+
+        decoder.decode(buffer, new MessageHandler() {
+            @Override
+            public void onPiece(int piece, int begin, ByteBuffer block) {
+                block.get(new byte[block.remaining()]);
+                block.limit(block.position());
+                events.add("piece");
+            }
+
+            @Override
+            public void onHave(int piece) {
+                events.add("have " + piece);
+            }
+        });
+
+        assertThat(events).containsExactly("piece", "have 3");
+        assertThat(buffer.position()).isEqualTo(buffer.limit());
+    }
+
+    @ParameterizedTest
+    @MethodSource("getMalformedTestData")
+    void malformedFrameShouldBeRejected(String hex, String message) {
+        var buffer = ByteBuffer.allocate(2048);
+        MessageEncoder.writeHave(buffer, 1);
+        buffer.put(HexFormat.of().parseHex(hex)).flip();
+        var handler = new RecordingHandler();
+
+        assertThatThrownBy(() -> decoder.decode(buffer, handler))
+                .isInstanceOf(PeerProtocolException.class)
+                .hasMessage(message);
+        assertThat(handler.events).containsExactly("have 1");
+        assertThat(buffer.position()).isEqualTo(MessageEncoder.HAVE_LENGTH);
+        assertThat(buffer.limit()).isEqualTo(MessageEncoder.HAVE_LENGTH + hex.length() / 2);
+    }
+
+    @Test
+    void tooSmallLimitShouldBeRejected() {
+        assertThatThrownBy(() -> new MessageDecoder(12))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void bitfieldShouldHaveItsSpareBitsCleared() {
+        var buffer = ByteBuffer.allocate(16);
+
+        MessageEncoder.writeBitfield(buffer, ByteBuffer.wrap(new byte[]{(byte) 0xff, (byte) 0xff}), 10);
+
+        assertThat(buffer.position()).isEqualTo(MessageEncoder.bitfieldLength(10));
+        assertThat(HexFormat.of().formatHex(buffer.array(), 0, buffer.position())).isEqualTo("0000000305ffc0");
+    }
+
+    @Test
+    void stateMessageShouldNotTakeMessagesWithPayload() {
+        assertThatThrownBy(() -> MessageEncoder.writeState(ByteBuffer.allocate(16), MessageType.HAVE))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static Stream<Arguments> getMessageTestData() {
+        return Stream.of(
+                // Messages without payload
+                arguments((Consumer<ByteBuffer>) MessageEncoder::writeKeepAlive, "keep-alive"),
+                arguments((Consumer<ByteBuffer>) b -> MessageEncoder.writeState(b, MessageType.CHOKE), "choke"),
+                arguments((Consumer<ByteBuffer>) b -> MessageEncoder.writeState(b, MessageType.UNCHOKE), "unchoke"),
+                arguments((Consumer<ByteBuffer>) b -> MessageEncoder.writeState(b, MessageType.INTERESTED), "interested"),
+                arguments((Consumer<ByteBuffer>) b -> MessageEncoder.writeState(b, MessageType.NOT_INTERESTED), "not interested"),
+                // Messages with fixed payload
+                arguments((Consumer<ByteBuffer>) b -> MessageEncoder.writeHave(b, 123456), "have 123456"),
+                arguments((Consumer<ByteBuffer>) b -> MessageEncoder.writeRequest(b, 5, 32768, 16384), "request 5 32768 16384"),
+                arguments((Consumer<ByteBuffer>) b -> MessageEncoder.writeCancel(b, 5, 32768, 16384), "cancel 5 32768 16384"),
+                // Messages with variable payload
+                arguments((Consumer<ByteBuffer>) b -> MessageEncoder.writeBitfield(b, ByteBuffer.wrap(new byte[]{(byte) 0xa5, 1}), 9), "bitfield a500"),
+                arguments((Consumer<ByteBuffer>) b -> MessageEncoder.writePiece(b, 2, 0, ByteBuffer.wrap(new byte[1000])), "piece 2 0 " + "00".repeat(1000)),
+                arguments((Consumer<ByteBuffer>) b -> MessageEncoder.writePiece(b, 2, 16, ByteBuffer.allocate(0)), "piece 2 16 "),
+                // Unknown messages, e.g. of the extension protocol
+                arguments((Consumer<ByteBuffer>) b -> b.putInt(3).put((byte) 20).put((byte) 0).put((byte) 'd'), "other 20 0064"),
+                arguments((Consumer<ByteBuffer>) b -> b.putInt(1).put((byte) 255), "other 255 ")
+        );
+    }
+
+    private static Stream<Arguments> getMalformedTestData() {
+        return Stream.of(
+                // Wrong length for the type
+                arguments("0000000200ff", "Invalid CHOKE message of length 2"),
+                arguments("0000000404000000", "Invalid HAVE message of length 4"),
+                arguments("0000000c060000000000000000000000", "Invalid REQUEST message of length 12"),
+                arguments("0000000e0800000000000000000000000000", "Invalid CANCEL message of length 14"),
+                arguments("000000080700000000000000", "Invalid PIECE message of length 8"),
+                // Longer than the limit
+                arguments("00000401", "Message length 1025 exceeds the limit of 1024"),
+                arguments("ffffffff", "Message length 4294967295 exceeds the limit of 1024")
+        );
+    }
+
+    private static class RecordingHandler implements MessageHandler {
+
+        final List<String> events = new ArrayList<>();
+
+        @Override
+        public void onKeepAlive() {
+            events.add("keep-alive");
+        }
+
+        @Override
+        public void onChoke() {
+            events.add("choke");
+        }
+
+        @Override
+        public void onUnchoke() {
+            events.add("unchoke");
+        }
+
+        @Override
+        public void onInterested() {
+            events.add("interested");
+        }
+
+        @Override
+        public void onNotInterested() {
+            events.add("not interested");
+        }
+
+        @Override
+        public void onHave(int piece) {
+            events.add("have " + piece);
+        }
+
+        @Override
+        public void onBitfield(ByteBuffer bits) {
+            events.add("bitfield " + hex(bits));
+        }
+
+        @Override
+        public void onRequest(int piece, int begin, int length) {
+            events.add("request %d %d %d".formatted(piece, begin, length));
+        }
+
+        @Override
+        public void onPiece(int piece, int begin, ByteBuffer block) {
+            events.add("piece %d %d %s".formatted(piece, begin, hex(block)));
+        }
+
+        @Override
+        public void onCancel(int piece, int begin, int length) {
+            events.add("cancel %d %d %d".formatted(piece, begin, length));
+        }
+
+        @Override
+        public void onOther(int id, ByteBuffer payload) {
+            events.add("other %d %s".formatted(id, hex(payload)));
+        }
+
+        private static String hex(ByteBuffer buffer) {
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            return HexFormat.of().formatHex(bytes);
+        }
+    }
+}
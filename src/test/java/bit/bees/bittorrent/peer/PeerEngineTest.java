@@ -0,0 +1,407 @@
+package bit.bees.bittorrent.peer;
+
+import bit.bees.bittorrent.bencode.ByteString;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * What every {@link PeerEngine} does alike. Behaviour that sets the engines apart is tested in
+ * {@link SelectorPeerEngineTest} and {@link VirtualThreadPeerEngineTest}.
+ */
+@SpringBootTest
+class PeerEngineTest {
+
+    static final ByteString INFO_HASH = ByteString.copyOf("0123456789abcdefghij");
+    static final ByteString OTHER_INFO_HASH = ByteString.copyOf("jihgfedcba9876543210");
+    static final ByteString REMOTE_ID = ByteString.copyOf("-XX0001-remotepeer01");
+
+    @Autowired
+    private BufferPool bufferPool;
+
+    @Autowired
+    private MessageDecoder decoder;
+
+    @ParameterizedTest
+    @ValueSource(strings = {"selector", "virtual-threads"})
+    void outgoingConnectionShouldExchangeHandshakesAndMessages(String engineName) throws Exception {
+        try (var engine = engine(engineName); var server = ServerSocketChannel.open().bind(loopback())) {
+            var handler = new RecordingPeerHandler();
+            var future = engine.connect((InetSocketAddress) server.getLocalAddress(), INFO_HASH, handler);
+
+            try (var remote = server.accept()) {
+                var handshake = Handshake.read(readFully(remote, Handshake.LENGTH));
+                assertThat(handshake.infoHash()).isEqualTo(INFO_HASH);
+                assertThat(handshake.peerId()).isEqualTo(engine.peerId());
+
+                var output = ByteBuffer.allocate(256);
+                Handshake.of(INFO_HASH, REMOTE_ID).writeTo(output);
+                MessageEncoder.writeState(output, MessageType.UNCHOKE);
+                MessageEncoder.writePiece(output, 3, 16384, ByteBuffer.wrap(new byte[]{1, 2, 3}));
+                remote.write(output.flip());
+
+                var connection = future.get(10, TimeUnit.SECONDS);
+                assertThat(connection.remoteHandshake().peerId()).isEqualTo(REMOTE_ID);
+                assertThat(handler.next()).isEqualTo("connected");
+                assertThat(handler.next()).isEqualTo("unchoke");
+                assertThat(handler.next()).isEqualTo("piece 3 16384 3");
+
+                send(engine, () -> {
+                    connection.sendInterested();
+                    connection.sendRequest(4, 0, 16384);
+                });
+                var input = readFully(remote, MessageEncoder.STATE_LENGTH + MessageEncoder.REQUEST_LENGTH);
+                assertThat(input.getInt()).isEqualTo(1);
+                assertThat(input.get()).isEqualTo(MessageType.INTERESTED.id());
+                assertThat(input.getInt()).isEqualTo(13);
+                assertThat(input.get()).isEqualTo(MessageType.REQUEST.id());
+                assertThat(new int[]{input.getInt(), input.getInt(), input.getInt()}).containsExactly(4, 0, 16384);
+            }
+            assertThat(handler.next()).isEqualTo("disconnected");
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"selector", "virtual-threads"})
+    void outgoingConnectionShouldFailIfThePeerAnswersForAnotherTorrent(String engineName) throws Exception {
+        try (var engine = engine(engineName); var server = ServerSocketChannel.open().bind(loopback())) {
+            var handler = new RecordingPeerHandler();
+            var future = engine.connect((InetSocketAddress) server.getLocalAddress(), INFO_HASH, handler);
+
+            try (var remote = server.accept()) {
+                var output = ByteBuffer.allocate(Handshake.LENGTH);
+                Handshake.of(OTHER_INFO_HASH, REMOTE_ID).writeTo(output);
+                remote.write(output.flip());
+
+                assertThatThrownBy(() -> future.get(10, TimeUnit.SECONDS))
+                        .isInstanceOf(ExecutionException.class)
+                        .hasCauseInstanceOf(PeerProtocolException.class);
+                assertThat(handler.events).isEmpty();
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"selector", "virtual-threads"})
+    void refusedConnectionShouldFail(String engineName) throws Exception {
+        InetSocketAddress address;
+        try (var server = ServerSocketChannel.open().bind(loopback())) {
+            address = (InetSocketAddress) server.getLocalAddress();
+        }
+
+        try (var engine = engine(engineName)) {
+            var future = engine.connect(address, INFO_HASH, new RecordingPeerHandler());
+
+            assertThatThrownBy(() -> future.get(10, TimeUnit.SECONDS))
+                    .isInstanceOf(ExecutionException.class)
+                    .hasCauseInstanceOf(IOException.class);
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"selector", "virtual-threads"})
+    void incomingConnectionShouldBeServed(String engineName) throws Exception {
+        try (var engine = engine(engineName)) {
+            var address = engine.listen(loopback(), handshake -> INFO_HASH.equals(handshake.infoHash()) ? new SeedingHandler() : null);
+
+            try (var client = SocketChannel.open(address)) {
+                var output = ByteBuffer.allocate(256);
+                Handshake.of(INFO_HASH, REMOTE_ID).writeTo(output);
+                MessageEncoder.writeState(output, MessageType.INTERESTED);
+                MessageEncoder.writeRequest(output, 7, 100, 20);
+                client.write(output.flip());
+
+                var handshake = Handshake.read(readFully(client, Handshake.LENGTH));
+                assertThat(handshake.infoHash()).isEqualTo(INFO_HASH);
+                assertThat(handshake.peerId()).isEqualTo(engine.peerId());
+                var input = readFully(client, MessageEncoder.STATE_LENGTH + MessageEncoder.PIECE_HEADER_LENGTH + 20);
+                assertThat(input.getInt()).isEqualTo(1);
+                assertThat(input.get()).isEqualTo(MessageType.UNCHOKE.id());
+                assertThat(input.getInt()).isEqualTo(29);
+                assertThat(input.get()).isEqualTo(MessageType.PIECE.id());
+                assertThat(new int[]{input.getInt(), input.getInt()}).containsExactly(7, 100);
+                assertThat(input.get()).isEqualTo((byte) 107);
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"selector", "virtual-threads"})
+    void incomingConnectionForAnotherTorrentShouldBeClosed(String engineName) throws Exception {
+        try (var engine = engine(engineName)) {
+            var address = engine.listen(loopback(), handshake -> INFO_HASH.equals(handshake.infoHash()) ? new SeedingHandler() : null);
+
+            try (var client = SocketChannel.open(address)) {
+                var output = ByteBuffer.allocate(Handshake.LENGTH);
+                Handshake.of(OTHER_INFO_HASH, REMOTE_ID).writeTo(output);
+                client.write(output.flip());
+
+                assertThat(client.read(ByteBuffer.allocate(Handshake.LENGTH))).isEqualTo(-1);
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"selector", "virtual-threads"})
+    void malformedMessageShouldCloseTheConnection(String engineName) throws Exception {
+        try (var engine = engine(engineName)) {
+            var handler = new RecordingPeerHandler();
+            var address = engine.listen(loopback(), handshake -> handler);
+
+            try (var client = SocketChannel.open(address)) {
+                var output = ByteBuffer.allocate(256);
+                Handshake.of(INFO_HASH, REMOTE_ID).writeTo(output);
+                MessageEncoder.writeHave(output, 1);
+                output.putInt(2).put(MessageType.CHOKE.id()).put((byte) 0);
+                MessageEncoder.writeHave(output, 2);
+                client.write(output.flip());
+
+                assertThat(handler.next()).isEqualTo("connected");
+                assertThat(handler.next()).isEqualTo("have 1");
+                assertThat(handler.next()).isEqualTo("disconnected PeerProtocolException");
+                assertThat(handler.events.poll(100, TimeUnit.MILLISECONDS)).isNull();
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"selector", "virtual-threads"})
+    void largeMessageShouldBeReassembledFromManyReads(String engineName) throws Exception {
+        try (var engine = engine(engineName)) {
+            var handler = new RecordingPeerHandler();
+            var address = engine.listen(loopback(), handshake -> handler);
+            int blockLength = 100_000;
+
+            try (var client = SocketChannel.open(address)) {
+                var output = ByteBuffer.allocate(Handshake.LENGTH + MessageEncoder.PIECE_HEADER_LENGTH + blockLength + 2 * MessageEncoder.HAVE_LENGTH);
+                Handshake.of(INFO_HASH, REMOTE_ID).writeTo(output);
+                MessageEncoder.writeHave(output, 8);
+                MessageEncoder.writePiece(output, 1, 0, ByteBuffer.allocate(blockLength));
+                MessageEncoder.writeHave(output, 9);
+                output.flip();
+                // Trickle the input in so that frames end up split at every kind of boundary
+                while (output.hasRemaining()) {
+                    client.write(output.slice().limit(Math.min(output.remaining(), 7919)));
+                    output.position(output.position() + Math.min(output.remaining(), 7919));
+                }
+
+                assertThat(handler.next()).isEqualTo("connected");
+                assertThat(handler.next()).isEqualTo("have 8");
+                assertThat(handler.next()).isEqualTo("piece 1 0 " + blockLength);
+                assertThat(handler.next()).isEqualTo("have 9");
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"selector", "virtual-threads"})
+    void manyPeersShouldBeServedAtOnce(String engineName) throws Exception {
+        int peers = 200;
+        List<SocketChannel> clients = new ArrayList<>();
+        try (var engine = engine(engineName)) {
+            var address = engine.listen(loopback(), handshake -> new SeedingHandler());
+            for (int i = 0; i < peers; i++) {
+                var client = SocketChannel.open(address);
+                clients.add(client);
+                var output = ByteBuffer.allocate(256);
+                Handshake.of(INFO_HASH, REMOTE_ID).writeTo(output);
+                MessageEncoder.writeRequest(output, i, 0, 16);
+                client.write(output.flip());
+            }
+
+            for (int i = 0; i < peers; i++) {
+                var input = readFully(clients.get(i), Handshake.LENGTH + MessageEncoder.STATE_LENGTH + MessageEncoder.PIECE_HEADER_LENGTH + 16);
+                assertThat(input.getInt(Handshake.LENGTH + MessageEncoder.STATE_LENGTH + 5)).isEqualTo(i);
+            }
+            assertThat(engine.connectionCount()).isGreaterThanOrEqualTo(peers);
+        } finally {
+            for (var client : clients) {
+                client.close();
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"selector", "virtual-threads"})
+    void enginesShouldTalkToEachOther(String engineName) throws Exception {
+        String otherName = engineName.equals("selector") ? "virtual-threads" : "selector";
+        try (var engine = engine(engineName); var other = engine(otherName)) {
+            var address = other.listen(loopback(), handshake -> new SeedingHandler());
+            var handler = new RecordingPeerHandler();
+
+            var connection = engine.connect(address, INFO_HASH, handler).get(10, TimeUnit.SECONDS);
+            send(engine, () -> connection.sendRequest(2, 0, 1000));
+
+            assertThat(handler.next()).isEqualTo("connected");
+            assertThat(handler.next()).isEqualTo("unchoke");
+            assertThat(handler.next()).isEqualTo("piece 2 0 1000");
+            send(engine, connection::close);
+            assertThat(handler.next()).isEqualTo("disconnected");
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"selector", "virtual-threads"})
+    void silentPeerShouldBeDisconnectedAfterTheHandshakeTimeout(String engineName) throws Exception {
+        try (var engine = engine(engineName, Duration.ofMillis(200))) {
+            var address = engine.listen(loopback(), handshake -> new SeedingHandler());
+
+            try (var client = SocketChannel.open(address)) {
+                long start = System.nanoTime();
+                assertThat(client.read(ByteBuffer.allocate(Handshake.LENGTH))).isEqualTo(-1);
+                assertThat(System.nanoTime() - start).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(150));
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"selector", "virtual-threads"})
+    void outgoingConnectionShouldFailIfThePeerNeverAnswers(String engineName) throws Exception {
+        try (var engine = engine(engineName, Duration.ofMillis(200)); var server = ServerSocketChannel.open().bind(loopback())) {
+            var handler = new RecordingPeerHandler();
+            // The server's backlog takes the connection, which is never accepted and thereby never answered
+            var future = engine.connect((InetSocketAddress) server.getLocalAddress(), INFO_HASH, handler);
+
+            assertThatThrownBy(() -> future.get(10, TimeUnit.SECONDS))
+                    .isInstanceOf(ExecutionException.class)
+                    .hasCauseInstanceOf(SocketTimeoutException.class);
+            assertThat(handler.events).isEmpty();
+            assertThat(engine.connectionCount()).isZero();
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"selector", "virtual-threads"})
+    void connectionShouldFailIfTheEngineClosesWhileConnecting(String engineName) throws Exception {
+        try (var server = ServerSocketChannel.open().bind(loopback())) {
+            var address = (InetSocketAddress) server.getLocalAddress();
+            // The engine closes before, while or after it sets the connection up
+            for (int i = 0; i < 20; i++) {
+                var engine = engine(engineName);
+                var future = engine.connect(address, INFO_HASH, new RecordingPeerHandler());
+                engine.close();
+
+                assertThatThrownBy(() -> future.get(10, TimeUnit.SECONDS))
+                        .isInstanceOf(ExecutionException.class)
+                        .hasCauseInstanceOf(ClosedChannelException.class);
+                assertThat(engine.connectionCount()).isZero();
+            }
+        }
+    }
+
+    private PeerEngine engine(String name) {
+        return engine(name, Duration.ofSeconds(10));
+    }
+
+    private PeerEngine engine(String name, Duration handshakeTimeout) {
+        return switch (name) {
+            case "selector" -> new SelectorPeerEngine(bufferPool, decoder, 1024, handshakeTimeout);
+            case "virtual-threads" -> new VirtualThreadPeerEngine(bufferPool, decoder, 1024, handshakeTimeout);
+            default -> throw new IllegalArgumentException(name);
+        };
+    }
+
+    /**
+     * Uses a connection from the test thread, by way of the engine thread where the engine asks for it.
+     */
+    private static void send(PeerEngine engine, Runnable task) {
+        if (engine instanceof SelectorPeerEngine selectorEngine) {
+            selectorEngine.execute(task);
+        } else {
+            task.run();
+        }
+    }
+
+    static InetSocketAddress loopback() {
+        return new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+    }
+
+    static ByteBuffer readFully(SocketChannel channel, int length) throws IOException {
+        var buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException();
+            }
+        }
+        return buffer.flip();
+    }
+
+    /**
+     * Unchokes every peer and answers requests with blocks whose bytes count up from the piece index
+     * plus the offset.
+     */
+    static class SeedingHandler implements PeerHandler {
+
+        private PeerConnection connection;
+
+        @Override
+        public void onConnected(PeerConnection connection) {
+            this.connection = connection;
+            connection.sendUnchoke();
+        }
+
+        @Override
+        public void onRequest(int piece, int begin, int length) {
+            var block = ByteBuffer.allocate(length);
+            for (int i = 0; i < length; i++) {
+                block.put(i, (byte) (piece + begin + i));
+            }
+            connection.sendPiece(piece, begin, block);
+        }
+    }
+
+    static class RecordingPeerHandler implements PeerHandler {
+
+        final BlockingQueue<String> events = new LinkedBlockingQueue<>();
+
+        String next() throws InterruptedException {
+            return events.poll(10, TimeUnit.SECONDS);
+        }
+
+        @Override
+        public void onConnected(PeerConnection connection) {
+            events.add("connected");
+        }
+
+        @Override
+        public void onDisconnected(PeerConnection connection, Exception cause) {
+            events.add(cause == null ? "disconnected" : "disconnected " + cause.getClass().getSimpleName());
+        }
+
+        @Override
+        public void onUnchoke() {
+            events.add("unchoke");
+        }
+
+        @Override
+        public void onHave(int piece) {
+            events.add("have " + piece);
+        }
+
+        @Override
+        public void onPiece(int piece, int begin, ByteBuffer block) {
+            events.add("piece %d %d %d".formatted(piece, begin, block.remaining()));
+        }
+    }
+}
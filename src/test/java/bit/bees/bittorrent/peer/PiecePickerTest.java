@@ -0,0 +1,209 @@
+package bit.bees.bittorrent.peer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.params.provider.Arguments.arguments;
+
+class PiecePickerTest {
+
+    @ParameterizedTest
+    @MethodSource("getRarestTestData")
+    void rarestPieceShouldBePicked(List<BitSet> peers, BitSet peerPieces, int expected) {
+        var picker = new PiecePicker(8, new BitSet(), new Random(42));
+        peers.forEach(picker::peerHas);
+
+        assertThat(picker.pick(peerPieces)).isEqualTo(expected);
+    }
+
+    @Test
+    void availabilityShouldFollowThePeers() {
+        var picker = new PiecePicker(4, new BitSet(), new Random(42));
+        picker.peerHas(bits(0, 1, 2, 3));
+        picker.peerHas(bits(0, 1, 2));
+        picker.peerHas(3);
+        picker.peerHas(bits(1, 2, 3));
+        assertThat(picker.pick(bits(0, 1, 2, 3))).isEqualTo(0);
+
+        picker.peerLost(bits(1, 2, 3));
+        picker.peerLost(3);
+
+        assertThat(new int[]{picker.availability(0), picker.availability(1), picker.availability(2), picker.availability(3)})
+                .containsExactly(2, 2, 2, 1);
+        assertThat(picker.pick(bits(0, 1, 2, 3))).isEqualTo(3);
+    }
+
+    @Test
+    void seedsShouldCountForEveryPiece() {
+        var picker = new PiecePicker(3, new BitSet(), new Random(42));
+        picker.seedJoined();
+        assertThat(picker.availability(2)).isEqualTo(1);
+        assertThat(picker.pick(bits(2))).isEqualTo(2);
+
+        picker.peerHas(bits(1, 2));
+        assertThat(picker.pick(bits(0, 1, 2))).isEqualTo(0);
+
+        picker.seedLeft();
+        assertThat(picker.availability(2)).isEqualTo(1);
+        assertThat(picker.pick(bits(0))).isEqualTo(-1);
+    }
+
+    @Test
+    void removedPiecesShouldNotBePicked() {
+        var picker = new PiecePicker(3, bits(0), new Random(42));
+        picker.peerHas(bits(0, 1, 2));
+        picker.peerHas(bits(2));
+        assertThat(picker.isWanted(0)).isFalse();
+
+        picker.remove(1);
+        assertThat(picker.pick(bits(0, 1, 2))).isEqualTo(2);
+        picker.remove(2);
+        assertThat(picker.pick(bits(0, 1, 2))).isEqualTo(-1);
+
+        picker.add(1);
+        assertThat(picker.pick(bits(0, 1, 2))).isEqualTo(1);
+    }
+
+    @Test
+    void higherPriorityShouldBePickedFirst() {
+        var picker = new PiecePicker(6, new BitSet(), new Random(42));
+        picker.peerHas(bits(0, 1, 2, 3, 4, 5));
+        picker.peerHas(bits(2, 3, 4, 5));
+        picker.peerHas(bits(4, 5));
+        picker.setPriority(0, 2, 0);
+        picker.setPriority(4, 5, PiecePicker.MAX_PRIORITY);
+
+        assertThat(picker.pick(bits(0, 1, 2, 3, 4, 5))).isEqualTo(4);
+        picker.remove(4);
+        assertThat(picker.pick(bits(0, 1, 2, 3, 4, 5))).isIn(2, 3);
+        assertThat(picker.pick(bits(0, 1))).isEqualTo(-1);
+        assertThat(picker.isWanted(0)).isFalse();
+    }
+
+    @Test
+    void sequentialModeShouldPickTheLowestPieceThePeerHas() {
+        var picker = new PiecePicker(100, new BitSet(), new Random(42));
+        picker.setMode(PiecePicker.Mode.SEQUENTIAL);
+        var seed = new BitSet();
+        seed.set(0, 100);
+        picker.peerHas(seed);
+        picker.peerHas(bits(1, 50, 99));
+        picker.setPriority(2, 3, 0);
+
+        assertThat(picker.pick(seed)).isEqualTo(0);
+        picker.remove(0);
+        picker.remove(1);
+        assertThat(picker.pick(seed)).isEqualTo(3);
+        assertThat(picker.pick(bits(1, 2, 60, 99))).isEqualTo(60);
+
+        picker.add(1);
+        assertThat(picker.pick(seed)).isEqualTo(1);
+    }
+
+    @Test
+    void longWalkShouldTurnToThePiecesOfThePeer() {
+        // Many pieces rarer than any the peer has
+        var picker = new PiecePicker(10_000, new BitSet(), new Random(42));
+        var common = new BitSet();
+        common.set(0, 9_998);
+        picker.peerHas(common);
+        picker.peerHas(bits(9_998, 9_999));
+        picker.peerHas(bits(9_998, 9_999, 0));
+        picker.peerHas(bits(9_998));
+
+        assertThat(picker.pick(bits(9_998, 9_999))).isEqualTo(9_999);
+        assertThat(picker.pick(bits(0, 9_998))).isEqualTo(0);
+    }
+
+    @Test
+    void longWalksShouldGoOnWhereTheLastOneStopped() {
+        // The rarest pieces, which the peer lacks, fill more than a walk
+        var picker = new PiecePicker(10_000, new BitSet(), new Random(42));
+        var rare = new BitSet();
+        rare.set(0, 5_000);
+        picker.peerHas(rare);
+        var peer = new BitSet();
+        peer.set(5_000, 10_000);
+        picker.peerHas(peer);
+        picker.peerHas(peer);
+        picker.peerHas(bits(9_000));
+
+        var picked = new BitSet();
+        for (int piece = picker.pick(peer); piece >= 0; piece = picker.pick(peer)) {
+            assertThat(picked.get(piece)).isFalse();
+            picked.set(piece);
+            picker.remove(piece);
+        }
+        assertThat(picked).isEqualTo(peer);
+    }
+
+    @Test
+    void pieceAmongInterleavedPiecesShouldBeFoundInBoundedSteps() {
+        // Every other piece is downloaded, the peer has those and the very last one
+        int pieceCount = 100_000;
+        var downloaded = new BitSet();
+        for (int piece = 0; piece < pieceCount; piece += 2) {
+            downloaded.set(piece);
+        }
+        var picker = new PiecePicker(pieceCount, downloaded, new Random(42));
+        var all = new BitSet();
+        all.set(0, pieceCount);
+        picker.peerHas(all);
+        var peer = (BitSet) downloaded.clone();
+        peer.set(pieceCount - 1);
+
+        int picks = 1;
+        int piece;
+        while ((piece = picker.pick(peer)) < 0) {
+            picks++;
+        }
+
+        assertThat(piece).isEqualTo(pieceCount - 1);
+        assertThat(picks).isLessThan(pieceCount / 1000);
+        picker.remove(piece);
+        for (int i = 0; i < pieceCount / 1000; i++) {
+            assertThat(picker.pick(peer)).isEqualTo(-1);
+        }
+    }
+
+    @Test
+    void priorityShouldBeInRange() {
+        var picker = new PiecePicker(4, new BitSet(), new Random(42));
+
+        assertThatThrownBy(() -> picker.setPriority(0, 4, PiecePicker.MAX_PRIORITY + 1))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> picker.setPriority(0, 5, 1))
+                .isInstanceOf(IndexOutOfBoundsException.class);
+    }
+
+    private static BitSet bits(int... pieces) {
+        var bits = new BitSet();
+        for (int piece : pieces) {
+            bits.set(piece);
+        }
+        return bits;
+    }
+
+    private static Stream<Arguments> getRarestTestData() {
+        return Stream.of(
+                // Nobody else has it
+                arguments(List.of(bits(0, 1, 2, 3, 4, 5, 6, 7), bits(0, 1, 2, 3, 4, 5, 6), bits(0, 1, 2, 3, 4, 5, 6)), bits(0, 1, 2, 3, 4, 5, 6, 7), 7),
+                arguments(List.of(bits(3, 4), bits(4), bits(3, 4, 5)), bits(3, 4, 5), 5),
+                // The rarest of those the peer has
+                arguments(List.of(bits(1, 2), bits(2), bits(0, 1, 2)), bits(1, 2), 1),
+                arguments(List.of(bits(0, 1, 2, 3, 4, 5, 6, 7), bits(0, 1, 2, 3, 4, 5, 6), bits(0, 1, 2, 3, 4, 5)), bits(0, 1, 2, 3, 4, 5, 6), 6),
+                // Pieces of nobody connected are never picked
+                arguments(List.of(), bits(0, 1), -1),
+                arguments(List.of(bits(2, 3)), bits(0, 1), -1)
+        );
+    }
+}
@@ -0,0 +1,215 @@
+package bit.bees.bittorrent.peer;
+
+import bit.bees.bittorrent.bencode.ByteString;
+import bit.bees.bittorrent.metainfo.FileEntry;
+import bit.bees.bittorrent.metainfo.InfoDictionary;
+import bit.bees.bittorrent.metainfo.PieceHashes;
+import bit.bees.bittorrent.storage.PieceFiles;
+import bit.bees.bittorrent.storage.PieceLayout;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.params.provider.Arguments.arguments;
+
+@SpringBootTest
+class PieceUploaderTest {
+
+    private static final int PIECE_LENGTH = 256 * 1024;
+    private static final int[] FILE_LENGTHS = {300_000, 400_000, 1};
+    private static final ByteString INFO_HASH = ByteString.copyOf("0123456789abcdefghij");
+    private static final ByteString REMOTE_ID = ByteString.copyOf("-XX0001-remotepeer01");
+
+    @Autowired
+    private BufferPool bufferPool;
+
+    @Autowired
+    private MessageDecoder decoder;
+
+    @TempDir
+    private Path directory;
+
+    @ParameterizedTest
+    @MethodSource("getUploadTestData")
+    void requestedBlocksShouldBeSentFromTheFiles(String engineName, boolean zeroCopy) throws Exception {
+        byte[] payload = new byte[Arrays.stream(FILE_LENGTHS).sum()];
+        new Random(42).nextBytes(payload);
+        var uploader = new PieceUploader(zeroCopy, PieceUploader.MAX_BLOCK_LENGTH, PieceUploader.DEFAULT_MAX_QUEUED_BYTES);
+        // Blocks within one file, across files, larger than the pooled buffers and at the very end
+        int[][] requests = {{0, 0, 16384}, {1, 32768, 16384}, {1, 65536, 131072}, {2, 175712, 1}, {2, 175000, 713}};
+
+        try (var files = new PieceFiles(write(payload));
+             var engine = engine(engineName)) {
+            var address = listen(engine, uploader, files, new CompletableFuture<>());
+
+            try (var client = SocketChannel.open(address)) {
+                var output = ByteBuffer.allocate(Handshake.LENGTH + requests.length * MessageEncoder.REQUEST_LENGTH);
+                Handshake.of(INFO_HASH, REMOTE_ID).writeTo(output);
+                for (int[] request : requests) {
+                    MessageEncoder.writeRequest(output, request[0], request[1], request[2]);
+                }
+                client.write(output.flip());
+                // Let the output back up so that the engine has to resume writing blocks
+                Thread.sleep(100);
+
+                readFully(client, Handshake.LENGTH);
+                for (int[] request : requests) {
+                    var header = readFully(client, MessageEncoder.PIECE_HEADER_LENGTH);
+                    assertThat(header.getInt()).isEqualTo(9 + request[2]);
+                    assertThat(header.get()).isEqualTo(MessageType.PIECE.id());
+                    assertThat(new int[]{header.getInt(), header.getInt()}).containsExactly(request[0], request[1]);
+                    int offset = request[0] * PIECE_LENGTH + request[1];
+                    assertThat(readFully(client, request[2]).array())
+                            .isEqualTo(Arrays.copyOfRange(payload, offset, offset + request[2]));
+                }
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource("getUploadTestData")
+    void requestForTooLongABlockShouldCloseTheConnection(String engineName, boolean zeroCopy) throws Exception {
+        var uploader = new PieceUploader(zeroCopy, PieceUploader.DEFAULT_MAX_BLOCK_LENGTH, PieceUploader.DEFAULT_MAX_QUEUED_BYTES);
+        var disconnected = new CompletableFuture<Exception>();
+
+        try (var files = new PieceFiles(write(new byte[Arrays.stream(FILE_LENGTHS).sum()]));
+             var engine = engine(engineName)) {
+            var address = listen(engine, uploader, files, disconnected);
+
+            try (var client = SocketChannel.open(address)) {
+                var output = ByteBuffer.allocate(Handshake.LENGTH + MessageEncoder.REQUEST_LENGTH);
+                Handshake.of(INFO_HASH, REMOTE_ID).writeTo(output);
+                MessageEncoder.writeRequest(output, 0, 0, PieceUploader.DEFAULT_MAX_BLOCK_LENGTH + 1);
+                client.write(output.flip());
+
+                assertThat(disconnected.get(10, TimeUnit.SECONDS))
+                        .isInstanceOf(PeerProtocolException.class)
+                        .hasMessageContaining("Request for 16385 bytes");
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    void peerNotReadingItsBlocksShouldBeDisconnected(boolean zeroCopy) throws Exception {
+        int maxQueuedBytes = 256 * 1024;
+        var uploader = new PieceUploader(zeroCopy, PieceUploader.DEFAULT_MAX_BLOCK_LENGTH, maxQueuedBytes);
+        var disconnected = new CompletableFuture<Exception>();
+        // Far more than the socket buffers on both ends take
+        int requests = 4096;
+
+        try (var files = new PieceFiles(write(new byte[Arrays.stream(FILE_LENGTHS).sum()]));
+             var engine = engine("selector")) {
+            var address = listen(engine, uploader, files, disconnected);
+
+            try (var client = SocketChannel.open()) {
+                client.setOption(StandardSocketOptions.SO_RCVBUF, 4096);
+                client.connect(address);
+                var output = ByteBuffer.allocate(Handshake.LENGTH + requests * MessageEncoder.REQUEST_LENGTH);
+                Handshake.of(INFO_HASH, REMOTE_ID).writeTo(output);
+                for (int i = 0; i < requests; i++) {
+                    MessageEncoder.writeRequest(output, 0, 0, PieceUploader.DEFAULT_MAX_BLOCK_LENGTH);
+                }
+                client.write(output.flip());
+
+                assertThat(disconnected.get(10, TimeUnit.SECONDS))
+                        .isInstanceOf(PeerProtocolException.class)
+                        .hasMessageContaining("%d at most".formatted(maxQueuedBytes));
+            }
+        }
+    }
+
+    /**
+     * Serves the requests of every peer with the uploader, completing the future with the cause the
+     * first connection ends with.
+     */
+    private static InetSocketAddress listen(PeerEngine engine, PieceUploader uploader, PieceFiles files,
+                                            CompletableFuture<Exception> disconnected) throws IOException {
+        return engine.listen(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), handshake -> new PeerHandler() {
+            private PeerConnection connection;
+
+            @Override
+            public void onConnected(PeerConnection connection) {
+                this.connection = connection;
+            }
+
+            @Override
+            public void onDisconnected(PeerConnection connection, Exception cause) {
+                disconnected.complete(cause);
+            }
+
+            @Override
+            public void onRequest(int piece, int begin, int length) {
+                try {
+                    uploader.upload(connection, files, piece, begin, length);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        });
+    }
+
+    private PeerEngine engine(String name) {
+        return switch (name) {
+            case "selector" -> new SelectorPeerEngine(bufferPool, decoder, 16);
+            case "virtual-threads" -> new VirtualThreadPeerEngine(bufferPool, decoder, 16);
+            default -> throw new IllegalArgumentException(name);
+        };
+    }
+
+    private PieceLayout write(byte[] payload) throws IOException {
+        var entries = new ArrayList<FileEntry>();
+        Files.createDirectories(directory.resolve("payload"));
+        int offset = 0;
+        for (int i = 0; i < FILE_LENGTHS.length; i++) {
+            Files.write(directory.resolve("payload").resolve("file" + i), Arrays.copyOfRange(payload, offset, offset + FILE_LENGTHS[i]));
+            entries.add(new FileEntry(List.of("file" + i), FILE_LENGTHS[i]));
+            offset += FILE_LENGTHS[i];
+        }
+        int pieceCount = (payload.length + PIECE_LENGTH - 1) / PIECE_LENGTH;
+        var pieces = PieceHashes.of(ByteString.of(new byte[pieceCount * PieceHashes.HASH_LENGTH]));
+        return PieceLayout.of(new InfoDictionary("payload", PIECE_LENGTH, pieces, entries, false), directory);
+    }
+
+    private static ByteBuffer readFully(SocketChannel channel, int length) throws IOException {
+        var buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException();
+            }
+        }
+        return buffer.flip();
+    }
+
+    private static Stream<Arguments> getUploadTestData() {
+        return Stream.of(
+                arguments("selector", true),
+                arguments("selector", false),
+                arguments("virtual-threads", true),
+                arguments("virtual-threads", false)
+        );
+    }
+}
@@ -0,0 +1,446 @@
+package bit.bees.bittorrent.peer;
+
+import bit.bees.bittorrent.bencode.ByteString;
+import bit.bees.bittorrent.metainfo.FileEntry;
+import bit.bees.bittorrent.metainfo.InfoDictionary;
+import bit.bees.bittorrent.metainfo.PieceHashes;
+import bit.bees.bittorrent.storage.PieceLayout;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static bit.bees.bittorrent.peer.BlockScheduler.BLOCK_LENGTH;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.junit.jupiter.params.provider.Arguments.arguments;
+
+@SpringBootTest
+class RequestPipelineTest {
+
+    private static final ByteString INFO_HASH = ByteString.copyOf("0123456789abcdefghij");
+
+    @Autowired
+    private BufferPool bufferPool;
+
+    @Autowired
+    private MessageDecoder decoder;
+
+    @Test
+    void blocksShouldBeRequestedFromPiecesThePeerHas() {
+        // Pieces of 40000 bytes, the last one of 20000
+        var scheduler = new BlockScheduler(layout(100_000, 40_000), new BitSet(), new RecordingSink());
+        scheduler.setMode(PiecePicker.Mode.SEQUENTIAL);
+        var connection = new RecordingConnection();
+        var pipeline = new RequestPipeline(scheduler);
+
+        pipeline.onConnected(connection);
+        pipeline.onBitfield(ByteBuffer.wrap(new byte[]{0b0110_0000}));
+        pipeline.onUnchoke();
+
+        assertThat(connection.messages).containsExactly("interested", "request 1 0 16384", "request 1 16384 16384");
+        pipeline.onPiece(1, 0, ByteBuffer.allocate(BLOCK_LENGTH));
+        assertThat(connection.messages).endsWith("request 1 32768 7232");
+        pipeline.onPiece(1, 16384, ByteBuffer.allocate(BLOCK_LENGTH));
+        assertThat(connection.messages).endsWith("request 2 0 16384");
+    }
+
+    @Test
+    void requestsShouldBeHandedToOtherPeersOnChoke() {
+        var scheduler = new BlockScheduler(layout(100_000, 40_000), new BitSet(), new RecordingSink());
+        scheduler.setMode(PiecePicker.Mode.SEQUENTIAL);
+        var first = new RecordingConnection();
+        var second = new RecordingConnection();
+        var firstPipeline = start(scheduler, first, 0b1110_0000);
+        var secondPipeline = start(scheduler, second, 0b1110_0000);
+
+        firstPipeline.onUnchoke();
+        secondPipeline.onUnchoke();
+        assertThat(first.messages).containsExactly("interested", "request 0 0 16384", "request 0 16384 16384");
+        assertThat(second.messages).containsExactly("interested", "request 0 32768 7232", "request 1 0 16384");
+
+        firstPipeline.onChoke();
+        secondPipeline.onPiece(0, 32768, ByteBuffer.allocate(7232));
+        secondPipeline.onPiece(1, 0, ByteBuffer.allocate(BLOCK_LENGTH));
+
+        assertThat(firstPipeline.outstandingRequests()).isZero();
+        assertThat(second.messages).endsWith("request 0 0 16384", "request 0 16384 16384");
+    }
+
+    @Test
+    void remainingBlocksShouldBeRequestedTwiceInEndgame() {
+        var sink = new RecordingSink();
+        var scheduler = new BlockScheduler(layout(2 * BLOCK_LENGTH, 2 * BLOCK_LENGTH), new BitSet(), sink);
+        var first = new RecordingConnection();
+        var second = new RecordingConnection();
+        var firstPipeline = start(scheduler, first, 0b1000_0000);
+        var secondPipeline = start(scheduler, second, 0b1000_0000);
+
+        firstPipeline.onUnchoke();
+        assertThat(scheduler.isEndgame()).isTrue();
+        secondPipeline.onUnchoke();
+        assertThat(second.messages).containsExactly("interested", "request 0 0 16384", "request 0 16384 16384");
+
+        firstPipeline.onPiece(0, 0, ByteBuffer.allocate(BLOCK_LENGTH));
+        assertThat(second.messages).endsWith("cancel 0 0 16384");
+        // The peer sent it before the cancel arrived
+        secondPipeline.onPiece(0, 0, ByteBuffer.allocate(BLOCK_LENGTH));
+        secondPipeline.onPiece(0, 16384, ByteBuffer.allocate(BLOCK_LENGTH));
+
+        assertThat(first.messages).endsWith("cancel 0 16384 16384");
+        assertThat(sink.events).containsExactly("block 0 0", "block 0 16384", "piece 0");
+        assertThat(scheduler.isComplete()).isTrue();
+        assertThat(firstPipeline.outstandingRequests()).isZero();
+        assertThat(secondPipeline.outstandingRequests()).isZero();
+    }
+
+    @Test
+    void failedPieceShouldBeRequestedAgain() {
+        var sink = new RecordingSink();
+        var scheduler = new BlockScheduler(layout(BLOCK_LENGTH, BLOCK_LENGTH), new BitSet(), sink);
+        var connection = new RecordingConnection();
+        var pipeline = start(scheduler, connection, 0b1000_0000);
+        pipeline.onUnchoke();
+        pipeline.onPiece(0, 0, ByteBuffer.allocate(BLOCK_LENGTH));
+        assertThat(scheduler.isComplete()).isTrue();
+
+        scheduler.pieceFailed(0);
+        pipeline.onChoke();
+        pipeline.onUnchoke();
+
+        assertThat(scheduler.isComplete()).isFalse();
+        assertThat(connection.messages).containsExactly("interested", "request 0 0 16384", "request 0 0 16384");
+    }
+
+    @Test
+    void downloadedPiecesShouldNotBeRequested() {
+        var downloaded = new BitSet();
+        downloaded.set(0);
+        var scheduler = new BlockScheduler(layout(100_000, 40_000), downloaded, new RecordingSink());
+        var connection = new RecordingConnection();
+        var pipeline = start(scheduler, connection, 0b1000_0000);
+        pipeline.onUnchoke();
+
+        assertThat(connection.messages).isEmpty();
+        pipeline.onHave(2);
+        assertThat(connection.messages).containsExactly("interested", "request 2 0 16384", "request 2 16384 3616");
+    }
+
+    @Test
+    void rarestPiecesShouldBeRequestedFirst() {
+        var scheduler = new BlockScheduler(layout(2 * BLOCK_LENGTH, BLOCK_LENGTH), new BitSet(), new RecordingSink());
+        start(scheduler, new RecordingConnection(), 0b1000_0000);
+        var connection = new RecordingConnection();
+        var pipeline = start(scheduler, connection, 0b1100_0000);
+        pipeline.onUnchoke();
+
+        assertThat(connection.messages).containsExactly("interested", "request 1 0 16384", "request 0 0 16384");
+    }
+
+    @Test
+    void skippedFilesShouldNotBeRequested() {
+        // Files of 1.5 and 2.5 pieces, sharing piece 1
+        var sink = new RecordingSink();
+        var scheduler = new BlockScheduler(layout(BLOCK_LENGTH, 24_576, 40_960), new BitSet(), sink);
+        scheduler.setMode(PiecePicker.Mode.SEQUENTIAL);
+        scheduler.setFilePriority(1, 0);
+        var connection = new RecordingConnection();
+        var pipeline = start(scheduler, connection, 0b1111_0000);
+        pipeline.onUnchoke();
+        assertThat(connection.messages).containsExactly("interested", "request 0 0 16384", "request 1 0 16384");
+
+        pipeline.onPiece(0, 0, ByteBuffer.allocate(BLOCK_LENGTH));
+        pipeline.onPiece(1, 0, ByteBuffer.allocate(BLOCK_LENGTH));
+        assertThat(connection.messages).hasSize(3);
+        assertThat(sink.events).containsExactly("block 0 0", "piece 0", "block 1 0", "piece 1");
+
+        scheduler.setFilePriority(1, 1);
+        pipeline.onChoke();
+        pipeline.onUnchoke();
+        assertThat(connection.messages).endsWith("request 2 0 16384", "request 3 0 16384");
+    }
+
+    @ParameterizedTest
+    @MethodSource("getDepthTestData")
+    void depthShouldCoverTheBandwidthDelayProduct(int roundTripMillis, int bytesPerSecond, int minDepth, int maxDepth) {
+        long roundTripTime = TimeUnit.MILLISECONDS.toNanos(roundTripMillis);
+        long end = TimeUnit.SECONDS.toNanos(3 * RequestPipeline.RTT_WINDOW_SECONDS);
+        long[] clock = {0};
+        var scheduler = new BlockScheduler(layout(1L << 40, 1 << 24), new BitSet(), new RecordingSink());
+        var connection = new RecordingConnection();
+        var pipeline = new RequestPipeline(scheduler, () -> clock[0]);
+        // The simulated peer answers each request a round trip after it was sent, at the rate of its link
+        var arrivals = new ArrayDeque<long[]>();
+        long[] lastArrival = {0};
+        connection.onRequest = (piece, begin, length) -> {
+            lastArrival[0] = Math.max(clock[0] + roundTripTime, lastArrival[0] + length * 1_000_000_000L / bytesPerSecond);
+            arrivals.add(new long[]{lastArrival[0], piece, begin, length});
+        };
+        var block = ByteBuffer.allocate(BLOCK_LENGTH);
+
+        byte[] bits = new byte[scheduler.pieceCount() / 8];
+        Arrays.fill(bits, (byte) 0xff);
+        pipeline.onConnected(connection);
+        pipeline.onBitfield(ByteBuffer.wrap(bits));
+        pipeline.onUnchoke();
+        int largestDepth = 0;
+        while (clock[0] < end) {
+            long[] arrival = arrivals.remove();
+            clock[0] = arrival[0];
+            pipeline.onPiece((int) arrival[1], (int) arrival[2], block.clear().limit((int) arrival[3]));
+            largestDepth = Math.max(largestDepth, pipeline.depth());
+        }
+
+        assertThat(pipeline.depth()).isBetween(minDepth, maxDepth);
+        // The depth does not creep up as requests queue at the peer
+        assertThat(largestDepth).isLessThanOrEqualTo(maxDepth);
+        assertThat(pipeline.rate()).isCloseTo(bytesPerSecond, within(bytesPerSecond * 0.05));
+        assertThat(pipeline.roundTripTime()).isBetween(roundTripTime, roundTripTime + 2 * BLOCK_LENGTH * 1_000_000_000L / bytesPerSecond);
+    }
+
+    /**
+     * Downloads from a seeder on loopback that answers requests after a simulated round trip, at the
+     * rate of a simulated link. At the minimum depth the download would take 25 seconds.
+     */
+    @ParameterizedTest
+    @MethodSource("getEngineTestData")
+    void pipelineShouldFillASlowLink(String engineName) throws Exception {
+        int length = 16 << 20;
+        int bytesPerSecond = 16 << 20;
+        long roundTripTime = TimeUnit.MILLISECONDS.toNanos(50);
+        var layout = layout(length, 256 * 1024);
+        var done = new CountDownLatch(1);
+        var corruptBlocks = new AtomicInteger();
+        var scheduler = new BlockScheduler(layout, new BitSet(), new BlockScheduler.BlockSink() {
+            private int pieces;
+
+            @Override
+            public void onBlock(int piece, int begin, ByteBuffer block) {
+                while (block.hasRemaining()) {
+                    if (block.get() != (byte) (piece + begin / BLOCK_LENGTH)) {
+                        corruptBlocks.incrementAndGet();
+                        return;
+                    }
+                }
+            }
+
+            @Override
+            public void onPieceDownloaded(int piece) {
+                if (++pieces == layout.pieceCount()) {
+                    done.countDown();
+                }
+            }
+        });
+        var pipeline = new RequestPipeline(scheduler);
+
+        try (var seederEngine = new SelectorPeerEngine(bufferPool, decoder, 16);
+             var engine = engine(engineName);
+             var timer = Executors.newSingleThreadScheduledExecutor()) {
+            var address = seederEngine.listen(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), handshake -> new PeerHandler() {
+                private PeerConnection connection;
+                private long lastDeparture;
+
+                @Override
+                public void onConnected(PeerConnection connection) {
+                    this.connection = connection;
+                    byte[] bits = new byte[(layout.pieceCount() + 7) / 8];
+                    Arrays.fill(bits, (byte) 0xff);
+                    connection.sendBitfield(ByteBuffer.wrap(bits), layout.pieceCount());
+                    connection.sendUnchoke();
+                }
+
+                @Override
+                public void onRequest(int piece, int begin, int length) {
+                    long now = System.nanoTime();
+                    lastDeparture = Math.max(now + roundTripTime, lastDeparture + length * 1_000_000_000L / bytesPerSecond);
+                    var block = ByteBuffer.allocate(length);
+                    Arrays.fill(block.array(), (byte) (piece + begin / BLOCK_LENGTH));
+                    timer.schedule(() -> seederEngine.execute(() -> connection.sendPiece(piece, begin, block)),
+                            lastDeparture - now, TimeUnit.NANOSECONDS);
+                }
+            });
+            long start = System.nanoTime();
+            engine.connect(address, INFO_HASH, pipeline).get(10, TimeUnit.SECONDS);
+
+            assertThat(done.await(10, TimeUnit.SECONDS)).isTrue();
+            long elapsed = System.nanoTime() - start;
+            assertThat(corruptBlocks).hasValue(0);
+            assertThat(elapsed).isLessThan(TimeUnit.SECONDS.toNanos(4));
+            assertThat(pipeline.depth()).isGreaterThan((int) (bytesPerSecond * roundTripTime / 1_000_000_000L / BLOCK_LENGTH));
+        }
+    }
+
+    private PeerEngine engine(String name) {
+        return switch (name) {
+            case "selector" -> new SelectorPeerEngine(bufferPool, decoder, 16);
+            case "virtual-threads" -> new VirtualThreadPeerEngine(bufferPool, decoder, 16);
+            default -> throw new IllegalArgumentException(name);
+        };
+    }
+
+    private static RequestPipeline start(BlockScheduler scheduler, PeerConnection connection, int bitfield) {
+        var pipeline = new RequestPipeline(scheduler);
+        pipeline.onConnected(connection);
+        pipeline.onBitfield(ByteBuffer.wrap(new byte[]{(byte) bitfield}));
+        return pipeline;
+    }
+
+    private static PieceLayout layout(long length, int pieceLength) {
+        int pieceCount = (int) ((length + pieceLength - 1) / pieceLength);
+        var pieces = PieceHashes.of(ByteString.of(new byte[pieceCount * PieceHashes.HASH_LENGTH]));
+        var info = new InfoDictionary("payload", pieceLength, pieces, List.of(new FileEntry(List.of("payload"), length)), true);
+        return PieceLayout.of(info, Path.of("downloads"));
+    }
+
+    private static PieceLayout layout(int pieceLength, long... fileLengths) {
+        var files = new ArrayList<FileEntry>();
+        for (int i = 0; i < fileLengths.length; i++) {
+            files.add(new FileEntry(List.of("file" + i), fileLengths[i]));
+        }
+        long length = Arrays.stream(fileLengths).sum();
+        int pieceCount = (int) ((length + pieceLength - 1) / pieceLength);
+        var pieces = PieceHashes.of(ByteString.of(new byte[pieceCount * PieceHashes.HASH_LENGTH]));
+        return PieceLayout.of(new InfoDictionary("payload", pieceLength, pieces, files, false), Path.of("downloads"));
+    }
+
+    private static Stream<Arguments> getDepthTestData() {
+        return Stream.of(
+                // Round trip in ms, link rate, expected depth: twice the bandwidth-delay product in blocks
+                arguments(100, 10_000_000, 110, 140),
+                arguments(20, 50_000_000, 110, 140),
+                arguments(2, 1_000_000, 2, 4),
+                // Long fat links are capped, here still above the bandwidth-delay product
+                arguments(300, 20_000_000, 500, 500)
+        );
+    }
+
+    private static Stream<Arguments> getEngineTestData() {
+        return Stream.of(
+                arguments("selector"),
+                arguments("virtual-threads")
+        );
+    }
+
+    private static class RecordingSink implements BlockScheduler.BlockSink {
+
+        private final List<String> events = new ArrayList<>();
+
+        @Override
+        public void onBlock(int piece, int begin, ByteBuffer block) {
+            events.add("block " + piece + " " + begin);
+        }
+
+        @Override
+        public void onPieceDownloaded(int piece) {
+            events.add("piece " + piece);
+        }
+    }
+
+    private interface RequestListener {
+
+        void onRequest(int piece, int begin, int length);
+    }
+
+    private static class RecordingConnection implements PeerConnection {
+
+        private final List<String> messages = new ArrayList<>();
+        private RequestListener onRequest = (piece, begin, length) -> messages.add("request " + piece + " " + begin + " " + length);
+
+        @Override
+        public InetSocketAddress remoteAddress() {
+            return new InetSocketAddress(InetAddress.getLoopbackAddress(), 6881);
+        }
+
+        @Override
+        public Handshake remoteHandshake() {
+            return Handshake.of(INFO_HASH, INFO_HASH);
+        }
+
+        @Override
+        public void sendKeepAlive() {
+            messages.add("keep-alive");
+        }
+
+        @Override
+        public void sendChoke() {
+            messages.add("choke");
+        }
+
+        @Override
+        public void sendUnchoke() {
+            messages.add("unchoke");
+        }
+
+        @Override
+        public void sendInterested() {
+            messages.add("interested");
+        }
+
+        @Override
+        public void sendNotInterested() {
+            messages.add("not-interested");
+        }
+
+        @Override
+        public void sendHave(int piece) {
+            messages.add("have " + piece);
+        }
+
+        @Override
+        public void sendBitfield(ByteBuffer bits, int pieceCount) {
+            messages.add("bitfield");
+        }
+
+        @Override
+        public void sendRequest(int piece, int begin, int length) {
+            onRequest.onRequest(piece, begin, length);
+        }
+
+        @Override
+        public void sendCancel(int piece, int begin, int length) {
+            messages.add("cancel " + piece + " " + begin + " " + length);
+        }
+
+        @Override
+        public void sendPiece(int piece, int begin, ByteBuffer block) {
+            messages.add("piece " + piece + " " + begin);
+        }
+
+        @Override
+        public void sendPiece(int piece, int begin, FileChannel file, long position, int length) {
+            messages.add("piece " + piece + " " + begin);
+        }
+
+        @Override
+        public long queuedBytes() {
+            return 0;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package bit.bees.bittorrent.peer;
+
+import bit.bees.bittorrent.peer.PeerEngineTest.RecordingPeerHandler;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static bit.bees.bittorrent.peer.PeerEngineTest.INFO_HASH;
+import static bit.bees.bittorrent.peer.PeerEngineTest.REMOTE_ID;
+import static bit.bees.bittorrent.peer.PeerEngineTest.loopback;
+import static bit.bees.bittorrent.peer.PeerEngineTest.readFully;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * What only the {@link SelectorPeerEngine} does; the rest is in {@link PeerEngineTest}.
+ */
+@SpringBootTest
+class SelectorPeerEngineTest {
+
+    @Autowired
+    private PeerEngine engine;
+
+    @Test
+    void configuredEngineShouldBeTheSelectorByDefault() {
+        assertThat(engine).isInstanceOf(SelectorPeerEngine.class);
+    }
+
+    @Test
+    void connectionShouldOnlyBeUsedOnTheEngineThread() throws Exception {
+        var connected = new CompletableFuture<PeerConnection>();
+        var address = engine.listen(loopback(), handshake -> new PeerHandler() {
+            @Override
+            public void onConnected(PeerConnection connection) {
+                connected.complete(connection);
+            }
+        });
+
+        try (var client = SocketChannel.open(address)) {
+            var output = ByteBuffer.allocate(Handshake.LENGTH);
+            Handshake.of(INFO_HASH, REMOTE_ID).writeTo(output);
+            client.write(output.flip());
+
+            var connection = connected.get(10, TimeUnit.SECONDS);
+            assertThatThrownBy(connection::sendKeepAlive).isInstanceOf(IllegalStateException.class);
+
+            ((SelectorPeerEngine) engine).execute(connection::sendKeepAlive);
+            readFully(client, Handshake.LENGTH);
+            assertThat(readFully(client, 4).getInt()).isZero();
+        }
+    }
+
+    @Test
+    void tasksShouldRunOnTheEngineThreadInOrder() throws Exception {
+        var selectorEngine = (SelectorPeerEngine) engine;
+        var threads = new CompletableFuture<String>();
+        var order = new StringBuilder();
+
+        selectorEngine.execute(() -> order.append('a'));
+        selectorEngine.execute(() -> order.append('b'));
+        selectorEngine.execute(() -> threads.complete(Thread.currentThread().getName() + " " + order));
+
+        assertThat(threads.get(10, TimeUnit.SECONDS)).isEqualTo("peer-engine ab");
+    }
+
+    @Test
+    void failingTaskShouldNotStopTheEngine() throws Exception {
+        var selectorEngine = (SelectorPeerEngine) engine;
+        var handler = new RecordingPeerHandler();
+        var address = engine.listen(loopback(), handshake -> handler);
+        var previousHandler = Thread.getDefaultUncaughtExceptionHandler();
+        var reported = new CompletableFuture<Throwable>();
+        Thread.setDefaultUncaughtExceptionHandler((thread, e) -> reported.complete(e));
+        try {
+            selectorEngine.execute(() -> {
+                throw new IllegalStateException("task failed");
+            });
+            assertThat(reported.get(10, TimeUnit.SECONDS)).hasMessage("task failed");
+        } finally {
+            Thread.setDefaultUncaughtExceptionHandler(previousHandler);
+        }
+
+        try (var client = SocketChannel.open(address)) {
+            var output = ByteBuffer.allocate(Handshake.LENGTH);
+            Handshake.of(INFO_HASH, REMOTE_ID).writeTo(output);
+            client.write(output.flip());
+
+            assertThat(handler.next()).isEqualTo("connected");
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package bit.bees.bittorrent.peer;
+
+import bit.bees.bittorrent.peer.PeerEngineTest.RecordingPeerHandler;
+import bit.bees.bittorrent.peer.PeerEngineTest.SeedingHandler;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static bit.bees.bittorrent.peer.PeerEngineTest.INFO_HASH;
+import static bit.bees.bittorrent.peer.PeerEngineTest.REMOTE_ID;
+import static bit.bees.bittorrent.peer.PeerEngineTest.loopback;
+import static bit.bees.bittorrent.peer.PeerEngineTest.readFully;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * What only the {@link VirtualThreadPeerEngine} does; the rest is in {@link PeerEngineTest}.
+ */
+@SpringBootTest(properties = "peer.engine=virtual-threads")
+class VirtualThreadPeerEngineTest {
+
+    @Autowired
+    private PeerEngine engine;
+
+    @Autowired
+    private BufferPool bufferPool;
+
+    @Autowired
+    private MessageDecoder decoder;
+
+    @Test
+    void configuredEngineShouldRunConnectionsOnVirtualThreads() {
+        assertThat(engine).isInstanceOf(VirtualThreadPeerEngine.class);
+    }
+
+    @Test
+    void connectionShouldBeUsableFromAnyThread() throws Exception {
+        try (var server = ServerSocketChannel.open().bind(loopback())) {
+            var future = engine.connect((InetSocketAddress) server.getLocalAddress(), INFO_HASH, new RecordingPeerHandler());
+
+            try (var remote = server.accept()) {
+                readFully(remote, Handshake.LENGTH);
+                var output = ByteBuffer.allocate(Handshake.LENGTH);
+                Handshake.of(INFO_HASH, REMOTE_ID).writeTo(output);
+                remote.write(output.flip());
+                var connection = future.get(10, TimeUnit.SECONDS);
+
+                // Sent right away by each thread, one message after the other
+                var senders = new Thread[4];
+                for (int i = 0; i < senders.length; i++) {
+                    int piece = i;
+                    senders[i] = Thread.ofPlatform().start(() -> connection.sendHave(piece));
+                }
+                for (Thread sender : senders) {
+                    sender.join();
+                }
+                var input = readFully(remote, senders.length * MessageEncoder.HAVE_LENGTH);
+                int pieces = 0;
+                for (int i = 0; i < senders.length; i++) {
+                    assertThat(input.getInt()).isEqualTo(5);
+                    assertThat(input.get()).isEqualTo(MessageType.HAVE.id());
+                    pieces |= 1 << input.getInt();
+                }
+                assertThat(pieces).isEqualTo(0b1111);
+            }
+        }
+    }
+
+    @Test
+    void handlerShouldBeAllowedToBlock() throws Exception {
+        var release = new CountDownLatch(1);
+        var address = engine.listen(loopback(), handshake -> new SeedingHandler() {
+            @Override
+            public void onInterested() {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+
+        try (var blocked = SocketChannel.open(address); var other = SocketChannel.open(address)) {
+            var output = ByteBuffer.allocate(256);
+            Handshake.of(INFO_HASH, REMOTE_ID).writeTo(output);
+            MessageEncoder.writeState(output, MessageType.INTERESTED);
+            MessageEncoder.writeRequest(output, 1, 0, 4);
+            blocked.write(output.flip());
+            output.clear();
+            Handshake.of(INFO_HASH, REMOTE_ID).writeTo(output);
+            MessageEncoder.writeRequest(output, 2, 0, 4);
+            other.write(output.flip());
+
+            // The other peer is served while the first one's handler waits
+            var input = readFully(other, Handshake.LENGTH + MessageEncoder.STATE_LENGTH + MessageEncoder.PIECE_HEADER_LENGTH + 4);
+            assertThat(input.getInt(Handshake.LENGTH + MessageEncoder.STATE_LENGTH + 5)).isEqualTo(2);
+            readFully(blocked, Handshake.LENGTH + MessageEncoder.STATE_LENGTH);
+            release.countDown();
+            input = readFully(blocked, MessageEncoder.PIECE_HEADER_LENGTH + 4);
+            assertThat(input.getInt(5)).isEqualTo(1);
+        }
+    }
+
+    @Test
+    void connectionsBeyondTheLimitShouldWait() throws Exception {
+        try (var limited = new VirtualThreadPeerEngine(bufferPool, decoder, 1)) {
+            var address = limited.listen(loopback(), handshake -> new SeedingHandler());
+
+            try (var first = SocketChannel.open(address); var second = SocketChannel.open(address)) {
+                var output = ByteBuffer.allocate(Handshake.LENGTH);
+                Handshake.of(INFO_HASH, REMOTE_ID).writeTo(output);
+                first.write(output.flip());
+                second.write(output.flip());
+                readFully(first, Handshake.LENGTH);
+
+                var outgoing = limited.connect(address, INFO_HASH, new RecordingPeerHandler());
+                assertThatThrownBy(() -> outgoing.get(10, TimeUnit.SECONDS))
+                        .hasCauseInstanceOf(PeerProtocolException.class)
+                        .hasMessageContaining("Connection limit of 1 reached");
+
+                // The first peer leaves, making room for the second
+                first.shutdownOutput();
+                assertThat(Handshake.read(readFully(second, Handshake.LENGTH)).peerId()).isEqualTo(limited.peerId());
+            }
+        }
+    }
+}
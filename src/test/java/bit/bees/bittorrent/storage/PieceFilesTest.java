@@ -0,0 +1,96 @@
+package bit.bees.bittorrent.storage;
+
+import bit.bees.bittorrent.bencode.ByteString;
+import bit.bees.bittorrent.metainfo.FileEntry;
+import bit.bees.bittorrent.metainfo.InfoDictionary;
+import bit.bees.bittorrent.metainfo.PieceHashes;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PieceFilesTest {
+
+    @TempDir
+    private Path directory;
+
+    @Test
+    void blockShouldBeReadAcrossFiles() throws IOException {
+        byte[] payload = payload(25);
+        try (var files = new PieceFiles(write(payload, 7, 0, 10, 8))) {
+            var block = ByteBuffer.allocate(32).position(4).limit(17);
+
+            files.read(0, 3, block);
+
+            assertThat(block.position()).isEqualTo(17);
+            assertThat(block.limit()).isEqualTo(17);
+            assertThat(Arrays.copyOfRange(block.array(), 4, 17)).isEqualTo(Arrays.copyOfRange(payload, 3, 16));
+        }
+    }
+
+    @Test
+    void channelShouldBeOpenedOnce() throws IOException {
+        try (var files = new PieceFiles(write(payload(10), 4, 6))) {
+            var channel = files.channel(1);
+
+            assertThat(files.channel(1)).isSameAs(channel);
+            assertThat(channel.size()).isEqualTo(6);
+        }
+    }
+
+    @Test
+    void shortFileShouldFailTheRead() throws IOException {
+        var layout = write(payload(10), 4, 6);
+        Files.write(layout.files().get(1), new byte[2]);
+
+        try (var files = new PieceFiles(layout)) {
+            assertThatThrownBy(() -> files.read(0, 0, ByteBuffer.allocate(8)))
+                    .isInstanceOf(EOFException.class);
+        }
+    }
+
+    @Test
+    void closedFilesShouldNotBeOpened() throws IOException {
+        var files = new PieceFiles(write(payload(10), 10));
+        files.channel(0);
+
+        files.close();
+
+        assertThatThrownBy(() -> files.channel(0)).isInstanceOf(IOException.class);
+    }
+
+    /**
+     * Writes the payload as files of the given lengths, in pieces of 16 bytes.
+     */
+    private PieceLayout write(byte[] payload, int... fileLengths) throws IOException {
+        var entries = new ArrayList<FileEntry>();
+        Files.createDirectories(directory.resolve("payload"));
+        int offset = 0;
+        for (int i = 0; i < fileLengths.length; i++) {
+            Files.write(directory.resolve("payload").resolve("file" + i), Arrays.copyOfRange(payload, offset, offset + fileLengths[i]));
+            entries.add(new FileEntry(List.of("file" + i), fileLengths[i]));
+            offset += fileLengths[i];
+        }
+        int pieceCount = (payload.length + 15) / 16;
+        var pieces = PieceHashes.of(ByteString.of(new byte[pieceCount * PieceHashes.HASH_LENGTH]));
+        return PieceLayout.of(new InfoDictionary("payload", 16, pieces, entries, false), directory);
+    }
+
+    private static byte[] payload(int length) {
+        byte[] payload = new byte[length];
+        for (int i = 0; i < length; i++) {
+            payload[i] = (byte) i;
+        }
+        return payload;
+    }
+}
@@ -0,0 +1,149 @@
+package bit.bees.bittorrent.storage;
+
+import bit.bees.bittorrent.bencode.ByteString;
+import bit.bees.bittorrent.metainfo.FileEntry;
+import bit.bees.bittorrent.metainfo.InfoDictionary;
+import bit.bees.bittorrent.metainfo.MetainfoException;
+import bit.bees.bittorrent.metainfo.PieceHashes;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.params.provider.Arguments.arguments;
+
+class PieceLayoutTest {
+
+    private static final Path DOWNLOADS = Path.of("downloads");
+
+    @Test
+    void singleFileShouldBeStoredUnderItsName() {
+        var layout = PieceLayout.of(info("a.iso", 4, true, 3, file(10, "a.iso")), DOWNLOADS);
+
+        assertThat(layout.files()).containsExactly(DOWNLOADS.resolve("a.iso"));
+        assertThat(layout.pieceCount()).isEqualTo(3);
+        assertThat(layout.pieceLength(0)).isEqualTo(4);
+        assertThat(layout.pieceLength(2)).isEqualTo(2);
+        assertThat(segments(layout, 2)).containsExactly(List.of(0L, 8L, 2L));
+    }
+
+    @Test
+    void piecesShouldBeSplitAtFileBoundariesSkippingEmptyFiles() {
+        var layout = PieceLayout.of(info("dir", 4, false, 3,
+                file(3, "a"), file(0, "empty"), file(1, "sub", "b"), file(0, "empty2"), file(5, "c")), DOWNLOADS);
+
+        assertThat(layout.files()).containsExactly(
+                DOWNLOADS.resolve("dir/a"), DOWNLOADS.resolve("dir/empty"), DOWNLOADS.resolve("dir/sub/b"),
+                DOWNLOADS.resolve("dir/empty2"), DOWNLOADS.resolve("dir/c"));
+        assertThat(layout.totalLength()).isEqualTo(9);
+        assertThat(segments(layout, 0)).containsExactly(List.of(0L, 0L, 3L), List.of(2L, 0L, 1L));
+        assertThat(segments(layout, 1)).containsExactly(List.of(4L, 0L, 4L));
+        assertThat(segments(layout, 2)).containsExactly(List.of(4L, 4L, 1L));
+    }
+
+    @Test
+    void filesShouldBeLocatedByOffset() {
+        var layout = PieceLayout.of(info("dir", 4, false, 3, file(3, "a"), file(0, "empty"), file(6, "b")), DOWNLOADS);
+
+        assertThat(layout.fileOffset(1)).isEqualTo(3);
+        assertThat(layout.fileOffset(2)).isEqualTo(3);
+        assertThat(layout.pieceAt(layout.fileOffset(2))).isEqualTo(0);
+        assertThat(layout.pieceAt(layout.fileOffset(2) + layout.fileLength(2) - 1)).isEqualTo(2);
+    }
+
+    @Test
+    void visitingShouldStopWhenTheVisitorSaysSo() {
+        var layout = PieceLayout.of(info("dir", 4, false, 1, file(1, "a"), file(1, "b"), file(2, "c")), DOWNLOADS);
+        var visited = new ArrayList<Integer>();
+
+        boolean complete = layout.forEachSegment(0, (file, offset, length) -> visited.add(file) && file < 1);
+
+        assertThat(complete).isFalse();
+        assertThat(visited).containsExactly(0, 1);
+    }
+
+    @Test
+    void blocksShouldBeSplitAtFileBoundaries() {
+        var layout = PieceLayout.of(info("dir", 8, false, 2, file(3, "a"), file(0, "empty"), file(6, "b"), file(4, "c")), DOWNLOADS);
+
+        assertThat(blockSegments(layout, 0, 0, 3)).containsExactly(List.of(0L, 0L, 3L));
+        assertThat(blockSegments(layout, 0, 2, 4)).containsExactly(List.of(0L, 2L, 1L), List.of(2L, 0L, 3L));
+        assertThat(blockSegments(layout, 1, 0, 3)).containsExactly(List.of(2L, 5L, 1L), List.of(3L, 0L, 2L));
+        assertThat(blockSegments(layout, 1, 1, 4)).containsExactly(List.of(3L, 0L, 4L));
+        assertThat(blockSegments(layout, 1, 0, 0)).isEmpty();
+    }
+
+    @Test
+    void blocksShouldLieWithinTheirPiece() {
+        var layout = PieceLayout.of(info("a", 4, true, 3, file(10, "a")), DOWNLOADS);
+
+        assertThatThrownBy(() -> layout.forEachSegment(2, 1, 2, (file, offset, length) -> true))
+                .isInstanceOf(IndexOutOfBoundsException.class)
+                .hasMessage("Block of 2 bytes at 1 is out of bounds for piece 2 of 2 bytes");
+        assertThatThrownBy(() -> layout.forEachSegment(0, -1, 1, (file, offset, length) -> true))
+                .isInstanceOf(IndexOutOfBoundsException.class);
+    }
+
+    @Test
+    void pieceCountShouldMatchTheHashes() {
+        assertThatThrownBy(() -> PieceLayout.of(info("a", 4, true, 2, file(10, "a")), DOWNLOADS))
+                .isInstanceOf(MetainfoException.class)
+                .hasMessage("Expected 3 piece hashes for 10 bytes, found 2");
+    }
+
+    @ParameterizedTest
+    @MethodSource("getTraversalTestData")
+    void pathsLeavingTheDownloadDirectoryShouldFail(String name, boolean singleFile, List<String> path) {
+        var info = new InfoDictionary(name, 4, PieceHashes.of(ByteString.of(new byte[PieceHashes.HASH_LENGTH])),
+                List.of(new FileEntry(path, 1)), singleFile);
+
+        assertThatThrownBy(() -> PieceLayout.of(info, DOWNLOADS))
+                .isInstanceOf(MetainfoException.class);
+    }
+
+    private static List<List<Long>> segments(PieceLayout layout, int piece) {
+        var segments = new ArrayList<List<Long>>();
+        layout.forEachSegment(piece, (file, offset, length) -> segments.add(List.of((long) file, offset, (long) length)));
+        return segments;
+    }
+
+    private static List<List<Long>> blockSegments(PieceLayout layout, int piece, int begin, int length) {
+        var segments = new ArrayList<List<Long>>();
+        layout.forEachSegment(piece, begin, length, (file, offset, segmentLength) -> segments.add(List.of((long) file, offset, (long) segmentLength)));
+        return segments;
+    }
+
+    private static FileEntry file(long length, String... path) {
+        return new FileEntry(List.of(path), length);
+    }
+
+    private static InfoDictionary info(String name, long pieceLength, boolean singleFile, int pieceCount, FileEntry... files) {
+        var pieces = PieceHashes.of(ByteString.of(new byte[pieceCount * PieceHashes.HASH_LENGTH]));
+        return new InfoDictionary(name, pieceLength, pieces, List.of(files), singleFile);
+    }
+
+    private static Stream<Arguments> getTraversalTestData() {
+        return Stream.of(
+                // Up from the download directory
+                arguments("..", true, List.of("..")),
+                arguments("..", false, List.of("a")),
+                arguments("dir", false, List.of("..", "..", "etc", "passwd")),
+                arguments("dir", false, List.of("sub/../../..", "a")),
+                // Absolute paths
+                arguments("/etc/passwd", true, List.of("/etc/passwd")),
+                arguments("dir", false, List.of("/etc", "passwd")),
+                arguments("dir", false, List.of("sub\\..\\..", "a")),
+                // Names that are not names
+                arguments("", false, List.of("a")),
+                arguments("dir", false, List.of(".", "a")),
+                arguments("dir", false, List.of("sub", ""))
+        );
+    }
+}
@@ -0,0 +1,114 @@
+package bit.bees.bittorrent.storage;
+
+import bit.bees.bittorrent.bencode.ByteString;
+import bit.bees.bittorrent.metainfo.FileEntry;
+import bit.bees.bittorrent.metainfo.InfoDictionary;
+import bit.bees.bittorrent.metainfo.PieceHashes;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+class PieceVerifierTest {
+
+    private static final int PIECE_LENGTH = 1000;
+
+    @Autowired
+    private PieceVerifier verifier;
+
+    @TempDir
+    private Path directory;
+
+    @Test
+    void intactPayloadShouldBeComplete() throws Exception {
+        var info = writePayload(2500, 0, 1, 3999, 500, 1);
+        var progress = new AtomicInteger();
+
+        var result = verifier.verify(info, directory, (checked, total) -> progress.accumulateAndGet(checked, Math::max));
+
+        assertThat(result.pieceCount()).isEqualTo(8);
+        assertThat(result.isComplete()).isTrue();
+        assertThat(progress).hasValue(8);
+    }
+
+    @Test
+    void damagedFilesShouldOnlyInvalidateTheirPieces() throws Exception {
+        var info = writePayload(2500, 0, 1, 3999, 500, 1);
+        // Piece 1 lies in the first file only, piece 2 spans the first three files
+        corrupt(directory.resolve("payload/file0"), 1500);
+        Files.delete(directory.resolve("payload/file2"));
+        // Piece 6 ends in the fifth file, piece 7 is the single byte of the last file
+        try (var file = new RandomAccessFile(directory.resolve("payload/file4").toFile(), "rw")) {
+            file.setLength(400);
+        }
+
+        var result = verifier.verify(info, directory);
+
+        assertThat(result.isComplete()).isFalse();
+        assertThat(result.validPieces().stream().toArray()).containsExactly(0, 3, 4, 5, 7);
+    }
+
+    @Test
+    void singleFileShouldBeVerifiedInParallel() throws Exception {
+        byte[] data = random(PIECE_LENGTH * 300 + 7);
+        Files.write(directory.resolve("single"), data);
+        var info = new InfoDictionary("single", PIECE_LENGTH, hashes(data), List.of(new FileEntry(List.of("single"), data.length)), true);
+
+        var result = new PieceVerifier(4).verify(info, directory);
+
+        assertThat(result.pieceCount()).isEqualTo(301);
+        assertThat(result.isComplete()).isTrue();
+    }
+
+    private InfoDictionary writePayload(int... fileLengths) throws IOException, NoSuchAlgorithmException {
+        var files = new ArrayList<FileEntry>();
+        byte[] payload = random(Arrays.stream(fileLengths).sum());
+        Files.createDirectories(directory.resolve("payload"));
+        int offset = 0;
+        for (int i = 0; i < fileLengths.length; i++) {
+            var name = "file" + i;
+            Files.write(directory.resolve("payload").resolve(name), Arrays.copyOfRange(payload, offset, offset + fileLengths[i]));
+            files.add(new FileEntry(List.of(name), fileLengths[i]));
+            offset += fileLengths[i];
+        }
+        return new InfoDictionary("payload", PIECE_LENGTH, hashes(payload), files, false);
+    }
+
+    private static PieceHashes hashes(byte[] payload) throws NoSuchAlgorithmException {
+        var digest = MessageDigest.getInstance("SHA-1");
+        int count = (payload.length + PIECE_LENGTH - 1) / PIECE_LENGTH;
+        byte[] hashes = new byte[count * PieceHashes.HASH_LENGTH];
+        for (int i = 0; i < count; i++) {
+            digest.update(payload, i * PIECE_LENGTH, Math.min(PIECE_LENGTH, payload.length - i * PIECE_LENGTH));
+            System.arraycopy(digest.digest(), 0, hashes, i * PieceHashes.HASH_LENGTH, PieceHashes.HASH_LENGTH);
+        }
+        return PieceHashes.of(ByteString.of(hashes));
+    }
+
+    private static void corrupt(Path file, int position) throws IOException {
+        byte[] content = Files.readAllBytes(file);
+        content[position] ^= 1;
+        Files.write(file, content);
+    }
+
+    private static byte[] random(int length) {
+        byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+        return data;
+    }
+}